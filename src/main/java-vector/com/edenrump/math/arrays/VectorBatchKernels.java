@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.arrays;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class represents the batch kernels written with the incubating Java Vector API. It is compiled only by the
+ * <code>vector</code> profile and loaded reflectively by {@link BatchKernels#getInstance()}.
+ * <p>
+ * Component arrays are processed a whole preferred-width vector at a time, with the remainder handed to
+ * {@link ScalarBatchKernels}. Matrix products use one 512-bit vector per matrix where the hardware has them, and one
+ * 128-bit vector per row otherwise. Each lane performs exactly the operations of the scalar kernels, in the same
+ * order, so results are bit-identical.
+ */
+final class VectorBatchKernels extends BatchKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> ROW = FloatVector.SPECIES_128;
+    /**
+     * A species holding a whole 4x4 matrix, or null if the hardware's vectors are narrower than 512 bits
+     */
+    private static final VectorSpecies<Float> WHOLE_MATRIX = SPECIES.length() >= 16 ? FloatVector.SPECIES_512 : null;
+    private static final VectorShuffle<Float>[] LEFT_TERMS = createTermShuffles(true);
+    private static final VectorShuffle<Float>[] RIGHT_TERMS = createTermShuffles(false);
+
+    @SuppressWarnings("unchecked")
+    private static VectorShuffle<Float>[] createTermShuffles(boolean left) {
+        if (WHOLE_MATRIX == null) return null;
+
+        VectorShuffle<Float>[] shuffles = new VectorShuffle[4];
+        int[] indices = new int[16];
+        for (int k = 0; k < 4; k++) {
+            for (int lane = 0; lane < 16; lane++) {
+                int i = lane / 4;
+                int j = lane % 4;
+                indices[lane] = left ? i * 4 + k : k * 4 + j;
+            }
+            shuffles[k] = VectorShuffle.fromArray(WHOLE_MATRIX, indices, 0);
+        }
+        return shuffles;
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    void transformPointsUnchecked(float[] m, float[] x, float[] y, float[] z,
+                                  float[] outX, float[] outY, float[] outZ, int count) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        float m12 = m[12], m13 = m[13], m14 = m[14];
+        FloatVector zero = FloatVector.zero(SPECIES);
+
+        int upper = SPECIES.loopBound(count);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            FloatVector px = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector py = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector pz = FloatVector.fromArray(SPECIES, z, i);
+            zero.add(px.mul(m0)).add(py.mul(m4)).add(pz.mul(m8)).add(m12).intoArray(outX, i);
+            zero.add(px.mul(m1)).add(py.mul(m5)).add(pz.mul(m9)).add(m13).intoArray(outY, i);
+            zero.add(px.mul(m2)).add(py.mul(m6)).add(pz.mul(m10)).add(m14).intoArray(outZ, i);
+        }
+        ScalarBatchKernels.transformPoints(m, x, y, z, outX, outY, outZ, upper, count);
+    }
+
+    @Override
+    void transformDirectionsUnchecked(float[] m, float[] x, float[] y, float[] z,
+                                      float[] outX, float[] outY, float[] outZ, int count) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        FloatVector zero = FloatVector.zero(SPECIES);
+
+        int upper = SPECIES.loopBound(count);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            FloatVector dx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector dy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector dz = FloatVector.fromArray(SPECIES, z, i);
+            zero.add(dx.mul(m0)).add(dy.mul(m4)).add(dz.mul(m8)).intoArray(outX, i);
+            zero.add(dx.mul(m1)).add(dy.mul(m5)).add(dz.mul(m9)).intoArray(outY, i);
+            zero.add(dx.mul(m2)).add(dy.mul(m6)).add(dz.mul(m10)).intoArray(outZ, i);
+        }
+        ScalarBatchKernels.transformDirections(m, x, y, z, outX, outY, outZ, upper, count);
+    }
+
+    @Override
+    void multiplyMatricesUnchecked(float[] left, float[] right, float[] out, int count) {
+        if (WHOLE_MATRIX != null) {
+            multiplyWholeMatrices(left, right, out, count);
+            return;
+        }
+        FloatVector zero = FloatVector.zero(ROW);
+        for (int n = 0; n < count; n++) {
+            int base = n * 16;
+            FloatVector b0 = FloatVector.fromArray(ROW, right, base);
+            FloatVector b1 = FloatVector.fromArray(ROW, right, base + 4);
+            FloatVector b2 = FloatVector.fromArray(ROW, right, base + 8);
+            FloatVector b3 = FloatVector.fromArray(ROW, right, base + 12);
+            for (int row = base; row < base + 16; row += 4) {
+                zero.add(b0.mul(left[row]))
+                        .add(b1.mul(left[row + 1]))
+                        .add(b2.mul(left[row + 2]))
+                        .add(b3.mul(left[row + 3]))
+                        .intoArray(out, row);
+            }
+        }
+    }
+
+    /**
+     * Multiplies one matrix per 16-lane vector. Lane i * 4 + j of the product needs left[i * 4 + k] and
+     * right[k * 4 + j] for each k, which are gathered from whole-matrix loads by the shuffles built below.
+     */
+    private static void multiplyWholeMatrices(float[] left, float[] right, float[] out, int count) {
+        FloatVector zero = FloatVector.zero(WHOLE_MATRIX);
+        for (int n = 0; n < count; n++) {
+            int base = n * 16;
+            FloatVector a = FloatVector.fromArray(WHOLE_MATRIX, left, base);
+            FloatVector b = FloatVector.fromArray(WHOLE_MATRIX, right, base);
+            zero.add(a.rearrange(LEFT_TERMS[0]).mul(b.rearrange(RIGHT_TERMS[0])))
+                    .add(a.rearrange(LEFT_TERMS[1]).mul(b.rearrange(RIGHT_TERMS[1])))
+                    .add(a.rearrange(LEFT_TERMS[2]).mul(b.rearrange(RIGHT_TERMS[2])))
+                    .add(a.rearrange(LEFT_TERMS[3]).mul(b.rearrange(RIGHT_TERMS[3])))
+                    .intoArray(out, base);
+        }
+    }
+
+    @Override
+    void normalizeUnchecked(float[] x, float[] y, float[] z, int count) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1f);
+
+        int upper = SPECIES.loopBound(count);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector vz = FloatVector.fromArray(SPECIES, z, i);
+            FloatVector length = zero.add(vx.mul(vx)).add(vy.mul(vy)).add(vz.mul(vz)).lanewise(VectorOperators.SQRT);
+            VectorMask<Float> nonZero = length.compare(VectorOperators.NE, 0f);
+            FloatVector inverse = one.div(length);
+            vx.blend(vx.mul(inverse), nonZero).intoArray(x, i);
+            vy.blend(vy.mul(inverse), nonZero).intoArray(y, i);
+            vz.blend(vz.mul(inverse), nonZero).intoArray(z, i);
+        }
+        ScalarBatchKernels.normalize(x, y, z, upper, count);
+    }
+}
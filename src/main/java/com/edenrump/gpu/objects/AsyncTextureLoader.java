@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * This class represents a texture loader that decodes image files on a pool of worker threads so that the render
+ * thread never waits on the disk or the decoder. {@link #load(String)} hands back a placeholder texture straight away;
+ * the decoded pixels are queued for the render thread, which uploads them a strip of rows at a time within a per-frame
+ * time budget from {@link #processUploads()}. Once the whole image is on the GPU it is swapped into the placeholder,
+ * so meshes holding the placeholder draw the real image from the next frame without being touched.
+ * <p>
+ * Everything except decoding must be called on the thread that owns the GL context.
+ */
+public class AsyncTextureLoader implements AutoCloseable {
+
+    /**
+     * The default colour of a texture that is still loading: opaque mid grey, as RGBA
+     */
+    public static final int DEFAULT_PLACEHOLDER_RGBA = 0x808080FF;
+    /**
+     * The default number of milliseconds a frame may spend uploading textures
+     */
+    public static final double DEFAULT_UPLOAD_BUDGET_MILLIS = 2;
+    private static final int DEFAULT_SLICE_BYTES = 256 * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final long FINISH_POLL_MILLIS = 10;
+
+    /**
+     * This interface represents the decoding of an image file to RGBA pixels. Implementations are called on the worker
+     * threads.
+     */
+    interface Decoder {
+        DecodedImage decode(String path) throws IOException;
+
+        void free(DecodedImage image);
+    }
+
+    /**
+     * This interface represents the GL side of the loader. Implementations are called on the render thread only.
+     */
+    interface Uploader {
+        Texture createPlaceholder(int rgba);
+
+        int allocate(int width, int height);
+
+        void uploadRows(int id, int width, int y, int rows, ByteBuffer pixels);
+
+        /**
+         * Points the texture at the uploaded image and deletes the placeholder. The wrap and filter modes of the
+         * placeholder, including any set by the caller since it was handed out, must carry over to the image.
+         */
+        void swap(Texture texture, int id, int width, int height);
+
+        void discard(int id);
+    }
+
+    /**
+     * This class represents a decoded image waiting to be uploaded
+     */
+    static final class DecodedImage {
+        final int width;
+        final int height;
+        final ByteBuffer pixels;
+
+        DecodedImage(int width, int height, ByteBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final class Upload {
+        final Texture texture;
+        final DecodedImage image;
+        int id = 0;
+        int nextRow = 0;
+
+        Upload(Texture texture, DecodedImage image) {
+            this.texture = texture;
+            this.image = image;
+        }
+    }
+
+    private final ExecutorService decoders;
+    private final Decoder decoder;
+    private final Uploader uploader;
+    private final int placeholderRGBA;
+    private final long uploadBudgetNanos;
+    private final int sliceBytes;
+    private final LinkedBlockingQueue<Upload> decoded = new LinkedBlockingQueue<>();
+    private final Map<String, Exception> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private Upload current = null;
+    private long uploadedCount = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new loader with one decoder thread per spare processor and the default upload budget
+     */
+    public AsyncTextureLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_UPLOAD_BUDGET_MILLIS);
+    }
+
+    /**
+     * Create a new loader
+     *
+     * @param decoderThreads     the number of threads decoding image files
+     * @param uploadBudgetMillis the time each call to {@link #processUploads()} may spend uploading
+     */
+    public AsyncTextureLoader(int decoderThreads, double uploadBudgetMillis) {
+        this(decoderThreads, uploadBudgetMillis, DEFAULT_PLACEHOLDER_RGBA, DEFAULT_SLICE_BYTES,
+                new STBDecoder(), new GLUploader());
+    }
+
+    AsyncTextureLoader(int decoderThreads, double uploadBudgetMillis, int placeholderRGBA, int sliceBytes,
+                       Decoder decoder, Uploader uploader) {
+        if (decoderThreads < 1) throw new IllegalArgumentException("Loader needs at least one decoder thread");
+        if (uploadBudgetMillis < 0) throw new IllegalArgumentException("Upload budget must not be negative");
+        if (sliceBytes < 1) throw new IllegalArgumentException("Upload slices must hold at least one byte");
+        this.decoder = decoder;
+        this.uploader = uploader;
+        this.placeholderRGBA = placeholderRGBA;
+        this.uploadBudgetNanos = Math.round(uploadBudgetMillis * 1e6);
+        this.sliceBytes = sliceBytes;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        decoders = Executors.newFixedThreadPool(decoderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "texture-decoder-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to start loading a texture from file. The returned texture shows the placeholder colour until the image
+     * has been decoded and uploaded; if decoding fails it keeps the placeholder and the failure is reported by
+     * {@link #getFailures()}.
+     *
+     * @param path File path of the texture
+     * @return the texture that will hold the image
+     */
+    public Texture load(String path) {
+        if (closed) throw new IllegalStateException("Texture loader has been closed");
+        File file = new File(path);
+        if (!file.exists())
+            throw new IllegalArgumentException("Texture file does not exist: " + file.getAbsolutePath());
+
+        Texture texture = uploader.createPlaceholder(placeholderRGBA);
+        pending.incrementAndGet();
+        try {
+            decoders.execute(() -> decode(path, texture));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw new IllegalStateException("Texture loader has been closed", e);
+        }
+        return texture;
+    }
+
+    /**
+     * Method to upload decoded images within the loader's per-frame budget. Call once per frame on the render thread.
+     *
+     * @return the number of textures swapped in by this call
+     */
+    public int processUploads() {
+        return processUploads(uploadBudgetNanos);
+    }
+
+    /**
+     * Method to upload decoded images for up to the given time. At least one strip of rows is uploaded whenever one is
+     * waiting, so loading always makes progress however small the budget.
+     *
+     * @param budgetNanos the time this call may spend uploading
+     * @return the number of textures swapped in by this call
+     */
+    public int processUploads(long budgetNanos) {
+        long start = System.nanoTime();
+        int completed = 0;
+        do {
+            if (current == null) {
+                current = decoded.poll();
+                if (current == null) break;
+            }
+            if (current.texture.isDeleted()) {
+                release(current);
+                current = null;
+                continue;
+            }
+            if (uploadSlice(current)) {
+                current = null;
+                completed++;
+            }
+        } while (System.nanoTime() - start < budgetNanos);
+        return completed;
+    }
+
+    /**
+     * Method to block until every requested texture has been decoded and uploaded, ignoring the upload budget. Useful
+     * behind a loading screen.
+     */
+    public void finish() {
+        boolean interrupted = false;
+        while (pending.get() > 0) {
+            processUploads(Long.MAX_VALUE);
+            if (pending.get() == 0) break;
+            try {
+                Upload next = decoded.poll(FINISH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next != null) current = next;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Method to get the number of textures that have been requested but not yet swapped in or failed
+     *
+     * @return the number of textures still loading
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Method to get the number of textures swapped in so far
+     *
+     * @return the number of uploaded textures
+     */
+    public long getUploadedCount() {
+        return uploadedCount;
+    }
+
+    /**
+     * Method to get the files that could not be decoded
+     *
+     * @return a copy of the failures, by file path
+     */
+    public Map<String, Exception> getFailures() {
+        return new HashMap<>(failures);
+    }
+
+    /**
+     * Method to stop the decoder threads and release every image not yet uploaded. Textures still loading keep their
+     * placeholder. Waits for decodes already in progress to finish, since STB cannot be interrupted.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        //decodes that never started will not be uploaded either
+        pending.addAndGet(-decoders.shutdownNow().size());
+        boolean interrupted = false;
+        while (!decoders.isTerminated()) {
+            try {
+                decoders.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (current != null) release(current);
+        current = null;
+        Upload upload;
+        while ((upload = decoded.poll()) != null) release(upload);
+    }
+
+    private void decode(String path, Texture texture) {
+        DecodedImage image;
+        try {
+            image = decoder.decode(path);
+        } catch (IOException | RuntimeException e) {
+            failures.put(path, e);
+            pending.decrementAndGet();
+            return;
+        }
+        decoded.add(new Upload(texture, image));
+    }
+
+    private boolean uploadSlice(Upload upload) {
+        DecodedImage image = upload.image;
+        if (upload.id == 0) upload.id = uploader.allocate(image.width, image.height);
+
+        int rowBytes = image.width * BYTES_PER_PIXEL;
+        int rows = Math.min(image.height - upload.nextRow, Math.max(1, sliceBytes / rowBytes));
+        uploader.uploadRows(upload.id, image.width, upload.nextRow, rows, image.pixels);
+        upload.nextRow += rows;
+        if (upload.nextRow < image.height) return false;
+
+        uploader.swap(upload.texture, upload.id, image.width, image.height);
+        upload.id = 0;
+        release(upload);
+        uploadedCount++;
+        return true;
+    }
+
+    private void release(Upload upload) {
+        if (upload.id != 0) uploader.discard(upload.id);
+        upload.id = 0;
+        decoder.free(upload.image);
+        pending.decrementAndGet();
+    }
+
+    /**
+     * This class represents decoding with STB, which returns rows bottom first as GL expects
+     */
+    private static final class STBDecoder implements Decoder {
+
+        @Override
+        public DecodedImage decode(String path) throws IOException {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                IntBuffer w = stack.mallocInt(1);
+                IntBuffer h = stack.mallocInt(1);
+                IntBuffer comp = stack.mallocInt(1);
+
+                //the flip flag is global to STB; every loader in this engine sets it to true, so setting it here is safe
+                stbi_set_flip_vertically_on_load(true);
+                ByteBuffer image = stbi_load(path, w, h, comp, 4);
+                if (image == null) throw new IOException("Failed to load a texture file: " + path
+                        + System.lineSeparator() + stbi_failure_reason());
+                return new DecodedImage(w.get(), h.get(), image);
+            }
+        }
+
+        @Override
+        public void free(DecodedImage image) {
+            stbi_image_free(image.pixels);
+        }
+    }
+
+    /**
+     * This class represents the upload of images to GL textures with the same parameters as
+     * {@link Texture#createTexture(int, int, ByteBuffer)}
+     */
+    private static final class GLUploader implements Uploader {
+
+        private static final int[] SAMPLING_PARAMETERS = new int[]{
+                GL_TEXTURE_WRAP_S, GL_TEXTURE_WRAP_T, GL_TEXTURE_MIN_FILTER, GL_TEXTURE_MAG_FILTER};
+
+        @Override
+        public Texture createPlaceholder(int rgba) {
+            ByteBuffer pixel = ByteBuffer.allocateDirect(BYTES_PER_PIXEL);
+            pixel.put((byte) (rgba >>> 24)).put((byte) (rgba >>> 16)).put((byte) (rgba >>> 8)).put((byte) rgba).flip();
+            return Texture.createTexture(1, 1, pixel);
+        }
+
+        @Override
+        public int allocate(int width, int height) {
+            int id = glGenTextures();
+            glBindTexture(GL_TEXTURE_2D, id);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            return id;
+        }
+
+        @Override
+        public void uploadRows(int id, int width, int y, int rows, ByteBuffer pixels) {
+            int rowBytes = width * BYTES_PER_PIXEL;
+            ByteBuffer slice = pixels.duplicate();
+            slice.limit((y + rows) * rowBytes).position(y * rowBytes);
+            glBindTexture(GL_TEXTURE_2D, id);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, y, width, rows, GL_RGBA, GL_UNSIGNED_BYTE, slice);
+            glBindTexture(GL_TEXTURE_2D, 0);
+        }
+
+        @Override
+        public void swap(Texture texture, int id, int width, int height) {
+            int placeholder = texture.getId();
+            //read back from the placeholder itself, so modes set without going through the Texture carry over too
+            int[] sampling = new int[SAMPLING_PARAMETERS.length];
+            texture.bind();
+            for (int i = 0; i < sampling.length; i++) {
+                sampling[i] = glGetTexParameteri(GL_TEXTURE_2D, SAMPLING_PARAMETERS[i]);
+            }
+
+            texture.replace(id, width, height);
+            texture.bind();
+            for (int i = 0; i < sampling.length; i++) {
+                glTexParameteri(GL_TEXTURE_2D, SAMPLING_PARAMETERS[i], sampling[i]);
+            }
+            texture.applyParameters();
+            texture.unbind();
+            glDeleteTextures(placeholder);
+        }
+
+        @Override
+        public void discard(int id) {
+            glDeleteTextures(id);
+        }
+    }
+}
@@ -24,9 +24,13 @@ import org.lwjgl.system.MemoryStack;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
 import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
 import static org.lwjgl.stb.STBImage.*;
 
 /**
@@ -36,10 +40,41 @@ import static org.lwjgl.stb.STBImage.*;
  */
 public class Texture {
 
+    /**
+     * This enum represents the ways a texture can be sampled.
+     */
+    public enum Sampling {
+        /**
+         * Nearest texel of the full size image.
+         */
+        NEAREST(GL_NEAREST, GL_NEAREST),
+        /**
+         * Blend of the four nearest texels of the full size image.
+         */
+        BILINEAR(GL_LINEAR, GL_LINEAR),
+        /**
+         * Blend of the four nearest texels in each of the two nearest mip
+         * levels. Needs a full mip chain.
+         */
+        TRILINEAR(GL_LINEAR_MIPMAP_LINEAR, GL_LINEAR);
+
+        private final int minFilter;
+        private final int magFilter;
+
+        Sampling(int minFilter, int magFilter) {
+            this.minFilter = minFilter;
+            this.magFilter = magFilter;
+        }
+    }
+
     /**
      * Stores the handle of the texture.
      */
-    private final int id;
+    private int id;
+    /**
+     * Whether the texture has been deleted.
+     */
+    private boolean deleted = false;
 
     /**
      * Width of the texture.
@@ -50,11 +85,33 @@ public class Texture {
      */
     private int height;
 
+    /**
+     * Internal format of the texture data.
+     */
+    private int internalFormat = GL_RGBA8;
+    /**
+     * Number of mip levels uploaded.
+     */
+    private int levelCount = 1;
+    /**
+     * Parameters set on the texture, in the order they were set.
+     */
+    private final Map<Integer, Integer> parameters = new LinkedHashMap<>();
+
     /**
      * Creates a texture.
      */
     public Texture() {
-        id = glGenTextures();
+        this(glGenTextures());
+    }
+
+    /**
+     * Creates a texture around an existing handle.
+     *
+     * @param id Handle of the texture
+     */
+    Texture(int id) {
+        this.id = id;
     }
 
     /**
@@ -115,7 +172,11 @@ public class Texture {
             height = h.get();
         }
 
-        return createTexture(width, height, image);
+        try {
+            return createTexture(width, height, image);
+        } finally {
+            stbi_image_free(image);
+        }
     }
 
     public int getId() {
@@ -144,6 +205,38 @@ public class Texture {
      */
     public void setParameter(int name, int value) {
         glTexParameteri(GL_TEXTURE_2D, name, value);
+        parameters.put(name, value);
+    }
+
+    /**
+     * Sets the minification and magnification filters. The texture must be
+     * bound.
+     *
+     * @param sampling The way to sample the texture
+     */
+    public void setSampling(Sampling sampling) {
+        setParameter(GL_TEXTURE_MIN_FILTER, sampling.minFilter);
+        setParameter(GL_TEXTURE_MAG_FILTER, sampling.magFilter);
+    }
+
+    /**
+     * Sets the last mip level that sampling may use. The texture must be
+     * bound.
+     *
+     * @param maxLevel The last level, 0 for the full size image only
+     */
+    public void setMaxLevel(int maxLevel) {
+        setParameter(GL_TEXTURE_MAX_LEVEL, maxLevel);
+    }
+
+    /**
+     * Sets every parameter previously set on the texture again, for example
+     * after its handle has been replaced. The texture must be bound.
+     */
+    void applyParameters() {
+        for (Map.Entry<Integer, Integer> parameter : parameters.entrySet()) {
+            glTexParameteri(GL_TEXTURE_2D, parameter.getKey(), parameter.getValue());
+        }
     }
 
     /**
@@ -169,6 +262,85 @@ public class Texture {
      */
     public void uploadData(int internalFormat, int width, int height, int format, ByteBuffer data) {
         glTexImage2D(GL_TEXTURE_2D, 0, internalFormat, width, height, 0, format, GL_UNSIGNED_BYTE, data);
+        this.internalFormat = internalFormat;
+        levelCount = 1;
+    }
+
+    /**
+     * Replaces part of the full size image. The texture must be bound.
+     *
+     * @param x      Left edge of the part to replace
+     * @param y      Bottom edge of the part to replace
+     * @param width  Width of the part
+     * @param height Height of the part
+     * @param format Format of the image data
+     * @param data   Pixel data of the part
+     */
+    public void uploadSubData(int x, int y, int width, int height, int format, ByteBuffer data) {
+        glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, width, height, format, GL_UNSIGNED_BYTE, data);
+    }
+
+    /**
+     * Uploads one mip level of an image. Uploading level 0 sets the size of
+     * the texture. The texture must be bound.
+     *
+     * @param level          Mip level, 0 for the full size image
+     * @param internalFormat Internal format of the image data
+     * @param width          Width of the level
+     * @param height         Height of the level
+     * @param format         Format of the image data
+     * @param data           Pixel data of the level
+     */
+    public void uploadMipLevel(int level, int internalFormat, int width, int height, int format, ByteBuffer data) {
+        glTexImage2D(GL_TEXTURE_2D, level, internalFormat, width, height, 0, format, GL_UNSIGNED_BYTE, data);
+        if (level == 0) {
+            this.internalFormat = internalFormat;
+            setWidth(width);
+            setHeight(height);
+            levelCount = 1;
+        } else {
+            levelCount = Math.max(levelCount, level + 1);
+        }
+    }
+
+    /**
+     * Uploads one mip level of a block compressed image. Uploading level 0
+     * sets the size of the texture. The texture must be bound.
+     *
+     * @param level          Mip level, 0 for the full size image
+     * @param internalFormat Compressed format of the image data
+     * @param width          Width of the level
+     * @param height         Height of the level
+     * @param data           Compressed blocks of the level
+     */
+    public void uploadCompressedMipLevel(int level, int internalFormat, int width, int height, ByteBuffer data) {
+        glCompressedTexImage2D(GL_TEXTURE_2D, level, internalFormat, width, height, 0, data);
+        if (level == 0) {
+            this.internalFormat = internalFormat;
+            setWidth(width);
+            setHeight(height);
+            levelCount = 1;
+        } else {
+            levelCount = Math.max(levelCount, level + 1);
+        }
+    }
+
+    /**
+     * Gets the number of mip levels uploaded.
+     *
+     * @return Number of mip levels, 1 for the full size image only
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * Gets the internal format of the texture data.
+     *
+     * @return Internal format of the texture data
+     */
+    public int getInternalFormat() {
+        return internalFormat;
     }
 
     /**
@@ -176,6 +348,32 @@ public class Texture {
      */
     public void delete() {
         glDeleteTextures(id);
+        deleted = true;
+    }
+
+    /**
+     * Checks whether the texture has been deleted.
+     *
+     * @return true if {@link #delete()} has been called
+     */
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Replaces the handle of the texture, so that everything holding this
+     * texture draws the new image from its next bind. The caller is
+     * responsible for deleting the old handle.
+     *
+     * @param id     Handle of the new image
+     * @param width  Width of the new image
+     * @param height Height of the new image
+     */
+    void replace(int id, int width, int height) {
+        this.id = id;
+        levelCount = 1;
+        setWidth(width);
+        setHeight(height);
     }
 
     /**
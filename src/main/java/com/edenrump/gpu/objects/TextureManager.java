@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
+import static org.lwjgl.opengl.GL21.GL_SRGB8;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL42.GL_COMPRESSED_RGBA_BPTC_UNORM;
+
+/**
+ * This class represents a cache of textures keyed by file path and sampling parameters. Every user of a texture
+ * acquires it and releases it when done; users of the same file and parameters share one GL texture. Textures no
+ * longer referenced stay cached in case they are wanted again, until the estimated GPU memory of all cached textures
+ * exceeds the budget, at which point the least recently used unreferenced textures are deleted.
+ * <p>
+ * Must be used on the thread that owns the GL context.
+ */
+public class TextureManager {
+
+    /**
+     * This interface represents the creation and deletion of textures
+     */
+    interface Backend {
+        Texture load(String path, int wrap, int filter);
+
+        void delete(Texture texture);
+    }
+
+    private static final class Key {
+        final String path;
+        final int wrap;
+        final int filter;
+
+        Key(String path, int wrap, int filter) {
+            this.path = path;
+            this.wrap = wrap;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return wrap == key.wrap && filter == key.filter && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, wrap, filter);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final Texture texture;
+        int references = 0;
+
+        Entry(Key key, Texture texture) {
+            this.key = key;
+            this.texture = texture;
+        }
+    }
+
+    private final Backend backend;
+    //access ordered, so iteration runs from the least to the most recently acquired texture
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Texture, Entry> byTexture = new IdentityHashMap<>();
+    private long budgetBytes;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Create a new manager that loads textures synchronously with {@link Texture#loadTexture(String)}
+     *
+     * @param budgetBytes the estimated GPU memory cached textures may use before unreferenced ones are evicted
+     */
+    public TextureManager(long budgetBytes) {
+        this(budgetBytes, new GLBackend(null));
+    }
+
+    /**
+     * Create a new manager that loads textures in the background with the given loader. Textures still loading count
+     * as their placeholder until they have been swapped in.
+     *
+     * @param budgetBytes the estimated GPU memory cached textures may use before unreferenced ones are evicted
+     * @param loader      the loader to load textures with
+     */
+    public TextureManager(long budgetBytes, AsyncTextureLoader loader) {
+        this(budgetBytes, new GLBackend(Objects.requireNonNull(loader)));
+    }
+
+    TextureManager(long budgetBytes, Backend backend) {
+        setBudgetBytes(budgetBytes);
+        this.backend = backend;
+    }
+
+    /**
+     * Method to acquire the texture for a file, sampled with the same parameters as
+     * {@link Texture#createTexture(int, int, java.nio.ByteBuffer)}
+     *
+     * @param path File path of the texture
+     * @return the shared texture, which must be passed to {@link #release(Texture)} when no longer needed
+     */
+    public Texture acquire(String path) {
+        return acquire(path, GL_CLAMP_TO_BORDER, GL_NEAREST);
+    }
+
+    /**
+     * Method to acquire the texture for a file with the given sampling parameters
+     *
+     * @param path   File path of the texture
+     * @param wrap   the wrap mode in both directions, such as GL_REPEAT
+     * @param filter the minification and magnification filter, GL_NEAREST or GL_LINEAR. Only the full size image is
+     *               loaded, so mipmap filters are rejected
+     * @return the shared texture, which must be passed to {@link #release(Texture)} when no longer needed
+     * @throws IllegalArgumentException if the filter is not GL_NEAREST or GL_LINEAR
+     */
+    public Texture acquire(String path, int wrap, int filter) {
+        if (filter != GL_NEAREST && filter != GL_LINEAR)
+            throw new IllegalArgumentException("Texture filter must be GL_NEAREST or GL_LINEAR");
+        Key key = new Key(new File(path).getAbsoluteFile().toPath().normalize().toString(), wrap, filter);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            entry = new Entry(key, backend.load(path, wrap, filter));
+            entries.put(key, entry);
+            byTexture.put(entry.texture, entry);
+        } else {
+            hitCount++;
+        }
+        entry.references++;
+        trim();
+        return entry.texture;
+    }
+
+    /**
+     * Method to give up a reference to a texture. The texture stays cached until it is evicted to keep within the
+     * budget.
+     *
+     * @param texture a texture returned by {@link #acquire(String)}
+     */
+    public void release(Texture texture) {
+        Entry entry = byTexture.get(texture);
+        if (entry == null) throw new IllegalArgumentException("Texture is not managed by this texture manager");
+        if (entry.references == 0) throw new IllegalStateException("Texture has already been released");
+        entry.references--;
+        trim();
+    }
+
+    /**
+     * Method to evict least recently used unreferenced textures until the cache is within its budget. Called by
+     * {@link #acquire(String)} and {@link #release(Texture)}; call it directly after textures have grown, for example
+     * once background loads have been swapped in.
+     *
+     * @return the number of textures evicted
+     */
+    public int trim() {
+        long used = getUsedBytes();
+        int evicted = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (used > budgetBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.references > 0) continue;
+            used -= estimateBytes(entry.texture);
+            iterator.remove();
+            byTexture.remove(entry.texture);
+            backend.delete(entry.texture);
+            evicted++;
+        }
+        evictionCount += evicted;
+        return evicted;
+    }
+
+    /**
+     * Method to delete every cached texture, referenced or not
+     */
+    public void deleteAll() {
+        for (Entry entry : entries.values()) backend.delete(entry.texture);
+        entries.clear();
+        byTexture.clear();
+    }
+
+    /**
+     * Method to get the number of users of a texture
+     *
+     * @param texture a managed texture
+     * @return the number of outstanding references, or 0 if the texture is not cached
+     */
+    public int getReferenceCount(Texture texture) {
+        Entry entry = byTexture.get(texture);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * Method to get the estimated GPU memory used by all cached textures
+     *
+     * @return the used memory in bytes
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Entry entry : entries.values()) used += estimateBytes(entry.texture);
+        return used;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Method to set the memory budget. Takes effect at the next acquire, release or trim.
+     *
+     * @param budgetBytes the estimated GPU memory cached textures may use
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        if (budgetBytes < 0) throw new IllegalArgumentException("Texture budget must not be negative");
+        this.budgetBytes = budgetBytes;
+    }
+
+    public int getCachedCount() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Method to estimate the GPU memory of a texture from its size, internal format and mip levels. Drivers add
+     * padding and alignment, so treat this as a lower bound.
+     *
+     * @param texture the texture
+     * @return the estimated memory in bytes
+     */
+    public static long estimateBytes(Texture texture) {
+        return estimateBytes(texture.getInternalFormat(), texture.getWidth(), texture.getHeight(),
+                texture.getLevelCount());
+    }
+
+    /**
+     * Method to estimate the GPU memory of a texture. Block compressed levels are stored as whole 4x4 blocks, so the
+     * small mip levels of a compressed texture take a full block each.
+     *
+     * @param internalFormat the internal format, such as GL_RGBA8
+     * @param width          the width of level 0
+     * @param height         the height of level 0
+     * @param levelCount     the number of mip levels
+     * @return the estimated memory in bytes
+     */
+    static long estimateBytes(int internalFormat, int width, int height, int levelCount) {
+        boolean blocks = isBlockCompressed(internalFormat);
+        long texels = 0;
+        for (int level = 0; level < levelCount; level++) {
+            long levelWidth = Math.max(1, width >> level);
+            long levelHeight = Math.max(1, height >> level);
+            if (blocks) {
+                levelWidth = (levelWidth + 3) / 4 * 4;
+                levelHeight = (levelHeight + 3) / 4 * 4;
+            }
+            texels += levelWidth * levelHeight;
+        }
+        return texels * bitsPerPixel(internalFormat) / 8;
+    }
+
+    /**
+     * Method to check whether an internal format is stored in 4x4 blocks
+     *
+     * @param internalFormat the internal format
+     * @return true for the S3TC and BPTC formats
+     */
+    static boolean isBlockCompressed(int internalFormat) {
+        switch (internalFormat) {
+            case GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+            case GL_COMPRESSED_RGBA_BPTC_UNORM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Method to get the size of a pixel in an internal format
+     *
+     * @param internalFormat the internal format, such as GL_RGBA8
+     * @return the bits per pixel, assuming 32 for formats not listed
+     */
+    static int bitsPerPixel(int internalFormat) {
+        switch (internalFormat) {
+            case GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+                return 4;
+            case GL_R8:
+            case GL_ALPHA8:
+            case GL_LUMINANCE8:
+            case GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+            case GL_COMPRESSED_RGBA_BPTC_UNORM:
+                return 8;
+            case GL_RG8:
+            case GL_R16F:
+                return 16;
+            case GL_RGB8:
+            case GL_SRGB8:
+                return 24;
+            case GL_RG16F:
+            case GL_R32F:
+                return 32;
+            case GL_RGBA16F:
+                return 64;
+            case GL_RGBA32F:
+                return 128;
+            default:
+                return 32;
+        }
+    }
+
+    /**
+     * This class represents loading through {@link Texture#loadTexture(String)} or an {@link AsyncTextureLoader}
+     */
+    private static final class GLBackend implements Backend {
+        private final AsyncTextureLoader loader;
+
+        GLBackend(AsyncTextureLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Texture load(String path, int wrap, int filter) {
+            Texture texture = loader == null ? Texture.loadTexture(path) : loader.load(path);
+            texture.bind();
+            texture.setParameter(GL_TEXTURE_WRAP_S, wrap);
+            texture.setParameter(GL_TEXTURE_WRAP_T, wrap);
+            texture.setParameter(GL_TEXTURE_MIN_FILTER, filter);
+            texture.setParameter(GL_TEXTURE_MAG_FILTER, filter);
+            texture.unbind();
+            return texture;
+        }
+
+        @Override
+        public void delete(Texture texture) {
+            texture.delete();
+        }
+    }
+}
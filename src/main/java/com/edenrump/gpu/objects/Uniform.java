@@ -23,13 +23,29 @@ import static org.lwjgl.opengl.GL20.glUseProgram;
 
 public class Uniform {
 
-    final int location;
-    final int shaderProgramID;
+    /**
+     * This class represents the program and location a uniform currently refers to. It is shared by a uniform and
+     * every typed view of it, so rebinding one rebinds them all.
+     */
+    static final class Binding {
+        volatile int shaderProgramID;
+        volatile int location;
+
+        Binding(int shaderProgramID, int location) {
+            this.shaderProgramID = shaderProgramID;
+            this.location = location;
+        }
+    }
+
+    final Binding binding;
     final CharSequence name;
 
     public Uniform(int shaderProgramID, int location, CharSequence name) {
-        this.shaderProgramID = shaderProgramID;
-        this.location = location;
+        this(new Binding(shaderProgramID, location), name);
+    }
+
+    Uniform(Binding binding, CharSequence name) {
+        this.binding = binding;
         this.name = name;
     }
 
@@ -38,15 +54,27 @@ public class Uniform {
     }
 
     public int getShaderProgramID() {
-        return shaderProgramID;
+        return binding.shaderProgramID;
     }
 
     public int getLocation() {
-        return location;
+        return binding.location;
+    }
+
+    /**
+     * Method to point this uniform, and every typed view of it, at a different program, as when a program is
+     * replaced by a recompiled one
+     *
+     * @param shaderProgramID the handle of the new program
+     * @param location        the location of this uniform in the new program
+     */
+    public void rebind(int shaderProgramID, int location) {
+        binding.shaderProgramID = shaderProgramID;
+        binding.location = location;
     }
 
     void engageShader() {
-        glUseProgram(shaderProgramID);
+        glUseProgram(binding.shaderProgramID);
     }
 
     void disengageShader() {
@@ -54,15 +82,15 @@ public class Uniform {
     }
 
     public UniformFloat asUniformFloat() {
-        return new UniformFloat(shaderProgramID, location, name);
+        return new UniformFloat(binding, name);
     }
 
     public UniformInt asUniformInt() {
-        return new UniformInt(shaderProgramID, location, name);
+        return new UniformInt(binding, name);
     }
 
     public UniformMatrixFloat asUniformMatrix() {
-        return new UniformMatrixFloat(shaderProgramID, location, name);
+        return new UniformMatrixFloat(binding, name);
     }
 
 }
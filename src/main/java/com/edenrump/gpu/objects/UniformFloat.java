@@ -27,6 +27,10 @@ public class UniformFloat extends Uniform {
         super(shaderProgramID, location, name);
     }
 
+    UniformFloat(Binding binding, CharSequence name) {
+        super(binding, name);
+    }
+
     public void update(float value) {
         engageShader();
         glUniform1f(getLocation(), value);
@@ -27,6 +27,10 @@ public class UniformInt extends Uniform {
         super(shaderProgramID, location, name);
     }
 
+    UniformInt(Binding binding, CharSequence name) {
+        super(binding, name);
+    }
+
     public void update(int v1) {
         engageShader();
         glUniform1i(getLocation(), v1);
@@ -29,6 +29,10 @@ public class UniformMatrixFloat extends Uniform {
         super(shaderProgramID, location, name);
     }
 
+    UniformMatrixFloat(Binding binding, CharSequence name) {
+        super(binding, name);
+    }
+
     public void update_2x2(FloatBuffer buffer){
         if(buffer.remaining() < 4)
             throw new RuntimeException("Buffer of incorrect size to update Uniform Matrix of 2x2");
@@ -20,7 +20,9 @@
 package com.edenrump.graphic.display.global;
 
 import com.edenrump.graphic.display.ui.Bounds;
+import com.edenrump.graphic.time.FrameStatistics;
 import com.edenrump.graphic.time.Time;
+import com.edenrump.profiling.Profiler;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
@@ -30,6 +32,7 @@ import org.lwjgl.opengl.GL;
 import java.awt.*;
 import java.io.PrintStream;
 import java.nio.IntBuffer;
+import java.util.Locale;
 import java.util.Objects;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
@@ -100,10 +103,15 @@ public class Window {
     }
 
     public void update() {
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
-        glfwPollEvents();// Poll for window events. The key callback above will only be invoked during this call.
-        recalculateSize();
-        updateWindowTitle();
+        Profiler.begin("Window.update");
+        try {
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
+            glfwPollEvents();// Poll for window events. The key callback above will only be invoked during this call.
+            recalculateSize();
+            updateWindowTitle();
+        } finally {
+            Profiler.end();
+        }
     }
 
     public void prepareForRender() {
@@ -116,7 +124,12 @@ public class Window {
     }
 
     public void transferBuffersAfterRender() {
-        glfwSwapBuffers(windowID);
+        Profiler.begin("Window.swapBuffers");
+        try {
+            glfwSwapBuffers(windowID);
+        } finally {
+            Profiler.end();
+        }
     }
 
     private GLFWWindowSizeCallback recalculateSize() {
@@ -163,6 +176,15 @@ public class Window {
         Objects.requireNonNull(glfwSetErrorCallback(null)).free();
     }
 
+    /**
+     * Method to get the GLFW handle of this window, for creating contexts that share its objects
+     *
+     * @return the GLFW window handle
+     */
+    public long getWindowID() {
+        return windowID;
+    }
+
     public boolean closeNotRequested() {
         return !glfwWindowShouldClose(windowID);
     }
@@ -174,7 +196,12 @@ public class Window {
     private void updateWindowTitle() {
         String title = applicationName;
 
-        if (showFPS) title += "  |  FPS: " + Math.round(gameTime.getFrameRate());
+        if (showFPS) {
+            FrameStatistics recent = gameTime.getRecentStatistics();
+            title += String.format(Locale.ROOT, "  |  FPS: %d  |  p99: %.1f ms  |  max: %.1f ms  |  jank: %d",
+                    Math.round(recent.getMeanFrameRate()), recent.getPercentileMillis(99), recent.getMaxMillis(),
+                    recent.getJankCount());
+        }
         if (showSize) title += " | " + getBounds();
 
         glfwSetWindowTitle(windowID, title);
@@ -232,6 +259,16 @@ public class Window {
 
     }
 
+    /**
+     * Method to set the number of screen refreshes to wait for before swapping buffers. 0 disables vertical
+     * synchronisation, which leaves frame pacing to the game loop.
+     *
+     * @param interval the swap interval
+     */
+    public void setSwapInterval(int interval) {
+        glfwSwapInterval(interval);
+    }
+
     public void setErrorPrintStream(PrintStream printStream){
         GLFWErrorCallback.createPrint(printStream).set();
     }
@@ -19,44 +19,76 @@
 
 package com.edenrump.graphic.display.ui;
 
+import com.edenrump.gpu.objects.Texture;
 import com.edenrump.gpu.objects.Uniform;
 import com.edenrump.graphic.entities.Renderable;
 import com.edenrump.graphic.mesh.GPUMesh;
+import com.edenrump.graphic.texture.TextureAtlas;
 import com.edenrump.math.geom.Transform;
 
 /**
+ * This class represents a drawn element of the user interface: a rectangle, optionally with rounded corners, filled
+ * with a colour and optionally a texture. It can draw itself with the shared square mesh, transformed to fill the
+ * bounds it was last laid out at, or be drawn along with the rest of its layer by a batch renderer, which reads its
+ * colour, corner radius and texture as vertex data.
+ *
  * @author Ed Eden-Rump
  * @created 30/06/2020 - 17:45
  * @project Nested Engine
  **/
 public abstract class Component extends Container implements Renderable {
 
-    private final GPUMesh mesh;
+    private GPUMesh mesh;
     private Transform transform;
-    private final Uniform transformationUniform;
+    private Uniform transformationUniform;
 
-    private Component() {
-        super();
-        ComponentGPUSupport staff = ComponentGPUSupport.getInstance();
+    private float red = 1;
+    private float green = 1;
+    private float blue = 1;
+    private float alpha = 1;
+    private float cornerRadius;
+    private boolean visible = true;
+    private Texture texture;
+    private float u0 = 0, v0 = 0, u1 = 1, v1 = 1;
+    private TextureAtlas atlas;
+    private TextureAtlas.Region atlasRegion;
 
-        mesh = staff.getSquareMesh();
-        transformationUniform = staff.getTransformationMatrix();
+    /**
+     * Create a component. The GPU resources it draws with are fetched the first time it is drawn, so a tree of
+     * components can be built and laid out before there is a GL context.
+     */
+    protected Component() {
+        super();
         transform = new Transform();
     }
 
-    private void updateTransformFromConstraints() {
-        //TODO FIXME -- convert layout constraints to transform.
+    @Override
+    void onLayout(float viewportWidth, float viewportHeight) {
+        updateTransformFromConstraints(viewportWidth, viewportHeight);
+    }
+
+    /**
+     * Method to map the square mesh, which spans -1 to 1 in both axes, onto the laid out bounds in normalised device
+     * coordinates, where y points up rather than down
+     */
+    private void updateTransformFromConstraints(float viewportWidth, float viewportHeight) {
         transform = new Transform();
+        if (viewportWidth == 0 || viewportHeight == 0) return;
+        transform.scale(layoutWidth / viewportWidth, layoutHeight / viewportHeight, 1);
+        transform.translate(
+                2 * (layoutX + layoutWidth / 2) / viewportWidth - 1,
+                1 - 2 * (layoutY + layoutHeight / 2) / viewportHeight,
+                0);
     }
 
     @Override
     public void prepare() {
-        mesh.bindVAO();
+        getMesh().bindVAO();
     }
 
     @Override
     public void update() {
-        mesh.enableAttributes();
+        getMesh().enableAttributes();
         if (transformationUniform == null) return;
 
         if (transformationUniform.getName() != "null") {
@@ -66,14 +98,148 @@ public abstract class Component extends Container implements Renderable {
 
     @Override
     public void finish() {
-        mesh.disableAttributes();
+        getMesh().disableAttributes();
     }
 
     @Override
     public GPUMesh getMesh() {
+        if (mesh == null) {
+            ComponentGPUSupport staff = ComponentGPUSupport.getInstance();
+            mesh = staff.getSquareMesh();
+            transformationUniform = staff.getTransformationMatrix();
+        }
         return mesh;
     }
 
+    public Transform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Method to set the colour of this component, which multiplies its texture if it has one
+     *
+     * @param red   the red component, from 0 to 1
+     * @param green the green component, from 0 to 1
+     * @param blue  the blue component, from 0 to 1
+     * @param alpha the opacity, from 0 to 1
+     */
+    public void setColour(float red, float green, float blue, float alpha) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.alpha = alpha;
+    }
+
+    public float getRed() {
+        return red;
+    }
+
+    public float getGreen() {
+        return green;
+    }
+
+    public float getBlue() {
+        return blue;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Method to round the corners of this component
+     *
+     * @param cornerRadius the radius of the corners in pixels, limited when drawn to half the shorter side
+     */
+    public void setCornerRadius(float cornerRadius) {
+        if (!(cornerRadius >= 0)) throw new IllegalArgumentException("Corner radius cannot be negative: " + cornerRadius);
+        this.cornerRadius = cornerRadius;
+    }
+
+    public float getCornerRadius() {
+        return cornerRadius;
+    }
+
+    /**
+     * Method to show or hide this component and every component inside it. Hidden components keep their place in the
+     * layout.
+     *
+     * @param visible whether to draw the component
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Method to fill this component with the whole of a texture
+     *
+     * @param texture the texture, or null to fill with the colour alone
+     */
+    public void setTexture(Texture texture) {
+        setTexture(texture, 0, 0, 1, 1);
+    }
+
+    /**
+     * Method to fill this component with part of a texture. The v0 edge is drawn at the bottom of the component, as
+     * images are loaded bottom row first.
+     *
+     * @param texture the texture, or null to fill with the colour alone
+     */
+    public void setTexture(Texture texture, float u0, float v0, float u1, float v1) {
+        this.texture = texture;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
+        atlas = null;
+        atlasRegion = null;
+    }
+
+    /**
+     * Method to fill this component with an image packed in an atlas. The page and coordinates are looked up whenever
+     * the component is drawn, so they follow the image if the atlas is repacked.
+     *
+     * @param atlas  the atlas holding the image
+     * @param region the place of the image in the atlas
+     */
+    public void setTexture(TextureAtlas atlas, TextureAtlas.Region region) {
+        setTexture(null);
+        this.atlas = atlas;
+        this.atlasRegion = region;
+    }
+
+    /**
+     * Method to get the texture this component is filled with
+     *
+     * @return the texture, or null if it is filled with its colour alone
+     */
+    public Texture getTexture() {
+        return atlas == null ? texture : atlas.getTexture(atlasRegion.getPage());
+    }
+
+    /**
+     * Method to get the part of the texture this component is filled with
+     *
+     * @param destination an array of at least 4 floats to write u0, v0, u1 and v1 to
+     */
+    public void getTextureCoordinates(float[] destination) {
+        if (atlas == null) {
+            destination[0] = u0;
+            destination[1] = v0;
+            destination[2] = u1;
+            destination[3] = v1;
+        } else {
+            destination[0] = atlasRegion.getU0();
+            destination[1] = atlasRegion.getV0();
+            destination[2] = atlasRegion.getU1();
+            destination[3] = atlasRegion.getV1();
+        }
+    }
+
     public void scale(float x, float y) {
         transform.scale(x, y, 1);
     }
@@ -22,6 +22,7 @@ package com.edenrump.graphic.display.ui;
 import com.edenrump.gpu.objects.Uniform;
 import com.edenrump.graphic.mesh.GPUMesh;
 import com.edenrump.graphic.shaders.Shader;
+import com.edenrump.graphic.shaders.ShaderHotReloader;
 import com.edenrump.graphic.shaders.ShaderProgram;
 
 import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
@@ -33,6 +34,9 @@ import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
  **/
 public class ComponentGPUSupport {
 
+    private static final String VERTEX_FILE_LOCATION = "src/resources/shaderCode/ComponentShader.vert";
+    private static final String FRAGMENT_FILE_LOCATION = "src/resources/shaderCode/ComponentShader.frag";
+
     private static ComponentGPUSupport INSTANCE;
 
     private final ShaderProgram shaderProgram;
@@ -61,6 +65,16 @@ public class ComponentGPUSupport {
         return shaderProgram;
     }
 
+    /**
+     * Method to have the component shader recompiled whenever its source files change. Components keep the same
+     * program object, which switches to each recompiled version, and the transformation uniform follows it.
+     *
+     * @param reloader the reloader to watch the source files with
+     */
+    public void watchShader(ShaderHotReloader reloader) {
+        reloader.watch(shaderProgram, VERTEX_FILE_LOCATION, FRAGMENT_FILE_LOCATION);
+    }
+
     public Uniform getTransformationMatrix() {
         return transformationMatrix;
     }
@@ -97,9 +111,6 @@ public class ComponentGPUSupport {
     }
 
     private ShaderProgram createShader() {
-        String VERTEX_FILE_LOCATION = "src/resources/shaderCode/ComponentShader.vert";
-        String FRAGMENT_FILE_LOCATION = "src/resources/shaderCode/ComponentShader.frag";
-
         ShaderProgram shaderProgram = new ShaderProgram();
         Shader v = Shader.loadShader(Shader.VERTEX, VERTEX_FILE_LOCATION);
         Shader f = Shader.loadShader(Shader.FRAGMENT, FRAGMENT_FILE_LOCATION);
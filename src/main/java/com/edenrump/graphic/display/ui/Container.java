@@ -20,12 +20,17 @@
 package com.edenrump.graphic.display.ui;
 
 import com.edenrump.math.util.Scalar;
-import org.lwjgl.system.CallbackI;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * This class represents a region that lays out components inside it. A tree of containers is laid out from its root
+ * by {@link #layout(float, float)}, but only where something changed: a change to a region's constraints marks its
+ * parent to be arranged again, and a component whose bounds then change has its own components arranged in turn.
+ * Containers on the path from the root to a change are visited; every other subtree is left alone.
+ *
  * @author Ed Eden-Rump
  * @created 30/06/2020 - 17:54
  * @project Nested Engine
@@ -35,28 +40,244 @@ public abstract class Container extends Region {
     List<Component> components = new ArrayList<>();
     SizingBehaviour sizingBehaviour;
 
+    /**
+     * Whether the components of this container need to be placed again
+     */
+    boolean arrangeDirty = true;
+    /**
+     * Whether some container below this one needs its components placed again
+     */
+    boolean descendantDirty;
+
+    private float measuredWidth;
+    private float measuredHeight;
+    private float viewportWidth = -1;
+    private float viewportHeight = -1;
+
     protected Container() {
         sizingBehaviour = new SizingBehaviour(this);
     }
 
     public void addComponent(Component component) {
-        components.add(component);
+        addComponent(components.size(), component);
     }
 
     public void addComponent(int index, Component component) {
         index = Scalar.clamp(index, 0, components.size());
+        attach(component);
         components.add(index, component);
+        requestArrange();
     }
 
     public void addComponents(List<Component> components) {
+        for (Component component : components) attach(component);
         this.components.addAll(components);
+        requestArrange();
     }
 
     public void removeComponent(Component component) {
-        components.remove(component);
+        if (!components.remove(component)) return;
+        component.parent = null;
+        requestArrange();
     }
 
     public void clearComponents() {
+        for (Component component : components) component.parent = null;
         components.clear();
+        requestArrange();
+    }
+
+    public List<Component> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    public int getComponentCount() {
+        return components.size();
+    }
+
+    public Component getComponent(int index) {
+        return components.get(index);
+    }
+
+    public SizingBehaviour getSizingBehaviour() {
+        return sizingBehaviour;
+    }
+
+    /**
+     * Method to find whether the next layout of this tree has anything to do below this container
+     *
+     * @return whether this container or any container below it needs to be arranged
+     */
+    public boolean isLayoutPending() {
+        return arrangeDirty || descendantDirty;
+    }
+
+    /**
+     * Method to lay out this container, as the root of a tree, in a viewport. The root's own constraints are resolved
+     * against the whole viewport. Only containers marked since the last layout are arranged, unless the viewport
+     * changed size, in which case every container is.
+     *
+     * @param width  the width of the viewport in pixels
+     * @param height the height of the viewport in pixels
+     * @return the number of containers whose components were arranged
+     */
+    public int layout(float width, float height) {
+        if (parent != null) throw new IllegalStateException("Only the root of a tree can be laid out");
+        if (!(width >= 0 && height >= 0)) throw new IllegalArgumentException("Invalid viewport: " + width + "x" + height);
+
+        boolean resized = width != viewportWidth || height != viewportHeight;
+        viewportWidth = width;
+        viewportHeight = height;
+        place(Collections.singletonList(this), 0, 0, width, height,
+                SizingBehaviour.Arrangement.FREE, 0, resized, width, height);
+        return layoutSubtree(resized, width, height);
+    }
+
+    /**
+     * Method called when this container has been placed at new bounds, or the viewport changed size
+     *
+     * @param viewportWidth  the width of the viewport in pixels
+     * @param viewportHeight the height of the viewport in pixels
+     */
+    void onLayout(float viewportWidth, float viewportHeight) {
+    }
+
+    /**
+     * Method to have the components of this container placed again at the next layout
+     */
+    void requestArrange() {
+        if (arrangeDirty) return;
+        arrangeDirty = true;
+        markAncestorsDirty();
+    }
+
+    private void markAncestorsDirty() {
+        for (Container container = parent; container != null && !container.descendantDirty; container = container.parent) {
+            container.descendantDirty = true;
+        }
+    }
+
+    private void attach(Component component) {
+        if (component.parent != null) throw new IllegalStateException("Component is already in a container");
+        for (Container container = this; container != null; container = container.parent) {
+            if (container == component) throw new IllegalArgumentException("A component cannot contain itself");
+        }
+        component.parent = this;
+        if (component.isLayoutPending() && !descendantDirty) {
+            descendantDirty = true;
+            markAncestorsDirty();
+        }
+    }
+
+    int layoutSubtree(boolean viewportChanged, float viewportWidth, float viewportHeight) {
+        int arranged = 0;
+        boolean arrange = arrangeDirty || viewportChanged;
+        if (arrange) {
+            float padding = sizingBehaviour.getPadding();
+            place(components, layoutX + padding, layoutY + padding,
+                    Math.max(0, layoutWidth - 2 * padding), Math.max(0, layoutHeight - 2 * padding),
+                    sizingBehaviour.getArrangement(), sizingBehaviour.getSpacing(),
+                    viewportChanged, viewportWidth, viewportHeight);
+            arrangeDirty = false;
+            arranged++;
+        }
+        if (arrange || descendantDirty) {
+            descendantDirty = false;
+            for (Component component : components) {
+                if (viewportChanged || component.isLayoutPending()) {
+                    arranged += component.layoutSubtree(viewportChanged, viewportWidth, viewportHeight);
+                }
+            }
+        }
+        return arranged;
+    }
+
+    /**
+     * Method to resolve the constraints of a list of regions inside a content box and store their bounds. Lengths
+     * that do not depend on anything else are resolved first, then aspect ratios of those, then the lengths filling
+     * the stacking axis, and last the aspect ratios of those. Regions whose bounds changed are marked to be arranged.
+     */
+    private static void place(List<? extends Container> regions, float x, float y, float width, float height,
+                              SizingBehaviour.Arrangement arrangement, float spacing,
+                              boolean viewportChanged, float viewportWidth, float viewportHeight) {
+        boolean row = arrangement == SizingBehaviour.Arrangement.ROW;
+        boolean column = arrangement == SizingBehaviour.Arrangement.COLUMN;
+
+        for (Container region : regions) {
+            if (region.w.getType() == LengthConstraint.Type.ASPECT && region.h.getType() == LengthConstraint.Type.ASPECT) {
+                throw new IllegalStateException("The width and height of a region cannot both be aspect constraints");
+            }
+            region.measuredWidth = length(region.w, width, region.x, row);
+            region.measuredHeight = length(region.h, height, region.y, column);
+            resolveAspect(region);
+        }
+
+        if (row || column) {
+            float used = spacing * Math.max(0, regions.size() - 1);
+            float weights = 0;
+            for (Container region : regions) {
+                float length = row ? region.measuredWidth : region.measuredHeight;
+                if (Float.isNaN(length)) {
+                    weights += (row ? region.w : region.h).getValue();
+                } else {
+                    used += length;
+                }
+            }
+            float leftover = Math.max(0, (row ? width : height) - used);
+            for (Container region : regions) {
+                if (row && Float.isNaN(region.measuredWidth)) {
+                    region.measuredWidth = leftover * region.w.getValue() / weights;
+                } else if (column && Float.isNaN(region.measuredHeight)) {
+                    region.measuredHeight = leftover * region.h.getValue() / weights;
+                }
+                resolveAspect(region);
+            }
+        }
+
+        float cursor = row ? x : y;
+        for (Container region : regions) {
+            float regionX;
+            float regionY;
+            if (row) {
+                regionX = cursor;
+                cursor += region.measuredWidth + spacing;
+            } else {
+                regionX = region.x.resolve(x, width, region.measuredWidth);
+            }
+            if (column) {
+                regionY = cursor;
+                cursor += region.measuredHeight + spacing;
+            } else {
+                regionY = region.y.resolve(y, height, region.measuredHeight);
+            }
+
+            boolean changed = region.setLayout(regionX, regionY, region.measuredWidth, region.measuredHeight);
+            if (changed) region.arrangeDirty = true;
+            if (changed || viewportChanged) region.onLayout(viewportWidth, viewportHeight);
+        }
+    }
+
+    /**
+     * @return the length in pixels, or NaN if it depends on the other axis or on the space left by other regions
+     */
+    private static float length(LengthConstraint length, float extent, PositionConstraint position, boolean stacked) {
+        switch (length.getType()) {
+            case PIXEL:
+                return length.getValue();
+            case RELATIVE:
+                return length.getValue() * extent;
+            case FILL:
+                return stacked ? Float.NaN : Math.max(0, extent - position.offset(extent));
+            default:
+                return Float.NaN;
+        }
+    }
+
+    private static void resolveAspect(Container region) {
+        if (region.w.getType() == LengthConstraint.Type.ASPECT && !Float.isNaN(region.measuredHeight)) {
+            region.measuredWidth = region.measuredHeight * region.w.getValue();
+        } else if (region.h.getType() == LengthConstraint.Type.ASPECT && !Float.isNaN(region.measuredWidth)) {
+            region.measuredHeight = region.measuredWidth / region.h.getValue();
+        }
     }
 }
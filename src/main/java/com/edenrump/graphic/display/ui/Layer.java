@@ -21,9 +21,18 @@ package com.edenrump.graphic.display.ui;
 
 import com.edenrump.graphic.display.global.Window;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a set of user interface trees drawn over a window. Each root container is laid out against
+ * the whole window, and the roots are drawn in the order they were added, so later ones are drawn on top.
+ */
 public class Layer {
 
     private Window window;
+    private final List<Container> containers = new ArrayList<>();
 
     public Layer(Window window) {
         this.window = window;
@@ -36,4 +45,46 @@ public class Layer {
     public void setWindow(Window window) {
         this.window = window;
     }
+
+    /**
+     * Method to add the root of a tree to draw on this layer, on top of those already added
+     *
+     * @param container the root container
+     */
+    public void addContainer(Container container) {
+        if (container.getParent() != null) throw new IllegalArgumentException("Only root containers can be added to a layer");
+        if (containers.contains(container)) return;
+        containers.add(container);
+    }
+
+    public void removeContainer(Container container) {
+        containers.remove(container);
+    }
+
+    public List<Container> getContainers() {
+        return Collections.unmodifiableList(containers);
+    }
+
+    /**
+     * Method to lay out every tree on this layer against the current size of the window
+     *
+     * @return the number of containers whose components were arranged
+     */
+    public int layout() {
+        Bounds bounds = window.getBounds();
+        return layout(bounds.getWidth(), bounds.getHeight());
+    }
+
+    /**
+     * Method to lay out every tree on this layer in a viewport
+     *
+     * @param width  the width of the viewport in pixels
+     * @param height the height of the viewport in pixels
+     * @return the number of containers whose components were arranged
+     */
+    public int layout(float width, float height) {
+        int arranged = 0;
+        for (Container container : containers) arranged += container.layout(width, height);
+        return arranged;
+    }
 }
@@ -19,10 +19,113 @@
 
 package com.edenrump.graphic.display.ui;
 
+import java.util.Objects;
+
 /**
+ * This class represents the length of a region along one axis: a number of pixels, a fraction of the parent's content
+ * box, a ratio of the region's own length along the other axis, or a share of the space left over in the parent.
+ * <p>
+ * In a container that stacks its components, filling regions along the stacking axis share whatever the other
+ * components leave, in proportion to their weights. Anywhere else a filling region stretches from its position to
+ * the end of the parent's content box.
+ *
  * @author Ed Eden-Rump
  * @created 02/07/2020 - 17:10
  * @project Nested Engine
  **/
 public class LengthConstraint {
+
+    public enum Type {
+        PIXEL,
+        RELATIVE,
+        ASPECT,
+        FILL
+    }
+
+    private final Type type;
+    private final float value;
+
+    private LengthConstraint(Type type, float value) {
+        if (!Float.isFinite(value) || value < 0) throw new IllegalArgumentException("Invalid " + type + " length: " + value);
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Method to create a fixed length
+     *
+     * @param length the length in pixels
+     * @return the constraint
+     */
+    public static LengthConstraint pixels(float length) {
+        return new LengthConstraint(Type.PIXEL, length);
+    }
+
+    /**
+     * Method to create a length proportional to the parent's content box along the same axis
+     *
+     * @param fraction the fraction of the parent's length
+     * @return the constraint
+     */
+    public static LengthConstraint relative(float fraction) {
+        return new LengthConstraint(Type.RELATIVE, fraction);
+    }
+
+    /**
+     * Method to create a length proportional to the region's length along the other axis. Only one of a region's
+     * width and height can be an aspect constraint.
+     *
+     * @param widthOverHeight the ratio of the region's width to its height
+     * @return the constraint
+     */
+    public static LengthConstraint aspect(float widthOverHeight) {
+        if (widthOverHeight == 0) throw new IllegalArgumentException("Aspect ratio must be greater than zero");
+        return new LengthConstraint(Type.ASPECT, widthOverHeight);
+    }
+
+    /**
+     * Method to create a length filling the space left in the parent, with a weight of one
+     *
+     * @return the constraint
+     */
+    public static LengthConstraint fill() {
+        return fill(1);
+    }
+
+    /**
+     * Method to create a length filling the space left in the parent
+     *
+     * @param weight the share of the leftover space, relative to the weights of the other filling components
+     * @return the constraint
+     */
+    public static LengthConstraint fill(float weight) {
+        if (weight == 0) throw new IllegalArgumentException("Fill weight must be greater than zero");
+        return new LengthConstraint(Type.FILL, weight);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LengthConstraint)) return false;
+        LengthConstraint that = (LengthConstraint) o;
+        return type == that.type && Float.compare(value, that.value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, value);
+    }
+
+    @Override
+    public String toString() {
+        return "LengthConstraint (" + type + ": " + value + ")";
+    }
 }
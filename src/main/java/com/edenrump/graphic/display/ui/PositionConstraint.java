@@ -19,10 +19,133 @@
 
 package com.edenrump.graphic.display.ui;
 
+import java.util.Objects;
+
 /**
+ * This class represents where a region sits along one axis of its parent's content box: a number of pixels from the
+ * start of the box, a fraction of the box's length, or centred in the box. Positions are measured in pixels from the
+ * top left. In a container that stacks its components, the position along the stacking axis is set by the stack and
+ * the constraint is ignored.
+ *
  * @author Ed Eden-Rump
  * @created 02/07/2020 - 17:10
  * @project Nested Engine
  **/
 public class PositionConstraint {
+
+    public enum Type {
+        PIXEL,
+        RELATIVE,
+        CENTRE
+    }
+
+    private final Type type;
+    private final float value;
+
+    private PositionConstraint(Type type, float value) {
+        if (!Float.isFinite(value)) throw new IllegalArgumentException("Position must be finite: " + value);
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Method to create a position a number of pixels from the start of the parent's content box
+     *
+     * @param offset the offset in pixels
+     * @return the constraint
+     */
+    public static PositionConstraint pixels(float offset) {
+        return new PositionConstraint(Type.PIXEL, offset);
+    }
+
+    /**
+     * Method to create a position a fraction of the way along the parent's content box
+     *
+     * @param fraction the offset as a fraction of the parent's length, 0 at the start and 1 at the end
+     * @return the constraint
+     */
+    public static PositionConstraint relative(float fraction) {
+        return new PositionConstraint(Type.RELATIVE, fraction);
+    }
+
+    /**
+     * Method to create a position centring the region in the parent's content box
+     *
+     * @return the constraint
+     */
+    public static PositionConstraint centred() {
+        return centred(0);
+    }
+
+    /**
+     * Method to create a position a number of pixels from centring the region in the parent's content box
+     *
+     * @param offset the offset from the centre in pixels
+     * @return the constraint
+     */
+    public static PositionConstraint centred(float offset) {
+        return new PositionConstraint(Type.CENTRE, offset);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * Method to get the start of a region along this axis
+     *
+     * @param start  the start of the parent's content box
+     * @param extent the length of the parent's content box
+     * @param length the length of the region
+     * @return the start of the region in pixels
+     */
+    float resolve(float start, float extent, float length) {
+        switch (type) {
+            case RELATIVE:
+                return start + value * extent;
+            case CENTRE:
+                return start + (extent - length) / 2 + value;
+            default:
+                return start + value;
+        }
+    }
+
+    /**
+     * Method to get how far from the start of the parent's content box a region starts, before its length is known
+     *
+     * @param extent the length of the parent's content box
+     * @return the offset in pixels, which is zero for a centred region
+     */
+    float offset(float extent) {
+        switch (type) {
+            case RELATIVE:
+                return value * extent;
+            case CENTRE:
+                return 0;
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PositionConstraint)) return false;
+        PositionConstraint that = (PositionConstraint) o;
+        return type == that.type && Float.compare(value, that.value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, value);
+    }
+
+    @Override
+    public String toString() {
+        return "PositionConstraint (" + type + ": " + value + ")";
+    }
 }
@@ -20,23 +20,36 @@
 package com.edenrump.graphic.display.ui;
 
 /**
+ * This class represents a rectangle of the user interface placed by constraints relative to the content box of its
+ * parent container. The bounds it was last laid out at are kept in pixels from the top left of the root.
+ *
  * @author Ed Eden-Rump
  * @created 02/07/2020 - 16:45
  * @project Nested Engine
  **/
 public class Region {
 
-    PositionConstraint x;
-    PositionConstraint y;
-    LengthConstraint w;
-    LengthConstraint h;
+    PositionConstraint x = PositionConstraint.pixels(0);
+    PositionConstraint y = PositionConstraint.pixels(0);
+    LengthConstraint w = LengthConstraint.fill();
+    LengthConstraint h = LengthConstraint.fill();
+
+    Container parent;
+
+    float layoutX;
+    float layoutY;
+    float layoutWidth;
+    float layoutHeight;
 
     public PositionConstraint getX() {
         return x;
     }
 
     public void setX(PositionConstraint x) {
+        if (x == null) throw new IllegalArgumentException("Constraint cannot be null");
+        if (x.equals(this.x)) return;
         this.x = x;
+        requestLayout();
     }
 
     public PositionConstraint getY() {
@@ -44,7 +57,10 @@ public class Region {
     }
 
     public void setY(PositionConstraint y) {
+        if (y == null) throw new IllegalArgumentException("Constraint cannot be null");
+        if (y.equals(this.y)) return;
         this.y = y;
+        requestLayout();
     }
 
     public LengthConstraint getW() {
@@ -52,7 +68,10 @@ public class Region {
     }
 
     public void setW(LengthConstraint w) {
+        if (w == null) throw new IllegalArgumentException("Constraint cannot be null");
+        if (w.equals(this.w)) return;
         this.w = w;
+        requestLayout();
     }
 
     public LengthConstraint getH() {
@@ -60,6 +79,65 @@ public class Region {
     }
 
     public void setH(LengthConstraint h) {
+        if (h == null) throw new IllegalArgumentException("Constraint cannot be null");
+        if (h.equals(this.h)) return;
         this.h = h;
+        requestLayout();
+    }
+
+    /**
+     * Method to get the container this region is laid out in
+     *
+     * @return the parent, or null for the root of a tree
+     */
+    public Container getParent() {
+        return parent;
+    }
+
+    /**
+     * Method to get where this region was last laid out
+     *
+     * @return the bounds in pixels from the top left of the root
+     */
+    public Bounds getBounds() {
+        return new Bounds(layoutX, layoutY, layoutWidth, layoutHeight);
+    }
+
+    public float getLayoutX() {
+        return layoutX;
+    }
+
+    public float getLayoutY() {
+        return layoutY;
+    }
+
+    public float getLayoutWidth() {
+        return layoutWidth;
+    }
+
+    public float getLayoutHeight() {
+        return layoutHeight;
+    }
+
+    /**
+     * Method to have this region placed again at the next layout, for example after one of its constraints changed.
+     * Its parent arranges all of its components again, as siblings can depend on each other.
+     */
+    public void requestLayout() {
+        if (parent != null) parent.requestArrange();
+    }
+
+    /**
+     * Method to store where this region has been laid out
+     *
+     * @return whether the bounds changed
+     */
+    boolean setLayout(float x, float y, float width, float height) {
+        if (x == layoutX && y == layoutY && width == layoutWidth && height == layoutHeight) return false;
+        layoutX = x;
+        layoutY = y;
+        layoutWidth = width;
+        layoutHeight = height;
+        return true;
     }
 }
@@ -20,16 +20,71 @@
 package com.edenrump.graphic.display.ui;
 
 /**
+ * This class represents how a container arranges its components: each positioned freely by its own constraints, or
+ * stacked in a row or a column. The container's padding insets the content box the components are laid out in, and
+ * stacked components are separated by the spacing. Changing any of these lays the container out again.
+ *
  * @author Ed Eden-Rump
  * @created 02/07/2020 - 17:03
  * @project Nested Engine
  **/
 public class SizingBehaviour {
 
-    private int expansionConstraint;
-    private Container target;
+    public enum Arrangement {
+        FREE,
+        ROW,
+        COLUMN
+    }
+
+    private final Container target;
+    private Arrangement arrangement = Arrangement.FREE;
+    private float spacing;
+    private float padding;
 
-    public SizingBehaviour(Container target){
+    public SizingBehaviour(Container target) {
         this.target = target;
     }
+
+    public Arrangement getArrangement() {
+        return arrangement;
+    }
+
+    public void setArrangement(Arrangement arrangement) {
+        if (arrangement == null) throw new IllegalArgumentException("Arrangement cannot be null");
+        if (this.arrangement == arrangement) return;
+        this.arrangement = arrangement;
+        target.requestArrange();
+    }
+
+    public float getSpacing() {
+        return spacing;
+    }
+
+    /**
+     * Method to set the gap between stacked components
+     *
+     * @param spacing the gap in pixels
+     */
+    public void setSpacing(float spacing) {
+        if (!(spacing >= 0)) throw new IllegalArgumentException("Spacing cannot be negative: " + spacing);
+        if (this.spacing == spacing) return;
+        this.spacing = spacing;
+        target.requestArrange();
+    }
+
+    public float getPadding() {
+        return padding;
+    }
+
+    /**
+     * Method to set the inset of the content box from every edge of the container
+     *
+     * @param padding the inset in pixels
+     */
+    public void setPadding(float padding) {
+        if (!(padding >= 0)) throw new IllegalArgumentException("Padding cannot be negative: " + padding);
+        if (this.padding == padding) return;
+        this.padding = padding;
+        target.requestArrange();
+    }
 }
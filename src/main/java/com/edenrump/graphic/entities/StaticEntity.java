@@ -22,12 +22,31 @@ package com.edenrump.graphic.entities;
 import com.edenrump.math.geom.Transform;
 import com.edenrump.graphic.mesh.GPUMesh;
 import com.edenrump.gpu.objects.Uniform;
+import com.edenrump.profiling.Profiler;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
 
 public class StaticEntity implements Renderable {
 
     final GPUMesh mesh;
     final Transform transform;
     Uniform transformationMatrix = null;
+    /**
+     * The uniform for the normal matrix, and the arrays and buffers it and the model matrix are built in so that
+     * uploading them does not allocate. Null until a normal matrix uniform is set.
+     */
+    private Uniform normalMatrix = null;
+    private float[] modelValues;
+    private float[] normalValues;
+    private FloatBuffer modelBuffer;
+    private FloatBuffer normalBuffer;
+    /**
+     * The transform at the previous simulation step, and the transform drawn between the two. Both are null until
+     * the entity is first interpolated, in which case the current transform is drawn.
+     */
+    private Transform previousTransform = null;
+    private Transform renderTransform = null;
 
     public StaticEntity(GPUMesh mesh) {
         this.mesh = mesh;
@@ -38,6 +57,22 @@ public class StaticEntity implements Renderable {
         this.transformationMatrix = transformationMatrix;
     }
 
+    /**
+     * Method to upload the normal matrix, the inverse-transpose of the model matrix, to a mat3 uniform alongside the
+     * model matrix. Shaders need it to light objects correctly under non-uniform scale.
+     *
+     * @param normalMatrix the uniform to upload to
+     */
+    public void setNormalMatrixUniform(Uniform normalMatrix) {
+        this.normalMatrix = normalMatrix;
+        if (modelValues == null) {
+            modelValues = new float[16];
+            normalValues = new float[9];
+            modelBuffer = BufferUtils.createFloatBuffer(16);
+            normalBuffer = BufferUtils.createFloatBuffer(9);
+        }
+    }
+
     @Override
     public void prepare() {
         mesh.bindVAO();
@@ -49,7 +84,23 @@ public class StaticEntity implements Renderable {
         if (transformationMatrix == null) return;
 
         if (transformationMatrix.getName() != "null") {
-            transformationMatrix.asUniformMatrix().update_4x4(transform.getTransformationMatrix());
+            Profiler.begin("StaticEntity.uploadTransform");
+            try {
+                Transform drawn = renderTransform == null ? transform : renderTransform;
+                if (normalMatrix == null || normalMatrix.getName() == "null") {
+                    transformationMatrix.asUniformMatrix().update_4x4(drawn.getTransformationMatrix());
+                } else {
+                    drawn.storeMatrices(modelValues, normalValues);
+                    modelBuffer.clear();
+                    modelBuffer.put(modelValues).flip();
+                    normalBuffer.clear();
+                    normalBuffer.put(normalValues).flip();
+                    transformationMatrix.asUniformMatrix().update_4x4(modelBuffer);
+                    normalMatrix.asUniformMatrix().update_3x3(normalBuffer);
+                }
+            } finally {
+                Profiler.end();
+            }
         }
     }
 
@@ -75,6 +126,27 @@ public class StaticEntity implements Renderable {
         transform.rotate(x, y, z);
     }
 
+    /**
+     * Method to remember the current transform as the previous simulation state. Call at the start of each
+     * simulation step, before the entity is moved.
+     */
+    public void storePreviousState() {
+        if (previousTransform == null) previousTransform = new Transform();
+        previousTransform.set(transform);
+    }
+
+    /**
+     * Method to choose the transform drawn by the next render as a blend of the previous and current simulation
+     * states
+     *
+     * @param alpha how far the render falls between the previous and the current state, from 0 to 1
+     */
+    public void interpolate(float alpha) {
+        if (previousTransform == null) return;
+        if (renderTransform == null) renderTransform = new Transform();
+        renderTransform.interpolate(previousTransform, transform, alpha);
+    }
+
     public Transform getTransform() {
         return transform;
     }
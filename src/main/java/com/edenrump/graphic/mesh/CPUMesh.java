@@ -19,6 +19,8 @@
 
 package com.edenrump.graphic.mesh;
 
+import com.edenrump.math.spatial.TriangleBVH;
+
 import static com.edenrump.gpu.objects.Attribute.NORMALS_ATTRIB;
 import static com.edenrump.gpu.objects.Attribute.NORMALS_ATTRIB_NAME;
 import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
@@ -70,4 +72,15 @@ public class CPUMesh {
         gpuMesh.addAttribute(NORMALS_ATTRIB, NORMALS_ATTRIB_NAME, vertexNormals);
         return gpuMesh;
     }
+
+    /**
+     * Method to build a bounding volume hierarchy over this mesh's triangles for CPU ray casting.
+     * <p>
+     * The hierarchy is a snapshot and must be rebuilt if the positions or indices are later changed.
+     *
+     * @return a BVH over the current positions and indices
+     */
+    public TriangleBVH createBVH() {
+        return new TriangleBVH(vertexPositions, indices, floatsPerVertex);
+    }
 }
@@ -23,6 +23,7 @@ import com.edenrump.gpu.objects.Attribute;
 import com.edenrump.gpu.objects.VertexArrayObject;
 import com.edenrump.gpu.objects.VertexBufferObject;
 import com.edenrump.math.util.Buffers;
+import com.edenrump.profiling.Profiler;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -80,11 +81,16 @@ public class GPUMesh {
     }
 
     public void setIndices(int[] indices) {
-        vao.bind();
-        indexBuffer = new VertexBufferObject();
-        indexBuffer.bind(GL_ELEMENT_ARRAY_BUFFER);
-        VertexBufferObject.uploadData(GL_ELEMENT_ARRAY_BUFFER, Buffers.storeDataInBuffer(indices), GL_STATIC_DRAW);
-        this.unbind();
+        Profiler.begin("GPUMesh.setIndices");
+        try {
+            vao.bind();
+            indexBuffer = new VertexBufferObject();
+            indexBuffer.bind(GL_ELEMENT_ARRAY_BUFFER);
+            VertexBufferObject.uploadData(GL_ELEMENT_ARRAY_BUFFER, Buffers.storeDataInBuffer(indices), GL_STATIC_DRAW);
+            this.unbind();
+        } finally {
+            Profiler.end();
+        }
     }
 
     public void bindVAO() {
@@ -92,21 +98,26 @@ public class GPUMesh {
     }
 
     public void addAttribute(int location, String name, float[] values) {
-        VertexBufferObject vbo = new VertexBufferObject();
-        vao.bind();
-        vbo.bind(GL_ARRAY_BUFFER);
-        VertexBufferObject.uploadData(
-                GL_ARRAY_BUFFER,
-                Buffers.storeDataInBuffer(values),
-                GL_STATIC_DRAW
-        );
-        Attribute attribute = new Attribute(
-                location,
-                name,
-                dimensionsPerVertex,
-                vbo.getID());
-        attributes.put(attribute.getName(), attribute);
-        this.unbind();
+        Profiler.begin("GPUMesh.addAttribute");
+        try {
+            VertexBufferObject vbo = new VertexBufferObject();
+            vao.bind();
+            vbo.bind(GL_ARRAY_BUFFER);
+            VertexBufferObject.uploadData(
+                    GL_ARRAY_BUFFER,
+                    Buffers.storeDataInBuffer(values),
+                    GL_STATIC_DRAW
+            );
+            Attribute attribute = new Attribute(
+                    location,
+                    name,
+                    dimensionsPerVertex,
+                    vbo.getID());
+            attributes.put(attribute.getName(), attribute);
+            this.unbind();
+        } finally {
+            Profiler.end();
+        }
     }
 
     public void setPositions(float[] positions, int[] indices) {
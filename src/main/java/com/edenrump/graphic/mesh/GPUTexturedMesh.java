@@ -22,6 +22,7 @@ package com.edenrump.graphic.mesh;
 import com.edenrump.gpu.objects.Attribute;
 import com.edenrump.gpu.objects.Texture;
 import com.edenrump.gpu.objects.VertexBufferObject;
+import com.edenrump.graphic.texture.TextureAtlas;
 import com.edenrump.math.util.Buffers;
 
 import static org.lwjgl.opengl.GL15.*;
@@ -32,6 +33,11 @@ import static org.lwjgl.opengl.GL15.*;
 public class GPUTexturedMesh extends GPUMesh {
 
     private Texture texture;
+    private VertexBufferObject textureVBO;
+    private TextureAtlas atlas;
+    private TextureAtlas.Region region;
+    private float[] regionCoords;
+    private int regionVersion;
 
     public GPUTexturedMesh(int dimensionsPerVertex) {
         super(dimensionsPerVertex);
@@ -43,6 +49,14 @@ public class GPUTexturedMesh extends GPUMesh {
             attribute.enableVertexAttribute();
         }
 
+        //the atlas may have moved the region since its coordinates were uploaded
+        if (region != null && region.getVersion() != regionVersion) {
+            textureVBO.bind(GL_ARRAY_BUFFER);
+            VertexBufferObject.uploadData(GL_ARRAY_BUFFER, Buffers.storeDataInBuffer(region.remap(regionCoords)),
+                    GL_STATIC_DRAW);
+            regionVersion = region.getVersion();
+        }
+
         glActiveTexture(GL_TEXTURE);
         glBindTexture(GL_TEXTURE_2D, getTexture().getId());
 
@@ -57,20 +71,52 @@ public class GPUTexturedMesh extends GPUMesh {
     }
 
     public void setTexture(float[] textureCoords, Texture texture) {
+        uploadTextureCoords(textureCoords);
+        this.texture = texture;
+        this.atlas = null;
+        this.region = null;
+        this.regionCoords = null;
+    }
+
+    /**
+     * Method to texture the mesh with an image in an atlas. The coordinates are given over the image alone and mapped
+     * into its region of the atlas page, and mapped again if the atlas later moves the region.
+     *
+     * @param textureCoords pairs of texture coordinates over the image, from 0 to 1
+     * @param atlas         the atlas holding the image
+     * @param region        the region of the image
+     */
+    public void setTexture(float[] textureCoords, TextureAtlas atlas, TextureAtlas.Region region) {
+        uploadTextureCoords(region.remap(textureCoords));
+        this.texture = null;
+        this.atlas = atlas;
+        this.region = region;
+        this.regionCoords = textureCoords.clone();
+        this.regionVersion = region.getVersion();
+    }
+
+    private void uploadTextureCoords(float[] textureCoords) {
         bindVAO();
 
-        VertexBufferObject textureVBO = new VertexBufferObject();
-        textureVBO.bind(GL_ARRAY_BUFFER);
+        if (textureVBO == null) {
+            textureVBO = new VertexBufferObject();
+            textureVBO.bind(GL_ARRAY_BUFFER);
+            Attribute textureAttrib = Attribute.getDefaultTextureCoordsAttribute(textureVBO.getID());
+            textureAttrib.enableVertexAttribute();
+            attributes.put(textureAttrib.getName(), textureAttrib);
+        } else {
+            textureVBO.bind(GL_ARRAY_BUFFER);
+        }
         VertexBufferObject.uploadData(GL_ARRAY_BUFFER, Buffers.storeDataInBuffer(textureCoords), GL_STATIC_DRAW);
-        Attribute textureAttrib = Attribute.getDefaultTextureCoordsAttribute(textureVBO.getID());
-        textureAttrib.enableVertexAttribute();
-        attributes.put(textureAttrib.getName(), textureAttrib);
-        this.texture = texture;
 
         this.unbind();
     }
 
     public Texture getTexture() {
-        return texture;
+        return atlas != null ? atlas.getTexture(region.getPage()) : texture;
+    }
+
+    public TextureAtlas.Region getAtlasRegion() {
+        return region;
     }
 }
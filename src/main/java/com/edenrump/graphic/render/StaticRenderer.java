@@ -22,11 +22,13 @@ package com.edenrump.graphic.render;
 import com.edenrump.graphic.entities.Renderable;
 import com.edenrump.graphic.mesh.GPUMesh;
 import com.edenrump.graphic.shaders.ShaderProgram;
+import com.edenrump.profiling.Profiler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.glDrawElements;
@@ -45,6 +47,7 @@ public class StaticRenderer implements GenericRenderer {
 
     private final ShaderProgram shaderProgram;
     private final Map<Integer, List<Renderable>> vaoIDMeshMap = new HashMap<>();
+    private Predicate<Renderable> visibilityFilter = renderable -> true;
 
     public StaticRenderer(ShaderProgram shaderProgram) {
         this.shaderProgram = shaderProgram;
@@ -52,19 +55,25 @@ public class StaticRenderer implements GenericRenderer {
 
     @Override
     public void render() {
-        prepare();
-        for (Integer id : vaoIDMeshMap.keySet()) {
-            List<Renderable> allMeshInstances = vaoIDMeshMap.get(id);
-            allMeshInstances.get(0).prepare();
-            for (Renderable renderable : allMeshInstances) {
-                renderable.update();
+        Profiler.begin("StaticRenderer.render");
+        try {
+            prepare();
+            for (Integer id : vaoIDMeshMap.keySet()) {
+                List<Renderable> allMeshInstances = vaoIDMeshMap.get(id);
+                allMeshInstances.get(0).prepare();
+                for (Renderable renderable : allMeshInstances) {
+                    if (!visibilityFilter.test(renderable)) continue;
+                    renderable.update();
 
-                GPUMesh mesh = renderable.getMesh();
-                glDrawElements(mesh.getDrawType(), mesh.getNumberOfElements(), GL_UNSIGNED_INT, 0);
+                    GPUMesh mesh = renderable.getMesh();
+                    glDrawElements(mesh.getDrawType(), mesh.getNumberOfElements(), GL_UNSIGNED_INT, 0);
 
-                renderable.finish();
+                    renderable.finish();
+                }
+                Renderable.unbind();
             }
-            Renderable.unbind();
+        } finally {
+            Profiler.end();
         }
     }
 
@@ -78,6 +87,16 @@ public class StaticRenderer implements GenericRenderer {
         shaderProgram.delete();
     }
 
+    /**
+     * Method to set a test which every renderable must pass to be drawn, e.g. the result of an occlusion culling
+     * pass. Renderables that fail are skipped for the frame but stay registered.
+     *
+     * @param visibilityFilter test of whether a renderable should be drawn, or null to draw everything
+     */
+    public void setVisibilityFilter(Predicate<Renderable> visibilityFilter) {
+        this.visibilityFilter = visibilityFilter == null ? renderable -> true : visibilityFilter;
+    }
+
     public void addMesh(Renderable renderable) {
         GPUMesh mesh = renderable.getMesh();
         if (!vaoIDMeshMap.containsKey(mesh.getVAO_ID())) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render;
+
+import com.edenrump.gpu.objects.Texture;
+import com.edenrump.graphic.display.ui.Component;
+import com.edenrump.graphic.display.ui.Container;
+import com.edenrump.graphic.display.ui.Layer;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * This class represents the vertices of a frame's worth of user interface, one quad per visible component, in the
+ * order they are drawn: each tree of a layer in turn, every container before the components inside it. Everything a
+ * component's quad needs is written into its vertices, so the quads can be drawn together.
+ * <p>
+ * Quads are grouped into draws that share a texture. Untextured quads join whichever draw is open, so a layer needs
+ * a new draw only where consecutive textured components use different textures.
+ * <p>
+ * Each vertex holds, as floats:
+ * <ul>
+ *     <li>position: x and y in pixels from the top left of the viewport</li>
+ *     <li>local: x and y in pixels from the centre of the quad</li>
+ *     <li>half size: half the width and height of the quad in pixels</li>
+ *     <li>colour: red, green, blue and alpha</li>
+ *     <li>texture coordinates: u and v</li>
+ *     <li>style: the corner radius in pixels, and 1 if the quad is textured or 0 if not</li>
+ * </ul>
+ * The four vertices of a quad are its top left, bottom left, bottom right and top right corners.
+ */
+public class UIBatch {
+
+    public static final int FLOATS_PER_VERTEX = 14;
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int INDICES_PER_QUAD = 6;
+
+    private static final int INITIAL_QUADS = 256;
+
+    private FloatBuffer vertices = BufferUtils.createFloatBuffer(INITIAL_QUADS * VERTICES_PER_QUAD * FLOATS_PER_VERTEX);
+    private int quadCount;
+    private Texture[] drawTextures = new Texture[8];
+    private int[] drawFirstQuads = new int[8];
+    private int drawCount;
+    private float viewportWidth;
+    private float viewportHeight;
+    private final float[] textureCoordinates = new float[4];
+
+    /**
+     * Method to empty the batch for a new frame
+     *
+     * @param viewportWidth  the width of the viewport in pixels; quads entirely outside it are left out
+     * @param viewportHeight the height of the viewport in pixels
+     */
+    public void begin(float viewportWidth, float viewportHeight) {
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+        vertices.clear();
+        quadCount = 0;
+        drawCount = 0;
+        Arrays.fill(drawTextures, null);
+    }
+
+    /**
+     * Method to add every visible component of every tree on a layer, as last laid out
+     *
+     * @param layer the layer to draw
+     */
+    public void add(Layer layer) {
+        for (Container container : layer.getContainers()) add(container);
+    }
+
+    /**
+     * Method to add every visible component of a tree, as last laid out
+     *
+     * @param container the root of the tree
+     */
+    public void add(Container container) {
+        if (container instanceof Component) {
+            Component component = (Component) container;
+            if (!component.isVisible()) return;
+            addQuad(component);
+        }
+        for (int i = 0; i < container.getComponentCount(); i++) add(container.getComponent(i));
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * Method to get the texture a draw samples
+     *
+     * @param draw the index of the draw
+     * @return the texture, or null if none of the draw's quads are textured
+     */
+    public Texture getDrawTexture(int draw) {
+        return drawTextures[draw];
+    }
+
+    public int getDrawFirstQuad(int draw) {
+        return drawFirstQuads[draw];
+    }
+
+    public int getDrawQuadCount(int draw) {
+        return (draw + 1 < drawCount ? drawFirstQuads[draw + 1] : quadCount) - drawFirstQuads[draw];
+    }
+
+    /**
+     * Method to get the vertices written since {@link #begin}
+     *
+     * @return a view of the vertices, from position zero to the end of the last quad
+     */
+    public FloatBuffer getVertices() {
+        FloatBuffer view = vertices.duplicate();
+        view.flip();
+        return view;
+    }
+
+    private void addQuad(Component component) {
+        float x = component.getLayoutX();
+        float y = component.getLayoutY();
+        float width = component.getLayoutWidth();
+        float height = component.getLayoutHeight();
+        if (width <= 0 || height <= 0 || component.getAlpha() <= 0) return;
+        if (x >= viewportWidth || y >= viewportHeight || x + width <= 0 || y + height <= 0) return;
+
+        Texture texture = component.getTexture();
+        if (drawCount == 0 || texture != null && drawTextures[drawCount - 1] != null
+                && drawTextures[drawCount - 1] != texture) {
+            startDraw();
+        }
+        if (texture != null) drawTextures[drawCount - 1] = texture;
+        component.getTextureCoordinates(textureCoordinates);
+
+        ensureCapacity(quadCount + 1);
+        float halfWidth = width / 2;
+        float halfHeight = height / 2;
+        float radius = Math.min(component.getCornerRadius(), Math.min(halfWidth, halfHeight));
+        float textured = texture == null ? 0 : 1;
+        float u0 = textureCoordinates[0], v0 = textureCoordinates[1];
+        float u1 = textureCoordinates[2], v1 = textureCoordinates[3];
+        putVertex(component, x, y, -halfWidth, -halfHeight, halfWidth, halfHeight, u0, v1, radius, textured);
+        putVertex(component, x, y + height, -halfWidth, halfHeight, halfWidth, halfHeight, u0, v0, radius, textured);
+        putVertex(component, x + width, y + height, halfWidth, halfHeight, halfWidth, halfHeight, u1, v0, radius, textured);
+        putVertex(component, x + width, y, halfWidth, -halfHeight, halfWidth, halfHeight, u1, v1, radius, textured);
+        quadCount++;
+    }
+
+    private void putVertex(Component component, float x, float y, float localX, float localY,
+                           float halfWidth, float halfHeight, float u, float v, float radius, float textured) {
+        vertices.put(x).put(y)
+                .put(localX).put(localY)
+                .put(halfWidth).put(halfHeight)
+                .put(component.getRed()).put(component.getGreen()).put(component.getBlue()).put(component.getAlpha())
+                .put(u).put(v)
+                .put(radius).put(textured);
+    }
+
+    private void startDraw() {
+        if (drawCount == drawTextures.length) {
+            drawTextures = Arrays.copyOf(drawTextures, drawCount * 2);
+            drawFirstQuads = Arrays.copyOf(drawFirstQuads, drawCount * 2);
+        }
+        drawTextures[drawCount] = null;
+        drawFirstQuads[drawCount] = quadCount;
+        drawCount++;
+    }
+
+    private void ensureCapacity(int quads) {
+        int required = quads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX;
+        if (required <= vertices.capacity()) return;
+        FloatBuffer grown = BufferUtils.createFloatBuffer(Math.max(required, vertices.capacity() * 2));
+        vertices.flip();
+        grown.put(vertices);
+        vertices = grown;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render;
+
+import com.edenrump.gpu.objects.Texture;
+import com.edenrump.gpu.objects.UniformFloat;
+import com.edenrump.gpu.objects.VertexArrayObject;
+import com.edenrump.gpu.objects.VertexBufferObject;
+import com.edenrump.graphic.display.ui.Bounds;
+import com.edenrump.graphic.display.ui.Layer;
+import com.edenrump.graphic.shaders.Shader;
+import com.edenrump.graphic.shaders.ShaderHotReloader;
+import com.edenrump.graphic.shaders.ShaderProgram;
+import com.edenrump.profiling.Profiler;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL14.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+
+/**
+ * This class represents a renderer drawing a whole {@link Layer} of user interface in one draw call, or one per run of
+ * components with different textures. Each frame the layer is laid out, every visible component is written as a quad
+ * into a {@link UIBatch}, and the batch is streamed into a vertex buffer whose previous contents are orphaned, so the
+ * driver never waits for the last frame's draws to finish reading it. Colours, corner radii and texture coordinates
+ * are vertex attributes, so no uniform changes between components.
+ * <p>
+ * Must be used on the thread that owns the GL context.
+ */
+public class UIBatchRenderer implements GenericRenderer {
+
+    private static final String VERTEX_FILE_LOCATION = "src/resources/shaderCode/UIBatch.vert";
+    private static final String FRAGMENT_FILE_LOCATION = "src/resources/shaderCode/UIBatch.frag";
+
+    private static final int BYTES_PER_VERTEX = UIBatch.FLOATS_PER_VERTEX * Float.BYTES;
+    private static final int[] ATTRIBUTE_SIZES = {2, 2, 2, 4, 2, 2};
+
+    private final Layer layer;
+    private final UIBatch batch = new UIBatch();
+    private final ShaderProgram shaderProgram;
+    private final UniformFloat viewportSize;
+    private final VertexArrayObject vao = new VertexArrayObject();
+    private final VertexBufferObject vertexBuffer = new VertexBufferObject();
+    private final VertexBufferObject indexBuffer = new VertexBufferObject();
+    private final Texture white;
+    private int quadCapacity;
+    private int lastDrawCount;
+
+    /**
+     * Create a renderer for a layer
+     *
+     * @param layer the layer to draw
+     */
+    public UIBatchRenderer(Layer layer) {
+        this.layer = layer;
+
+        Shader v = Shader.loadShader(Shader.VERTEX, VERTEX_FILE_LOCATION);
+        Shader f = Shader.loadShader(Shader.FRAGMENT, FRAGMENT_FILE_LOCATION);
+        shaderProgram = new ShaderProgram();
+        shaderProgram.attachShaders(v, f);
+        shaderProgram.link();
+        v.delete();
+        f.delete();
+        shaderProgram.getUniform("textureSampler").asUniformInt().update(0);
+        viewportSize = shaderProgram.getUniform("viewportSize").asUniformFloat();
+
+        //untextured quads sample this, whichever draw they join
+        ByteBuffer texel = BufferUtils.createByteBuffer(4);
+        texel.put((byte) 0xFF).put((byte) 0xFF).put((byte) 0xFF).put((byte) 0xFF).flip();
+        white = Texture.createTexture(1, 1, texel);
+
+        vao.bind();
+        vertexBuffer.bind(GL_ARRAY_BUFFER);
+        long offset = 0;
+        for (int location = 0; location < ATTRIBUTE_SIZES.length; location++) {
+            glVertexAttribPointer(location, ATTRIBUTE_SIZES[location], GL_FLOAT, false, BYTES_PER_VERTEX, offset);
+            glEnableVertexAttribArray(location);
+            offset += ATTRIBUTE_SIZES[location] * Float.BYTES;
+        }
+        ensureCapacity(256);
+        VertexArrayObject.unbind();
+        VertexBufferObject.unbind();
+    }
+
+    @Override
+    public void prepare() {
+        shaderProgram.use();
+    }
+
+    @Override
+    public void render() {
+        Profiler.begin("UIBatchRenderer.render");
+        try {
+            Bounds bounds = layer.getWindow().getBounds();
+            float width = bounds.getWidth();
+            float height = bounds.getHeight();
+            layer.layout(width, height);
+
+            batch.begin(width, height);
+            batch.add(layer);
+            lastDrawCount = 0;
+            if (batch.getQuadCount() == 0) return;
+
+            prepare();
+            viewportSize.update2values(width, height);
+            vao.bind();
+            ensureCapacity(batch.getQuadCount());
+            vertexBuffer.bind(GL_ARRAY_BUFFER);
+            VertexBufferObject.uploadData(GL_ARRAY_BUFFER,
+                    (long) quadCapacity * UIBatch.VERTICES_PER_QUAD * BYTES_PER_VERTEX, GL_STREAM_DRAW);
+            VertexBufferObject.uploadSubData(GL_ARRAY_BUFFER, 0, batch.getVertices());
+
+            boolean blend = glIsEnabled(GL_BLEND);
+            boolean depthTest = glIsEnabled(GL_DEPTH_TEST);
+            int sourceRGB = glGetInteger(GL_BLEND_SRC_RGB);
+            int destinationRGB = glGetInteger(GL_BLEND_DST_RGB);
+            int sourceAlpha = glGetInteger(GL_BLEND_SRC_ALPHA);
+            int destinationAlpha = glGetInteger(GL_BLEND_DST_ALPHA);
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            glDisable(GL_DEPTH_TEST);
+            glActiveTexture(GL_TEXTURE0);
+
+            for (int draw = 0; draw < batch.getDrawCount(); draw++) {
+                Texture texture = batch.getDrawTexture(draw);
+                (texture == null ? white : texture).bind();
+                glDrawElements(GL_TRIANGLES, batch.getDrawQuadCount(draw) * UIBatch.INDICES_PER_QUAD,
+                        GL_UNSIGNED_INT, (long) batch.getDrawFirstQuad(draw) * UIBatch.INDICES_PER_QUAD * Integer.BYTES);
+            }
+            lastDrawCount = batch.getDrawCount();
+
+            glBlendFuncSeparate(sourceRGB, destinationRGB, sourceAlpha, destinationAlpha);
+            if (!blend) glDisable(GL_BLEND);
+            if (depthTest) glEnable(GL_DEPTH_TEST);
+            VertexArrayObject.unbind();
+            VertexBufferObject.unbind();
+        } finally {
+            Profiler.end();
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        shaderProgram.delete();
+        vao.delete();
+        vertexBuffer.delete();
+        indexBuffer.delete();
+        white.delete();
+    }
+
+    /**
+     * Method to have the batch shaders recompiled whenever their source files change
+     *
+     * @param reloader the reloader to watch the source files with
+     */
+    public void watchShader(ShaderHotReloader reloader) {
+        reloader.watch(shaderProgram, VERTEX_FILE_LOCATION, FRAGMENT_FILE_LOCATION);
+    }
+
+    /**
+     * Method to get the number of draw calls the last frame took
+     *
+     * @return the number of draws, which is zero if nothing was visible
+     */
+    public int getLastDrawCount() {
+        return lastDrawCount;
+    }
+
+    /**
+     * Method to get the number of components drawn in the last frame
+     *
+     * @return the number of quads
+     */
+    public int getLastQuadCount() {
+        return batch.getQuadCount();
+    }
+
+    /**
+     * Method to make sure the index buffer covers a number of quads, growing both buffers if not. The vertex array
+     * must be bound, as it records the index buffer binding.
+     */
+    private void ensureCapacity(int quads) {
+        if (quads <= quadCapacity) return;
+        quadCapacity = Math.max(quads, quadCapacity * 2);
+
+        IntBuffer indices = BufferUtils.createIntBuffer(quadCapacity * UIBatch.INDICES_PER_QUAD);
+        for (int quad = 0; quad < quadCapacity; quad++) {
+            int first = quad * UIBatch.VERTICES_PER_QUAD;
+            indices.put(first).put(first + 1).put(first + 2).put(first + 2).put(first + 3).put(first);
+        }
+        indices.flip();
+        indexBuffer.bind(GL_ELEMENT_ARRAY_BUFFER);
+        VertexBufferObject.uploadData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.culling;
+
+import com.edenrump.graphic.mesh.CPUMesh;
+import com.edenrump.math.geom.Transform;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents a mesh that hides whatever is behind it, for use with an {@link OcclusionCuller}.
+ * <p>
+ * Occluders should be simple, closed, low-polygon stand-ins for large opaque geometry such as walls and floors:
+ * every triangle is rasterized on the CPU each time the culler runs.
+ */
+public class Occluder {
+
+    private final CPUMesh mesh;
+    private final float[] modelMatrix = new float[16];
+    private final int[] oppositeVertices;
+
+    /**
+     * Creates an occluder from a mesh with an identity model matrix
+     *
+     * @param mesh the occluder geometry; must have positions and indices
+     */
+    public Occluder(CPUMesh mesh) {
+        if (mesh.getVertexPositions() == null || mesh.getIndices() == null)
+            throw new IllegalArgumentException("Cannot create occluder from mesh without positions and indices");
+        if (mesh.getFloatsPerVertex() < 3)
+            throw new IllegalArgumentException("Cannot create occluder from mesh with fewer than 3 floats per vertex");
+
+        this.mesh = mesh;
+        modelMatrix[0] = modelMatrix[5] = modelMatrix[10] = modelMatrix[15] = 1;
+        oppositeVertices = findOppositeVertices(mesh);
+    }
+
+    public Occluder(CPUMesh mesh, Transform transform) {
+        this(mesh);
+        setTransform(transform);
+    }
+
+    public CPUMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Method to get, for each edge of each triangle, the vertex of the neighbouring triangle that lies across it.
+     * Whether a shared edge is interior depends on the view: where the mesh folds over on screen, as at a silhouette
+     * of a closed mesh, the two triangles lie on the same side of the edge and it must be treated as an outer edge.
+     *
+     * @return one vertex index per mesh index, where entry <code>t * 3 + e</code> is for the edge from vertex e to
+     * vertex e + 1 of triangle t; -1 where the edge is not shared by exactly two triangles
+     */
+    int[] getOppositeVertices() {
+        return oppositeVertices;
+    }
+
+    public float[] getModelMatrix() {
+        return modelMatrix;
+    }
+
+    public void setTransform(Transform transform) {
+        FloatBuffer buffer = transform.getTransformationMatrix();
+        buffer.get(modelMatrix);
+    }
+
+    /**
+     * Method to set the model matrix directly
+     *
+     * @param modelMatrix column-major 4x4 matrix
+     */
+    public void setModelMatrix(float[] modelMatrix) {
+        System.arraycopy(modelMatrix, 0, this.modelMatrix, 0, 16);
+    }
+
+    /**
+     * Finds edges used by exactly two triangles. Vertices are matched by position rather than index, as flat shaded
+     * meshes duplicate vertices along every edge.
+     */
+    private static int[] findOppositeVertices(CPUMesh mesh) {
+        float[] positions = mesh.getVertexPositions();
+        int stride = mesh.getFloatsPerVertex();
+        int[] indices = mesh.getIndices();
+
+        Map<List<Float>, Integer> uniquePositions = new HashMap<>();
+        int[] canonical = new int[positions.length / stride];
+        for (int v = 0; v < canonical.length; v++) {
+            List<Float> key = Arrays.asList(positions[v * stride], positions[v * stride + 1], positions[v * stride + 2]);
+            canonical[v] = uniquePositions.computeIfAbsent(key, k -> uniquePositions.size());
+        }
+
+        Map<Long, Integer> edgeUses = new HashMap<>();
+        int triangleCount = indices.length / 3;
+        for (int t = 0; t < triangleCount; t++) {
+            for (int e = 0; e < 3; e++) {
+                edgeUses.merge(edgeKey(canonical, indices, t, e), 1, Integer::sum);
+            }
+        }
+
+        //edge e runs from vertex e to vertex e + 1, so the vertex opposite it is vertex e + 2
+        int[] opposites = new int[triangleCount * 3];
+        Arrays.fill(opposites, -1);
+        Map<Long, Integer> firstEdges = new HashMap<>();
+        for (int t = 0; t < triangleCount; t++) {
+            for (int e = 0; e < 3; e++) {
+                long key = edgeKey(canonical, indices, t, e);
+                if (edgeUses.get(key) != 2) continue;
+                Integer first = firstEdges.putIfAbsent(key, t * 3 + e);
+                if (first == null) continue;
+                opposites[t * 3 + e] = indices[first - first % 3 + (first % 3 + 2) % 3];
+                opposites[first] = indices[t * 3 + (e + 2) % 3];
+            }
+        }
+        return opposites;
+    }
+
+    private static long edgeKey(int[] canonical, int[] indices, int triangle, int edge) {
+        int a = canonical[indices[triangle * 3 + edge]];
+        int b = canonical[indices[triangle * 3 + (edge + 1) % 3]];
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.culling;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * This class runs a CPU occlusion culling pass: occluder meshes are rasterized into a low resolution
+ * {@link OcclusionDepthBuffer}, then the screen-space bounds of each occludee are tested against it.
+ * <p>
+ * The pass runs on worker threads. A typical frame kicks off culling for the new camera position with
+ * {@link #cullAsync(float[], List, float[])}, submits the previous frame's remaining GPU work while the workers
+ * rasterize, then joins the future before drawing the world, e.g. via
+ * {@link com.edenrump.graphic.render.StaticRenderer#setVisibilityFilter(java.util.function.Predicate)}.
+ * <p>
+ * Occludees are axis-aligned world space boxes packed as minX, minY, minZ, maxX, maxY, maxZ. Any box that
+ * crosses the near plane is reported visible.
+ */
+public class OcclusionCuller {
+
+    public static final int DEFAULT_WIDTH = 256;
+    public static final int DEFAULT_HEIGHT = 128;
+
+    private static final int BAND_HEIGHT = 16;
+    private static final float NEAR_W = 1e-5f;
+    /**
+     * Screen x, y and depth for each vertex, then the interior edge mask
+     */
+    private static final int SCREEN_TRIANGLE_STRIDE = 10;
+
+    private final OcclusionDepthBuffer depthBuffer;
+    private final ForkJoinPool pool;
+    private CompletableFuture<BitSet> inFlight = CompletableFuture.completedFuture(new BitSet());
+
+    /**
+     * Creates a culler with a 256x128 depth buffer that runs on the common ForkJoinPool
+     */
+    public OcclusionCuller() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a culler
+     *
+     * @param width  depth buffer width, a multiple of 8
+     * @param height depth buffer height, a multiple of 16
+     * @param pool   the pool on which culling runs
+     */
+    public OcclusionCuller(int width, int height, ForkJoinPool pool) {
+        if (height % BAND_HEIGHT != 0)
+            throw new IllegalArgumentException("Occlusion buffer height must be a multiple of " + BAND_HEIGHT);
+        this.depthBuffer = new OcclusionDepthBuffer(width, height);
+        this.pool = pool;
+    }
+
+    /**
+     * Method to get the depth buffer written by the most recent pass. It must not be read while a pass is running.
+     *
+     * @return the occlusion depth buffer
+     */
+    public OcclusionDepthBuffer getDepthBuffer() {
+        return depthBuffer;
+    }
+
+    /**
+     * Method to run a culling pass and wait for the result
+     *
+     * @see #cullAsync(float[], List, float[])
+     */
+    public BitSet cull(float[] viewProjection, List<Occluder> occluders, float[] occludeeBounds) {
+        return cullAsync(viewProjection, occluders, occludeeBounds).join();
+    }
+
+    /**
+     * Method to start a culling pass on the worker threads. If a previous pass is still running, this waits for it
+     * to finish first, as passes share the depth buffer.
+     * <p>
+     * The view-projection matrix and occludee bounds are copied, but occluder meshes and model matrices are read
+     * by the workers and must not be modified until the returned future completes.
+     *
+     * @param viewProjection column-major 4x4 matrix taking world space to clip space
+     * @param occluders      the occluders to rasterize
+     * @param occludeeBounds world space boxes to test, 6 floats per occludee
+     * @return a future of the set of occludee indices that may be visible
+     */
+    public CompletableFuture<BitSet> cullAsync(float[] viewProjection, List<Occluder> occluders, float[] occludeeBounds) {
+        if (viewProjection.length != 16)
+            throw new IllegalArgumentException("View-projection matrix must have 16 values");
+        if (occludeeBounds.length % 6 != 0)
+            throw new IllegalArgumentException("Occludee bounds must have 6 values per occludee");
+
+        //a failed pass has already been reported through its own future and must not stop later passes
+        inFlight.handle((result, failure) -> null).join();
+        float[] matrix = viewProjection.clone();
+        float[] bounds = occludeeBounds.clone();
+        Occluder[] occluderArray = occluders.toArray(new Occluder[0]);
+        inFlight = CompletableFuture.supplyAsync(() -> runPass(matrix, occluderArray, bounds), pool);
+        return inFlight;
+    }
+
+    private BitSet runPass(float[] viewProjection, Occluder[] occluders, float[] occludeeBounds) {
+        depthBuffer.clear();
+
+        float[][] screenTriangles = new float[occluders.length][];
+        IntStream.range(0, occluders.length).parallel()
+                .forEach(i -> screenTriangles[i] = projectOccluder(viewProjection, occluders[i]));
+
+        int bands = depthBuffer.getHeight() / BAND_HEIGHT;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int rowStart = band * BAND_HEIGHT;
+            int rowEnd = rowStart + BAND_HEIGHT;
+            for (float[] triangles : screenTriangles) {
+                for (int t = 0; t < triangles.length; t += SCREEN_TRIANGLE_STRIDE) {
+                    depthBuffer.rasterizeTriangle(
+                            triangles[t], triangles[t + 1], triangles[t + 2],
+                            triangles[t + 3], triangles[t + 4], triangles[t + 5],
+                            triangles[t + 6], triangles[t + 7], triangles[t + 8],
+                            (int) triangles[t + 9], rowStart, rowEnd);
+                }
+            }
+            depthBuffer.updateBlocks(rowStart, rowEnd);
+        });
+
+        int occludeeCount = occludeeBounds.length / 6;
+        boolean[] visible = new boolean[occludeeCount];
+        IntStream.range(0, occludeeCount).parallel()
+                .forEach(i -> visible[i] = isVisible(viewProjection, occludeeBounds, i * 6));
+
+        BitSet result = new BitSet(occludeeCount);
+        for (int i = 0; i < occludeeCount; i++) {
+            if (visible[i]) result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * Transforms an occluder's triangles to screen space, dropping any triangle with a vertex behind the near
+     * plane (which keeps the pass conservative without clipping)
+     *
+     * @return screen triangles, {@value #SCREEN_TRIANGLE_STRIDE} floats per triangle
+     */
+    private float[] projectOccluder(float[] viewProjection, Occluder occluder) {
+        float[] m = multiply(viewProjection, occluder.getModelMatrix());
+        float[] positions = occluder.getMesh().getVertexPositions();
+        int stride = occluder.getMesh().getFloatsPerVertex();
+        int[] indices = occluder.getMesh().getIndices();
+        int[] oppositeVertices = occluder.getOppositeVertices();
+
+        int vertexCount = positions.length / stride;
+        float[] screen = new float[vertexCount * 3];
+        boolean[] inFront = new boolean[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            float px = positions[v * stride], py = positions[v * stride + 1], pz = positions[v * stride + 2];
+            float cx = m[0] * px + m[4] * py + m[8] * pz + m[12];
+            float cy = m[1] * px + m[5] * py + m[9] * pz + m[13];
+            float cz = m[2] * px + m[6] * py + m[10] * pz + m[14];
+            float cw = m[3] * px + m[7] * py + m[11] * pz + m[15];
+            inFront[v] = cw > NEAR_W && cz >= -cw;
+            if (inFront[v]) toScreen(cx, cy, cz, cw, screen, v * 3);
+        }
+
+        float[] triangles = new float[indices.length / 3 * SCREEN_TRIANGLE_STRIDE];
+        int count = 0;
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            if (!inFront[indices[i]] || !inFront[indices[i + 1]] || !inFront[indices[i + 2]]) continue;
+            int o = count * SCREEN_TRIANGLE_STRIDE;
+            for (int k = 0; k < 3; k++) {
+                System.arraycopy(screen, indices[i + k] * 3, triangles, o + k * 3, 3);
+            }
+            triangles[o + 9] = interiorEdges(screen, inFront, indices, oppositeVertices, i);
+            count++;
+        }
+        return Arrays.copyOf(triangles, count * SCREEN_TRIANGLE_STRIDE);
+    }
+
+    /**
+     * Finds the edges of a triangle that are interior on screen: shared with a drawn neighbour that lies on the other
+     * side of the edge. A neighbour on the same side means the mesh folds over there, so the edge is a silhouette.
+     *
+     * @return the interior edge mask in the format of
+     * {@link OcclusionDepthBuffer#rasterizeTriangle(float, float, float, float, float, float, float, float, float, int, int, int)}
+     */
+    private static int interiorEdges(float[] screen, boolean[] inFront, int[] indices, int[] oppositeVertices,
+                                     int first) {
+        int mask = 0;
+        for (int e = 0; e < 3; e++) {
+            int opposite = oppositeVertices[first + e];
+            if (opposite < 0 || !inFront[opposite]) continue;
+
+            int a = indices[first + e] * 3, b = indices[first + (e + 1) % 3] * 3, c = indices[first + (e + 2) % 3] * 3;
+            float edgeX = screen[b] - screen[a], edgeY = screen[b + 1] - screen[a + 1];
+            float ownSide = edgeX * (screen[c + 1] - screen[a + 1]) - edgeY * (screen[c] - screen[a]);
+            int d = opposite * 3;
+            float otherSide = edgeX * (screen[d + 1] - screen[a + 1]) - edgeY * (screen[d] - screen[a]);
+            //edge e runs from vertex e to vertex e + 1, which is the edge opposite vertex e + 2
+            if (ownSide * otherSide < 0) mask |= 1 << ((e + 2) % 3);
+        }
+        return mask;
+    }
+
+    private boolean isVisible(float[] m, float[] bounds, int offset) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minDepth = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float[] corner = new float[3];
+
+        for (int c = 0; c < 8; c++) {
+            float x = bounds[offset + ((c & 1) == 0 ? 0 : 3)];
+            float y = bounds[offset + 1 + ((c & 2) == 0 ? 0 : 3)];
+            float z = bounds[offset + 2 + ((c & 4) == 0 ? 0 : 3)];
+            float cx = m[0] * x + m[4] * y + m[8] * z + m[12];
+            float cy = m[1] * x + m[5] * y + m[9] * z + m[13];
+            float cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+            if (cw <= NEAR_W || cz < -cw) return true; //crosses the near plane
+
+            toScreen(cx, cy, cz, cw, corner, 0);
+            minX = Math.min(minX, corner[0]);
+            maxX = Math.max(maxX, corner[0]);
+            minY = Math.min(minY, corner[1]);
+            maxY = Math.max(maxY, corner[1]);
+            minDepth = Math.min(minDepth, corner[2]);
+        }
+
+        return depthBuffer.isVisible(
+                (int) Math.floor(minX), (int) Math.floor(minY),
+                (int) Math.floor(maxX), (int) Math.floor(maxY),
+                minDepth);
+    }
+
+    private void toScreen(float cx, float cy, float cz, float cw, float[] dest, int offset) {
+        float inverseW = 1f / cw;
+        dest[offset] = (cx * inverseW + 1f) * 0.5f * depthBuffer.getWidth();
+        dest[offset + 1] = (cy * inverseW + 1f) * 0.5f * depthBuffer.getHeight();
+        dest[offset + 2] = (cz * inverseW + 1f) * 0.5f;
+    }
+
+    /**
+     * Column-major 4x4 product a * b
+     */
+    private static float[] multiply(float[] a, float[] b) {
+        float[] result = new float[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                }
+                result[column * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+}
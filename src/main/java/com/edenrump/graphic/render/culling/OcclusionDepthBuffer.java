@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.culling;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a small software depth buffer used to decide whether objects are hidden behind occluders.
+ * <p>
+ * Depth is stored in blocks of 8x4 pixels, each block contiguous in memory, so that rasterizing a row span or
+ * testing a rectangle walks short runs of adjacent floats that the JIT can vectorise. Each block also keeps its
+ * furthest depth, so that most occludee tests can be answered a block at a time.
+ * <p>
+ * Occluders are rasterized conservatively: a pixel is only covered if the whole pixel lies inside the occluder's
+ * silhouette, and the depth written is pushed back to the furthest depth the triangle reaches within that pixel.
+ * Edges shared with a neighbouring triangle of the same occluder, where the occluder does not fold over on
+ * screen, are sampled at the pixel centre instead, so that the occluder stays watertight across its interior. An
+ * occludee is therefore only reported hidden if it really is hidden; the cost is that thin occluders may not occlude
+ * at all.
+ * <p>
+ * Depth values follow OpenGL conventions: 0 at the near plane and 1 at the far plane (or where nothing is drawn).
+ * Rows are numbered from the bottom of the screen.
+ */
+public class OcclusionDepthBuffer {
+
+    public static final int BLOCK_WIDTH = 8;
+    public static final int BLOCK_HEIGHT = 4;
+    private static final int BLOCK_SIZE = BLOCK_WIDTH * BLOCK_HEIGHT;
+
+    private final int width;
+    private final int height;
+    private final int blocksX;
+    private final float[] depth;
+    private final float[] blockMaxDepth;
+
+    /**
+     * Creates a depth buffer. Width must be a multiple of 8 and height a multiple of 4.
+     *
+     * @param width  width in pixels
+     * @param height height in pixels
+     */
+    public OcclusionDepthBuffer(int width, int height) {
+        if (width <= 0 || height <= 0 || width % BLOCK_WIDTH != 0 || height % BLOCK_HEIGHT != 0)
+            throw new IllegalArgumentException("Occlusion buffer size " + width + "x" + height +
+                    " must be positive and a multiple of " + BLOCK_WIDTH + "x" + BLOCK_HEIGHT);
+
+        this.width = width;
+        this.height = height;
+        this.blocksX = width / BLOCK_WIDTH;
+        this.depth = new float[width * height];
+        this.blockMaxDepth = new float[blocksX * (height / BLOCK_HEIGHT)];
+        clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void clear() {
+        Arrays.fill(depth, 1f);
+        Arrays.fill(blockMaxDepth, 1f);
+    }
+
+    public float getDepth(int x, int y) {
+        return depth[index(x, y)];
+    }
+
+    private int index(int x, int y) {
+        int block = (y / BLOCK_HEIGHT) * blocksX + x / BLOCK_WIDTH;
+        return block * BLOCK_SIZE + (y % BLOCK_HEIGHT) * BLOCK_WIDTH + x % BLOCK_WIDTH;
+    }
+
+    /**
+     * Method to rasterize a screen-space occluder triangle into the rows [rowStart, rowEnd).
+     * <p>
+     * Callers may rasterize disjoint row ranges from different threads at the same time, as long as the ranges
+     * are aligned to whole blocks.
+     *
+     * @param x0            screen x of the first vertex, in pixels
+     * @param y0            screen y of the first vertex, in pixels
+     * @param z0            depth of the first vertex, from 0 to 1
+     * @param interiorEdges bit mask of edges shared with another triangle of the occluder: bit 0 for the edge from
+     *                      vertex 1 to 2, bit 1 for vertex 2 to 0 and bit 2 for vertex 0 to 1
+     * @param rowStart      first row to rasterize (inclusive)
+     * @param rowEnd        last row to rasterize (exclusive)
+     */
+    public void rasterizeTriangle(float x0, float y0, float z0,
+                                  float x1, float y1, float z1,
+                                  float x2, float y2, float z2,
+                                  int interiorEdges, int rowStart, int rowEnd) {
+        float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0) return;
+        if (area < 0) { //occluders are double sided: make the winding counter-clockwise
+            float tx = x1, ty = y1, tz = z1;
+            x1 = x2;
+            y1 = y2;
+            z1 = z2;
+            x2 = tx;
+            y2 = ty;
+            z2 = tz;
+            area = -area;
+            interiorEdges = (interiorEdges & 1) | ((interiorEdges & 2) << 1) | ((interiorEdges & 4) >> 1);
+        }
+
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(rowStart, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(rowEnd - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) return;
+
+        //edge functions w = a * x + b * y + c, positive inside
+        float a0 = y1 - y2, b0 = x2 - x1, c0 = x1 * y2 - y1 * x2;
+        float a1 = y2 - y0, b1 = x0 - x2, c1 = x2 * y0 - y2 * x0;
+        float a2 = y0 - y1, b2 = x1 - x0, c2 = x0 * y1 - y0 * x1;
+
+        //shrink each outer edge by half a pixel in its worst direction so that only fully covered pixels pass
+        float inset0 = (interiorEdges & 1) != 0 ? 0 : 0.5f * (Math.abs(a0) + Math.abs(b0));
+        float inset1 = (interiorEdges & 2) != 0 ? 0 : 0.5f * (Math.abs(a1) + Math.abs(b1));
+        float inset2 = (interiorEdges & 4) != 0 ? 0 : 0.5f * (Math.abs(a2) + Math.abs(b2));
+
+        //depth plane z = zA * x + zB * y + zC, pushed back by half a pixel's worth of slope
+        float zA = (a0 * z0 + a1 * z1 + a2 * z2) / area;
+        float zB = (b0 * z0 + b1 * z1 + b2 * z2) / area;
+        float zC = (c0 * z0 + c1 * z1 + c2 * z2) / area;
+        float zBias = 0.5f * (Math.abs(zA) + Math.abs(zB));
+        float zMax = Math.max(z0, Math.max(z1, z2));
+
+        for (int y = minY; y <= maxY; y++) {
+            float sy = y + 0.5f;
+            int rowBase = index(0, y);
+            for (int x = minX; x <= maxX; x++) {
+                float sx = x + 0.5f;
+                if (a0 * sx + b0 * sy + c0 < inset0) continue;
+                if (a1 * sx + b1 * sy + c1 < inset1) continue;
+                if (a2 * sx + b2 * sy + c2 < inset2) continue;
+
+                float z = Math.min(zMax, zA * sx + zB * sy + zC + zBias);
+                int i = rowBase + (x / BLOCK_WIDTH) * BLOCK_SIZE + (x % BLOCK_WIDTH);
+                if (z < depth[i]) depth[i] = z;
+            }
+        }
+    }
+
+    /**
+     * Method to refresh the per-block furthest depth for the rows [rowStart, rowEnd) after rasterizing occluders.
+     * The range must be aligned to whole blocks.
+     */
+    public void updateBlocks(int rowStart, int rowEnd) {
+        for (int blockY = rowStart / BLOCK_HEIGHT; blockY < rowEnd / BLOCK_HEIGHT; blockY++) {
+            for (int blockX = 0; blockX < blocksX; blockX++) {
+                int block = blockY * blocksX + blockX;
+                float max = 0;
+                for (int i = block * BLOCK_SIZE; i < (block + 1) * BLOCK_SIZE; i++) {
+                    max = Math.max(max, depth[i]);
+                }
+                blockMaxDepth[block] = max;
+            }
+        }
+    }
+
+    /**
+     * Method to test whether anything at or nearer than the given depth would be visible within a screen rectangle
+     *
+     * @param minX     left pixel column (inclusive)
+     * @param minY     bottom pixel row (inclusive)
+     * @param maxX     right pixel column (inclusive)
+     * @param maxY     top pixel row (inclusive)
+     * @param minDepth the nearest depth of the object being tested
+     * @return false only if every pixel in the rectangle is covered by an occluder nearer than minDepth
+     */
+    public boolean isVisible(int minX, int minY, int maxX, int maxY, float minDepth) {
+        minX = Math.max(0, minX);
+        minY = Math.max(0, minY);
+        maxX = Math.min(width - 1, maxX);
+        maxY = Math.min(height - 1, maxY);
+        if (minX > maxX || minY > maxY) return false; //entirely off screen
+
+        for (int blockY = minY / BLOCK_HEIGHT; blockY <= maxY / BLOCK_HEIGHT; blockY++) {
+            for (int blockX = minX / BLOCK_WIDTH; blockX <= maxX / BLOCK_WIDTH; blockX++) {
+                int block = blockY * blocksX + blockX;
+                if (minDepth >= blockMaxDepth[block]) continue; //whole block is in front of the object
+
+                int x0 = Math.max(minX, blockX * BLOCK_WIDTH), x1 = Math.min(maxX, blockX * BLOCK_WIDTH + BLOCK_WIDTH - 1);
+                int y0 = Math.max(minY, blockY * BLOCK_HEIGHT), y1 = Math.min(maxY, blockY * BLOCK_HEIGHT + BLOCK_HEIGHT - 1);
+                for (int y = y0; y <= y1; y++) {
+                    int row = block * BLOCK_SIZE + (y % BLOCK_HEIGHT) * BLOCK_WIDTH;
+                    for (int x = x0; x <= x1; x++) {
+                        if (minDepth < depth[row + x % BLOCK_WIDTH]) return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
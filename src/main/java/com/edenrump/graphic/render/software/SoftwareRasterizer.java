@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.software;
+
+import com.edenrump.graphic.mesh.CPUMesh;
+import com.edenrump.math.arrays.SquareMatrix;
+import com.edenrump.math.geom.Transform;
+import org.lwjgl.BufferUtils;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * This class is a headless, CPU-only render target which draws {@link CPUMesh} geometry with a depth buffer.
+ * <p>
+ * It mirrors the fixed lighting model of the engine's test shaders: vertices are transformed by a model matrix
+ * (from a {@link Transform}) and a projection matrix, and each pixel is lit by a point light with
+ * <code>max(dot(normal, toLight), 0.1) * colour</code>.
+ * <p>
+ * Draw calls are transformed, clipped against the near plane and binned into screen tiles as they are submitted.
+ * {@link #render()} then rasterizes every tile in parallel. Tiles own disjoint pixels and process their triangles
+ * in submission order, so the output is identical regardless of the number of threads used.
+ * <p>
+ * Pixel data is returned as RGBA bytes with the bottom row first, as <code>glReadPixels</code> does, so it can be
+ * passed straight to {@link com.edenrump.graphic.util.Screenshot#convertToBufferedImage(ByteBuffer, int, int, int)}.
+ */
+public class SoftwareRasterizer {
+
+    public static final int TILE_SIZE = 32;
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private static final float AMBIENT_BRIGHTNESS = 0.1f;
+    private static final int PARALLEL_VERTEX_THRESHOLD = 4096;
+
+    /**
+     * Layout of a set up triangle: screen x (3), screen y (3), depth (3), 1/w (3), per-vertex attributes divided by
+     * w (world normal xyz, world position xyz; 6 per vertex) and the flat colour (rgb)
+     */
+    private static final int X = 0, Y = 3, Z = 6, INV_W = 9, ATTRIBUTES = 12, COLOUR = 30;
+    private static final int TRIANGLE_STRIDE = 33;
+    /**
+     * Clip-space vertex layout used during clipping: clip xyzw, world normal xyz, world position xyz
+     */
+    private static final int VERTEX_SIZE = 10;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final ForkJoinPool pool;
+
+    private final float[] depthBuffer;
+    private final int[] colourBuffer;
+
+    private final float[] projectionMatrix = SquareMatrix.getIdentityMatrix(4).getValues();
+    private float lightX, lightY, lightZ;
+    private boolean cullBackFaces = true;
+    private boolean sRGBOutput = false;
+    private int clearColour = packColour(0, 0, 0);
+
+    private float[] triangles = new float[TRIANGLE_STRIDE * 256];
+    private int triangleCount;
+    private final int[][] tileBins;
+    private final int[] tileBinSizes;
+
+    /**
+     * Creates a render target of the given size which rasterizes on the common ForkJoinPool.
+     *
+     * @param width  width in pixels
+     * @param height height in pixels
+     */
+    public SoftwareRasterizer(int width, int height) {
+        this(width, height, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a render target of the given size which rasterizes on the given pool.
+     *
+     * @param width  width in pixels
+     * @param height height in pixels
+     * @param pool   the pool on which tiles are rasterized
+     */
+    public SoftwareRasterizer(int width, int height, ForkJoinPool pool) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Cannot create render target with negative or zero size");
+
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        depthBuffer = new float[width * height];
+        colourBuffer = new int[width * height];
+        tileBins = new int[tilesX * tilesY][16];
+        tileBinSizes = new int[tilesX * tilesY];
+        clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setProjectionMatrix(SquareMatrix projection) {
+        if (projection.getDimensions() != 4)
+            throw new IllegalArgumentException("Projection matrix must be 4x4");
+        System.arraycopy(projection.getValues(), 0, projectionMatrix, 0, 16);
+    }
+
+    public void setLightPosition(float x, float y, float z) {
+        this.lightX = x;
+        this.lightY = y;
+        this.lightZ = z;
+    }
+
+    /**
+     * Method to set whether clockwise (back-facing) triangles are discarded, as with <code>GL_CULL_FACE</code>
+     *
+     * @param cullBackFaces whether to cull back faces
+     */
+    public void setCullBackFaces(boolean cullBackFaces) {
+        this.cullBackFaces = cullBackFaces;
+    }
+
+    /**
+     * Method to set whether colours are gamma-encoded on output, as with <code>GL_FRAMEBUFFER_SRGB</code>
+     *
+     * @param sRGBOutput whether to encode output as sRGB
+     */
+    public void setSRGBOutput(boolean sRGBOutput) {
+        this.sRGBOutput = sRGBOutput;
+    }
+
+    public void setClearColour(Color colour) {
+        this.clearColour = packColour(colour.getRed(), colour.getGreen(), colour.getBlue());
+    }
+
+    /**
+     * Method to clear the colour and depth buffers and discard any triangles not yet rendered
+     */
+    public void clear() {
+        Arrays.fill(colourBuffer, clearColour);
+        Arrays.fill(depthBuffer, 1f);
+        Arrays.fill(tileBinSizes, 0);
+        triangleCount = 0;
+    }
+
+    /**
+     * Method to submit a mesh for rendering. The mesh is transformed, clipped and binned immediately, so later
+     * changes to the mesh or transform do not affect this draw.
+     *
+     * @param mesh      the mesh to draw; must have positions, normals and indices
+     * @param transform the model transform of the mesh
+     * @param colour    the diffuse colour of the mesh
+     */
+    public void draw(CPUMesh mesh, Transform transform, Color colour) {
+        float[] modelMatrix = new float[16];
+        FloatBuffer buffer = transform.getTransformationMatrix();
+        buffer.get(modelMatrix);
+        draw(mesh, modelMatrix, colour);
+    }
+
+    /**
+     * Method to submit a mesh for rendering with a column-major model matrix.
+     *
+     * @param mesh        the mesh to draw; must have positions, normals and indices
+     * @param modelMatrix column-major 4x4 model matrix
+     * @param colour      the diffuse colour of the mesh
+     */
+    public void draw(CPUMesh mesh, float[] modelMatrix, Color colour) {
+        int stride = mesh.getFloatsPerVertex();
+        float[] positions = mesh.getVertexPositions();
+        float[] normals = mesh.getVertexNormals();
+        int[] indices = mesh.getIndices();
+        if (positions == null || normals == null || indices == null)
+            throw new IllegalArgumentException("Cannot rasterize mesh without positions, normals and indices");
+        if (stride < 3)
+            throw new IllegalArgumentException("Cannot rasterize mesh with fewer than 3 floats per vertex");
+
+        int vertexCount = positions.length / stride;
+        if (normals.length < vertexCount * 3)
+            throw new IllegalArgumentException("Cannot rasterize mesh with fewer than 3 normal floats per vertex");
+        float[] normalMatrix = normalMatrix(modelMatrix);
+        float[] clip = new float[vertexCount * 4];
+        float[] world = new float[vertexCount * 3];
+        float[] worldNormals = new float[vertexCount * 3];
+
+        IntStream vertices = IntStream.range(0, vertexCount);
+        if (vertexCount > PARALLEL_VERTEX_THRESHOLD) vertices = vertices.parallel();
+        vertices.forEach(v -> transformVertex(v, stride, positions, normals, modelMatrix, normalMatrix,
+                clip, world, worldNormals));
+
+        float r = colour.getRed() / 255f, g = colour.getGreen() / 255f, b = colour.getBlue() / 255f;
+        float[] polygon = new float[4 * VERTEX_SIZE];
+        float[] clipped = new float[4 * VERTEX_SIZE];
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            loadVertex(polygon, 0, indices[i], clip, world, worldNormals);
+            loadVertex(polygon, 1, indices[i + 1], clip, world, worldNormals);
+            loadVertex(polygon, 2, indices[i + 2], clip, world, worldNormals);
+
+            int count = clipAgainstNearPlane(polygon, clipped);
+            for (int v = 1; v + 1 < count; v++) { //fan triangulation of the clipped polygon
+                setupTriangle(clipped, 0, v, v + 1, r, g, b);
+            }
+        }
+    }
+
+    /**
+     * Method to rasterize all triangles submitted since the last call, in parallel across screen tiles.
+     */
+    public void render() {
+        pool.submit(() -> IntStream.range(0, tilesX * tilesY).parallel().forEach(this::rasterizeTile)).join();
+        Arrays.fill(tileBinSizes, 0);
+        triangleCount = 0;
+    }
+
+    /**
+     * Method to get the rendered image as RGBA bytes, bottom row first
+     *
+     * @return a new buffer of width * height * 4 bytes, ready to read
+     */
+    public ByteBuffer getPixelData() {
+        ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * BYTES_PER_PIXEL);
+        for (int colour : colourBuffer) {
+            buffer.put((byte) (colour >>> 24));
+            buffer.put((byte) (colour >>> 16));
+            buffer.put((byte) (colour >>> 8));
+            buffer.put((byte) colour);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Method to get the depth of a pixel, in the range 0 (near plane) to 1 (far plane or nothing drawn)
+     *
+     * @param x pixel column, from the left
+     * @param y pixel row, from the bottom
+     * @return the depth buffer value at the pixel
+     */
+    public float getDepth(int x, int y) {
+        return depthBuffer[y * width + x];
+    }
+
+    /* ****************************************************************************************************************
+     * Geometry
+     * ****************************************************************************************************************/
+
+    private void transformVertex(int v, int stride, float[] positions, float[] normals, float[] m, float[] n,
+                                 float[] clip, float[] world, float[] worldNormals) {
+        float px = positions[v * stride], py = positions[v * stride + 1], pz = positions[v * stride + 2];
+        float wx = m[0] * px + m[4] * py + m[8] * pz + m[12];
+        float wy = m[1] * px + m[5] * py + m[9] * pz + m[13];
+        float wz = m[2] * px + m[6] * py + m[10] * pz + m[14];
+        float ww = m[3] * px + m[7] * py + m[11] * pz + m[15];
+        world[v * 3] = wx;
+        world[v * 3 + 1] = wy;
+        world[v * 3 + 2] = wz;
+
+        float[] p = projectionMatrix;
+        for (int row = 0; row < 4; row++) {
+            clip[v * 4 + row] = p[row] * wx + p[4 + row] * wy + p[8 + row] * wz + p[12 + row] * ww;
+        }
+
+        float nx = normals[v * 3], ny = normals[v * 3 + 1], nz = normals[v * 3 + 2];
+        worldNormals[v * 3] = n[0] * nx + n[3] * ny + n[6] * nz;
+        worldNormals[v * 3 + 1] = n[1] * nx + n[4] * ny + n[7] * nz;
+        worldNormals[v * 3 + 2] = n[2] * nx + n[5] * ny + n[8] * nz;
+    }
+
+    /**
+     * The inverse-transpose of the model matrix's upper 3x3, so normals stay perpendicular under non-uniform scale. A
+     * model matrix that flattens the mesh has no inverse; its upper 3x3 is used instead as the best available.
+     */
+    private static float[] normalMatrix(float[] m) {
+        float[] n = new float[9];
+        try {
+            SquareMatrix.normalMatrix(m, n);
+        } catch (ArithmeticException singular) {
+            for (int column = 0; column < 3; column++) {
+                System.arraycopy(m, column * 4, n, column * 3, 3);
+            }
+        }
+        return n;
+    }
+
+    private static void loadVertex(float[] polygon, int slot, int v,
+                                   float[] clip, float[] world, float[] worldNormals) {
+        int o = slot * VERTEX_SIZE;
+        System.arraycopy(clip, v * 4, polygon, o, 4);
+        System.arraycopy(worldNormals, v * 3, polygon, o + 4, 3);
+        System.arraycopy(world, v * 3, polygon, o + 7, 3);
+    }
+
+    /**
+     * Sutherland–Hodgman clipping of a triangle against the near plane (z = -w in clip space)
+     *
+     * @return the number of vertices in the clipped polygon (0, 3 or 4)
+     */
+    private static int clipAgainstNearPlane(float[] triangle, float[] out) {
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            int a = i * VERTEX_SIZE;
+            int b = ((i + 1) % 3) * VERTEX_SIZE;
+            float da = triangle[a + 2] + triangle[a + 3];
+            float db = triangle[b + 2] + triangle[b + 3];
+
+            if (da >= 0) {
+                System.arraycopy(triangle, a, out, count++ * VERTEX_SIZE, VERTEX_SIZE);
+            }
+            if ((da >= 0) != (db >= 0)) {
+                float t = da / (da - db);
+                int o = count++ * VERTEX_SIZE;
+                for (int k = 0; k < VERTEX_SIZE; k++) {
+                    out[o + k] = triangle[a + k] + (triangle[b + k] - triangle[a + k]) * t;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void setupTriangle(float[] polygon, int v0, int v1, int v2, float r, float g, float b) {
+        if ((triangleCount + 1) * TRIANGLE_STRIDE > triangles.length)
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+
+        int t = triangleCount * TRIANGLE_STRIDE;
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int k = 0; k < 3; k++) {
+            int o = (k == 0 ? v0 : k == 1 ? v1 : v2) * VERTEX_SIZE;
+            float w = polygon[o + 3];
+            if (w <= 0) return; //degenerate after clipping
+            float inverseW = 1f / w;
+            float sx = (polygon[o] * inverseW + 1f) * 0.5f * width;
+            float sy = (polygon[o + 1] * inverseW + 1f) * 0.5f * height;
+            triangles[t + X + k] = sx;
+            triangles[t + Y + k] = sy;
+            triangles[t + Z + k] = (polygon[o + 2] * inverseW + 1f) * 0.5f;
+            triangles[t + INV_W + k] = inverseW;
+            for (int a = 0; a < 6; a++) {
+                triangles[t + ATTRIBUTES + k * 6 + a] = polygon[o + 4 + a] * inverseW;
+            }
+            minX = Math.min(minX, sx);
+            maxX = Math.max(maxX, sx);
+            minY = Math.min(minY, sy);
+            maxY = Math.max(maxY, sy);
+        }
+        triangles[t + COLOUR] = r;
+        triangles[t + COLOUR + 1] = g;
+        triangles[t + COLOUR + 2] = b;
+
+        float area = signedArea(t);
+        if (area == 0 || (cullBackFaces && area < 0)) return;
+
+        int tileMinX = Math.max(0, (int) Math.floor(minX) / TILE_SIZE);
+        int tileMaxX = Math.min(tilesX - 1, (int) Math.ceil(maxX) / TILE_SIZE);
+        int tileMinY = Math.max(0, (int) Math.floor(minY) / TILE_SIZE);
+        int tileMaxY = Math.min(tilesY - 1, (int) Math.ceil(maxY) / TILE_SIZE);
+        if (tileMinX > tileMaxX || tileMinY > tileMaxY) return; //off screen
+
+        for (int ty = tileMinY; ty <= tileMaxY; ty++) {
+            for (int tx = tileMinX; tx <= tileMaxX; tx++) {
+                int tile = ty * tilesX + tx;
+                if (tileBinSizes[tile] == tileBins[tile].length)
+                    tileBins[tile] = Arrays.copyOf(tileBins[tile], tileBins[tile].length * 2);
+                tileBins[tile][tileBinSizes[tile]++] = triangleCount;
+            }
+        }
+        triangleCount++;
+    }
+
+    private float signedArea(int t) {
+        return (triangles[t + X + 1] - triangles[t + X]) * (triangles[t + Y + 2] - triangles[t + Y]) -
+                (triangles[t + Y + 1] - triangles[t + Y]) * (triangles[t + X + 2] - triangles[t + X]);
+    }
+
+    /* ****************************************************************************************************************
+     * Rasterization
+     * ****************************************************************************************************************/
+
+    private void rasterizeTile(int tile) {
+        int tileX0 = (tile % tilesX) * TILE_SIZE;
+        int tileY0 = (tile / tilesX) * TILE_SIZE;
+        int tileX1 = Math.min(width, tileX0 + TILE_SIZE);
+        int tileY1 = Math.min(height, tileY0 + TILE_SIZE);
+
+        int[] bin = tileBins[tile];
+        for (int i = 0; i < tileBinSizes[tile]; i++) {
+            rasterizeTriangle(bin[i] * TRIANGLE_STRIDE, tileX0, tileY0, tileX1, tileY1);
+        }
+    }
+
+    private void rasterizeTriangle(int t, int tileX0, int tileY0, int tileX1, int tileY1) {
+        float[] tri = triangles;
+        float area = signedArea(t);
+
+        //orient counter-clockwise so that all edge functions are positive inside
+        int i1 = area > 0 ? 1 : 2;
+        int i2 = area > 0 ? 2 : 1;
+        float inverseArea = 1f / Math.abs(area);
+
+        float x0 = tri[t + X], y0 = tri[t + Y];
+        float x1 = tri[t + X + i1], y1 = tri[t + Y + i1];
+        float x2 = tri[t + X + i2], y2 = tri[t + Y + i2];
+
+        int minX = Math.max(tileX0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(tileX1 - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(tileY0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(tileY1 - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+
+        boolean topLeft0 = isTopLeft(x1, y1, x2, y2);
+        boolean topLeft1 = isTopLeft(x2, y2, x0, y0);
+        boolean topLeft2 = isTopLeft(x0, y0, x1, y1);
+
+        for (int py = minY; py <= maxY; py++) {
+            float sy = py + 0.5f;
+            for (int px = minX; px <= maxX; px++) {
+                float sx = px + 0.5f;
+                float w0 = edge(x1, y1, x2, y2, sx, sy);
+                float w1 = edge(x2, y2, x0, y0, sx, sy);
+                float w2 = edge(x0, y0, x1, y1, sx, sy);
+                if (!covers(w0, topLeft0) || !covers(w1, topLeft1) || !covers(w2, topLeft2)) continue;
+
+                float l0 = w0 * inverseArea, l1 = w1 * inverseArea, l2 = w2 * inverseArea;
+                float depth = l0 * tri[t + Z] + l1 * tri[t + Z + i1] + l2 * tri[t + Z + i2];
+                int pixel = py * width + px;
+                if (depth < 0 || depth >= depthBuffer[pixel]) continue;
+
+                depthBuffer[pixel] = depth;
+                colourBuffer[pixel] = shade(t, i1, i2, l0, l1, l2);
+            }
+        }
+    }
+
+    /**
+     * Per-pixel lighting with perspective-correct interpolation of the world normal and position
+     */
+    private int shade(int t, int i1, int i2, float l0, float l1, float l2) {
+        float[] tri = triangles;
+        float inverseW = l0 * tri[t + INV_W] + l1 * tri[t + INV_W + i1] + l2 * tri[t + INV_W + i2];
+        float w = 1f / inverseW;
+
+        int a0 = t + ATTRIBUTES, a1 = t + ATTRIBUTES + i1 * 6, a2 = t + ATTRIBUTES + i2 * 6;
+        float nx = (l0 * tri[a0] + l1 * tri[a1] + l2 * tri[a2]) * w;
+        float ny = (l0 * tri[a0 + 1] + l1 * tri[a1 + 1] + l2 * tri[a2 + 1]) * w;
+        float nz = (l0 * tri[a0 + 2] + l1 * tri[a1 + 2] + l2 * tri[a2 + 2]) * w;
+        float lx = lightX - (l0 * tri[a0 + 3] + l1 * tri[a1 + 3] + l2 * tri[a2 + 3]) * w;
+        float ly = lightY - (l0 * tri[a0 + 4] + l1 * tri[a1 + 4] + l2 * tri[a2 + 4]) * w;
+        float lz = lightZ - (l0 * tri[a0 + 5] + l1 * tri[a1 + 5] + l2 * tri[a2 + 5]) * w;
+
+        float normalLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        float lightLength = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+        float brightness = AMBIENT_BRIGHTNESS;
+        if (normalLength > 0 && lightLength > 0) {
+            float dot = (nx * lx + ny * ly + nz * lz) / (normalLength * lightLength);
+            brightness = Math.max(dot, AMBIENT_BRIGHTNESS);
+        }
+
+        return packColour(
+                toByte(brightness * tri[t + COLOUR]),
+                toByte(brightness * tri[t + COLOUR + 1]),
+                toByte(brightness * tri[t + COLOUR + 2]));
+    }
+
+    private int toByte(float linear) {
+        float value = Math.min(1f, Math.max(0f, linear));
+        if (sRGBOutput) {
+            value = value <= 0.0031308f ? value * 12.92f : (float) (1.055 * Math.pow(value, 1 / 2.4) - 0.055);
+        }
+        return Math.round(value * 255f);
+    }
+
+    private static float edge(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    /**
+     * Top-left fill convention, so that pixels on an edge shared by two triangles are drawn exactly once
+     */
+    private static boolean isTopLeft(float ax, float ay, float bx, float by) {
+        return (ay == by && bx < ax) || by < ay;
+    }
+
+    private static boolean covers(float edgeValue, boolean topLeft) {
+        return edgeValue > 0 || (edgeValue == 0 && topLeft);
+    }
+
+    private static int packColour(int r, int g, int b) {
+        return (r << 24) | (g << 16) | (b << 8) | 0xFF;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * This class represents an on-disk cache of linked program binaries. Programs are keyed by the hash of their resolved
+ * sources and by the vendor, renderer and version strings of the driver, so a driver update or a different GPU never
+ * sees a binary it did not produce. A binary the driver rejects anyway is deleted and the program is linked from
+ * source again, which rewrites the cache.
+ * <p>
+ * Programs not yet cached can be linked ahead of time on the contexts of a {@link SharedContextCompiler}, after which
+ * {@link #load} only has to hand the driver the binary.
+ * <p>
+ * {@link #load} must be used on the thread that owns the GL context.
+ */
+public class ProgramBinaryCache {
+
+    static final int MAGIC = 0x4250454E; //"NEPB"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * This class represents a linked program as the driver stores it
+     */
+    public static final class Binary {
+        private final int format;
+        private final byte[] data;
+
+        Binary(int format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+
+        int getFormat() {
+            return format;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * This interface represents the linking of programs and the retrieval and loading of their binaries
+     */
+    interface Driver {
+        String describe();
+
+        boolean supportsBinaries();
+
+        int link(String vertexSource, String fragmentSource);
+
+        Binary getBinary(int program);
+
+        /**
+         * @return the program handle, or 0 if the driver rejected the binary
+         */
+        int load(Binary binary);
+
+        void delete(int program);
+
+        int getUniformLocation(int program, CharSequence name);
+
+        void bindUniformBlock(int program, String blockName, int binding);
+    }
+
+    private final Path directory;
+    private final Driver driver;
+    private final Map<String, CompletableFuture<Binary>> pending = new ConcurrentHashMap<>();
+    private String driverDescription;
+    private Boolean binariesSupported;
+    private int hitCount;
+    private int missCount;
+    private int rejectedCount;
+    /**
+     * Counted from the shared contexts' completion threads as well as the calling thread
+     */
+    private final AtomicInteger writeFailureCount = new AtomicInteger();
+
+    /**
+     * Create a cache that stores its binaries in a directory, which is created if it does not exist
+     *
+     * @param directory the directory to store binaries in
+     */
+    public ProgramBinaryCache(String directory) {
+        this(Paths.get(directory), new GLDriver());
+    }
+
+    ProgramBinaryCache(Path directory, Driver driver) {
+        this.directory = directory;
+        this.driver = driver;
+    }
+
+    /**
+     * Method to get a linked program for a pair of resolved sources: from a binary linked ahead of time, from the
+     * cache on disk, or, failing those, by linking the sources and caching the result
+     *
+     * @param vertex   the resolved vertex shader
+     * @param fragment the resolved fragment shader
+     * @return the linked program
+     */
+    public ShaderProgram load(ShaderPreprocessor.Result vertex, ShaderPreprocessor.Result fragment) {
+        if (!binariesSupported()) {
+            missCount++;
+            return new ShaderProgram(driver.link(vertex.getSource(), fragment.getSource()));
+        }
+
+        String key = key(vertex, fragment);
+        Binary binary = precompiled(key);
+        if (binary == null) binary = read(file(key));
+        if (binary != null) {
+            int program = driver.load(binary);
+            if (program != 0) {
+                hitCount++;
+                return new ShaderProgram(program);
+            }
+            rejectedCount++;
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException e) {
+                //the rewrite below replaces it anyway
+            }
+        }
+
+        missCount++;
+        int program = driver.link(vertex.getSource(), fragment.getSource());
+        Binary linked = driver.getBinary(program);
+        if (linked != null && !write(file(key), linked)) writeFailureCount.incrementAndGet();
+        return new ShaderProgram(program);
+    }
+
+    /**
+     * Method to start linking a pair of resolved sources on a shared context, unless the cache already holds them.
+     * A later {@link #load} of the same sources waits for the result instead of linking them itself.
+     *
+     * @param compiler the shared contexts to link on
+     * @param vertex   the resolved vertex shader
+     * @param fragment the resolved fragment shader
+     */
+    public void precompile(SharedContextCompiler compiler,
+                           ShaderPreprocessor.Result vertex, ShaderPreprocessor.Result fragment) {
+        if (compiler.getContextCount() == 0 || !binariesSupported()) return;
+        String key = key(vertex, fragment);
+        if (pending.containsKey(key) || Files.exists(file(key))) return;
+
+        Path file = file(key);
+        pending.put(key, compiler.compile(vertex.getSource(), fragment.getSource())
+                .thenApply(binary -> {
+                    if (!write(file, binary)) writeFailureCount.incrementAndGet();
+                    return binary;
+                }));
+    }
+
+    /**
+     * Method to get the number of programs loaded from a binary
+     *
+     * @return the number of cache hits
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Method to get the number of programs linked from source on the calling thread
+     *
+     * @return the number of cache misses
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Method to get the number of binaries the driver refused to load
+     *
+     * @return the number of rejected binaries
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Method to get the number of binaries that could not be written to the cache directory. Such programs still
+     * load, but are linked from source again next time.
+     *
+     * @return the number of failed writes
+     */
+    public int getWriteFailureCount() {
+        return writeFailureCount.get();
+    }
+
+    private boolean binariesSupported() {
+        if (binariesSupported == null) binariesSupported = driver.supportsBinaries();
+        return binariesSupported;
+    }
+
+    private Binary precompiled(String key) {
+        CompletableFuture<Binary> future = pending.remove(key);
+        if (future == null) return null;
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            //linking again on this thread reports the error against the sources
+            return null;
+        }
+    }
+
+    private String key(ShaderPreprocessor.Result vertex, ShaderPreprocessor.Result fragment) {
+        if (driverDescription == null) driverDescription = driver.describe();
+        return ShaderPreprocessor.sha256(driverDescription + "\n" + vertex.getHash() + "\n" + fragment.getHash());
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + ".bin");
+    }
+
+    /**
+     * Method to read a binary from a file
+     *
+     * @param file the file to read
+     * @return the binary, or null if the file does not exist or is not a program binary
+     */
+    static Binary read(Path file) {
+        if (!Files.exists(file)) return null;
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (bytes.remaining() < HEADER_SIZE || bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION) return null;
+            int format = bytes.getInt(8);
+            int length = bytes.getInt(12);
+            if (length < 0 || length != bytes.remaining() - HEADER_SIZE) return null;
+            byte[] data = new byte[length];
+            bytes.position(HEADER_SIZE);
+            bytes.get(data);
+            return new Binary(format, data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Method to write a binary to a file, through a temporary file so a reader never sees half a binary. A binary
+     * that cannot be written is not an error: the program is linked from source again next time.
+     *
+     * @param file   the file to write
+     * @param binary the binary to write
+     * @return whether the binary was written
+     */
+    static boolean write(Path file, Binary binary) {
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + binary.data.length);
+            bytes.putInt(MAGIC).putInt(VERSION).putInt(binary.format).putInt(binary.data.length).put(binary.data);
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, bytes.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                //nothing more can be done about a directory that cannot be written
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This class represents the driver of the GL context current on the calling thread
+     */
+    static final class GLDriver implements Driver {
+
+        @Override
+        public String describe() {
+            return glGetString(GL_VENDOR) + "\n" + glGetString(GL_RENDERER) + "\n" + glGetString(GL_VERSION);
+        }
+
+        @Override
+        public boolean supportsBinaries() {
+            GLCapabilities capabilities = GL.getCapabilities();
+            return (capabilities.OpenGL41 || capabilities.GL_ARB_get_program_binary)
+                    && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+        }
+
+        @Override
+        public int link(String vertexSource, String fragmentSource) {
+            Shader v = Shader.createShader(Shader.VERTEX, vertexSource);
+            try {
+                Shader f = Shader.createShader(Shader.FRAGMENT, fragmentSource);
+                try {
+                    int program = glCreateProgram();
+                    glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+                    glAttachShader(program, v.getID());
+                    glAttachShader(program, f.getID());
+                    glLinkProgram(program);
+                    if (glGetProgrami(program, GL_LINK_STATUS) != GL_TRUE) {
+                        String log = glGetProgramInfoLog(program);
+                        glDeleteProgram(program);
+                        throw new RuntimeException(log);
+                    }
+                    glDetachShader(program, v.getID());
+                    glDetachShader(program, f.getID());
+                    return program;
+                } finally {
+                    f.delete();
+                }
+            } finally {
+                v.delete();
+            }
+        }
+
+        @Override
+        public Binary getBinary(int program) {
+            int length = glGetProgrami(program, GL_PROGRAM_BINARY_LENGTH);
+            if (length <= 0) return null;
+            ByteBuffer data = BufferUtils.createByteBuffer(length);
+            IntBuffer written = BufferUtils.createIntBuffer(1);
+            IntBuffer format = BufferUtils.createIntBuffer(1);
+            glGetProgramBinary(program, written, format, data);
+            byte[] bytes = new byte[written.get(0)];
+            data.get(bytes);
+            return new Binary(format.get(0), bytes);
+        }
+
+        @Override
+        public int load(Binary binary) {
+            int program = glCreateProgram();
+            ByteBuffer data = BufferUtils.createByteBuffer(binary.data.length);
+            data.put(binary.data).flip();
+            glProgramBinary(program, binary.format, data);
+            if (glGetProgrami(program, GL_LINK_STATUS) != GL_TRUE) {
+                glDeleteProgram(program);
+                return 0;
+            }
+            return program;
+        }
+
+        @Override
+        public void delete(int program) {
+            glDeleteProgram(program);
+        }
+
+        @Override
+        public int getUniformLocation(int program, CharSequence name) {
+            return glGetUniformLocation(program, name);
+        }
+
+        @Override
+        public void bindUniformBlock(int program, String blockName, int binding) {
+            glUniformBlockBinding(program, glGetUniformBlockIndex(program, blockName), binding);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package com.edenrump.graphic.shaders;
 
 import java.io.*;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
 
@@ -91,6 +92,21 @@ public class Shader {
         return createShader(type, source);
     }
 
+    /**
+     * Loads a shader from a file through a preprocessor, resolving includes
+     * and injecting defines.
+     *
+     * @param type         Type of the shader
+     * @param path         File path of the shader
+     * @param preprocessor Preprocessor to resolve the file with
+     * @param defines      Names and values to define
+     * @return Compiled Shader from specified file
+     */
+    public static Shader loadShader(int type, String path, ShaderPreprocessor preprocessor,
+                                    Map<String, String> defines) {
+        return createShader(type, preprocessor.process(path, defines).getSource());
+    }
+
     /**
      * Sets the source code of this shader.
      *
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * This class represents a development aid that recompiles shader programs when their source files change. The
+ * directories holding every file a watched program was built from, includes among them, are watched on a background
+ * thread. When a file changes the program's sources are resolved again on that thread and, given a
+ * {@link SharedContextCompiler}, compiled and linked there too. The render thread then swaps the new program in with
+ * {@link #update()}, rebinding the program's uniforms; if compiling or linking fails the old program is kept and the
+ * error is reported.
+ * <p>
+ * {@link #watch} and {@link #update()} must be used on the thread that owns the GL context.
+ */
+public class ShaderHotReloader implements AutoCloseable {
+
+    static final long DEFAULT_SETTLE_MILLIS = 100;
+
+    private static final class Reload {
+        final String vertexSource;
+        final String fragmentSource;
+        final CompletableFuture<ProgramBinaryCache.Binary> binary;
+        final RuntimeException error;
+
+        Reload(String vertexSource, String fragmentSource, CompletableFuture<ProgramBinaryCache.Binary> binary,
+               RuntimeException error) {
+            this.vertexSource = vertexSource;
+            this.fragmentSource = fragmentSource;
+            this.binary = binary;
+            this.error = error;
+        }
+
+        boolean isReady() {
+            return binary == null || binary.isDone();
+        }
+    }
+
+    private static final class Entry {
+        final ShaderProgram program;
+        final String vertexPath;
+        final String fragmentPath;
+        final Map<String, String> defines;
+        final AtomicReference<Reload> pending = new AtomicReference<>();
+        volatile Set<Path> files;
+        volatile String vertexHash;
+        volatile String fragmentHash;
+
+        Entry(ShaderProgram program, String vertexPath, String fragmentPath, Map<String, String> defines) {
+            this.program = program;
+            this.vertexPath = vertexPath;
+            this.fragmentPath = fragmentPath;
+            this.defines = defines;
+        }
+    }
+
+    private final ShaderPreprocessor preprocessor;
+    private final SharedContextCompiler compiler;
+    private final ProgramBinaryCache.Driver driver;
+    private final long settleMillis;
+    private final WatchService watchService;
+    private final Thread watcher;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<ShaderProgram, RuntimeException> failures = new HashMap<>();
+    private BiConsumer<ShaderProgram, RuntimeException> failureListener;
+    private int reloadCount;
+    private volatile boolean closed;
+
+    /**
+     * Create a reloader that resolves changed sources in the background and compiles them on the render thread
+     *
+     * @param preprocessor the preprocessor to resolve shader files with
+     */
+    public ShaderHotReloader(ShaderPreprocessor preprocessor) {
+        this(preprocessor, null);
+    }
+
+    /**
+     * Create a reloader that resolves, compiles and links changed sources in the background
+     *
+     * @param preprocessor the preprocessor to resolve shader files with
+     * @param compiler     the shared contexts to compile on, or null to compile on the render thread
+     */
+    public ShaderHotReloader(ShaderPreprocessor preprocessor, SharedContextCompiler compiler) {
+        this(preprocessor, compiler, new ProgramBinaryCache.GLDriver(), DEFAULT_SETTLE_MILLIS);
+    }
+
+    ShaderHotReloader(ShaderPreprocessor preprocessor, SharedContextCompiler compiler,
+                      ProgramBinaryCache.Driver driver, long settleMillis) {
+        this.preprocessor = preprocessor;
+        this.compiler = compiler != null && compiler.getContextCount() > 0 ? compiler : null;
+        this.driver = driver;
+        this.settleMillis = settleMillis;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to watch shader files!" + System.lineSeparator() + e.getMessage(), e);
+        }
+        watcher = new Thread(this::watchFiles, "shader-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Method to recompile a program, built without defines, whenever its source files change
+     *
+     * @param program      the program to replace when its sources change
+     * @param vertexPath   File path of the vertex shader
+     * @param fragmentPath File path of the fragment shader
+     */
+    public void watch(ShaderProgram program, String vertexPath, String fragmentPath) {
+        watch(program, vertexPath, fragmentPath, Collections.emptyMap());
+    }
+
+    /**
+     * Method to recompile a program whenever its source files change
+     *
+     * @param program      the program to replace when its sources change
+     * @param vertexPath   File path of the vertex shader
+     * @param fragmentPath File path of the fragment shader
+     * @param defines      the defines the program was built with
+     */
+    public void watch(ShaderProgram program, String vertexPath, String fragmentPath, Map<String, String> defines) {
+        if (closed) throw new IllegalStateException("The reloader has been closed");
+        Entry entry = new Entry(program, vertexPath, fragmentPath, Collections.unmodifiableMap(new HashMap<>(defines)));
+        ShaderPreprocessor.Result vertex = preprocessor.process(vertexPath, defines);
+        ShaderPreprocessor.Result fragment = preprocessor.process(fragmentPath, defines);
+        track(entry, vertex, fragment);
+        entries.add(entry);
+    }
+
+    /**
+     * Method to swap in every recompiled program that is ready, keeping the old program of any that failed. Call
+     * once a frame.
+     *
+     * @return the number of programs replaced
+     */
+    public int update() {
+        int replaced = 0;
+        for (Entry entry : entries) {
+            Reload reload = entry.pending.get();
+            if (reload == null || !reload.isReady() || !entry.pending.compareAndSet(reload, null)) continue;
+
+            try {
+                entry.program.replace(link(reload), driver);
+                failures.remove(entry.program);
+                reloadCount++;
+                replaced++;
+            } catch (RuntimeException e) {
+                failures.put(entry.program, e);
+                if (failureListener != null) failureListener.accept(entry.program, e);
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Method to get the number of programs replaced so far
+     *
+     * @return the number of successful reloads
+     */
+    public int getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * Method to get the programs whose latest reload failed, which are still running their previous version
+     *
+     * @return a copy of the failures, by program
+     */
+    public Map<ShaderProgram, RuntimeException> getFailures() {
+        return new HashMap<>(failures);
+    }
+
+    /**
+     * Method to set a callback for reloads that fail, for example to show the compiler log in the application. It is
+     * called from {@link #update()}, on the render thread, with the program that kept its previous version and the
+     * error. Failures are recorded in {@link #getFailures()} whether or not a listener is set.
+     *
+     * @param failureListener the callback, or null for none
+     */
+    public void setFailureListener(BiConsumer<ShaderProgram, RuntimeException> failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * Method to stop watching files. Programs keep whichever version they have.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            //the watcher thread stops either way
+        }
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int link(Reload reload) {
+        if (reload.error != null) throw reload.error;
+        if (reload.binary != null) {
+            try {
+                int program = driver.load(reload.binary.join());
+                if (program != 0) return program;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        return driver.link(reload.vertexSource, reload.fragmentSource);
+    }
+
+    private void watchFiles() {
+        try {
+            while (!closed) {
+                Set<Path> changed = new HashSet<>();
+                collect(watchService.take(), changed);
+                //editors often write a file in several steps, so wait for the directory to settle
+                WatchKey key;
+                while ((key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null) collect(key, changed);
+                reload(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+
+    private static void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed.add(directory);
+            } else {
+                changed.add(directory.resolve((Path) event.context()).toAbsolutePath().normalize());
+            }
+        }
+        key.reset();
+    }
+
+    private void reload(Set<Path> changed) {
+        preprocessor.invalidate(changed);
+        for (Entry entry : entries) {
+            boolean affected = false;
+            for (Path file : entry.files) {
+                if (changed.contains(file) || changed.contains(file.getParent())) {
+                    affected = true;
+                    break;
+                }
+            }
+            if (!affected) continue;
+
+            try {
+                ShaderPreprocessor.Result vertex = preprocessor.process(entry.vertexPath, entry.defines);
+                ShaderPreprocessor.Result fragment = preprocessor.process(entry.fragmentPath, entry.defines);
+                if (vertex.getHash().equals(entry.vertexHash) && fragment.getHash().equals(entry.fragmentHash)) {
+                    continue;
+                }
+                track(entry, vertex, fragment);
+                boolean shared = compiler != null && compiler.getContextCount() > 0;
+                CompletableFuture<ProgramBinaryCache.Binary> binary = shared
+                        ? compiler.compile(vertex.getSource(), fragment.getSource()) : null;
+                entry.pending.set(new Reload(vertex.getSource(), fragment.getSource(), binary, null));
+            } catch (RuntimeException e) {
+                entry.pending.set(new Reload(null, null, null, e));
+            }
+        }
+    }
+
+    private void track(Entry entry, ShaderPreprocessor.Result vertex, ShaderPreprocessor.Result fragment) {
+        Set<Path> files = new HashSet<>(vertex.getFiles());
+        files.addAll(fragment.getFiles());
+        entry.files = files;
+        entry.vertexHash = vertex.getHash();
+        entry.fragmentHash = fragment.getHash();
+        for (Path file : files) {
+            Path directory = file.getParent();
+            if (watchedDirectories.add(directory)) {
+                try {
+                    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                } catch (IOException | ClosedWatchServiceException e) {
+                    watchedDirectories.remove(directory);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class represents a GLSL preprocessor run before the driver sees a shader. It resolves
+ * <code>#include "file"</code> directives, relative to the including file and then to the include directories, and
+ * injects a set of <code>#define</code>s straight after <code>#version</code>, so that one source file can be compiled
+ * into several variants. <code>#line</code> directives keep driver error messages pointing at the original file and
+ * line: the source string number is the index of the file in {@link Result#getFiles()}.
+ * <p>
+ * Resolved sources are cached by file and define set, and reused until one of the files they were built from changes.
+ * Each result carries a hash of its source, which identifies a variant across runs.
+ */
+public class ShaderPreprocessor {
+
+    private static final Pattern INCLUDE = Pattern.compile("^\\s*#\\s*include\\s*[\"<]([^\">]+)[\">]\\s*$");
+    private static final Pattern VERSION = Pattern.compile("^\\s*#\\s*version\\b.*$");
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    /**
+     * This class represents a resolved shader source
+     */
+    public static final class Result {
+        private final String source;
+        private final String hash;
+        private final List<Path> files;
+        private final List<FileTime> modified;
+
+        private Result(String source, List<Path> files, List<FileTime> modified) {
+            this.source = source;
+            this.hash = sha256(source);
+            this.files = Collections.unmodifiableList(files);
+            this.modified = modified;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Method to get a hash of the resolved source, which changes whenever the source or the defines do
+         *
+         * @return the SHA-256 of the source, in hexadecimal
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Method to get the files the source was built from, the root file first
+         *
+         * @return the files, in the order of their source string numbers
+         */
+        public List<Path> getFiles() {
+            return files;
+        }
+
+        private boolean isCurrent() {
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    if (!Files.getLastModifiedTime(files.get(i)).equals(modified.get(i))) return false;
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private final List<Path> includeDirectories = new ArrayList<>();
+    /**
+     * Resolved sources keyed by the file and an unmodifiable sorted copy of the defines
+     */
+    private final Map<List<Object>, Result> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new preprocessor
+     *
+     * @param includeDirectories directories to search for included files not found next to the including file
+     */
+    public ShaderPreprocessor(String... includeDirectories) {
+        for (String directory : includeDirectories) this.includeDirectories.add(Paths.get(directory));
+    }
+
+    /**
+     * Method to resolve a shader file without defines
+     *
+     * @param path File path of the shader
+     * @return the resolved source
+     */
+    public Result process(String path) {
+        return process(path, Collections.emptyMap());
+    }
+
+    /**
+     * Method to resolve a shader file, from the cache if none of its files have changed
+     *
+     * @param path    File path of the shader
+     * @param defines names and values to define; an empty value defines the name alone
+     * @return the resolved source
+     */
+    public Result process(String path, Map<String, String> defines) {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        Map<String, String> sorted = new TreeMap<>(defines);
+        for (String name : sorted.keySet()) {
+            if (!NAME.matcher(name).matches()) throw new IllegalArgumentException("Invalid define name: " + name);
+        }
+        List<Object> key = Arrays.asList(file, Collections.unmodifiableMap(sorted));
+
+        Result cached = cache.get(key);
+        if (cached != null && cached.isCurrent()) return cached;
+        Result result = resolve(file, sorted);
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Method to forget every resolved source built from any of a set of files, whether or not their modification
+     * times show the change
+     *
+     * @param changed absolute, normalised paths of the files that changed
+     */
+    public void invalidate(Collection<Path> changed) {
+        cache.values().removeIf(result -> !Collections.disjoint(result.files, changed));
+    }
+
+    /**
+     * Method to forget every resolved source
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Method to get the number of resolved sources held
+     *
+     * @return the size of the cache
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private Result resolve(Path root, Map<String, String> defines) {
+        List<Path> files = new ArrayList<>();
+        List<FileTime> modified = new ArrayList<>();
+        List<String> lines = read(root, files, modified);
+
+        StringBuilder source = new StringBuilder();
+        int versionLine = -1;
+        for (int i = 0; i < lines.size() && versionLine < 0; i++) {
+            if (VERSION.matcher(lines.get(i)).matches()) versionLine = i;
+        }
+        if (versionLine >= 0) source.append(lines.get(versionLine).trim()).append('\n');
+        for (Map.Entry<String, String> define : defines.entrySet()) {
+            source.append("#define ").append(define.getKey());
+            if (!define.getValue().isEmpty()) source.append(' ').append(define.getValue());
+            source.append('\n');
+        }
+        source.append("#line 1 0\n");
+
+        Deque<Path> stack = new ArrayDeque<>();
+        stack.push(root);
+        append(lines, 0, versionLine, source, files, modified, stack);
+        return new Result(source.toString(), files, modified);
+    }
+
+    private void append(List<String> lines, int fileNumber, int skipLine, StringBuilder source, List<Path> files,
+                        List<FileTime> modified, Deque<Path> stack) {
+        Path file = stack.peek();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            Matcher include = INCLUDE.matcher(line);
+            if (i == skipLine) {
+                //keep the line count so that #line numbers stay true
+                source.append('\n');
+            } else if (include.matches()) {
+                Path included = locate(file, include.group(1));
+                if (stack.contains(included)) {
+                    throw new IllegalStateException("Shader include cycle: " + included + " is included by itself via "
+                            + stack);
+                }
+                int includedNumber = files.size();
+                List<String> includedLines = read(included, files, modified);
+                int includedVersion = -1;
+                for (int j = 0; j < includedLines.size() && includedVersion < 0; j++) {
+                    if (VERSION.matcher(includedLines.get(j)).matches()) includedVersion = j;
+                }
+                source.append("#line 1 ").append(includedNumber).append('\n');
+                stack.push(included);
+                append(includedLines, includedNumber, includedVersion, source, files, modified, stack);
+                stack.pop();
+                source.append("#line ").append(i + 2).append(' ').append(fileNumber).append('\n');
+            } else {
+                source.append(line).append('\n');
+            }
+        }
+    }
+
+    private Path locate(Path includingFile, String name) {
+        Path beside = includingFile.resolveSibling(name).normalize();
+        if (Files.isRegularFile(beside)) return beside;
+        for (Path directory : includeDirectories) {
+            Path candidate = directory.resolve(name).toAbsolutePath().normalize();
+            if (Files.isRegularFile(candidate)) return candidate;
+        }
+        throw new IllegalStateException("no file at: " + beside + " or in the include directories, included by "
+                + includingFile);
+    }
+
+    private static List<String> read(Path file, List<Path> files, List<FileTime> modified) {
+        if (!Files.isRegularFile(file)) throw new IllegalStateException("no file at: " + file);
+        try {
+            modified.add(Files.getLastModifiedTime(file));
+            files.add(file);
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to load a shader file!"
+                    + System.lineSeparator() + ex.getMessage());
+        }
+    }
+
+    static String sha256(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -38,24 +38,43 @@ import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
  */
 public class ShaderProgram {
 
+    //files required for the simple texture shader
+    private static final String FLAT_TEXTURE_VERTEX_FILE = "src/resources/shaderCode/flat_texture.vert";
+    private static final String FLAT_TEXTURE_FRAGMENT_FILE = "src/resources/shaderCode/flat_texture.frag";
+
     /**
-     * Stores the handle of the program.
+     * Stores the handle of the program. It changes if the program is replaced by a recompiled one.
      */
-    private final int id;
+    private int id;
 
     private Map<CharSequence, Uniform> uniformLocationMap;
+    private final Map<String, Integer> uniformBlockBindings = new HashMap<>();
 
     public ShaderProgram() {
         id = glCreateProgram();
     }
 
-    public static ShaderProgram simpleTextureShaderProgram() {
-        //files required for this shader
-        final String VERTEX_FILE_LOCATION = "src/resources/shaderCode/flat_texture.vert";
-        final String FRAGMENT_FILE_LOCATION = "src/resources/shaderCode/flat_texture.frag";
+    /**
+     * Create a program around an existing, already linked, program handle
+     *
+     * @param id the program handle
+     */
+    ShaderProgram(int id) {
+        this.id = id;
+    }
 
-        Shader v = Shader.loadShader(GL_VERTEX_SHADER, VERTEX_FILE_LOCATION);
-        Shader f = Shader.loadShader(GL_FRAGMENT_SHADER, FRAGMENT_FILE_LOCATION);
+    /**
+     * Method to get the handle of this program
+     *
+     * @return the program handle
+     */
+    public int getID() {
+        return id;
+    }
+
+    public static ShaderProgram simpleTextureShaderProgram() {
+        Shader v = Shader.loadShader(GL_VERTEX_SHADER, FLAT_TEXTURE_VERTEX_FILE);
+        Shader f = Shader.loadShader(GL_FRAGMENT_SHADER, FLAT_TEXTURE_FRAGMENT_FILE);
         ShaderProgram entityShaderProgram = new ShaderProgram();
         entityShaderProgram.attachShaders(v, f);
         entityShaderProgram.link();
@@ -65,7 +84,20 @@ public class ShaderProgram {
         return entityShaderProgram;
     }
 
+    /**
+     * Method to create the simple texture program and have it recompiled whenever its source files change
+     *
+     * @param reloader the reloader to watch the source files with
+     * @return the linked program
+     */
+    public static ShaderProgram simpleTextureShaderProgram(ShaderHotReloader reloader) {
+        ShaderProgram program = simpleTextureShaderProgram();
+        reloader.watch(program, FLAT_TEXTURE_VERTEX_FILE, FLAT_TEXTURE_FRAGMENT_FILE);
+        return program;
+    }
+
     public void bindUniformBlock(String blockName, int bufferBlockBinding) {
+        uniformBlockBindings.put(blockName, bufferBlockBinding);
         glUseProgram(id);
         glUniformBlockBinding(
                 id,
@@ -136,4 +168,26 @@ public class ShaderProgram {
     public void delete() {
         glDeleteProgram(id);
     }
+
+    /**
+     * Method to replace this program with another linked program and delete the old one. Every uniform handed out
+     * by this program is rebound to the new program, and uniform block bindings are applied again, so holders of
+     * this program and its uniforms keep working unchanged.
+     *
+     * @param newID  the handle of the linked replacement
+     * @param driver the driver to resolve locations with
+     */
+    void replace(int newID, ProgramBinaryCache.Driver driver) {
+        int oldID = id;
+        id = newID;
+        if (uniformLocationMap != null) {
+            for (Uniform uniform : uniformLocationMap.values()) {
+                uniform.rebind(newID, driver.getUniformLocation(newID, uniform.getName()));
+            }
+        }
+        for (Map.Entry<String, Integer> block : uniformBlockBindings.entrySet()) {
+            driver.bindUniformBlock(newID, block.getKey(), block.getValue());
+        }
+        driver.delete(oldID);
+    }
 }
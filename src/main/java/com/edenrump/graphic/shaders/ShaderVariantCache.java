@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class represents the compiled variants of one vertex and fragment shader pair, keyed by the set of defines
+ * they were compiled with. Each permutation is compiled and linked once, the first time it is asked for, and then
+ * shared by every renderer holding the cache. Given a {@link ProgramBinaryCache}, variants linked in an earlier run are
+ * loaded from their binaries, and variants known to be needed can be linked ahead of time on shared contexts.
+ * <p>
+ * Must be used on the thread that owns the GL context.
+ */
+public class ShaderVariantCache {
+
+    private final ShaderPreprocessor preprocessor;
+    private final String vertexPath;
+    private final String fragmentPath;
+    private final ProgramBinaryCache binaryCache;
+    private final Map<Map<String, String>, ShaderProgram> variants = new HashMap<>();
+
+    /**
+     * Create a new, empty cache
+     *
+     * @param preprocessor the preprocessor to resolve the shader files with
+     * @param vertexPath   File path of the vertex shader
+     * @param fragmentPath File path of the fragment shader
+     */
+    public ShaderVariantCache(ShaderPreprocessor preprocessor, String vertexPath, String fragmentPath) {
+        this(preprocessor, null, vertexPath, fragmentPath);
+    }
+
+    /**
+     * Create a new, empty cache that loads and stores its variants as program binaries
+     *
+     * @param preprocessor the preprocessor to resolve the shader files with
+     * @param binaryCache  the program binaries to load variants from, or null to always link from source
+     * @param vertexPath   File path of the vertex shader
+     * @param fragmentPath File path of the fragment shader
+     */
+    public ShaderVariantCache(ShaderPreprocessor preprocessor, ProgramBinaryCache binaryCache,
+                              String vertexPath, String fragmentPath) {
+        this.preprocessor = preprocessor;
+        this.binaryCache = binaryCache;
+        this.vertexPath = vertexPath;
+        this.fragmentPath = fragmentPath;
+    }
+
+    /**
+     * Method to get the variant with no defines
+     *
+     * @return the linked program
+     */
+    public ShaderProgram get() {
+        return get(Collections.emptyMap());
+    }
+
+    /**
+     * Method to get the variant for a set of flags, each defined without a value
+     *
+     * @param flags the names to define
+     * @return the linked program
+     */
+    public ShaderProgram get(String... flags) {
+        Map<String, String> defines = new TreeMap<>();
+        for (String flag : flags) defines.put(flag, "");
+        return get(defines);
+    }
+
+    /**
+     * Method to get the variant for a set of defines, compiling and linking it if this is the first request
+     *
+     * @param defines names and values to define; an empty value defines the name alone
+     * @return the linked program
+     */
+    public ShaderProgram get(Map<String, String> defines) {
+        Map<String, String> key = Collections.unmodifiableMap(new TreeMap<>(defines));
+        ShaderProgram program = variants.get(key);
+        if (program == null) {
+            program = compile(key);
+            variants.put(key, program);
+        }
+        return program;
+    }
+
+    /**
+     * Method to start linking variants on shared contexts, so that getting them later only loads their binaries.
+     * Does nothing without a binary cache.
+     *
+     * @param compiler the shared contexts to link on
+     * @param variants the define sets of the variants that will be needed
+     */
+    public void precompile(SharedContextCompiler compiler, Collection<Map<String, String>> variants) {
+        if (binaryCache == null) return;
+        for (Map<String, String> defines : variants) {
+            Map<String, String> key = new TreeMap<>(defines);
+            if (this.variants.containsKey(key)) continue;
+            binaryCache.precompile(compiler,
+                    preprocessor.process(vertexPath, key), preprocessor.process(fragmentPath, key));
+        }
+    }
+
+    /**
+     * Method to get the number of variants compiled so far
+     *
+     * @return the number of programs in the cache
+     */
+    public int getVariantCount() {
+        return variants.size();
+    }
+
+    /**
+     * Method to delete every compiled variant
+     */
+    public void delete() {
+        for (ShaderProgram program : variants.values()) program.delete();
+        variants.clear();
+    }
+
+    private ShaderProgram compile(Map<String, String> defines) {
+        if (binaryCache != null) {
+            try {
+                return binaryCache.load(preprocessor.process(vertexPath, defines),
+                        preprocessor.process(fragmentPath, defines));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Failed to link shader variant " + defines
+                        + System.lineSeparator() + e.getMessage(), e);
+            }
+        }
+
+        Shader v = Shader.loadShader(Shader.VERTEX, vertexPath, preprocessor, defines);
+        try {
+            Shader f = Shader.loadShader(Shader.FRAGMENT, fragmentPath, preprocessor, defines);
+            try {
+                ShaderProgram program = new ShaderProgram();
+                try {
+                    program.attachShaders(v, f);
+                    program.link();
+                } catch (RuntimeException e) {
+                    program.delete();
+                    throw new RuntimeException("Failed to link shader variant " + defines
+                            + System.lineSeparator() + e.getMessage(), e);
+                }
+                return program;
+            } finally {
+                f.delete();
+            }
+        } finally {
+            v.delete();
+        }
+    }
+}
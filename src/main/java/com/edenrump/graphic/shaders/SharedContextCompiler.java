@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import com.edenrump.graphic.display.global.Window;
+import org.lwjgl.opengl.GL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * This class represents a set of hidden GL contexts sharing objects with a window, each owned by a worker thread,
+ * on which programs are linked in parallel. The driver work of compiling and linking happens on the workers; each
+ * linked program is handed back as a binary for the window's context to load.
+ * <p>
+ * Must be created and closed on the main thread, as GLFW only creates and destroys windows there. If the platform
+ * refuses to create shared contexts the compiler has fewer workers, possibly none, and
+ * {@link ProgramBinaryCache#precompile} leaves every program to be linked on the window's context instead. A worker
+ * whose context cannot be made current stops; once none are left, queued programs fail so that they are linked on the
+ * window's context too.
+ */
+public class SharedContextCompiler implements AutoCloseable {
+
+    /**
+     * This interface represents the contexts the workers link on
+     */
+    interface ContextFactory {
+        /**
+         * Make a context current on the calling worker thread
+         *
+         * @param index the index of the worker
+         * @return the driver of the context
+         */
+        ProgramBinaryCache.Driver makeCurrent(int index);
+
+        void release(int index);
+    }
+
+    private static final class Task {
+        final String vertexSource;
+        final String fragmentSource;
+        final CompletableFuture<ProgramBinaryCache.Binary> result = new CompletableFuture<>();
+
+        Task(String vertexSource, String fragmentSource) {
+            this.vertexSource = vertexSource;
+            this.fragmentSource = fragmentSource;
+        }
+    }
+
+    private static final Task STOP = new Task(null, null);
+
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final List<Long> contexts = new ArrayList<>();
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private volatile RuntimeException contextFailure;
+    private volatile boolean closed;
+
+    /**
+     * Create a compiler with up to one hidden context per thread, each sharing objects with a window
+     *
+     * @param window  the window whose context the programs are for
+     * @param threads the number of contexts to try to create
+     */
+    public SharedContextCompiler(Window window, int threads) {
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        for (int i = 0; i < threads; i++) {
+            long context = glfwCreateWindow(1, 1, "", NULL, window.getWindowID());
+            if (context == NULL) break;
+            contexts.add(context);
+        }
+        start(contexts.size(), new ContextFactory() {
+            @Override
+            public ProgramBinaryCache.Driver makeCurrent(int index) {
+                glfwMakeContextCurrent(contexts.get(index));
+                GL.createCapabilities();
+                return new ProgramBinaryCache.GLDriver();
+            }
+
+            @Override
+            public void release(int index) {
+                GL.setCapabilities(null);
+                glfwMakeContextCurrent(NULL);
+            }
+        });
+    }
+
+    SharedContextCompiler(int threads, ContextFactory factory) {
+        start(threads, factory);
+    }
+
+    private void start(int threads, ContextFactory factory) {
+        liveWorkers.set(threads);
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            Thread worker = new Thread(() -> work(index, factory), "shader-compiler-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private void work(int index, ContextFactory factory) {
+        try {
+            ProgramBinaryCache.Driver driver;
+            try {
+                driver = factory.makeCurrent(index);
+            } catch (RuntimeException e) {
+                contextFailure = e;
+                if (liveWorkers.decrementAndGet() == 0) failQueued();
+                return;
+            }
+            while (true) {
+                Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) return;
+
+                try {
+                    int program = driver.link(task.vertexSource, task.fragmentSource);
+                    try {
+                        ProgramBinaryCache.Binary binary = driver.getBinary(program);
+                        if (binary == null) throw new IllegalStateException("The driver returned no program binary");
+                        task.result.complete(binary);
+                    } finally {
+                        driver.delete(program);
+                    }
+                } catch (RuntimeException e) {
+                    task.result.completeExceptionally(e);
+                }
+            }
+        } finally {
+            factory.release(index);
+        }
+    }
+
+    /**
+     * Method to complete every queued task exceptionally, once no worker is left to take it
+     */
+    private void failQueued() {
+        Task task;
+        while ((task = queue.poll()) != null) {
+            if (task == STOP) continue;
+            task.result.completeExceptionally(
+                    new IllegalStateException("No shared context could be made current", contextFailure));
+        }
+    }
+
+    /**
+     * Method to queue a pair of sources to be linked on the next free context
+     *
+     * @param vertexSource   the vertex shader source
+     * @param fragmentSource the fragment shader source
+     * @return the binary of the linked program, completed exceptionally if it failed to link or no context could be
+     * made current to link it on
+     */
+    public CompletableFuture<ProgramBinaryCache.Binary> compile(String vertexSource, String fragmentSource) {
+        if (closed) throw new IllegalStateException("The compiler has been closed");
+        if (workers.isEmpty()) throw new IllegalStateException("No shared contexts are available");
+        Task task = new Task(vertexSource, fragmentSource);
+        queue.add(task);
+        //the last worker may have stopped after draining the queue but before the task was added
+        if (liveWorkers.get() == 0) failQueued();
+        return task.result;
+    }
+
+    /**
+     * Method to get the number of contexts programs are linked on
+     *
+     * @return the number of workers that have not failed to make their context current, which is zero if shared
+     * contexts are not available
+     */
+    public int getContextCount() {
+        return liveWorkers.get();
+    }
+
+    /**
+     * Method to finish the programs already queued, then stop the workers and destroy their contexts
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (int i = 0; i < workers.size(); i++) queue.add(STOP);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (long context : contexts) glfwDestroyWindow(context);
+        contexts.clear();
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.GL42.GL_COMPRESSED_RGBA_BPTC_UNORM;
+
+/**
+ * This class represents encoding RGBA8 images to GPU block compressed formats, which the GPU samples directly at a
+ * quarter (BC3, BC7) or an eighth (BC1) of the memory. Each 4x4 block is encoded independently, so rows of blocks are
+ * spread over a {@link ForkJoinPool}; blocks past the edge of an image repeat its last row and column.
+ * <p>
+ * Endpoints start from the principal axis of the block's colours and are refined by least squares against the chosen
+ * indices. BC7 is encoded in mode 6 only: one subset with 7.7.7.7 endpoints, a p-bit each and sixteen levels, which
+ * suits smooth colour and alpha; {@link #decode(Format, byte[], int, int)} likewise reads mode 6 blocks only.
+ */
+public final class BlockCompressor {
+
+    /**
+     * This enum represents the supported block compressed formats
+     */
+    public enum Format {
+        /**
+         * Two 5:6:5 colours and sixteen 2 bit indices; texels with alpha below 128 become transparent black.
+         */
+        BC1(8, GL_COMPRESSED_RGBA_S3TC_DXT1_EXT),
+        /**
+         * A BC1 colour block with a separate block of eight level alpha.
+         */
+        BC3(16, GL_COMPRESSED_RGBA_S3TC_DXT5_EXT),
+        /**
+         * Mode 6 of BC7: RGBA endpoints with sixteen levels between them.
+         */
+        BC7(16, GL_COMPRESSED_RGBA_BPTC_UNORM);
+
+        private final int blockBytes;
+        private final int glFormat;
+
+        Format(int blockBytes, int glFormat) {
+            this.blockBytes = blockBytes;
+            this.glFormat = glFormat;
+        }
+
+        public int getBlockBytes() {
+            return blockBytes;
+        }
+
+        /**
+         * Method to get the internal format to pass to glCompressedTexImage2D
+         *
+         * @return the GL internal format
+         */
+        public int getGLFormat() {
+            return glFormat;
+        }
+    }
+
+    private static final int[] BC7_WEIGHTS = {0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64};
+    private static final int REFINE_PASSES = 2;
+    private static final int POWER_ITERATIONS = 8;
+
+    private BlockCompressor() {
+    }
+
+    /**
+     * Method to get the size of an image once compressed
+     *
+     * @param format the format
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the size in bytes
+     */
+    public static int compressedSize(Format format, int width, int height) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * format.blockBytes;
+    }
+
+    /**
+     * Method to compress an image on the common pool
+     *
+     * @param format the format to compress to
+     * @param rgba   the image, four bytes per texel, from its position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the compressed blocks, in rows from the first row of the image
+     */
+    public static byte[] encode(Format format, ByteBuffer rgba, int width, int height) {
+        return encode(format, rgba, width, height, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method to compress an image
+     *
+     * @param format the format to compress to
+     * @param rgba   the image, four bytes per texel, from its position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param pool   the pool to encode rows of blocks on
+     * @return the compressed blocks, in rows from the first row of the image
+     */
+    public static byte[] encode(Format format, ByteBuffer rgba, int width, int height, ForkJoinPool pool) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Image must be at least 1x1");
+        if (rgba.remaining() < width * height * 4)
+            throw new IllegalArgumentException("Image data is smaller than " + width + "x" + height + " RGBA");
+        byte[] texels = new byte[width * height * 4];
+        rgba.duplicate().get(texels);
+
+        int blocksWide = (width + 3) / 4, blocksHigh = (height + 3) / 4;
+        byte[] blocks = new byte[blocksWide * blocksHigh * format.blockBytes];
+        ParallelRows.run(pool, blocksHigh, blocksWide * 16, (start, end) -> {
+            int[] block = new int[64];
+            for (int by = start; by < end; by++) {
+                for (int bx = 0; bx < blocksWide; bx++) {
+                    gather(texels, width, height, bx, by, block);
+                    int offset = (by * blocksWide + bx) * format.blockBytes;
+                    switch (format) {
+                        case BC1:
+                            encodeColour(block, blocks, offset, false);
+                            break;
+                        case BC3:
+                            encodeAlpha(block, blocks, offset);
+                            encodeColour(block, blocks, offset + 8, true);
+                            break;
+                        case BC7:
+                            encodeBC7(block, blocks, offset);
+                            break;
+                    }
+                }
+            }
+        });
+        return blocks;
+    }
+
+    /**
+     * Method to decompress blocks back to RGBA texels, as a GPU would sample them
+     *
+     * @param format the format of the blocks
+     * @param blocks the compressed blocks
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the image, four bytes per texel
+     */
+    public static byte[] decode(Format format, byte[] blocks, int width, int height) {
+        if (blocks.length < compressedSize(format, width, height))
+            throw new IllegalArgumentException("Block data is smaller than " + width + "x" + height + " " + format);
+        int blocksWide = (width + 3) / 4, blocksHigh = (height + 3) / 4;
+        byte[] texels = new byte[width * height * 4];
+        int[] block = new int[64];
+        for (int by = 0; by < blocksHigh; by++) {
+            for (int bx = 0; bx < blocksWide; bx++) {
+                int offset = (by * blocksWide + bx) * format.blockBytes;
+                switch (format) {
+                    case BC1:
+                        decodeColour(blocks, offset, false, block);
+                        break;
+                    case BC3:
+                        decodeColour(blocks, offset + 8, true, block);
+                        decodeAlpha(blocks, offset, block);
+                        break;
+                    case BC7:
+                        decodeBC7(blocks, offset, block);
+                        break;
+                }
+                for (int i = 0; i < 16; i++) {
+                    int x = bx * 4 + (i & 3), y = by * 4 + (i >> 2);
+                    if (x >= width || y >= height) continue;
+                    int out = (y * width + x) * 4;
+                    for (int c = 0; c < 4; c++) texels[out + c] = (byte) block[i * 4 + c];
+                }
+            }
+        }
+        return texels;
+    }
+
+    private static void gather(byte[] texels, int width, int height, int bx, int by, int[] block) {
+        for (int i = 0; i < 16; i++) {
+            int x = Math.min(width - 1, bx * 4 + (i & 3));
+            int y = Math.min(height - 1, by * 4 + (i >> 2));
+            int in = (y * width + x) * 4;
+            for (int c = 0; c < 4; c++) block[i * 4 + c] = texels[in + c] & 0xFF;
+        }
+    }
+
+    /* *****************************************************************************************************************
+     * BC1 and BC3 colour
+     */
+
+    private static void encodeColour(int[] block, byte[] out, int offset, boolean alwaysFourColour) {
+        boolean[] opaque = new boolean[16];
+        int opaqueCount = 0;
+        for (int i = 0; i < 16; i++) {
+            opaque[i] = alwaysFourColour || block[i * 4 + 3] >= 128;
+            if (opaque[i]) opaqueCount++;
+        }
+        if (opaqueCount == 0) {
+            //three colour mode with every texel transparent
+            putColourBlock(out, offset, 0, 0, 0xFFFFFFFF);
+            return;
+        }
+        boolean threeColour = opaqueCount < 16;
+
+        float[] mean = new float[3];
+        float[] axis = new float[3];
+        principalAxis(block, opaque, 3, mean, axis);
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            if (!opaque[i]) continue;
+            float t = 0;
+            for (int c = 0; c < 3; c++) t += (block[i * 4 + c] - mean[c]) * axis[c];
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        int c0 = pack565(mean, axis, max), c1 = pack565(mean, axis, min);
+
+        int[] palette = new int[16];
+        int[] indices = new int[16];
+        int bestC0 = 0, bestC1 = 0, bestIndices = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int pass = 0; pass <= REFINE_PASSES; pass++) {
+            //four colour mode needs c0 > c1 and three colour mode c0 <= c1
+            if (threeColour == c0 > c1) {
+                int swap = c0;
+                c0 = c1;
+                c1 = swap;
+            }
+            colourPalette(c0, c1, alwaysFourColour, palette);
+            boolean fourColour = alwaysFourColour || c0 > c1;
+            long error = 0;
+            int packed = 0;
+            for (int i = 0; i < 16; i++) {
+                if (!opaque[i]) {
+                    indices[i] = 3;
+                } else {
+                    int best = 0;
+                    long bestDistance = Long.MAX_VALUE;
+                    for (int p = 0; p < (fourColour ? 4 : 3); p++) {
+                        long distance = distance(block, i, palette, p, 3);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = p;
+                        }
+                    }
+                    indices[i] = best;
+                    error += bestDistance;
+                }
+                packed |= indices[i] << (2 * i);
+            }
+            if (error < bestError) {
+                bestError = error;
+                bestC0 = c0;
+                bestC1 = c1;
+                bestIndices = packed;
+            }
+            if (error == 0 || pass == REFINE_PASSES) break;
+
+            //refit both endpoints by least squares to the chosen indices
+            float[] weights = fourColour ? new float[]{1, 0, 2 / 3f, 1 / 3f} : new float[]{1, 0, 0.5f, 0};
+            float[] e0 = new float[3], e1 = new float[3];
+            if (!leastSquares(block, opaque, indices, weights, 3, e0, e1)) break;
+            int n0 = pack565(e0, null, 0), n1 = pack565(e1, null, 0);
+            if ((n0 == c0 && n1 == c1) || (n0 == c1 && n1 == c0)) break;
+            c0 = n0;
+            c1 = n1;
+        }
+        putColourBlock(out, offset, bestC0, bestC1, bestIndices);
+    }
+
+    private static void putColourBlock(byte[] out, int offset, int c0, int c1, int indices) {
+        out[offset] = (byte) c0;
+        out[offset + 1] = (byte) (c0 >>> 8);
+        out[offset + 2] = (byte) c1;
+        out[offset + 3] = (byte) (c1 >>> 8);
+        for (int i = 0; i < 4; i++) out[offset + 4 + i] = (byte) (indices >>> (8 * i));
+    }
+
+    private static int pack565(float[] origin, float[] axis, float t) {
+        int[] bits = {5, 6, 5};
+        int packed = 0;
+        for (int c = 0; c < 3; c++) {
+            float value = axis == null ? origin[c] : origin[c] + axis[c] * t;
+            int max = (1 << bits[c]) - 1;
+            int quantised = Math.round(Math.max(0, Math.min(255, value)) * max / 255f);
+            packed = (packed << bits[c]) | quantised;
+        }
+        return packed;
+    }
+
+    private static void colourPalette(int c0, int c1, boolean alwaysFourColour, int[] palette) {
+        unpack565(c0, palette, 0);
+        unpack565(c1, palette, 4);
+        for (int c = 0; c < 3; c++) {
+            int a = palette[c], b = palette[4 + c];
+            if (alwaysFourColour || c0 > c1) {
+                palette[8 + c] = (2 * a + b) / 3;
+                palette[12 + c] = (a + 2 * b) / 3;
+            } else {
+                palette[8 + c] = (a + b) / 2;
+                palette[12 + c] = 0;
+            }
+        }
+        palette[3] = palette[7] = palette[11] = 255;
+        palette[15] = alwaysFourColour || c0 > c1 ? 255 : 0;
+    }
+
+    private static void unpack565(int colour, int[] palette, int offset) {
+        int r = (colour >>> 11) & 31, g = (colour >>> 5) & 63, b = colour & 31;
+        palette[offset] = (r << 3) | (r >>> 2);
+        palette[offset + 1] = (g << 2) | (g >>> 4);
+        palette[offset + 2] = (b << 3) | (b >>> 2);
+    }
+
+    private static void decodeColour(byte[] blocks, int offset, boolean alwaysFourColour, int[] block) {
+        int c0 = (blocks[offset] & 0xFF) | (blocks[offset + 1] & 0xFF) << 8;
+        int c1 = (blocks[offset + 2] & 0xFF) | (blocks[offset + 3] & 0xFF) << 8;
+        int indices = (blocks[offset + 4] & 0xFF) | (blocks[offset + 5] & 0xFF) << 8
+                | (blocks[offset + 6] & 0xFF) << 16 | (blocks[offset + 7] & 0xFF) << 24;
+        int[] palette = new int[16];
+        colourPalette(c0, c1, alwaysFourColour, palette);
+        for (int i = 0; i < 16; i++) {
+            int index = (indices >>> (2 * i)) & 3;
+            System.arraycopy(palette, index * 4, block, i * 4, 4);
+        }
+    }
+
+    /* *****************************************************************************************************************
+     * BC3 alpha
+     */
+
+    private static void encodeAlpha(int[] block, byte[] out, int offset) {
+        int min = 255, max = 0;
+        for (int i = 0; i < 16; i++) {
+            min = Math.min(min, block[i * 4 + 3]);
+            max = Math.max(max, block[i * 4 + 3]);
+        }
+        out[offset] = (byte) max;
+        out[offset + 1] = (byte) min;
+        if (max == min) return;
+
+        int[] palette = alphaPalette(max, min);
+        long packed = 0;
+        for (int i = 0; i < 16; i++) {
+            int alpha = block[i * 4 + 3], best = 0;
+            for (int p = 1; p < 8; p++) {
+                if (Math.abs(palette[p] - alpha) < Math.abs(palette[best] - alpha)) best = p;
+            }
+            packed |= (long) best << (3 * i);
+        }
+        for (int i = 0; i < 6; i++) out[offset + 2 + i] = (byte) (packed >>> (8 * i));
+    }
+
+    private static int[] alphaPalette(int a0, int a1) {
+        int[] palette = new int[8];
+        palette[0] = a0;
+        palette[1] = a1;
+        if (a0 > a1) {
+            for (int p = 2; p < 8; p++) palette[p] = ((8 - p) * a0 + (p - 1) * a1) / 7;
+        } else {
+            for (int p = 2; p < 6; p++) palette[p] = ((6 - p) * a0 + (p - 1) * a1) / 5;
+            palette[6] = 0;
+            palette[7] = 255;
+        }
+        return palette;
+    }
+
+    private static void decodeAlpha(byte[] blocks, int offset, int[] block) {
+        int[] palette = alphaPalette(blocks[offset] & 0xFF, blocks[offset + 1] & 0xFF);
+        long packed = 0;
+        for (int i = 0; i < 6; i++) packed |= (long) (blocks[offset + 2 + i] & 0xFF) << (8 * i);
+        for (int i = 0; i < 16; i++) block[i * 4 + 3] = palette[(int) (packed >>> (3 * i)) & 7];
+    }
+
+    /* *****************************************************************************************************************
+     * BC7 mode 6
+     */
+
+    private static void encodeBC7(int[] block, byte[] out, int offset) {
+        boolean[] all = new boolean[16];
+        Arrays.fill(all, true);
+        float[] mean = new float[4];
+        float[] axis = new float[4];
+        principalAxis(block, all, 4, mean, axis);
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            float t = 0;
+            for (int c = 0; c < 4; c++) t += (block[i * 4 + c] - mean[c]) * axis[c];
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        float[] e0 = new float[4], e1 = new float[4];
+        for (int c = 0; c < 4; c++) {
+            e0[c] = mean[c] + axis[c] * min;
+            e1[c] = mean[c] + axis[c] * max;
+        }
+
+        float[] weights = new float[16];
+        for (int w = 0; w < 16; w++) weights[w] = BC7_WEIGHTS[w] / 64f;
+        int[] q0 = new int[5], q1 = new int[5];
+        int[] indices = new int[16];
+        int[] bestQ0 = new int[5], bestQ1 = new int[5], bestIndices = new int[16];
+        int[] palette = new int[64];
+        long bestError = Long.MAX_VALUE;
+        for (int pass = 0; pass <= REFINE_PASSES; pass++) {
+            quantiseBC7(e0, q0);
+            quantiseBC7(e1, q1);
+            bc7Palette(q0, q1, palette);
+            //project each texel onto the line between the endpoints and search the levels either side of it
+            float dr = palette[60] - palette[0], dg = palette[61] - palette[1];
+            float db = palette[62] - palette[2], da = palette[63] - palette[3];
+            float lengthSquared = dr * dr + dg * dg + db * db + da * da;
+            long error = 0;
+            for (int i = 0; i < 16; i++) {
+                int estimate = 0;
+                if (lengthSquared > 0) {
+                    float t = ((block[i * 4] - palette[0]) * dr + (block[i * 4 + 1] - palette[1]) * dg
+                            + (block[i * 4 + 2] - palette[2]) * db + (block[i * 4 + 3] - palette[3]) * da)
+                            / lengthSquared;
+                    estimate = Math.max(0, Math.min(15, Math.round(t * 15)));
+                }
+                int best = estimate;
+                long bestDistance = Long.MAX_VALUE;
+                for (int p = Math.max(0, estimate - 1); p <= Math.min(15, estimate + 1); p++) {
+                    long distance = distance(block, i, palette, p, 4);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = p;
+                    }
+                }
+                indices[i] = best;
+                error += bestDistance;
+            }
+            if (error < bestError) {
+                bestError = error;
+                System.arraycopy(q0, 0, bestQ0, 0, 5);
+                System.arraycopy(q1, 0, bestQ1, 0, 5);
+                System.arraycopy(indices, 0, bestIndices, 0, 16);
+            }
+            if (error == 0 || pass == REFINE_PASSES) break;
+            //weights give the share of the second endpoint, so the first is fitted against their complement
+            float[] complement = new float[16];
+            for (int w = 0; w < 16; w++) complement[w] = 1 - weights[w];
+            if (!leastSquares(block, all, indices, complement, 4, e0, e1)) break;
+        }
+
+        //the anchor index is stored without its top bit, so it must be in the lower half
+        if (bestIndices[0] >= 8) {
+            int[] swap = bestQ0;
+            bestQ0 = bestQ1;
+            bestQ1 = swap;
+            for (int i = 0; i < 16; i++) bestIndices[i] = 15 - bestIndices[i];
+        }
+
+        int position = putBits(out, offset, 0, 7, 1 << 6);
+        for (int c = 0; c < 4; c++) {
+            position = putBits(out, offset, position, 7, bestQ0[c]);
+            position = putBits(out, offset, position, 7, bestQ1[c]);
+        }
+        position = putBits(out, offset, position, 1, bestQ0[4]);
+        position = putBits(out, offset, position, 1, bestQ1[4]);
+        position = putBits(out, offset, position, 3, bestIndices[0]);
+        for (int i = 1; i < 16; i++) position = putBits(out, offset, position, 4, bestIndices[i]);
+    }
+
+    /**
+     * Method to quantise an endpoint to seven bits per channel and a shared p-bit, choosing the p-bit that lands
+     * closest
+     */
+    private static void quantiseBC7(float[] endpoint, int[] quantised) {
+        long bestError = Long.MAX_VALUE;
+        for (int p = 0; p < 2; p++) {
+            long error = 0;
+            int[] candidate = new int[4];
+            for (int c = 0; c < 4; c++) {
+                float value = Math.max(0, Math.min(255, endpoint[c]));
+                candidate[c] = Math.max(0, Math.min(127, Math.round((value - p) / 2)));
+                float difference = (candidate[c] << 1 | p) - value;
+                error += (long) (difference * difference * 16);
+            }
+            if (error < bestError) {
+                bestError = error;
+                System.arraycopy(candidate, 0, quantised, 0, 4);
+                quantised[4] = p;
+            }
+        }
+    }
+
+    private static void bc7Palette(int[] q0, int[] q1, int[] palette) {
+        for (int c = 0; c < 4; c++) {
+            int a = q0[c] << 1 | q0[4], b = q1[c] << 1 | q1[4];
+            for (int p = 0; p < 16; p++) {
+                palette[p * 4 + c] = ((64 - BC7_WEIGHTS[p]) * a + BC7_WEIGHTS[p] * b + 32) >> 6;
+            }
+        }
+    }
+
+    private static void decodeBC7(byte[] blocks, int offset, int[] block) {
+        if ((blocks[offset] & 0x7F) != 1 << 6)
+            throw new IllegalArgumentException("Only BC7 mode 6 blocks can be decoded");
+        int[] q0 = new int[5], q1 = new int[5];
+        int position = 7;
+        for (int c = 0; c < 4; c++) {
+            q0[c] = getBits(blocks, offset, position, 7);
+            q1[c] = getBits(blocks, offset, position + 7, 7);
+            position += 14;
+        }
+        q0[4] = getBits(blocks, offset, position++, 1);
+        q1[4] = getBits(blocks, offset, position++, 1);
+        int[] palette = new int[64];
+        bc7Palette(q0, q1, palette);
+        for (int i = 0; i < 16; i++) {
+            int bits = i == 0 ? 3 : 4;
+            int index = getBits(blocks, offset, position, bits);
+            position += bits;
+            System.arraycopy(palette, index * 4, block, i * 4, 4);
+        }
+    }
+
+    private static int putBits(byte[] out, int offset, int position, int count, int value) {
+        for (int i = 0; i < count; i++, position++) {
+            if (((value >>> i) & 1) != 0) out[offset + (position >>> 3)] |= 1 << (position & 7);
+        }
+        return position;
+    }
+
+    private static int getBits(byte[] in, int offset, int position, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++, position++) {
+            value |= ((in[offset + (position >>> 3)] >>> (position & 7)) & 1) << i;
+        }
+        return value;
+    }
+
+    /* *****************************************************************************************************************
+     * Shared fitting
+     */
+
+    private static long distance(int[] block, int texel, int[] palette, int entry, int channels) {
+        long distance = 0;
+        for (int c = 0; c < channels; c++) {
+            int difference = block[texel * 4 + c] - palette[entry * 4 + c];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    /**
+     * Method to find the mean and the direction of greatest spread of the selected texels by power iteration on their
+     * covariance
+     */
+    private static void principalAxis(int[] block, boolean[] selected, int channels, float[] mean, float[] axis) {
+        int count = 0;
+        for (int i = 0; i < 16; i++) {
+            if (!selected[i]) continue;
+            for (int c = 0; c < channels; c++) mean[c] += block[i * 4 + c];
+            count++;
+        }
+        for (int c = 0; c < channels; c++) mean[c] /= count;
+
+        float[] covariance = new float[channels * channels];
+        for (int i = 0; i < 16; i++) {
+            if (!selected[i]) continue;
+            for (int a = 0; a < channels; a++) {
+                for (int b = 0; b < channels; b++) {
+                    covariance[a * channels + b] += (block[i * 4 + a] - mean[a]) * (block[i * 4 + b] - mean[b]);
+                }
+            }
+        }
+
+        for (int c = 0; c < channels; c++) axis[c] = 1;
+        float[] next = new float[channels];
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            float length = 0;
+            for (int a = 0; a < channels; a++) {
+                next[a] = 0;
+                for (int b = 0; b < channels; b++) next[a] += covariance[a * channels + b] * axis[b];
+                length += next[a] * next[a];
+            }
+            if (length == 0) break;
+            length = (float) Math.sqrt(length);
+            for (int c = 0; c < channels; c++) axis[c] = next[c] / length;
+        }
+        float length = 0;
+        for (int c = 0; c < channels; c++) length += axis[c] * axis[c];
+        length = (float) Math.sqrt(length);
+        for (int c = 0; c < channels; c++) axis[c] /= length;
+    }
+
+    /**
+     * Method to fit two endpoints so that each selected texel is best matched by weight * e0 + (1 - weight) * e1 for
+     * the weight of its index
+     *
+     * @return false if the indices do not determine both endpoints
+     */
+    private static boolean leastSquares(int[] block, boolean[] selected, int[] indices, float[] weights, int channels,
+                                        float[] e0, float[] e1) {
+        float aa = 0, ab = 0, bb = 0;
+        float[] ax = new float[channels], bx = new float[channels];
+        for (int i = 0; i < 16; i++) {
+            if (!selected[i]) continue;
+            float a = weights[indices[i]], b = 1 - a;
+            aa += a * a;
+            ab += a * b;
+            bb += b * b;
+            for (int c = 0; c < channels; c++) {
+                ax[c] += a * block[i * 4 + c];
+                bx[c] += b * block[i * 4 + c];
+            }
+        }
+        float determinant = aa * bb - ab * ab;
+        if (Math.abs(determinant) < 1e-6f) return false;
+        for (int c = 0; c < channels; c++) {
+            e0[c] = (bb * ax[c] - ab * bx[c]) / determinant;
+            e1[c] = (aa * bx[c] - ab * ax[c]) / determinant;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import com.edenrump.gpu.objects.Texture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
+
+/**
+ * This class represents an image compressed with a {@link BlockCompressor}, optionally with its full mip chain, ready
+ * to upload with glCompressedTexImage2D.
+ */
+public class CompressedTexture {
+
+    private final BlockCompressor.Format format;
+    private final int[] widths;
+    private final int[] heights;
+    private final byte[][] levels;
+
+    CompressedTexture(BlockCompressor.Format format, int[] widths, int[] heights, byte[][] levels) {
+        this.format = format;
+        this.widths = widths;
+        this.heights = heights;
+        this.levels = levels;
+    }
+
+    /**
+     * Method to compress a single image
+     *
+     * @param format the format to compress to
+     * @param rgba   the image, four bytes per texel, from its position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the compressed texture, with one level
+     */
+    public static CompressedTexture compress(BlockCompressor.Format format, ByteBuffer rgba, int width, int height) {
+        return new CompressedTexture(format, new int[]{width}, new int[]{height},
+                new byte[][]{BlockCompressor.encode(format, rgba, width, height)});
+    }
+
+    /**
+     * Method to compress every level of a mip chain
+     *
+     * @param format the format to compress to
+     * @param chain  the mip chain
+     * @param pool   the pool to encode rows of blocks on
+     * @return the compressed texture, with as many levels as the chain
+     */
+    public static CompressedTexture compress(BlockCompressor.Format format, MipChain chain, ForkJoinPool pool) {
+        int count = chain.getLevelCount();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        byte[][] levels = new byte[count][];
+        for (int level = 0; level < count; level++) {
+            widths[level] = chain.getWidth(level);
+            heights[level] = chain.getHeight(level);
+            levels[level] = BlockCompressor.encode(format, ByteBuffer.wrap(chain.getLevelArray(level)),
+                    widths[level], heights[level], pool);
+        }
+        return new CompressedTexture(format, widths, heights, levels);
+    }
+
+    /**
+     * Method to create a texture holding every level, sampled trilinearly if there is more than one
+     *
+     * @return the texture
+     */
+    public Texture createTexture() {
+        Texture texture = new Texture();
+        texture.bind();
+        texture.setParameter(GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+        texture.setParameter(GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+        upload(texture);
+        texture.setSampling(levels.length > 1 ? Texture.Sampling.TRILINEAR : Texture.Sampling.BILINEAR);
+        texture.unbind();
+        return texture;
+    }
+
+    /**
+     * Method to upload every level to a texture, replacing its image. The texture must be bound.
+     *
+     * @param texture the texture
+     */
+    public void upload(Texture texture) {
+        for (int level = 0; level < levels.length; level++) {
+            ByteBuffer blocks = ByteBuffer.allocateDirect(levels[level].length);
+            blocks.put(levels[level]).flip();
+            texture.uploadCompressedMipLevel(level, format.getGLFormat(), widths[level], heights[level], blocks);
+        }
+        texture.setMaxLevel(levels.length - 1);
+    }
+
+    /**
+     * Method to decompress a level, as a GPU would sample it
+     *
+     * @param level the level, from 0 for the full size image
+     * @return the RGBA texels of the level
+     */
+    public byte[] decode(int level) {
+        return BlockCompressor.decode(format, levels[level], widths[level], heights[level]);
+    }
+
+    public BlockCompressor.Format getFormat() {
+        return format;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * Method to get the compressed blocks of a level
+     *
+     * @param level the level, from 0 for the full size image
+     * @return a read-only view of the blocks
+     */
+    public ByteBuffer getLevel(int level) {
+        return ByteBuffer.wrap(levels[level]).asReadOnlyBuffer();
+    }
+
+    byte[] getLevelArray(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Method to get the size of every level together
+     *
+     * @return the size in bytes
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        for (byte[] level : levels) size += level.length;
+        return size;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.edenrump.graphic.texture.MipChainFile.readFully;
+import static com.edenrump.graphic.texture.MipChainFile.writeFully;
+
+/**
+ * This class represents a file of pre-compressed textures, so that images are block compressed once rather than on
+ * every load. All values are little endian.
+ * <pre>
+ * header    magic, version, format, width, height, level count, reserved, padded to {@value #HEADER_SIZE} bytes
+ * levels    the blocks of each level in turn, from the full size image down
+ * </pre>
+ */
+public final class CompressedTextureFile {
+
+    static final int MAGIC = 0x54434E45; //"ENCT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private CompressedTextureFile() {
+    }
+
+    /**
+     * Method to write a compressed texture to file
+     *
+     * @param texture the texture to write
+     * @param file    the file to write, replaced if it exists
+     * @throws IOException if the file could not be written
+     */
+    public static void write(CompressedTexture texture, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(texture.getFormat().ordinal()).putInt(texture.getWidth(0))
+                .putInt(texture.getHeight(0)).putInt(texture.getLevelCount());
+        header.clear();
+
+        //write next to the target and move into place, so that a half written cache is never read
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (int level = 0; level < texture.getLevelCount(); level++) {
+                writeFully(channel, ByteBuffer.wrap(texture.getLevelArray(level)));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Method to read a compressed texture from file
+     *
+     * @param file the file to read
+     * @return the compressed texture
+     * @throws IOException if the file could not be read or is not a compressed texture
+     */
+    public static CompressedTexture read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, file);
+            if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a compressed texture");
+            if (header.getInt(4) != VERSION)
+                throw new IOException("Unsupported compressed texture version " + header.getInt(4));
+            int format = header.getInt(8);
+            int width = header.getInt(12);
+            int height = header.getInt(16);
+            int count = header.getInt(20);
+            if (format < 0 || format >= BlockCompressor.Format.values().length || width < 1 || height < 1
+                    || count < 1 || count > MipChain.levelCount(width, height)) {
+                throw new IOException(file + " has a corrupt compressed texture header");
+            }
+
+            BlockCompressor.Format blockFormat = BlockCompressor.Format.values()[format];
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+            byte[][] levels = new byte[count][];
+            for (int level = 0; level < count; level++) {
+                widths[level] = Math.max(1, width >> level);
+                heights[level] = Math.max(1, height >> level);
+                levels[level] = new byte[BlockCompressor.compressedSize(blockFormat, widths[level], heights[level])];
+                readFully(channel, ByteBuffer.wrap(levels[level]), file);
+            }
+            return new CompressedTexture(blockFormat, widths, heights, levels);
+        }
+    }
+
+    /**
+     * Method to get the compressed texture of an image file, reading it from a cache file if one newer than the image
+     * was written in the same format, or compressing the image and writing the cache otherwise
+     *
+     * @param image   the image file
+     * @param cache   the cache file
+     * @param format  the format to compress to
+     * @param mipmaps true to compress a full, gamma-correct box filtered mip chain, false for the image alone
+     * @return the compressed texture
+     * @throws IOException if the image could not be decoded or the cache could not be written
+     */
+    public static CompressedTexture loadOrCompress(Path image, Path cache, BlockCompressor.Format format,
+                                                   boolean mipmaps) throws IOException {
+        if (Files.exists(cache)
+                && Files.getLastModifiedTime(cache).compareTo(Files.getLastModifiedTime(image)) >= 0) {
+            try {
+                CompressedTexture texture = read(cache);
+                int levels = mipmaps ? MipChain.levelCount(texture.getWidth(0), texture.getHeight(0)) : 1;
+                if (texture.getFormat() == format && texture.getLevelCount() == levels) return texture;
+            } catch (IOException e) {
+                //unreadable caches are compressed again below
+            }
+        }
+        int[] size = new int[2];
+        ByteBuffer texels = ByteBuffer.wrap(MipChainFile.decode(image, size));
+        CompressedTexture texture;
+        if (mipmaps) {
+            MipChain chain = MipChain.generate(texels, size[0], size[1], MipChain.Filter.BOX, true);
+            texture = CompressedTexture.compress(format, chain, ForkJoinPool.commonPool());
+        } else {
+            texture = CompressedTexture.compress(format, texels, size[0], size[1]);
+        }
+        write(texture, cache);
+        return texture;
+    }
+}
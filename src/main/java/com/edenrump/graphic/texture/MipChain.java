@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import com.edenrump.gpu.objects.Texture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
+
+/**
+ * This class represents a full chain of mipmap levels of an RGBA8 image, from the image itself down to 1x1. Each level
+ * is filtered from the one above it in linear light, so that sRGB images do not darken as they shrink, using a
+ * separable filter whose rows are spread over a {@link ForkJoinPool}. Levels of odd size are resampled by area rather
+ * than by dropping the last row or column.
+ */
+public class MipChain {
+
+    /**
+     * This enum represents the filter used to shrink one level to the next
+     */
+    public enum Filter {
+        /**
+         * Average of the covered texels. Fast and never rings, but slightly blurry.
+         */
+        BOX,
+        /**
+         * Kaiser windowed sinc over three destination texels either side. Sharper than a box, at the cost of mild
+         * ringing at hard edges, which is clamped.
+         */
+        KAISER
+    }
+
+    private static final int CHANNELS = 4;
+    private static final float KAISER_RADIUS = 3;
+    private static final float KAISER_ALPHA = 4;
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            float c = i / 255f;
+            SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private final int[] widths;
+    private final int[] heights;
+    private final byte[][] levels;
+    private final Filter filter;
+    private final boolean srgb;
+
+    MipChain(int[] widths, int[] heights, byte[][] levels, Filter filter, boolean srgb) {
+        this.widths = widths;
+        this.heights = heights;
+        this.levels = levels;
+        this.filter = filter;
+        this.srgb = srgb;
+    }
+
+    /**
+     * Method to generate the mip chain of an image on the common pool
+     *
+     * @param rgba   the image, four bytes per texel
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param filter the filter to shrink levels with
+     * @param srgb   true if the colour channels are sRGB encoded, false if they are linear
+     * @return the mip chain
+     */
+    public static MipChain generate(ByteBuffer rgba, int width, int height, Filter filter, boolean srgb) {
+        return generate(rgba, width, height, filter, srgb, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method to generate the mip chain of an image
+     *
+     * @param rgba   the image, four bytes per texel, from its position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param filter the filter to shrink levels with
+     * @param srgb   true if the colour channels are sRGB encoded, false if they are linear
+     * @param pool   the pool to filter rows on
+     * @return the mip chain
+     */
+    public static MipChain generate(ByteBuffer rgba, int width, int height, Filter filter, boolean srgb,
+                                    ForkJoinPool pool) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Image must be at least 1x1");
+        if (rgba.remaining() < width * height * CHANNELS)
+            throw new IllegalArgumentException("Image data is smaller than " + width + "x" + height + " RGBA");
+
+        int count = levelCount(width, height);
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        byte[][] levels = new byte[count][];
+        widths[0] = width;
+        heights[0] = height;
+        levels[0] = new byte[width * height * CHANNELS];
+        rgba.duplicate().get(levels[0]);
+
+        float[] source = toLinear(levels[0], srgb);
+        for (int level = 1; level < count; level++) {
+            int sw = widths[level - 1], sh = heights[level - 1];
+            int dw = Math.max(1, sw / 2), dh = Math.max(1, sh / 2);
+            widths[level] = dw;
+            heights[level] = dh;
+
+            Kernel horizontal = new Kernel(sw, dw, filter);
+            Kernel vertical = new Kernel(sh, dh, filter);
+            float[] across = new float[dw * sh * CHANNELS];
+            float[] destination = new float[dw * dh * CHANNELS];
+            byte[] encoded = new byte[dw * dh * CHANNELS];
+
+            final float[] from = source;
+            ParallelRows.run(pool, sh, dw, (start, end) -> {
+                for (int y = start; y < end; y++) horizontal.applyToRow(from, y * sw, across, y * dw);
+            });
+            ParallelRows.run(pool, dh, dw, (start, end) -> {
+                for (int y = start; y < end; y++) {
+                    int first = vertical.first[y], taps = vertical.taps[y];
+                    for (int x = 0; x < dw; x++) {
+                        int out = (y * dw + x) * CHANNELS;
+                        float r = 0, g = 0, b = 0, a = 0;
+                        for (int t = 0; t < taps; t++) {
+                            float weight = vertical.weights[first + t];
+                            int in = (vertical.indices[first + t] * dw + x) * CHANNELS;
+                            r += weight * across[in];
+                            g += weight * across[in + 1];
+                            b += weight * across[in + 2];
+                            a += weight * across[in + 3];
+                        }
+                        destination[out] = clamp(r);
+                        destination[out + 1] = clamp(g);
+                        destination[out + 2] = clamp(b);
+                        destination[out + 3] = clamp(a);
+                    }
+                    encode(destination, encoded, y * dw * CHANNELS, dw, srgb);
+                }
+            });
+
+            levels[level] = encoded;
+            source = destination;
+        }
+        return new MipChain(widths, heights, levels, filter, srgb);
+    }
+
+    /**
+     * Method to get the number of levels in a full chain for an image
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the number of levels, down to and including 1x1
+     */
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Method to create a texture holding every level, sampled trilinearly
+     *
+     * @return the texture
+     */
+    public Texture createTexture() {
+        Texture texture = new Texture();
+        texture.bind();
+        texture.setParameter(GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+        texture.setParameter(GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+        upload(texture);
+        texture.setSampling(Texture.Sampling.TRILINEAR);
+        texture.unbind();
+        return texture;
+    }
+
+    /**
+     * Method to upload every level to a texture, replacing its image. The texture must be bound.
+     *
+     * @param texture the texture
+     */
+    public void upload(Texture texture) {
+        for (int level = 0; level < levels.length; level++) {
+            texture.uploadMipLevel(level, GL_RGBA8, widths[level], heights[level], GL_RGBA, getLevel(level));
+        }
+        texture.setMaxLevel(levels.length - 1);
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * Method to get the texels of a level
+     *
+     * @param level the level, from 0 for the full size image
+     * @return a direct buffer of the level's RGBA texels
+     */
+    public ByteBuffer getLevel(int level) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(levels[level].length);
+        buffer.put(levels[level]).flip();
+        return buffer;
+    }
+
+    byte[] getLevelArray(int level) {
+        return levels[level];
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public boolean isSRGB() {
+        return srgb;
+    }
+
+    private static float[] toLinear(byte[] rgba, boolean srgb) {
+        float[] linear = new float[rgba.length];
+        for (int i = 0; i < rgba.length; i += CHANNELS) {
+            for (int c = 0; c < 3; c++) {
+                int value = rgba[i + c] & 0xFF;
+                linear[i + c] = srgb ? SRGB_TO_LINEAR[value] : value / 255f;
+            }
+            linear[i + 3] = (rgba[i + 3] & 0xFF) / 255f;
+        }
+        return linear;
+    }
+
+    private static void encode(float[] linear, byte[] rgba, int offset, int texels, boolean srgb) {
+        for (int i = offset, end = offset + texels * CHANNELS; i < end; i += CHANNELS) {
+            for (int c = 0; c < 3; c++) {
+                float value = linear[i + c];
+                if (srgb) {
+                    value = value <= 0.0031308f ? value * 12.92f : (float) (1.055 * Math.pow(value, 1 / 2.4) - 0.055);
+                }
+                rgba[i + c] = (byte) (int) (value * 255 + 0.5f);
+            }
+            rgba[i + 3] = (byte) (int) (linear[i + 3] * 255 + 0.5f);
+        }
+    }
+
+    private static float clamp(float value) {
+        return value < 0 ? 0 : Math.min(value, 1);
+    }
+
+    /**
+     * This class represents the taps of a one dimensional filter from a source axis to a destination axis, clamped to
+     * the edge
+     */
+    static final class Kernel {
+        final int[] first;
+        final int[] taps;
+        final int[] indices;
+        final float[] weights;
+
+        Kernel(int sourceSize, int destinationSize, Filter filter) {
+            first = new int[destinationSize];
+            taps = new int[destinationSize];
+            float scale = (float) sourceSize / destinationSize;
+            float radius = filter == Filter.BOX ? scale / 2 : KAISER_RADIUS * scale;
+            int maxTaps = (int) Math.ceil(2 * radius) + 2;
+            int[] indices = new int[destinationSize * maxTaps];
+            float[] weights = new float[destinationSize * maxTaps];
+
+            int count = 0;
+            for (int d = 0; d < destinationSize; d++) {
+                float centre = (d + 0.5f) * scale;
+                int start = (int) Math.floor(centre - radius);
+                int end = (int) Math.ceil(centre + radius);
+                first[d] = count;
+                float total = 0;
+                for (int s = start; s < end; s++) {
+                    float weight = filter == Filter.BOX
+                            ? Math.min(s + 1, centre + radius) - Math.max(s, centre - radius)
+                            : kaiser((s + 0.5f - centre) / scale);
+                    if (weight == 0) continue;
+                    indices[count] = Math.max(0, Math.min(sourceSize - 1, s));
+                    weights[count] = weight;
+                    total += weight;
+                    count++;
+                }
+                taps[d] = count - first[d];
+                for (int t = first[d]; t < count; t++) weights[t] /= total;
+            }
+            this.indices = indices;
+            this.weights = weights;
+        }
+
+        void applyToRow(float[] source, int sourceTexel, float[] destination, int destinationTexel) {
+            for (int d = 0; d < first.length; d++) {
+                float r = 0, g = 0, b = 0, a = 0;
+                for (int t = first[d], end = first[d] + taps[d]; t < end; t++) {
+                    int in = (sourceTexel + indices[t]) * CHANNELS;
+                    float weight = weights[t];
+                    r += weight * source[in];
+                    g += weight * source[in + 1];
+                    b += weight * source[in + 2];
+                    a += weight * source[in + 3];
+                }
+                int out = (destinationTexel + d) * CHANNELS;
+                destination[out] = r;
+                destination[out + 1] = g;
+                destination[out + 2] = b;
+                destination[out + 3] = a;
+            }
+        }
+
+        private static float kaiser(float x) {
+            if (Math.abs(x) >= KAISER_RADIUS) return 0;
+            float ratio = x / KAISER_RADIUS;
+            double window = bessel0(KAISER_ALPHA * Math.sqrt(1 - ratio * ratio)) / bessel0(KAISER_ALPHA);
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            return (float) (sinc * window);
+        }
+
+        private static double bessel0(double x) {
+            double sum = 1, term = 1, half = x / 2;
+            for (int k = 1; term > sum * 1e-12; k++) {
+                term *= (half / k) * (half / k);
+                sum += term;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * This class represents a file of baked mip chains, so that the chain of a texture is filtered once, offline or on
+ * first load, rather than every time the texture is loaded. All values are little endian.
+ * <pre>
+ * header    magic, version, width, height, level count, filter, flags, reserved, padded to {@value #HEADER_SIZE} bytes
+ * levels    the RGBA texels of each level in turn, from the full size image down
+ * </pre>
+ */
+public final class MipChainFile {
+
+    static final int MAGIC = 0x434D454E; //"NEMC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int FLAG_SRGB = 1;
+
+    private MipChainFile() {
+    }
+
+    /**
+     * Method to write a mip chain to file
+     *
+     * @param chain the chain to write
+     * @param file  the file to write, replaced if it exists
+     * @throws IOException if the file could not be written
+     */
+    public static void write(MipChain chain, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(chain.getWidth(0)).putInt(chain.getHeight(0))
+                .putInt(chain.getLevelCount()).putInt(chain.getFilter().ordinal()).putInt(chain.isSRGB() ? FLAG_SRGB : 0);
+        header.clear();
+
+        //write next to the target and move into place, so that a half written cache is never read
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (int level = 0; level < chain.getLevelCount(); level++) {
+                writeFully(channel, ByteBuffer.wrap(chain.getLevelArray(level)));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Method to read a mip chain from file
+     *
+     * @param file the file to read
+     * @return the mip chain
+     * @throws IOException if the file could not be read or is not a mip chain
+     */
+    public static MipChain read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, file);
+            if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a mip chain");
+            if (header.getInt(4) != VERSION) throw new IOException("Unsupported mip chain version " + header.getInt(4));
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int count = header.getInt(16);
+            int filter = header.getInt(20);
+            int flags = header.getInt(24);
+            if (width < 1 || height < 1 || count != MipChain.levelCount(width, height)
+                    || filter < 0 || filter >= MipChain.Filter.values().length) {
+                throw new IOException(file + " has a corrupt mip chain header");
+            }
+
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+            byte[][] levels = new byte[count][];
+            for (int level = 0; level < count; level++) {
+                widths[level] = Math.max(1, width >> level);
+                heights[level] = Math.max(1, height >> level);
+                levels[level] = new byte[widths[level] * heights[level] * 4];
+                readFully(channel, ByteBuffer.wrap(levels[level]), file);
+            }
+            return new MipChain(widths, heights, levels, MipChain.Filter.values()[filter], (flags & FLAG_SRGB) != 0);
+        }
+    }
+
+    /**
+     * Method to get the mip chain of an image file, reading it from a cache file if one newer than the image was baked
+     * with the same settings, or generating it and writing the cache otherwise
+     *
+     * @param image  the image file
+     * @param cache  the cache file
+     * @param filter the filter to shrink levels with
+     * @param srgb   true if the colour channels are sRGB encoded
+     * @return the mip chain
+     * @throws IOException if the image could not be decoded or the cache could not be written
+     */
+    public static MipChain loadOrBake(Path image, Path cache, MipChain.Filter filter, boolean srgb)
+            throws IOException {
+        if (Files.exists(cache)
+                && Files.getLastModifiedTime(cache).compareTo(Files.getLastModifiedTime(image)) >= 0) {
+            try {
+                MipChain chain = read(cache);
+                if (chain.getFilter() == filter && chain.isSRGB() == srgb) return chain;
+            } catch (IOException e) {
+                //unreadable caches are baked again below
+            }
+        }
+        MipChain chain = bake(image, filter, srgb);
+        write(chain, cache);
+        return chain;
+    }
+
+    /**
+     * Method to decode an image file and generate its mip chain
+     *
+     * @param image  the image file
+     * @param filter the filter to shrink levels with
+     * @param srgb   true if the colour channels are sRGB encoded
+     * @return the mip chain
+     * @throws IOException if the image could not be decoded
+     */
+    public static MipChain bake(Path image, MipChain.Filter filter, boolean srgb) throws IOException {
+        int[] size = new int[2];
+        byte[] texels = decode(image, size);
+        return MipChain.generate(ByteBuffer.wrap(texels), size[0], size[1], filter, srgb);
+    }
+
+    /**
+     * Method to decode an image file to RGBA texels, bottom row first
+     *
+     * @param image the image file
+     * @param size  an array to store the width and height of the image in
+     * @return the texels of the image
+     * @throws IOException if the image could not be decoded
+     */
+    static byte[] decode(Path image, int[] size) throws IOException {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer comp = stack.mallocInt(1);
+
+            stbi_set_flip_vertically_on_load(true);
+            ByteBuffer pixels = stbi_load(image.toString(), w, h, comp, 4);
+            if (pixels == null) throw new IOException("Failed to load a texture file: " + image
+                    + System.lineSeparator() + stbi_failure_reason());
+            try {
+                size[0] = w.get(0);
+                size[1] = h.get(0);
+                byte[] texels = new byte[size[0] * size[1] * 4];
+                pixels.get(texels);
+                return texels;
+            } finally {
+                stbi_image_free(pixels);
+            }
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException(file + " ends before its mip chain does");
+        }
+    }
+}
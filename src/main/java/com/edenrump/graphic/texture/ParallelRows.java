@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class represents work over the rows of an image, split in half on a {@link ForkJoinPool} until each part is
+ * small enough to run in one task. Rows are independent, so the result never depends on how the work was split.
+ */
+final class ParallelRows {
+
+    //parts below this many elements run in one task
+    private static final int ELEMENTS_PER_TASK = 16 * 1024;
+
+    /**
+     * This interface represents the work on a range of rows
+     */
+    interface RowRange {
+        void run(int start, int end);
+    }
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Method to run work over every row and wait for it to finish
+     *
+     * @param pool      the pool to run on
+     * @param rows      the number of rows
+     * @param rowLength the number of elements in a row, to judge how finely to split
+     * @param range     the work on a range of rows
+     */
+    static void run(ForkJoinPool pool, int rows, int rowLength, RowRange range) {
+        pool.invoke(new RowTask(0, rows, rowLength, range));
+    }
+
+    private static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int rowLength;
+        private final RowRange range;
+
+        RowTask(int start, int end, int rowLength, RowRange range) {
+            this.start = start;
+            this.end = end;
+            this.rowLength = rowLength;
+            this.range = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1 || (long) (end - start) * rowLength <= ELEMENTS_PER_TASK) {
+                range.run(start, end);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RowTask(start, middle, rowLength, range), new RowTask(middle, end, rowLength, range));
+            }
+        }
+    }
+}
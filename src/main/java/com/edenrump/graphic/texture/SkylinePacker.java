@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a rectangle packer that tracks the top edge of everything placed so far as a skyline of
+ * horizontal segments. Each rectangle goes where its top would be lowest, breaking ties by the least wasted area
+ * trapped beneath it, which packs well for the mixed small images of UI and sprite sheets.
+ */
+final class SkylinePacker {
+
+    private static final class Segment {
+        int x;
+        int y;
+        int width;
+
+        Segment(int x, int y, int width) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final List<Segment> skyline = new ArrayList<>();
+    private long usedArea = 0;
+
+    SkylinePacker(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Packing area must be at least 1x1");
+        this.width = width;
+        this.height = height;
+        reset();
+    }
+
+    /**
+     * Method to place a rectangle
+     *
+     * @param w the width of the rectangle
+     * @param h the height of the rectangle
+     * @return the x and y of the bottom left corner, or null if the rectangle does not fit
+     */
+    int[] insert(int w, int h) {
+        if (w < 1 || h < 1) throw new IllegalArgumentException("Rectangles must be at least 1x1");
+        int bestIndex = -1, bestY = Integer.MAX_VALUE;
+        long bestWaste = Long.MAX_VALUE;
+        for (int i = 0; i < skyline.size(); i++) {
+            int x = skyline.get(i).x;
+            if (x + w > width) break;
+
+            //the rectangle rests on the highest segment beneath it
+            int y = 0, right = x + w;
+            long waste = 0;
+            for (int j = i; j < skyline.size() && skyline.get(j).x < right; j++) y = Math.max(y, skyline.get(j).y);
+            if (y + h > height) continue;
+            for (int j = i; j < skyline.size() && skyline.get(j).x < right; j++) {
+                Segment segment = skyline.get(j);
+                int covered = Math.min(right, segment.x + segment.width) - segment.x;
+                waste += (long) covered * (y - segment.y);
+            }
+            if (y < bestY || (y == bestY && waste < bestWaste)) {
+                bestIndex = i;
+                bestY = y;
+                bestWaste = waste;
+            }
+        }
+        if (bestIndex < 0) return null;
+
+        int x = skyline.get(bestIndex).x;
+        place(bestIndex, x, bestY + h, w);
+        usedArea += (long) w * h;
+        return new int[]{x, bestY};
+    }
+
+    /**
+     * Method to remove every rectangle
+     */
+    void reset() {
+        skyline.clear();
+        skyline.add(new Segment(0, 0, width));
+        usedArea = 0;
+    }
+
+    /**
+     * Method to get the fraction of the area covered by rectangles
+     *
+     * @return the occupancy, from 0 to 1
+     */
+    float getOccupancy() {
+        return (float) usedArea / ((long) width * height);
+    }
+
+    private void place(int index, int x, int top, int w) {
+        int right = x + w;
+        //drop or trim the segments now hidden under the new one
+        while (index < skyline.size() && skyline.get(index).x < right) {
+            Segment segment = skyline.get(index);
+            int segmentRight = segment.x + segment.width;
+            if (segmentRight <= right) {
+                skyline.remove(index);
+            } else {
+                segment.width = segmentRight - right;
+                segment.x = right;
+                break;
+            }
+        }
+        skyline.add(index, new Segment(x, top, w));
+
+        //merge neighbours at the same height
+        for (int i = 0; i < skyline.size() - 1; ) {
+            Segment left = skyline.get(i), next = skyline.get(i + 1);
+            if (left.y == next.y) {
+                left.width += next.width;
+                skyline.remove(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+}
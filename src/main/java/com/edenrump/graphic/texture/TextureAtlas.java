@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import com.edenrump.gpu.objects.Texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * This class represents a set of large texture pages packed with many small RGBA images, so that a batch of icons or
+ * sprites can be drawn from a single texture. Images are placed with a {@link SkylinePacker} as they are added and
+ * surrounded by a gutter repeating their edge texels, so that filtering never bleeds one image into its neighbour.
+ * <p>
+ * When an image does not fit in the space left on a page, the page is repacked with its images ordered tallest first,
+ * which usually frees enough room; only if that fails is a new page opened. Repacking moves images within their page,
+ * so regions carry a version that changes whenever their texture coordinates do. Images never move between pages.
+ * <p>
+ * Pixels are kept on the CPU; {@link #upload()} copies what has changed to the page textures and must be called on the
+ * thread that owns the GL context.
+ */
+public class TextureAtlas {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * This class represents the place of one image in the atlas
+     */
+    public static final class Region {
+        private final String name;
+        private final int index;
+        private final int page;
+        private final int width;
+        private final int height;
+        private final byte[] pixels;
+        private int x;
+        private int y;
+        private float u0, v0, u1, v1;
+        private int version = 0;
+
+        private Region(String name, int index, int page, int width, int height, byte[] pixels) {
+            this.name = name;
+            this.index = index;
+            this.page = page;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        /**
+         * Method to map texture coordinates over the whole image to coordinates over this region of its page
+         *
+         * @param uvs pairs of texture coordinates from 0 to 1
+         * @return the coordinates in the page
+         */
+        public float[] remap(float[] uvs) {
+            float[] remapped = new float[uvs.length];
+            remap(uvs, remapped);
+            return remapped;
+        }
+
+        /**
+         * Method to map texture coordinates over the whole image to coordinates over this region of its page
+         *
+         * @param uvs         pairs of texture coordinates from 0 to 1
+         * @param destination the array to store the coordinates in the page, which may be uvs itself
+         */
+        public void remap(float[] uvs, float[] destination) {
+            for (int i = 0; i + 1 < uvs.length; i += 2) {
+                destination[i] = u0 + uvs[i] * (u1 - u0);
+                destination[i + 1] = v0 + uvs[i + 1] * (v1 - v0);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Method to get the position of this region in the table returned by {@link TextureAtlas#getUVTable()}
+         *
+         * @return the index of the region, in the order images were added
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public float getU0() {
+            return u0;
+        }
+
+        public float getV0() {
+            return v0;
+        }
+
+        public float getU1() {
+            return u1;
+        }
+
+        public float getV1() {
+            return v1;
+        }
+
+        /**
+         * Method to get a number that changes whenever the region moves within its page
+         *
+         * @return the version of the region's placement
+         */
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private final class Page {
+        SkylinePacker packer = new SkylinePacker(pageWidth, pageHeight);
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(pageWidth * pageHeight * BYTES_PER_PIXEL);
+        final List<Region> regions = new ArrayList<>();
+        final List<Region> pendingUploads = new ArrayList<>();
+        Texture texture;
+        boolean fullUpload = true;
+    }
+
+    private final int pageWidth;
+    private final int pageHeight;
+    private final int padding;
+    private final List<Page> pages = new ArrayList<>();
+    private final List<Region> regions = new ArrayList<>();
+    private final Map<String, Region> byName = new HashMap<>();
+    private long repackCount = 0;
+
+    /**
+     * Create a new, empty atlas
+     *
+     * @param pageWidth  the width of each page
+     * @param pageHeight the height of each page
+     * @param padding    the width of the gutter around each image
+     */
+    public TextureAtlas(int pageWidth, int pageHeight, int padding) {
+        if (pageWidth < 1 || pageHeight < 1) throw new IllegalArgumentException("Atlas pages must be at least 1x1");
+        if (padding < 0) throw new IllegalArgumentException("Atlas padding must not be negative");
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.padding = padding;
+    }
+
+    /**
+     * Method to add an image to the atlas
+     *
+     * @param name   the name to find the image by
+     * @param rgba   the texels of the image, four bytes each, from its position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the region the image was placed in
+     */
+    public Region add(String name, ByteBuffer rgba, int width, int height) {
+        if (byName.containsKey(name)) throw new IllegalArgumentException("Atlas already holds an image named " + name);
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Images must be at least 1x1");
+        if (width + 2 * padding > pageWidth || height + 2 * padding > pageHeight) {
+            throw new IllegalArgumentException("Image " + name + " of " + width + "x" + height
+                    + " does not fit on a page of " + pageWidth + "x" + pageHeight + " with padding " + padding);
+        }
+        if (rgba.remaining() < width * height * BYTES_PER_PIXEL)
+            throw new IllegalArgumentException("Image data is smaller than " + width + "x" + height + " RGBA");
+
+        byte[] pixels = new byte[width * height * BYTES_PER_PIXEL];
+        rgba.duplicate().get(pixels);
+        int w = width + 2 * padding, h = height + 2 * padding;
+
+        Region region = null;
+        for (int i = 0; i < pages.size() && region == null; i++) {
+            Page page = pages.get(i);
+            int[] position = page.packer.insert(w, h);
+            if (position != null) {
+                region = new Region(name, regions.size(), i, width, height, pixels);
+                place(page, region, position);
+                page.pendingUploads.add(region);
+                page.regions.add(region);
+            }
+        }
+        for (int i = 0; i < pages.size() && region == null; i++) {
+            Page page = pages.get(i);
+            if (page.packer.getOccupancy() + (float) w * h / ((long) pageWidth * pageHeight) > 1) continue;
+            Region candidate = new Region(name, regions.size(), i, width, height, pixels);
+            if (repackWith(page, candidate)) region = candidate;
+        }
+        if (region == null) {
+            Page page = new Page();
+            pages.add(page);
+            region = new Region(name, regions.size(), pages.size() - 1, width, height, pixels);
+            place(page, region, page.packer.insert(w, h));
+            page.regions.add(region);
+        }
+
+        regions.add(region);
+        byName.put(name, region);
+        return region;
+    }
+
+    /**
+     * Method to find an image by name
+     *
+     * @param name the name the image was added with
+     * @return the region of the image, or null if there is none
+     */
+    public Region get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Method to get the texture coordinates of every region in one array, four floats per region (u0, v0, u1, v1) in
+     * the order the images were added, for lookup in a shader
+     *
+     * @return the table of texture coordinates
+     */
+    public float[] getUVTable() {
+        float[] table = new float[regions.size() * 4];
+        for (Region region : regions) {
+            int i = region.index * 4;
+            table[i] = region.u0;
+            table[i + 1] = region.v0;
+            table[i + 2] = region.u1;
+            table[i + 3] = region.v1;
+        }
+        return table;
+    }
+
+    /**
+     * Method to copy new and moved images to the page textures, creating textures for new pages
+     */
+    public void upload() {
+        for (Page page : pages) {
+            if (page.texture == null) {
+                page.texture = Texture.createTexture(pageWidth, pageHeight, page.pixels);
+            } else if (page.fullUpload) {
+                page.texture.bind();
+                page.texture.uploadData(pageWidth, pageHeight, page.pixels);
+                page.texture.unbind();
+            } else if (!page.pendingUploads.isEmpty()) {
+                page.texture.bind();
+                glPixelStorei(GL_UNPACK_ROW_LENGTH, pageWidth);
+                for (Region region : page.pendingUploads) {
+                    int x = region.x - padding, y = region.y - padding;
+                    glPixelStorei(GL_UNPACK_SKIP_PIXELS, x);
+                    glPixelStorei(GL_UNPACK_SKIP_ROWS, y);
+                    page.texture.uploadSubData(x, y, region.width + 2 * padding, region.height + 2 * padding,
+                            GL_RGBA, page.pixels);
+                }
+                glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+                glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+                glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
+                page.texture.unbind();
+            }
+            page.fullUpload = false;
+            page.pendingUploads.clear();
+        }
+    }
+
+    /**
+     * Method to get the texture of a page, uploading any changes first
+     *
+     * @param page the index of the page
+     * @return the texture of the page
+     */
+    public Texture getTexture(int page) {
+        Page target = pages.get(page);
+        if (target.texture == null || target.fullUpload || !target.pendingUploads.isEmpty()) upload();
+        return target.texture;
+    }
+
+    /**
+     * Method to get the texels of a page as held on the CPU
+     *
+     * @param page the index of the page
+     * @return a read-only view of the page's RGBA texels
+     */
+    public ByteBuffer getPagePixels(int page) {
+        return pages.get(page).pixels.duplicate().clear().asReadOnlyBuffer();
+    }
+
+    /**
+     * Method to delete the page textures. The atlas can still be added to and uploaded again.
+     */
+    public void delete() {
+        for (Page page : pages) {
+            if (page.texture != null) page.texture.delete();
+            page.texture = null;
+            page.fullUpload = true;
+        }
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public int getRegionCount() {
+        return regions.size();
+    }
+
+    public int getPageWidth() {
+        return pageWidth;
+    }
+
+    public int getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * Method to get the number of times a page was repacked to make room for an image
+     *
+     * @return the number of repacks
+     */
+    public long getRepackCount() {
+        return repackCount;
+    }
+
+    /**
+     * Method to get the fraction of a page covered by images and their padding
+     *
+     * @param page the index of the page
+     * @return the occupancy, from 0 to 1
+     */
+    public float getOccupancy(int page) {
+        return pages.get(page).packer.getOccupancy();
+    }
+
+    private boolean repackWith(Page page, Region region) {
+        List<Region> packed = new ArrayList<>(page.regions);
+        packed.add(region);
+        packed.sort(Comparator.comparingInt((Region r) -> r.height).thenComparingInt(r -> r.width).reversed());
+
+        SkylinePacker packer = new SkylinePacker(pageWidth, pageHeight);
+        int[][] positions = new int[packed.size()][];
+        for (int i = 0; i < packed.size(); i++) {
+            Region r = packed.get(i);
+            positions[i] = packer.insert(r.width + 2 * padding, r.height + 2 * padding);
+            if (positions[i] == null) return false;
+        }
+
+        page.packer = packer;
+        ByteBuffer pixels = page.pixels.duplicate().clear();
+        byte[] zeros = new byte[Math.min(pixels.capacity(), 64 * 1024)];
+        while (pixels.hasRemaining()) pixels.put(zeros, 0, Math.min(zeros.length, pixels.remaining()));
+        for (int i = 0; i < packed.size(); i++) place(page, packed.get(i), positions[i]);
+        page.regions.add(region);
+        page.fullUpload = true;
+        page.pendingUploads.clear();
+        repackCount++;
+        return true;
+    }
+
+    private void place(Page page, Region region, int[] position) {
+        region.x = position[0] + padding;
+        region.y = position[1] + padding;
+        region.u0 = (float) region.x / pageWidth;
+        region.v0 = (float) region.y / pageHeight;
+        region.u1 = (float) (region.x + region.width) / pageWidth;
+        region.v1 = (float) (region.y + region.height) / pageHeight;
+        region.version++;
+
+        //copy each row with its first and last texels repeated across the gutter, and the first and last rows repeated
+        //above and below
+        int rowBytes = region.width * BYTES_PER_PIXEL;
+        byte[] row = new byte[(region.width + 2 * padding) * BYTES_PER_PIXEL];
+        ByteBuffer pixels = page.pixels.duplicate();
+        for (int r = -padding; r < region.height + padding; r++) {
+            int source = Math.max(0, Math.min(region.height - 1, r)) * rowBytes;
+            for (int p = 0; p < padding; p++) {
+                System.arraycopy(region.pixels, source, row, p * BYTES_PER_PIXEL, BYTES_PER_PIXEL);
+                System.arraycopy(region.pixels, source + rowBytes - BYTES_PER_PIXEL, row,
+                        (padding + region.width + p) * BYTES_PER_PIXEL, BYTES_PER_PIXEL);
+            }
+            System.arraycopy(region.pixels, source, row, padding * BYTES_PER_PIXEL, rowBytes);
+            pixels.position(((region.y + r) * pageWidth + region.x - padding) * BYTES_PER_PIXEL);
+            pixels.put(row);
+        }
+    }
+}
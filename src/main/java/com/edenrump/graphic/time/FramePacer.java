@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class represents a precise wait for frame pacing. Sleeping alone wakes late by an amount that depends on the
+ * operating system's timer, and spinning alone burns a core, so the pacer sleeps until shortly before the deadline
+ * and spins the rest of the way. The sleep margin adapts to how late sleeps have actually woken.
+ */
+public class FramePacer {
+
+    private static final long MIN_SPIN_NANOS = 100_000;
+    private static final long MAX_SPIN_NANOS = 4_000_000;
+
+    private long spinNanos;
+    private long sleepOvershootNanos;
+
+    /**
+     * Create a new pacer that starts spinning one millisecond before each deadline
+     */
+    public FramePacer() {
+        this(1_000_000);
+    }
+
+    /**
+     * Create a new pacer
+     *
+     * @param initialSpinNanos how long before a deadline to stop sleeping and spin, until real sleep overshoot has been
+     *                         measured
+     */
+    public FramePacer(long initialSpinNanos) {
+        spinNanos = Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, initialSpinNanos));
+        sleepOvershootNanos = spinNanos / 2;
+    }
+
+    /**
+     * Method to wait until the given time on the {@link System#nanoTime()} clock
+     *
+     * @param deadlineNanos the time to wait until
+     * @return the time at which the wait ended
+     */
+    public long waitUntil(long deadlineNanos) {
+        long now = System.nanoTime();
+        while (deadlineNanos - now > spinNanos) {
+            long sleep = deadlineNanos - now - spinNanos;
+            LockSupport.parkNanos(sleep);
+            long woke = System.nanoTime();
+            recordOvershoot(woke - now - sleep);
+            now = woke;
+        }
+        while (deadlineNanos - now > 0) {
+            Thread.onSpinWait();
+            now = System.nanoTime();
+        }
+        return now;
+    }
+
+    /**
+     * Method to get how long before a deadline the pacer currently stops sleeping
+     *
+     * @return the spin margin, in nanoseconds
+     */
+    public long getSpinNanos() {
+        return spinNanos;
+    }
+
+    /**
+     * Keeps a moving average of how late sleeps wake and spins for twice that
+     */
+    private void recordOvershoot(long overshoot) {
+        sleepOvershootNanos += (Math.max(0, overshoot) - sleepOvershootNanos) / 8;
+        spinNanos = Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, sleepOvershootNanos * 2));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * This class represents a record of frame times: a ring buffer of the most recent frames and a histogram of every
+ * frame since the last reset, from which percentiles are read. Frames are also counted when they miss the frame budget,
+ * and as jank when they miss it while taking more than twice as long as the frames just before them - the stutters a
+ * player notices, as opposed to a steadily slow frame rate.
+ * <p>
+ * Recording never allocates. Instances are not thread-safe.
+ */
+public class FrameStatistics {
+
+    public static final int DEFAULT_RING_SIZE = 1024;
+    private static final double DEFAULT_BUDGET_FPS = 60;
+    private static final int JANK_HISTORY = 3;
+    private static final double JANK_FACTOR = 2;
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 95, 99, 99.9};
+
+    private final long[] ring;
+    private int ringNext = 0;
+    private int ringCount = 0;
+    private final FrameTimeHistogram histogram = new FrameTimeHistogram();
+    private long budgetNanos;
+    private long overBudgetCount = 0;
+    private long jankCount = 0;
+
+    /**
+     * Create a new record that remembers the last {@value #DEFAULT_RING_SIZE} frames, with a budget of 60 frames per
+     * second
+     */
+    public FrameStatistics() {
+        this(DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * Create a new record with a budget of 60 frames per second
+     *
+     * @param ringSize the number of recent frame times to remember
+     */
+    public FrameStatistics(int ringSize) {
+        if (ringSize < JANK_HISTORY + 1) throw new IllegalArgumentException("Ring must hold at least 4 frames");
+        ring = new long[ringSize];
+        setTargetFrameRate(DEFAULT_BUDGET_FPS);
+    }
+
+    /**
+     * Method to record the duration of a frame
+     *
+     * @param frameNanos the frame time, in nanoseconds
+     */
+    public void record(long frameNanos) {
+        if (frameNanos > budgetNanos) {
+            overBudgetCount++;
+            if (ringCount >= JANK_HISTORY) {
+                long recent = 0;
+                for (int i = 1; i <= JANK_HISTORY; i++) {
+                    recent += ring[(ringNext - i + ring.length) % ring.length];
+                }
+                if (frameNanos > JANK_FACTOR * recent / JANK_HISTORY) jankCount++;
+            }
+        }
+        ring[ringNext] = frameNanos;
+        ringNext = (ringNext + 1) % ring.length;
+        ringCount = Math.min(ringCount + 1, ring.length);
+        histogram.record(frameNanos);
+    }
+
+    /**
+     * Method to forget every recorded frame. The budget is kept.
+     */
+    public void reset() {
+        ringNext = 0;
+        ringCount = 0;
+        histogram.reset();
+        overBudgetCount = 0;
+        jankCount = 0;
+    }
+
+    /**
+     * Method to replace the contents of this record with a copy of another of the same ring size, without allocating
+     *
+     * @param other the record to copy
+     */
+    public void copyFrom(FrameStatistics other) {
+        if (other.ring.length != ring.length) throw new IllegalArgumentException("Ring sizes differ");
+        System.arraycopy(other.ring, 0, ring, 0, ring.length);
+        ringNext = other.ringNext;
+        ringCount = other.ringCount;
+        histogram.copyFrom(other.histogram);
+        budgetNanos = other.budgetNanos;
+        overBudgetCount = other.overBudgetCount;
+        jankCount = other.jankCount;
+    }
+
+    /**
+     * Method to set the frame rate below which a frame counts as over budget
+     *
+     * @param framesPerSecond the target frame rate
+     */
+    public void setTargetFrameRate(double framesPerSecond) {
+        if (framesPerSecond <= 0) throw new IllegalArgumentException("Target frame rate must be positive");
+        budgetNanos = Math.round(1e9 / framesPerSecond);
+    }
+
+    /**
+     * Method to copy the most recent frame times, oldest first
+     *
+     * @param destination the array to fill
+     * @return the number of frame times copied
+     */
+    public int getRecentFrameTimes(long[] destination) {
+        int count = Math.min(destination.length, ringCount);
+        for (int i = 0; i < count; i++) {
+            destination[i] = ring[(ringNext - count + i + ring.length) % ring.length];
+        }
+        return count;
+    }
+
+    /**
+     * Method to get the frame time that the given percentage of frames did not exceed
+     *
+     * @param percentile from 0 to 100
+     * @return the frame time in milliseconds, to within 1%
+     */
+    public double getPercentileMillis(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    public double getMeanMillis() {
+        return histogram.getMeanNanos() / 1e6;
+    }
+
+    public double getMinMillis() {
+        return histogram.getMinNanos() / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return histogram.getMaxNanos() / 1e6;
+    }
+
+    /**
+     * Method to get the average frame rate
+     *
+     * @return frames per second, or 0 if no frames have been recorded
+     */
+    public double getMeanFrameRate() {
+        double mean = histogram.getMeanNanos();
+        return mean == 0 ? 0 : 1e9 / mean;
+    }
+
+    public long getFrameCount() {
+        return histogram.getCount();
+    }
+
+    public long getOverBudgetCount() {
+        return overBudgetCount;
+    }
+
+    public long getJankCount() {
+        return jankCount;
+    }
+
+    public double getBudgetMillis() {
+        return budgetNanos / 1e6;
+    }
+
+    /**
+     * Method to summarise the recorded frames as text
+     *
+     * @return a report of frame count, frame rate, frame time percentiles, budget misses and jank
+     */
+    public String createReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "frames: %d%n", getFrameCount()));
+        report.append(String.format(Locale.ROOT, "mean fps: %.1f%n", getMeanFrameRate()));
+        report.append(String.format(Locale.ROOT, "mean ms: %.3f%n", getMeanMillis()));
+        report.append(String.format(Locale.ROOT, "min ms: %.3f%n", getMinMillis()));
+        for (double percentile : REPORTED_PERCENTILES) {
+            report.append(String.format(Locale.ROOT, "p%s ms: %.3f%n",
+                    percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile),
+                    getPercentileMillis(percentile)));
+        }
+        report.append(String.format(Locale.ROOT, "max ms: %.3f%n", getMaxMillis()));
+        report.append(String.format(Locale.ROOT, "budget ms: %.3f%n", getBudgetMillis()));
+        report.append(String.format(Locale.ROOT, "over budget: %d%n", getOverBudgetCount()));
+        report.append(String.format(Locale.ROOT, "jank: %d%n", getJankCount()));
+        return report.toString();
+    }
+
+    /**
+     * Method to write the report from {@link #createReport()} to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void exportReport(Path file) throws IOException {
+        Files.write(file, createReport().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a fixed-size histogram of durations in nanoseconds, in the style of an HDR histogram. Values
+ * below 128 ns are counted exactly; above that each power of two is split into 64 linear buckets, so any recorded
+ * value is reproduced to within 1%. Durations up to about half an hour are recorded, and longer ones are counted in the
+ * top bucket. Recording never allocates.
+ */
+public class FrameTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+    private static final int MAX_SHIFT = 34;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long totalNanos = 0;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos = 0;
+
+    /**
+     * Method to record a duration
+     *
+     * @param nanos the duration, in nanoseconds. Negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[bucketOf(nanos)]++;
+        totalCount++;
+        totalNanos += nanos;
+        minNanos = Math.min(minNanos, nanos);
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Method to find the duration that the given percentage of recorded durations do not exceed
+     *
+     * @param percentile from 0 to 100
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * totalCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target) return Math.min(maxNanos, Math.max(minNanos, midpointOf(bucket)));
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Method to forget every recorded duration
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+    }
+
+    /**
+     * Method to replace the contents of this histogram with a copy of another, without allocating
+     *
+     * @param other the histogram to copy
+     */
+    public void copyFrom(FrameTimeHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKET_COUNT);
+        totalCount = other.totalCount;
+        totalNanos = other.totalNanos;
+        minNanos = other.minNanos;
+        maxNanos = other.maxNanos;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMinNanos() {
+        return totalCount == 0 ? 0 : minNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return totalCount == 0 ? 0 : (double) totalNanos / totalCount;
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) return BUCKET_COUNT - 1;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long midpointOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + (bucket - LINEAR_LIMIT) % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << (shift - 1));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class represents a game loop that runs the simulation at a fixed rate, independent of the render rate. Time
+ * passed between frames is added to an accumulator and spent in whole simulation ticks; the fraction of a tick left
+ * over is handed to the renderer so that it can draw between the previous and current simulation states.
+ * <p>
+ * To stop a slow simulation falling further behind every frame (the "spiral of death"), a frame may run only a
+ * limited number of ticks and frame times are capped; time beyond that is dropped and the simulation slows down
+ * instead. Frames can optionally be paced to a target rate with a {@link FramePacer}.
+ */
+public class GameLoop {
+
+    /**
+     * This interface represents the fixed rate part of a game: movement, physics and logic
+     */
+    public interface Simulation {
+        /**
+         * Method to advance the simulation by one tick
+         *
+         * @param stepSeconds the length of a tick, which is always the same
+         */
+        void tick(double stepSeconds);
+    }
+
+    /**
+     * This interface represents the variable rate part of a game: drawing
+     */
+    public interface Renderer {
+        /**
+         * Method to draw a frame
+         *
+         * @param alpha how far the frame falls between the previous and the current simulation tick, from 0 to 1
+         */
+        void render(float alpha);
+    }
+
+    public static final int DEFAULT_MAX_TICKS_PER_FRAME = 5;
+    private static final long DEFAULT_MAX_FRAME_NANOS = 250_000_000L;
+
+    private final long tickNanos;
+    private final double tickSeconds;
+    private final FramePacer pacer = new FramePacer();
+    private int maxTicksPerFrame = DEFAULT_MAX_TICKS_PER_FRAME;
+    private long maxFrameNanos = DEFAULT_MAX_FRAME_NANOS;
+    private long targetFrameNanos = 0;
+
+    private long accumulatorNanos = 0;
+    private long tickCount = 0;
+    private long droppedNanos = 0;
+    private float alpha = 0;
+
+    /**
+     * Create a new game loop
+     *
+     * @param ticksPerSecond the simulation rate
+     */
+    public GameLoop(double ticksPerSecond) {
+        if (ticksPerSecond <= 0) throw new IllegalArgumentException("Simulation rate must be positive");
+        tickNanos = Math.round(1e9 / ticksPerSecond);
+        tickSeconds = tickNanos / 1e9;
+    }
+
+    /**
+     * Method to set how many simulation ticks a single frame may run before the rest of the time is dropped
+     *
+     * @param maxTicksPerFrame at least 1
+     */
+    public void setMaxTicksPerFrame(int maxTicksPerFrame) {
+        if (maxTicksPerFrame < 1) throw new IllegalArgumentException("A frame must be able to run at least one tick");
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * Method to set the longest frame time that is fed to the simulation, such as after a breakpoint or a window drag
+     *
+     * @param seconds the maximum frame time
+     */
+    public void setMaxFrameTime(double seconds) {
+        if (seconds <= 0) throw new IllegalArgumentException("Maximum frame time must be positive");
+        maxFrameNanos = Math.round(seconds * 1e9);
+    }
+
+    /**
+     * Method to pace rendered frames to a fixed rate. Useful when vertical synchronisation is off.
+     *
+     * @param framesPerSecond the target frame rate, or 0 to render as fast as possible
+     */
+    public void setTargetFrameRate(double framesPerSecond) {
+        if (framesPerSecond < 0) throw new IllegalArgumentException("Target frame rate cannot be negative");
+        targetFrameNanos = framesPerSecond == 0 ? 0 : Math.round(1e9 / framesPerSecond);
+    }
+
+    /**
+     * Method to run the loop on the current thread until told to stop. Each frame runs the simulation ticks that
+     * are due, renders, updates {@link Time} and then waits for the next frame if a target frame rate is set.
+     *
+     * @param running    checked before every frame; the loop ends when it returns false
+     * @param simulation the fixed rate simulation
+     * @param renderer   the frame renderer
+     */
+    public void run(BooleanSupplier running, Simulation simulation, Renderer renderer) {
+        Time time = Time.getInstance();
+        long previous = System.nanoTime();
+        long nextFrame = previous;
+        while (running.getAsBoolean()) {
+            long now = System.nanoTime();
+            advance(now - previous, simulation);
+            previous = now;
+
+            renderer.render(alpha);
+            time.updateTime(now);
+
+            if (targetFrameNanos > 0) {
+                nextFrame += targetFrameNanos;
+                //after a long frame, start pacing afresh rather than rushing to catch up
+                if (System.nanoTime() - nextFrame > targetFrameNanos) nextFrame = System.nanoTime();
+                pacer.waitUntil(nextFrame);
+            }
+        }
+    }
+
+    /**
+     * Method to feed one frame's worth of time to the simulation
+     *
+     * @param frameNanos the time since the previous frame, in nanoseconds
+     * @param simulation the simulation to tick
+     * @return the number of ticks run
+     */
+    public int advance(long frameNanos, Simulation simulation) {
+        if (frameNanos > maxFrameNanos) {
+            droppedNanos += frameNanos - maxFrameNanos;
+            frameNanos = maxFrameNanos;
+        }
+        accumulatorNanos += Math.max(0, frameNanos);
+
+        int ticks = 0;
+        while (accumulatorNanos >= tickNanos && ticks < maxTicksPerFrame) {
+            simulation.tick(tickSeconds);
+            accumulatorNanos -= tickNanos;
+            ticks++;
+        }
+        if (accumulatorNanos >= tickNanos) {
+            long remainder = accumulatorNanos % tickNanos;
+            droppedNanos += accumulatorNanos - remainder;
+            accumulatorNanos = remainder;
+        }
+        tickCount += ticks;
+        alpha = (float) accumulatorNanos / tickNanos;
+        return ticks;
+    }
+
+    /**
+     * Method to get how far the next render falls between the previous and the current simulation tick
+     *
+     * @return from 0 (inclusive) to 1 (exclusive)
+     */
+    public float getAlpha() {
+        return alpha;
+    }
+
+    public double getTickSeconds() {
+        return tickSeconds;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Method to get how much time the simulation has skipped to avoid falling behind
+     *
+     * @return the dropped time, in seconds
+     */
+    public double getDroppedSeconds() {
+        return droppedNanos / 1e9;
+    }
+}
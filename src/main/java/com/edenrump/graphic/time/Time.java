@@ -19,13 +19,19 @@
 
 package com.edenrump.graphic.time;
 
+import com.edenrump.profiling.AllocationTracker;
+
 import java.text.DecimalFormat;
 
 import static org.lwjgl.glfw.GLFW.glfwGetCurrentContext;
 import static org.lwjgl.glfw.GLFW.glfwGetTime;
 
 /**
- * This class provides access to glfw time and is responsible for keeping track of the grame rate
+ * This class provides access to glfw time and is responsible for keeping track of the frame rate
+ * <p>
+ * Frame times are measured with {@link System#nanoTime()} and recorded in two {@link FrameStatistics}: one for the
+ * whole session and one for the most recent complete second, which is what overlays such as the window title show.
+ * Each update also marks a frame boundary for the {@link AllocationTracker}.
  * <p>
  * Must be manually ticked.
  *
@@ -38,15 +44,28 @@ public class Time {
      */
     private static final Time ourInstance = new Time();
     /**
-     * The time in milliseconds of the last frame
+     * The length of the interval summarised by {@link #getRecentStatistics()}
+     */
+    private static final long INTERVAL_NANOS = 1_000_000_000L;
+    /**
+     * The time in nanoseconds of the last frame
      */
-    private double lastFrameTime;
+    private long lastFrameNanos;
     /**
-     * The amount of time since Time was last updated
+     * Whether a frame has been timed since the last reset
+     */
+    private boolean started = false;
+    /**
+     * The amount of time in seconds since Time was last updated
      * This should be done every frame from the game loop.
      */
     private double delta;
 
+    private final FrameStatistics sessionStatistics = new FrameStatistics();
+    private final FrameStatistics intervalStatistics = new FrameStatistics();
+    private final FrameStatistics recentStatistics = new FrameStatistics();
+    private long intervalStartNanos;
+
     private Time() {
     }
 
@@ -64,21 +83,85 @@ public class Time {
      * class was last updated.
      */
     public void updateTime() {
-        double currentTime = glfwGetTime();
-        delta = (currentTime - lastFrameTime) / 1000f;
-        lastFrameTime = currentTime;
+        updateTime(System.nanoTime());
+    }
+
+    /**
+     * Method to update the frame time from a given clock reading
+     *
+     * @param nowNanos the current time, in nanoseconds, on the clock used by every previous update
+     */
+    void updateTime(long nowNanos) {
+        AllocationTracker.markFrame();
+        if (!started) {
+            started = true;
+            intervalStartNanos = nowNanos;
+        } else {
+            long frameNanos = nowNanos - lastFrameNanos;
+            delta = frameNanos / 1e9;
+            sessionStatistics.record(frameNanos);
+            intervalStatistics.record(frameNanos);
+            if (nowNanos - intervalStartNanos >= INTERVAL_NANOS) {
+                recentStatistics.copyFrom(intervalStatistics);
+                intervalStatistics.reset();
+                intervalStartNanos = nowNanos;
+            }
+        }
+        lastFrameNanos = nowNanos;
+    }
+
+    /**
+     * Method to forget every frame timed so far, for example after loading a level. The next update starts timing
+     * afresh.
+     */
+    public void reset() {
+        started = false;
+        delta = 0;
+        sessionStatistics.reset();
+        intervalStatistics.reset();
+        recentStatistics.reset();
     }
 
     /**
      * Method to get the amount of time since Time was last updated
      * If time is updated every frame, this will give frameDelta
      *
-     * @return the time between the current time and the last frame
+     * @return the time between the current time and the last frame, in seconds
      */
     public double getDeltaTime() {
         return delta;
     }
 
+    /**
+     * Method to get the statistics of every frame since the session started or Time was reset
+     *
+     * @return the session statistics
+     */
+    public FrameStatistics getSessionStatistics() {
+        return sessionStatistics;
+    }
+
+    /**
+     * Method to get the statistics of the most recent complete one second interval. These are replaced, not
+     * accumulated, once per second.
+     *
+     * @return the recent statistics
+     */
+    public FrameStatistics getRecentStatistics() {
+        return recentStatistics;
+    }
+
+    /**
+     * Method to set the frame rate below which frames count as over budget
+     *
+     * @param framesPerSecond the target frame rate
+     */
+    public void setTargetFrameRate(double framesPerSecond) {
+        sessionStatistics.setTargetFrameRate(framesPerSecond);
+        intervalStatistics.setTargetFrameRate(framesPerSecond);
+        recentStatistics.setTargetFrameRate(framesPerSecond);
+    }
+
     /* ****************************************************************************************************************
      * Utility functions
      * ****************************************************************************************************************/
@@ -88,10 +171,10 @@ public class Time {
      * <p>
      * Assumes Time is updated every frame.
      *
-     * @return the frame rate, calculated from delta
+     * @return the frame rate, calculated from delta, or 0 before two frames have been timed
      */
     public double getFrameRate() {
-        return (1 / delta) / 1000;
+        return delta == 0 ? 0 : 1 / delta;
     }
 
     /**
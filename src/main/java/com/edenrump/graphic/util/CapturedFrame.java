@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * This class represents one frame read back from the GPU. The pixel data is bottom-up, as returned by OpenGL, and is
+ * borrowed from a {@link DirectBufferPool}: it is only valid until {@link #release()} is called.
+ */
+public class CapturedFrame {
+
+    private final long frameNumber;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final ByteBuffer pixelData;
+    private final DirectBufferPool pool;
+
+    CapturedFrame(long frameNumber, int width, int height, int bytesPerPixel, ByteBuffer pixelData, DirectBufferPool pool) {
+        this.frameNumber = frameNumber;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.pixelData = pixelData;
+        this.pool = pool;
+    }
+
+    /**
+     * Method to convert the frame into a top-down image
+     *
+     * @return an RGB image of the frame
+     */
+    public BufferedImage toBufferedImage() {
+        return Screenshot.convertToBufferedImage(pixelData, width, height, bytesPerPixel);
+    }
+
+    /**
+     * Method to return the pixel data to its pool. The frame must not be used afterwards.
+     */
+    public void release() {
+        pool.release(pixelData);
+    }
+
+    /**
+     * Method to get the number of the frame, counting every capture request including those that were dropped
+     *
+     * @return the frame number
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    public ByteBuffer getPixelData() {
+        return pixelData;
+    }
+}
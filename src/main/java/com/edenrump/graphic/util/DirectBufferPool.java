@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * This class represents a thread-safe pool of direct byte buffers, so that large buffers such as captured frames
+ * can be reused instead of being allocated once per use. Buffers may be acquired on one thread and released on another.
+ */
+public class DirectBufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    /**
+     * Create a new pool
+     *
+     * @param maxPooled the maximum number of released buffers kept for reuse. Buffers released beyond this are
+     *                  left to the garbage collector
+     */
+    public DirectBufferPool(int maxPooled) {
+        if (maxPooled < 1) throw new IllegalArgumentException("Pool must be able to hold at least one buffer");
+        free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Method to take a buffer of at least the given size from the pool, allocating one if no pooled buffer is large
+     * enough. Pooled buffers that are too small are discarded.
+     *
+     * @param bytes the number of bytes needed
+     * @return a cleared buffer with its limit set to the requested size
+     */
+    public ByteBuffer acquire(int bytes) {
+        ByteBuffer buffer;
+        while ((buffer = free.poll()) != null) {
+            if (buffer.capacity() >= bytes) {
+                buffer.clear().limit(bytes);
+                return buffer;
+            }
+        }
+        return BufferUtils.createByteBuffer(bytes);
+    }
+
+    /**
+     * Method to return a buffer to the pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buffer the buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * Method to get the number of buffers currently available for reuse
+     *
+     * @return the number of pooled buffers
+     */
+    public int getPooledCount() {
+        return free.size();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import com.edenrump.profiling.Profiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11C.*;
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL21C.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30C.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30C.glMapBufferRange;
+import static org.lwjgl.opengl.GL32C.*;
+
+/**
+ * This class represents an asynchronous frame recorder. Each capture starts a read of the framebuffer into one of a
+ * ring of pixel buffer objects and returns immediately; a later call collects it once the GPU has signalled that the
+ * copy is complete, copies it into a pooled buffer and hands it to a {@link FrameSink} on a background thread.
+ * <p>
+ * If every buffer in the ring is still in flight, or the sink has fallen behind, frames are dropped rather than
+ * stalling the render loop. All methods except the getters must be called on the thread that owns the GL context.
+ */
+public class FrameCapture implements AutoCloseable {
+
+    public static final int DEFAULT_RING_SIZE = 3;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final long WAIT_STEP_NANOS = 1_000_000L;
+
+    private final DirectBufferPool pool;
+    private final FrameQueue queue;
+
+    private final int[] pixelBuffers;
+    private final long[] bufferSizes;
+    private final long[] fences;
+    private final int[] widths;
+    private final int[] heights;
+    private final long[] frameNumbers;
+    private int oldest = 0;
+    private int inFlight = 0;
+
+    private int readBuffer = GL_BACK;
+    private long frameNumber = 0;
+    private long droppedInRing = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a new recorder with the default ring size and queue capacity
+     *
+     * @param sink the consumer of the captured frames
+     */
+    public FrameCapture(FrameSink sink) {
+        this(sink, DEFAULT_RING_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a new recorder
+     *
+     * @param sink          the consumer of the captured frames
+     * @param ringSize      the number of reads that may be in flight on the GPU at once
+     * @param queueCapacity the number of frames that may wait for the sink
+     */
+    public FrameCapture(FrameSink sink, int ringSize, int queueCapacity) {
+        if (ringSize < 1) throw new IllegalArgumentException("Ring must hold at least one pixel buffer");
+        pool = new DirectBufferPool(ringSize + queueCapacity + 1);
+        queue = new FrameQueue(sink, queueCapacity);
+
+        pixelBuffers = new int[ringSize];
+        glGenBuffers(pixelBuffers);
+        bufferSizes = new long[ringSize];
+        fences = new long[ringSize];
+        widths = new int[ringSize];
+        heights = new int[ringSize];
+        frameNumbers = new long[ringSize];
+    }
+
+    /**
+     * Method to set which buffer frames are read from. Defaults to GL_BACK, which should be captured after rendering
+     * and before the buffers are swapped.
+     *
+     * @param readBuffer the GL read buffer
+     */
+    public void setReadBuffer(int readBuffer) {
+        this.readBuffer = readBuffer;
+    }
+
+    /**
+     * Method to start capturing a region of the framebuffer and to pass any completed earlier captures to the sink
+     *
+     * @param x      the left of the region, in pixels
+     * @param y      the bottom of the region, in pixels
+     * @param width  the width of the region, in pixels
+     * @param height the height of the region, in pixels
+     * @return true if the capture was started, false if it was dropped because every pixel buffer is in flight
+     */
+    public boolean capture(int x, int y, int width, int height) {
+        if (closed) throw new IllegalStateException("Frame capture has been closed");
+        Profiler.begin("FrameCapture.capture");
+        try {
+            return startCapture(x, y, width, height);
+        } finally {
+            Profiler.end();
+        }
+    }
+
+    private boolean startCapture(int x, int y, int width, int height) {
+        long number = frameNumber++;
+        collect(false);
+        if (inFlight == pixelBuffers.length) {
+            droppedInRing++;
+            return false;
+        }
+
+        int slot = (oldest + inFlight) % pixelBuffers.length;
+        long bytes = (long) width * height * BYTES_PER_PIXEL;
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        if (bufferSizes[slot] < bytes) {
+            glBufferData(GL_PIXEL_PACK_BUFFER, bytes, GL_STREAM_READ);
+            bufferSizes[slot] = bytes;
+        }
+        glReadBuffer(readBuffer);
+        glReadPixels(x, y, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        widths[slot] = width;
+        heights[slot] = height;
+        frameNumbers[slot] = number;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Method to wait for every capture in flight, hand them to the sink, wait for the sink to finish and release the
+     * GL resources
+     *
+     * @throws IOException the first exception thrown by the sink, if any
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            collect(true);
+        } finally {
+            glDeleteBuffers(pixelBuffers);
+            queue.close();
+        }
+    }
+
+    /**
+     * Method to get the number of frames that were requested but never reached the sink
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedCount() {
+        return droppedInRing + queue.getDroppedCount();
+    }
+
+    /**
+     * Method to get the number of frames that have been passed to the sink
+     *
+     * @return the number of consumed frames
+     */
+    public long getConsumedCount() {
+        return queue.getConsumedCount();
+    }
+
+    /**
+     * Hands completed reads to the queue in the order they were issued.
+     *
+     * @param wait whether to block until every read in flight has completed
+     */
+    private void collect(boolean wait) {
+        while (inFlight > 0) {
+            int slot = oldest;
+            int status = glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+            while (wait && status == GL_TIMEOUT_EXPIRED) {
+                status = glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_STEP_NANOS);
+            }
+            if (status == GL_TIMEOUT_EXPIRED) return;
+            if (status == GL_WAIT_FAILED) throw new IllegalStateException("Waiting for a frame capture failed");
+
+            glDeleteSync(fences[slot]);
+            fences[slot] = 0;
+            oldest = (oldest + 1) % pixelBuffers.length;
+            inFlight--;
+
+            int bytes = widths[slot] * heights[slot] * BYTES_PER_PIXEL;
+            ByteBuffer pixels = pool.acquire(bytes);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, bytes, GL_MAP_READ_BIT);
+            if (mapped == null) {
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+                pool.release(pixels);
+                throw new IllegalStateException("Could not map pixel buffer for frame " + frameNumbers[slot]);
+            }
+            pixels.put(mapped).flip();
+            glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+            queue.submit(new CapturedFrame(frameNumbers[slot], widths[slot], heights[slot], BYTES_PER_PIXEL, pixels, pool));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+/**
+ * This enum represents how frames are stored in a frame dump
+ */
+public enum FrameDumpCompression {
+
+    /**
+     * Every frame is stored as it was captured. Fastest to write, largest on disk.
+     */
+    RAW,
+
+    /**
+     * Frames are stored as the difference from the previous frame, compressed with {@link LzBlockCodec}, with a
+     * compressed keyframe at a fixed interval so that any frame can be reached quickly
+     */
+    DELTA_LZ
+}
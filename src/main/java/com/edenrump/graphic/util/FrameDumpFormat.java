@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+/**
+ * This class represents the layout of a frame dump file, shared by {@link FrameDumpWriter} and
+ * {@link FrameDumpReader}. All values are little endian.
+ * <pre>
+ * header    magic, version, width, height, bytes per pixel, compression, keyframe interval, frame count,
+ *           index offset (long), data end (long), padded to {@value #HEADER_SIZE} bytes
+ * frames    one record per frame: magic, flags, frame number (long), stored length, reserved, then the data
+ * index     one entry per frame: record offset (long), frame number (long), stored length, flags
+ * </pre>
+ * The frame count and data end in the header are updated after every frame, so that a dump from a session that
+ * never closed its writer can still be read by scanning the records. The index is only written on close.
+ */
+final class FrameDumpFormat {
+
+    static final int MAGIC = 0x4446454E; //"NEFD"
+    static final int FRAME_MAGIC = 0x454D5246; //"FRME"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int FRAME_HEADER_SIZE = 24;
+    static final int INDEX_ENTRY_SIZE = 24;
+
+    static final int FLAG_KEYFRAME = 1;
+    static final int FLAG_COMPRESSED = 2;
+
+    static final int OFFSET_FRAME_COUNT = 28;
+    static final int OFFSET_INDEX = 32;
+    static final int OFFSET_DATA_END = 40;
+
+    private FrameDumpFormat() {
+    }
+}
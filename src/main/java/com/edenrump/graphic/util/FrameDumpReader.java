@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import com.edenrump.graphic.util.gif.GifEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.edenrump.graphic.util.FrameDumpFormat.*;
+
+/**
+ * This class represents random access to the frames of a file written by {@link FrameDumpWriter}. Reading a delta
+ * compressed frame decodes forward from the nearest keyframe, or from the last frame read if that is closer, so
+ * reading frames in order costs one decode per frame.
+ */
+public class FrameDumpReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final FrameDumpCompression compression;
+
+    private final long[] offsets;
+    private final long[] frameNumbers;
+    private final int[] storedLengths;
+    private final int[] flags;
+
+    private final byte[] frame;
+    private final byte[] delta;
+    private byte[] stored = new byte[0];
+    private int decodedIndex = -1;
+
+    /**
+     * Open a frame dump. Dumps whose writer was never closed are indexed by scanning their frame records.
+     *
+     * @param file the file to read
+     * @throws IOException if the file could not be read or is not a frame dump
+     */
+    public FrameDumpReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a frame dump");
+            if (header.getInt(4) != VERSION) throw new IOException("Unsupported frame dump version " + header.getInt(4));
+            width = header.getInt(8);
+            height = header.getInt(12);
+            bytesPerPixel = header.getInt(16);
+            compression = FrameDumpCompression.values()[header.getInt(20)];
+            int frameCount = header.getInt(OFFSET_FRAME_COUNT);
+            long indexOffset = header.getLong(OFFSET_INDEX);
+            frame = new byte[Math.multiplyExact(Math.multiplyExact(width, height), bytesPerPixel)];
+
+            offsets = new long[frameCount];
+            frameNumbers = new long[frameCount];
+            storedLengths = new int[frameCount];
+            flags = new int[frameCount];
+            if (indexOffset != 0) {
+                ByteBuffer index = read(indexOffset, frameCount * INDEX_ENTRY_SIZE);
+                for (int i = 0; i < frameCount; i++) {
+                    offsets[i] = index.getLong();
+                    frameNumbers[i] = index.getLong();
+                    storedLengths[i] = index.getInt();
+                    flags[i] = index.getInt();
+                }
+            } else {
+                scanRecords();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        delta = compression == FrameDumpCompression.DELTA_LZ ? new byte[frame.length] : null;
+    }
+
+    /**
+     * Method to get the pixel data of a frame
+     *
+     * @param index the position of the frame in the dump, from 0
+     * @return read-only bottom-up pixel data, valid until the next frame is read
+     * @throws IOException if the frame could not be read
+     */
+    public ByteBuffer readFrame(int index) throws IOException {
+        if (index < 0 || index >= offsets.length) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + offsets.length);
+        }
+        if (index != decodedIndex) {
+            int start = index;
+            while ((flags[start] & FLAG_KEYFRAME) == 0) start--;
+            //continue from the frame already decoded if it lies between the keyframe and this frame
+            if (decodedIndex >= start && decodedIndex < index) start = decodedIndex + 1;
+            decodedIndex = -1;
+            for (int i = start; i <= index; i++) {
+                decode(i);
+            }
+            decodedIndex = index;
+        }
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    /**
+     * Method to get a frame as an image
+     *
+     * @param index the position of the frame in the dump, from 0
+     * @return an RGB image of the frame
+     * @throws IOException if the frame could not be read
+     */
+    public BufferedImage readImage(int index) throws IOException {
+        return Screenshot.convertToBufferedImage(readFrame(index), width, height, bytesPerPixel);
+    }
+
+    /**
+     * Method to save a frame as a PNG file
+     *
+     * @param index the position of the frame in the dump, from 0
+     * @param file  the file to write
+     * @throws IOException if the frame could not be read or written
+     */
+    public void exportPNG(int index, Path file) throws IOException {
+        ImageIO.write(readImage(index), "PNG", file.toFile());
+    }
+
+    /**
+     * Method to encode a range of frames as an animated GIF
+     *
+     * @param first            the position of the first frame, from 0
+     * @param last             the position of the last frame, inclusive
+     * @param out              the stream to write to. It is not closed
+     * @param frameDelayMillis the time each frame is shown for, in milliseconds
+     * @throws IOException if a frame could not be read or written
+     */
+    public void exportGIF(int first, int last, OutputStream out, int frameDelayMillis) throws IOException {
+        try (GifEncoder encoder = new GifEncoder(out, width, height, frameDelayMillis, true)) {
+            for (int i = first; i <= last; i++) {
+                encoder.addFrame(readImage(i));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Method to get the number the writer recorded for a frame, such as its capture number
+     *
+     * @param index the position of the frame in the dump, from 0
+     * @return the frame number
+     */
+    public long getFrameNumber(int index) {
+        return frameNumbers[index];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public FrameDumpCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Decodes one frame on top of the previous one, which must already be in the frame buffer unless this is a
+     * keyframe
+     */
+    private void decode(int i) throws IOException {
+        int length = storedLengths[i];
+        if ((flags[i] & FLAG_COMPRESSED) == 0) {
+            readFully(ByteBuffer.wrap(frame, 0, length), offsets[i] + FRAME_HEADER_SIZE);
+            return;
+        }
+        if (stored.length < length) stored = new byte[length];
+        readFully(ByteBuffer.wrap(stored, 0, length), offsets[i] + FRAME_HEADER_SIZE);
+        if ((flags[i] & FLAG_KEYFRAME) != 0) {
+            LzBlockCodec.decompress(stored, 0, length, frame, frame.length);
+        } else {
+            LzBlockCodec.decompress(stored, 0, length, delta, delta.length);
+            for (int p = 0; p < frame.length; p++) {
+                frame[p] ^= delta[p];
+            }
+        }
+    }
+
+    private void scanRecords() throws IOException {
+        long position = HEADER_SIZE;
+        for (int i = 0; i < offsets.length; i++) {
+            ByteBuffer record = read(position, FRAME_HEADER_SIZE);
+            if (record.getInt(0) != FRAME_MAGIC) throw new IOException("Frame dump is corrupt at frame " + i);
+            offsets[i] = position;
+            flags[i] = record.getInt(4);
+            frameNumbers[i] = record.getLong(8);
+            storedLengths[i] = record.getInt(16);
+            position += FRAME_HEADER_SIZE + storedLengths[i];
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        return buffer.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) throw new IOException("Frame dump is truncated");
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.edenrump.graphic.util.FrameDumpFormat.*;
+
+/**
+ * This class represents a capture sink that appends frames to a memory-mapped file for later analysis with
+ * {@link FrameDumpReader}. Frames are either copied straight into the mapping or stored as an LZ compressed
+ * difference from the previous frame, so the cost per frame is little more than a memory copy.
+ * <p>
+ * The file is pre-allocated and mapped in large windows; it grows by whole windows as needed. On close, the frame
+ * index is appended and the file is trimmed to its used size where the platform allows a mapped file to shrink.
+ */
+public class FrameDumpWriter implements FrameSink, AutoCloseable {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+    private static final long WINDOW_SIZE = 1L << 28;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+    private final FrameDumpCompression compression;
+    private final int keyframeInterval;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long dataEnd = HEADER_SIZE;
+    private long allocatedEnd;
+    private ByteBuffer index = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private int frameCount = 0;
+    private boolean closed = false;
+
+    private final LzBlockCodec codec;
+    private byte[] previous;
+    private byte[] current;
+    private byte[] delta;
+    private byte[] compressed;
+
+    /**
+     * Create a new frame dump, replacing any existing file, with a keyframe every
+     * {@value #DEFAULT_KEYFRAME_INTERVAL} frames
+     *
+     * @param file        the file to write
+     * @param width       the width of every frame, in pixels
+     * @param height      the height of every frame, in pixels
+     * @param compression how frames are stored
+     * @throws IOException if the file could not be created
+     */
+    public FrameDumpWriter(Path file, int width, int height, FrameDumpCompression compression) throws IOException {
+        this(file, width, height, compression, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Create a new frame dump, replacing any existing file
+     *
+     * @param file               the file to write
+     * @param width              the width of every frame, in pixels
+     * @param height             the height of every frame, in pixels
+     * @param compression        how frames are stored
+     * @param keyframeInterval   the number of frames between compressed frames that do not depend on earlier ones
+     * @param preallocatedFrames the number of uncompressed frames to reserve space for up front
+     * @throws IOException if the file could not be created
+     */
+    public FrameDumpWriter(Path file, int width, int height, FrameDumpCompression compression,
+                           int keyframeInterval, int preallocatedFrames) throws IOException {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("Frame dump dimensions must be positive");
+        if (keyframeInterval < 1) throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        this.width = width;
+        this.height = height;
+        this.frameBytes = Math.multiplyExact(Math.multiplyExact(width, height), BYTES_PER_PIXEL);
+        this.compression = compression;
+        this.keyframeInterval = keyframeInterval;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        allocatedEnd = HEADER_SIZE + (long) Math.max(1, preallocatedFrames) * (frameBytes + FRAME_HEADER_SIZE);
+        channel.write(ByteBuffer.allocate(1), allocatedEnd - 1);
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, width)
+                .putInt(12, height)
+                .putInt(16, BYTES_PER_PIXEL)
+                .putInt(20, compression.ordinal())
+                .putInt(24, keyframeInterval)
+                .putInt(OFFSET_FRAME_COUNT, 0)
+                .putLong(OFFSET_INDEX, 0)
+                .putLong(OFFSET_DATA_END, dataEnd);
+
+        if (compression == FrameDumpCompression.DELTA_LZ) {
+            codec = new LzBlockCodec();
+            previous = new byte[frameBytes];
+            current = new byte[frameBytes];
+            delta = new byte[frameBytes];
+            compressed = new byte[LzBlockCodec.maxCompressedLength(frameBytes)];
+        } else {
+            codec = null;
+        }
+    }
+
+    /**
+     * Method to append a captured frame
+     *
+     * @param frame the frame, which must match the size of the dump
+     * @throws IOException if the frame could not be written
+     */
+    @Override
+    public void consume(CapturedFrame frame) throws IOException {
+        if (frame.getBytesPerPixel() != BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Frame dumps store " + BYTES_PER_PIXEL + " bytes per pixel");
+        }
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("Frame is " + frame.getWidth() + "x" + frame.getHeight() +
+                    " but the dump is " + width + "x" + height);
+        }
+        writeFrame(frame.getPixelData(), frame.getFrameNumber());
+    }
+
+    /**
+     * Method to append a frame
+     *
+     * @param pixels      bottom-up RGBA pixel data, from index 0 to the size of one frame
+     * @param frameNumber a number identifying the frame, such as its capture number
+     * @throws IOException if the frame could not be written
+     */
+    public void writeFrame(ByteBuffer pixels, long frameNumber) throws IOException {
+        if (closed) throw new IllegalStateException("Frame dump has been closed");
+        if (pixels.limit() < frameBytes) throw new IllegalArgumentException("Pixel data is smaller than a frame");
+        ByteBuffer source = pixels.duplicate().position(0).limit(frameBytes);
+
+        boolean keyframe = frameCount % keyframeInterval == 0;
+        int flags = keyframe ? FLAG_KEYFRAME : 0;
+        int storedLength;
+        if (compression == FrameDumpCompression.RAW) {
+            storedLength = frameBytes;
+            flags |= FLAG_KEYFRAME;
+            reserve(FRAME_HEADER_SIZE + storedLength).put(source);
+        } else {
+            source.get(current);
+            byte[] input = current;
+            if (!keyframe) {
+                for (int i = 0; i < frameBytes; i++) {
+                    delta[i] = (byte) (current[i] ^ previous[i]);
+                }
+                input = delta;
+            }
+            storedLength = codec.compress(input, frameBytes, compressed);
+            flags |= FLAG_COMPRESSED;
+            reserve(FRAME_HEADER_SIZE + storedLength).put(compressed, 0, storedLength);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        int recordStart = (int) (dataEnd - windowStart);
+        window.putInt(recordStart, FRAME_MAGIC)
+                .putInt(recordStart + 4, flags)
+                .putLong(recordStart + 8, frameNumber)
+                .putInt(recordStart + 16, storedLength)
+                .putInt(recordStart + 20, 0);
+
+        if (index.remaining() < INDEX_ENTRY_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            index = grown.put(index.flip());
+        }
+        index.putLong(dataEnd).putLong(frameNumber).putInt(storedLength).putInt(flags);
+
+        dataEnd += FRAME_HEADER_SIZE + storedLength;
+        frameCount++;
+        header.putLong(OFFSET_DATA_END, dataEnd).putInt(OFFSET_FRAME_COUNT, frameCount);
+    }
+
+    /**
+     * Method to append the frame index, finish the header and close the file
+     *
+     * @throws IOException if the file could not be finished
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            index.flip();
+            long indexOffset = dataEnd;
+            while (index.hasRemaining()) {
+                channel.write(index, indexOffset + index.position());
+            }
+            header.putLong(OFFSET_INDEX, indexOffset);
+            header.force();
+            unmap(header);
+            if (window != null) {
+                window.force();
+                unmap(window);
+                window = null;
+            }
+            try {
+                channel.truncate(indexOffset + (long) frameCount * INDEX_ENTRY_SIZE);
+            } catch (IOException e) {
+                //some platforms cannot shrink a file while it is mapped; the header records the used size
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Method to get the number of bytes written so far, excluding the index
+     *
+     * @return the size of the header and frame records
+     */
+    public long getDataSize() {
+        return dataEnd;
+    }
+
+    /**
+     * Makes sure the current window can hold a record of the given size and positions it after the record header.
+     * New windows cover the rest of the allocated space, up to {@value #WINDOW_SIZE} bytes; once that is used up the
+     * file grows by a whole window.
+     */
+    private MappedByteBuffer reserve(int recordSize) throws IOException {
+        if (window == null || dataEnd + recordSize > windowStart + window.capacity()) {
+            if (allocatedEnd - dataEnd < recordSize) allocatedEnd = dataEnd + Math.max(WINDOW_SIZE, recordSize);
+            if (window != null) unmap(window);
+            windowStart = dataEnd;
+            long size = Math.max(recordSize, Math.min(WINDOW_SIZE, allocatedEnd - dataEnd));
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, size);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        window.position((int) (dataEnd - windowStart) + FRAME_HEADER_SIZE);
+        return window;
+    }
+
+    /**
+     * Releases a mapping straight away rather than when the buffer is garbage collected, so that a long capture does
+     * not hold every window it has filled. The buffer must not be used afterwards. Where the platform offers no way
+     * to do this, the mapping is left for the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafeClass.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(instance.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Java 8 has no invokeCleaner
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class represents a bounded hand-off of captured frames from the render thread to a {@link FrameSink} running
+ * on its own thread. Submitting never blocks: when the sink falls behind and the queue is full, the new frame is
+ * dropped and counted rather than stalling the render loop.
+ */
+public class FrameQueue implements AutoCloseable {
+
+    private static final CapturedFrame END_OF_STREAM = new CapturedFrame(-1, 0, 0, 0, null, null);
+
+    private final ArrayBlockingQueue<CapturedFrame> queue;
+    private final FrameSink sink;
+    private final Thread worker;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    /**
+     * The first exception thrown by the sink: an IOException or a RuntimeException
+     */
+    private volatile Exception failure;
+    private boolean closed = false;
+
+    /**
+     * Create a new queue and start its worker thread
+     *
+     * @param sink     the consumer of the frames
+     * @param capacity the maximum number of frames waiting to be consumed
+     */
+    public FrameQueue(FrameSink sink, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Queue must be able to hold at least one frame");
+        this.sink = sink;
+        //one extra slot so that the end of stream marker always fits
+        queue = new ArrayBlockingQueue<>(capacity + 1);
+        worker = new Thread(this::drain, "frame-sink");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Method to pass a frame to the sink. Ownership of the frame passes to the queue, which releases it once it has
+     * been consumed or dropped.
+     *
+     * @param frame the frame to submit
+     * @return true if the frame was queued, false if it was dropped
+     */
+    public boolean submit(CapturedFrame frame) {
+        if (closed) throw new IllegalStateException("Frame queue has been closed");
+        if (failure == null && queue.remainingCapacity() > 1 && queue.offer(frame)) return true;
+        frame.release();
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Method to wait for all queued frames to be consumed and stop the worker thread
+     *
+     * @throws IOException the first exception thrown by the sink, if it was an IOException; a RuntimeException
+     *                     thrown by the sink is rethrown as it is
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            queue.add(END_OF_STREAM);
+            boolean interrupted = false;
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure != null) throw (RuntimeException) failure;
+    }
+
+    /**
+     * Method to get the number of frames dropped because the sink had fallen behind or failed
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Method to get the number of frames passed to the sink
+     *
+     * @return the number of consumed frames
+     */
+    public long getConsumedCount() {
+        return consumed.get();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                CapturedFrame frame;
+                try {
+                    frame = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (frame == END_OF_STREAM) return;
+
+                try {
+                    if (failure == null) {
+                        sink.consume(frame);
+                        consumed.incrementAndGet();
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                    dropped.incrementAndGet();
+                } finally {
+                    frame.release();
+                }
+            }
+        } finally {
+            //whatever stopped the worker, frames still queued must go back to their pool
+            CapturedFrame frame;
+            while ((frame = queue.poll()) != null) {
+                if (frame == END_OF_STREAM) continue;
+                frame.release();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import java.io.IOException;
+
+/**
+ * This interface represents a consumer of captured frames, such as an encoder, run on a background thread
+ */
+public interface FrameSink {
+
+    /**
+     * Method to consume a frame. The frame is released back to its pool once this method returns, so the pixel data
+     * must be copied or encoded before returning.
+     *
+     * @param frame the frame to consume
+     * @throws IOException if the frame could not be written
+     */
+    void consume(CapturedFrame frame) throws IOException;
+}
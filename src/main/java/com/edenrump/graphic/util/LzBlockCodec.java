@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * This class represents a fast byte-oriented LZ77 block codec in the style of LZ4: sequences of literals followed by a
+ * back reference of up to 64KB, with no entropy coding. It is intended for data with long runs, such as the difference
+ * between consecutive frames, where it compresses at memory speed. An instance is not thread-safe.
+ */
+public class LzBlockCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    /**
+     * No match may start this close to the end of the input
+     */
+    private static final int END_LITERALS = 12;
+    private static final int HASH_BITS = 16;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int[] hashTable = new int[1 << HASH_BITS];
+
+    /**
+     * Method to get the largest size a block of the given length can compress to
+     *
+     * @param length the uncompressed length
+     * @return the size of buffer needed by {@link #compress(byte[], int, byte[])}
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Method to compress a block
+     *
+     * @param source       the data to compress
+     * @param sourceLength the number of bytes to compress
+     * @param destination  the buffer to write to, at least {@link #maxCompressedLength(int)} long
+     * @return the number of bytes written
+     */
+    public int compress(byte[] source, int sourceLength, byte[] destination) {
+        Arrays.fill(hashTable, -1);
+        int out = 0;
+        int anchor = 0;
+        int position = 0;
+        int matchLimit = sourceLength - END_LITERALS;
+
+        while (position < matchLimit) {
+            int sequence = (int) INTS.get(source, position);
+            int hash = (sequence * 0x9E3779B1) >>> (32 - HASH_BITS);
+            int reference = hashTable[hash];
+            hashTable[hash] = position;
+
+            if (reference < 0 || position - reference > MAX_OFFSET || (int) INTS.get(source, reference) != sequence) {
+                //skip faster through data that does not compress
+                position += 1 + ((position - anchor) >>> 6);
+                continue;
+            }
+
+            int length = MIN_MATCH + matchLength(source, reference + MIN_MATCH, position + MIN_MATCH, sourceLength);
+            out = writeSequence(source, anchor, position - anchor, position - reference, length, destination, out);
+            position += length;
+            anchor = position;
+        }
+        return writeLastLiterals(source, anchor, sourceLength - anchor, destination, out);
+    }
+
+    /**
+     * Method to decompress a block
+     *
+     * @param source            the compressed data
+     * @param sourceOffset      the start of the compressed data
+     * @param sourceLength      the number of compressed bytes
+     * @param destination       the buffer to write to
+     * @param destinationLength the expected uncompressed length
+     */
+    public static void decompress(byte[] source, int sourceOffset, int sourceLength, byte[] destination, int destinationLength) {
+        int in = sourceOffset;
+        int end = sourceOffset + sourceLength;
+        int out = 0;
+        while (in < end) {
+            int token = source[in++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int extra;
+                do {
+                    extra = source[in++] & 0xFF;
+                    literals += extra;
+                } while (extra == 255);
+            }
+            System.arraycopy(source, in, destination, out, literals);
+            in += literals;
+            out += literals;
+            if (in >= end) break;
+
+            int offset = (source[in] & 0xFF) | (source[in + 1] & 0xFF) << 8;
+            in += 2;
+            int length = token & 0xF;
+            if (length == 15) {
+                int extra;
+                do {
+                    extra = source[in++] & 0xFF;
+                    length += extra;
+                } while (extra == 255);
+            }
+            length += MIN_MATCH;
+
+            int from = out - offset;
+            if (offset == 0 || from < 0) throw new IllegalArgumentException("Corrupt block: bad match offset");
+            if (offset >= length) {
+                System.arraycopy(destination, from, destination, out, length);
+                out += length;
+            } else {
+                //overlapping copy repeats the last offset bytes
+                for (int i = 0; i < length; i++) {
+                    destination[out++] = destination[from + i];
+                }
+            }
+        }
+        if (out != destinationLength) {
+            throw new IllegalArgumentException("Corrupt block: expected " + destinationLength + " bytes but got " + out);
+        }
+    }
+
+    /**
+     * Counts matching bytes eight at a time
+     */
+    private static int matchLength(byte[] data, int reference, int position, int limit) {
+        int start = position;
+        while (position + 8 <= limit) {
+            long difference = (long) LONGS.get(data, reference) ^ (long) LONGS.get(data, position);
+            if (difference != 0) return position - start + (Long.numberOfTrailingZeros(difference) >>> 3);
+            position += 8;
+            reference += 8;
+        }
+        while (position < limit && data[reference] == data[position]) {
+            position++;
+            reference++;
+        }
+        return position - start;
+    }
+
+    private static int writeSequence(byte[] source, int literalStart, int literals, int offset, int length,
+                                     byte[] destination, int out) {
+        int matchCode = length - MIN_MATCH;
+        destination[out++] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchCode, 15));
+        out = writeLength(literals, destination, out);
+        System.arraycopy(source, literalStart, destination, out, literals);
+        out += literals;
+        destination[out++] = (byte) offset;
+        destination[out++] = (byte) (offset >>> 8);
+        return writeLength(matchCode, destination, out);
+    }
+
+    private static int writeLastLiterals(byte[] source, int literalStart, int literals, byte[] destination, int out) {
+        destination[out++] = (byte) (Math.min(literals, 15) << 4);
+        out = writeLength(literals, destination, out);
+        System.arraycopy(source, literalStart, destination, out, literals);
+        return out + literals;
+    }
+
+    /**
+     * Writes the part of a length that did not fit in its four bit token field
+     */
+    private static int writeLength(int length, byte[] destination, int out) {
+        if (length < 15) return out;
+        length -= 15;
+        while (length >= 255) {
+            destination[out++] = (byte) 255;
+            length -= 255;
+        }
+        destination[out++] = (byte) length;
+        return out;
+    }
+}
@@ -19,19 +19,30 @@
 
 package com.edenrump.graphic.util;
 
+import com.edenrump.profiling.Profiler;
 import org.lwjgl.BufferUtils;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static org.lwjgl.opengl.GL11.GL_FRONT;
 import static org.lwjgl.opengl.GL11C.*;
 
 public class Screenshot {
 
+    /**
+     * Frames with at least this many pixels are converted on multiple threads
+     */
+    private static final int PARALLEL_PIXEL_THRESHOLD = 1 << 19;
+
     //TODO: improve this from being an unnecessary static factory
     public static void saveScreenDataToFile(ByteBuffer screenData, int width, int height, int bytesPerPixel, String fileName) {
         File file = new File(fileName + ".png");
@@ -39,31 +50,87 @@ public class Screenshot {
 
         BufferedImage image = convertToBufferedImage(screenData, width, height, bytesPerPixel);
 
+        Profiler.begin("Screenshot.write");
         try {
             ImageIO.write(image, format, file);
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            Profiler.end();
         }
     }
 
     public static ByteBuffer getWindowPixelData(int width, int height, int bytesPerPixel) {
-        glReadBuffer(GL_FRONT);
-        ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * bytesPerPixel);
-        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
-        return buffer;
+        Profiler.begin("Screenshot.readPixels");
+        try {
+            glReadBuffer(GL_FRONT);
+            ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * bytesPerPixel);
+            glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
+            return buffer;
+        } finally {
+            Profiler.end();
+        }
+    }
+
+    /**
+     * Method to convert bottom-up pixel data, as read from OpenGL, into a top-down image. Rows are written straight
+     * into the image's backing array and frames of at least {@value #PARALLEL_PIXEL_THRESHOLD} pixels are split
+     * across threads.
+     *
+     * @param screenData    the pixel data, starting with the bottom row. Each pixel begins with red, green and blue
+     * @param width         the width of the frame, in pixels
+     * @param height        the height of the frame, in pixels
+     * @param bytesPerPixel the number of bytes per pixel in the source data. Must be at least 3
+     * @return an RGB image of the frame
+     */
+    public static BufferedImage convertToBufferedImage(ByteBuffer screenData, int width, int height, int bytesPerPixel) {
+        if (bytesPerPixel < 3) throw new IllegalArgumentException("Pixel data must have at least 3 bytes per pixel");
+        Profiler.begin("Screenshot.convert");
+        try {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+            if ((long) width * height < PARALLEL_PIXEL_THRESHOLD) {
+                convertRows(screenData, pixels, width, height, bytesPerPixel, 0, height);
+            } else {
+                int bands = Math.min(height, ForkJoinPool.getCommonPoolParallelism() * 4);
+                IntStream.range(0, bands).parallel().forEach(band -> convertRows(screenData, pixels, width, height,
+                        bytesPerPixel, band * height / bands, (band + 1) * height / bands));
+            }
+            return image;
+        } finally {
+            Profiler.end();
+        }
     }
 
-    public static BufferedImage convertToBufferedImage(ByteBuffer screenData, int width, int height, int bytesPerPixel){
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int i = (x + (width * y)) * bytesPerPixel;
-                int r = screenData.get(i) & 0xFF;
-                int g = screenData.get(i + 1) & 0xFF;
-                int b = screenData.get(i + 2) & 0xFF;
-                image.setRGB(x, height - (y + 1), (0xFF << 24) | (r << 16) | (g << 8) | b);
+    /**
+     * Converts source rows [rowStart, rowEnd) into their flipped position in the image. Each call reads through its own
+     * view of the buffer so that calls may run concurrently.
+     */
+    private static void convertRows(ByteBuffer screenData, int[] pixels, int width, int height, int bytesPerPixel,
+                                    int rowStart, int rowEnd) {
+        if (bytesPerPixel == 4) {
+            //read RGBA as one big-endian int per pixel, then shift out the alpha
+            IntBuffer source = screenData.duplicate().position(0).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+            for (int row = rowStart; row < rowEnd; row++) {
+                int destination = (height - 1 - row) * width;
+                source.position(row * width);
+                source.get(pixels, destination, width);
+                for (int i = destination; i < destination + width; i++) {
+                    pixels[i] >>>= 8;
+                }
+            }
+        } else {
+            ByteBuffer source = screenData.duplicate().position(0);
+            byte[] rowBytes = new byte[width * bytesPerPixel];
+            for (int row = rowStart; row < rowEnd; row++) {
+                int destination = (height - 1 - row) * width;
+                source.position(row * rowBytes.length);
+                source.get(rowBytes);
+                for (int x = 0, i = 0; x < width; x++, i += bytesPerPixel) {
+                    pixels[destination + x] = (rowBytes[i] & 0xFF) << 16 | (rowBytes[i + 1] & 0xFF) << 8 | (rowBytes[i + 2] & 0xFF);
+                }
             }
         }
-        return image;
     }
 }
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util.gif;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class represents an animated GIF encoder. Each frame is quantized, optionally dithered and LZW compressed as a
+ * task on an executor, so consecutive frames are encoded in parallel; finished frames are written to the stream
+ * strictly in the order they were added.
+ * <p>
+ * Only the rectangle that changed since the previous frame is encoded, and the previous frame is left in place
+ * around it. By default each frame gets its own palette; with a global palette, the palette is built from the first
+ * frame and shared by every later frame, which is faster and avoids palette flicker for footage with stable colours.
+ * <p>
+ * Frames must be added from one thread at a time. The encoder writes the trailer on {@link #close()} but does not
+ * close the underlying stream.
+ */
+public class GifEncoder implements AutoCloseable {
+
+    private static final ThreadLocal<GifLzwEncoder> LZW_ENCODERS = ThreadLocal.withInitial(GifLzwEncoder::new);
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final int delayCentiseconds;
+    private final boolean loop;
+    private final Executor executor;
+    private final int maxFramesInFlight;
+
+    private boolean globalPalette = false;
+    private boolean dithering = false;
+    private int maxColours = 256;
+
+    private final ArrayDeque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+    private GifPalette sharedPalette;
+    private int[] previousFrame;
+    private boolean started = false;
+    private boolean closed = false;
+
+    /**
+     * Create a new encoder that encodes on the common fork-join pool
+     *
+     * @param out              the stream to write to
+     * @param width            the width of every frame, in pixels
+     * @param height           the height of every frame, in pixels
+     * @param frameDelayMillis the time each frame is shown for, in milliseconds. GIF stores this in hundredths of a
+     *                         second
+     * @param loop             whether the animation should repeat forever
+     */
+    public GifEncoder(OutputStream out, int width, int height, int frameDelayMillis, boolean loop) {
+        this(out, width, height, frameDelayMillis, loop, ForkJoinPool.commonPool(),
+                ForkJoinPool.getCommonPoolParallelism() * 2);
+    }
+
+    /**
+     * Create a new encoder
+     *
+     * @param out               the stream to write to
+     * @param width             the width of every frame, in pixels
+     * @param height            the height of every frame, in pixels
+     * @param frameDelayMillis  the time each frame is shown for, in milliseconds
+     * @param loop              whether the animation should repeat forever
+     * @param executor          the executor on which frames are encoded
+     * @param maxFramesInFlight the number of frames that may be encoding at once before adding a frame waits for the
+     *                          oldest to be written
+     */
+    public GifEncoder(OutputStream out, int width, int height, int frameDelayMillis, boolean loop,
+                      Executor executor, int maxFramesInFlight) {
+        if (width < 1 || height < 1 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("GIF dimensions must be between 1 and 65535 pixels");
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.delayCentiseconds = Math.round(frameDelayMillis / 10f);
+        this.loop = loop;
+        this.executor = executor;
+        this.maxFramesInFlight = Math.max(1, maxFramesInFlight);
+    }
+
+    /**
+     * Method to choose whether every frame shares a palette built from the first frame. Must be set before the first
+     * frame is added.
+     *
+     * @param globalPalette true to share one palette, false to build a palette per frame
+     */
+    public void setGlobalPalette(boolean globalPalette) {
+        checkNotStarted();
+        this.globalPalette = globalPalette;
+    }
+
+    /**
+     * Method to choose whether frames are Floyd-Steinberg dithered. Must be set before the first frame is added.
+     *
+     * @param dithering true to dither
+     */
+    public void setDithering(boolean dithering) {
+        checkNotStarted();
+        this.dithering = dithering;
+    }
+
+    /**
+     * Method to set the maximum number of colours in each palette. Must be set before the first frame is added.
+     *
+     * @param maxColours from 2 to 256
+     */
+    public void setMaxColours(int maxColours) {
+        checkNotStarted();
+        if (maxColours < 2 || maxColours > 256) throw new IllegalArgumentException("Palettes hold 2 to 256 colours");
+        this.maxColours = maxColours;
+    }
+
+    /**
+     * Method to add a frame to the animation
+     *
+     * @param image the frame, which must match the size of the animation
+     * @throws IOException if an earlier frame could not be written
+     */
+    public void addFrame(BufferedImage image) throws IOException {
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IllegalArgumentException("Frame is " + image.getWidth() + "x" + image.getHeight() +
+                    " but the animation is " + width + "x" + height);
+        }
+        int[] pixels;
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData().clone();
+        } else {
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        }
+        addFrame(pixels);
+    }
+
+    /**
+     * Method to add a frame to the animation. The encoder takes ownership of the array.
+     *
+     * @param pixels the RGB pixels of the frame, top row first; alpha is ignored
+     * @throws IOException if an earlier frame could not be written
+     */
+    public void addFrame(int[] pixels) throws IOException {
+        if (closed) throw new IllegalStateException("GIF encoder has been closed");
+        if (pixels.length != width * height) throw new IllegalArgumentException("Frame has the wrong number of pixels");
+
+        if (!started) {
+            started = true;
+            if (globalPalette) {
+                OctreeQuantizer quantizer = new OctreeQuantizer(maxColours);
+                quantizer.add(pixels, width, 0, 0, width, height);
+                sharedPalette = quantizer.createPalette();
+            }
+            writeHeader();
+        }
+
+        int[] bounds = changedBounds(previousFrame, pixels);
+        previousFrame = pixels;
+        GifPalette palette = sharedPalette;
+        inFlight.add(CompletableFuture.supplyAsync(() -> encodeFrame(pixels, bounds, palette), executor));
+
+        writeCompleted(false);
+        while (inFlight.size() >= maxFramesInFlight) writeNext();
+    }
+
+    /**
+     * Method to wait for every frame to be encoded and written, then finish the file
+     *
+     * @throws IOException if a frame could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (!started) {
+            started = true;
+            writeHeader();
+        }
+        writeCompleted(true);
+        out.write(0x3B);
+        out.flush();
+    }
+
+    private void checkNotStarted() {
+        if (started) throw new IllegalStateException("Encoder settings cannot change once frames have been added");
+    }
+
+    private void writeCompleted(boolean wait) throws IOException {
+        while (!inFlight.isEmpty() && (wait || inFlight.peek().isDone())) writeNext();
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(inFlight.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding GIF frame", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not encode GIF frame", e.getCause());
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(new byte[]{'G', 'I', 'F', '8', '9', 'a'});
+        writeShort(header, width);
+        writeShort(header, height);
+        if (sharedPalette != null) {
+            header.write(0x80 | 0x70 | (sharedPalette.getTableBits() - 1));
+        } else {
+            header.write(0x70);
+        }
+        header.write(0); //background colour index
+        header.write(0); //pixel aspect ratio
+        if (sharedPalette != null) header.write(sharedPalette.toColourTable());
+
+        if (loop) {
+            header.write(new byte[]{0x21, (byte) 0xFF, 11});
+            header.write(new byte[]{'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0'});
+            header.write(new byte[]{3, 1, 0, 0, 0});
+        }
+        header.writeTo(out);
+    }
+
+    /**
+     * Encodes the changed rectangle of one frame into a graphic control extension and an image block.
+     *
+     * @param palette the shared palette, or null to build one for this frame
+     */
+    private byte[] encodeFrame(int[] pixels, int[] bounds, GifPalette palette) {
+        int x = bounds[0], y = bounds[1], w = bounds[2], h = bounds[3];
+        boolean local = palette == null;
+        if (local) {
+            OctreeQuantizer quantizer = new OctreeQuantizer(maxColours);
+            quantizer.add(pixels, width, x, y, w, h);
+            palette = quantizer.createPalette();
+        }
+        byte[] indices = dithering ? ditherIndices(pixels, x, y, w, h, palette) : mapIndices(pixels, x, y, w, h, palette);
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(w * h / 2 + 64);
+        //graphic control extension: leave this frame in place for the next one to draw over
+        frame.write(0x21);
+        frame.write(0xF9);
+        frame.write(4);
+        frame.write(1 << 2);
+        writeShort(frame, delayCentiseconds);
+        frame.write(0);
+        frame.write(0);
+
+        frame.write(0x2C);
+        writeShort(frame, x);
+        writeShort(frame, y);
+        writeShort(frame, w);
+        writeShort(frame, h);
+        if (local) {
+            frame.write(0x80 | (palette.getTableBits() - 1));
+            byte[] table = palette.toColourTable();
+            frame.write(table, 0, table.length);
+        } else {
+            frame.write(0);
+        }
+        LZW_ENCODERS.get().encode(indices, indices.length, palette.getTableBits(), frame);
+        return frame.toByteArray();
+    }
+
+    private byte[] mapIndices(int[] pixels, int x, int y, int w, int h, GifPalette palette) {
+        byte[] indices = new byte[w * h];
+        for (int row = 0; row < h; row++) {
+            int source = (y + row) * width + x;
+            for (int col = 0; col < w; col++) {
+                indices[row * w + col] = (byte) palette.indexOf(pixels[source + col]);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Maps pixels to the palette with Floyd-Steinberg error diffusion, keeping errors for the current and next row
+     * in sixteenths.
+     */
+    private byte[] ditherIndices(int[] pixels, int x, int y, int w, int h, GifPalette palette) {
+        byte[] indices = new byte[w * h];
+        int[] current = new int[(w + 2) * 3];
+        int[] next = new int[(w + 2) * 3];
+        for (int row = 0; row < h; row++) {
+            int source = (y + row) * width + x;
+            for (int col = 0; col < w; col++) {
+                int rgb = pixels[source + col];
+                int e = (col + 1) * 3;
+                int r = clamp((rgb >> 16 & 0xFF) + (current[e] >> 4));
+                int g = clamp((rgb >> 8 & 0xFF) + (current[e + 1] >> 4));
+                int b = clamp((rgb & 0xFF) + (current[e + 2] >> 4));
+
+                int index = palette.indexOf(r, g, b);
+                indices[row * w + col] = (byte) index;
+                int chosen = palette.getColour(index);
+                diffuse(current, next, e, r - (chosen >> 16 & 0xFF));
+                diffuse(current, next, e + 1, g - (chosen >> 8 & 0xFF));
+                diffuse(current, next, e + 2, b - (chosen & 0xFF));
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return indices;
+    }
+
+    private static void diffuse(int[] current, int[] next, int i, int error) {
+        current[i + 3] += error * 7;
+        next[i - 3] += error * 3;
+        next[i] += error * 5;
+        next[i + 3] += error;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /**
+     * Finds the smallest rectangle containing every pixel that differs from the previous frame
+     *
+     * @return x, y, width and height
+     */
+    private int[] changedBounds(int[] previous, int[] pixels) {
+        if (previous == null) return new int[]{0, 0, width, height};
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int row = 0; row < height; row++) {
+            int start = row * width;
+            int first = -1;
+            for (int col = 0; col < width; col++) {
+                if (((previous[start + col] ^ pixels[start + col]) & 0xFFFFFF) != 0) {
+                    first = col;
+                    break;
+                }
+            }
+            if (first < 0) continue;
+            int last = width - 1;
+            while (((previous[start + last] ^ pixels[start + last]) & 0xFFFFFF) == 0) last--;
+            minX = Math.min(minX, first);
+            maxX = Math.max(maxX, last);
+            if (minY == height) minY = row;
+            maxY = row;
+        }
+        //an unchanged frame still needs a block to carry its delay
+        if (maxY < 0) return new int[]{0, 0, 1, 1};
+        return new int[]{minX, minY, maxX - minX + 1, maxY - minY + 1};
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write(value >> 8 & 0xFF);
+    }
+}
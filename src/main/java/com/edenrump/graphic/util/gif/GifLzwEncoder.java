@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util.gif;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * This class represents the variable-length LZW compression used for GIF image data. The dictionary is an open
+ * addressed hash table keyed by prefix code and next index, so encoding allocates nothing per pixel. An instance is
+ * not thread-safe, but may be reused for any number of images.
+ */
+public class GifLzwEncoder {
+
+    private static final int MAX_CODES = 4096;
+    private static final int TABLE_SIZE = 8192;
+    private static final int MAX_SUB_BLOCK = 255;
+
+    private final int[] tableKeys = new int[TABLE_SIZE];
+    private final short[] tableCodes = new short[TABLE_SIZE];
+
+    private final byte[] subBlock = new byte[MAX_SUB_BLOCK];
+    private int subBlockLength;
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Method to compress palette indices and append them to a stream as GIF image data: the minimum code size,
+     * the data sub-blocks and the block terminator
+     *
+     * @param indices     the palette index of each pixel
+     * @param length      the number of pixels
+     * @param paletteBits the number of bits in each index, from 1 to 8
+     * @param out         the stream to write to
+     */
+    public void encode(byte[] indices, int length, int paletteBits, ByteArrayOutputStream out) {
+        int minCodeSize = Math.max(2, paletteBits);
+        int clearCode = 1 << minCodeSize;
+        int endCode = clearCode + 1;
+        out.write(minCodeSize);
+
+        subBlockLength = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+
+        int codeSize = minCodeSize + 1;
+        int nextCode = endCode + 1;
+        Arrays.fill(tableKeys, -1);
+        writeCode(clearCode, codeSize, out);
+
+        if (length > 0) {
+            int prefix = indices[0] & 0xFF;
+            for (int i = 1; i < length; i++) {
+                int next = indices[i] & 0xFF;
+                int key = prefix << 8 | next;
+                int slot = (key * 0x9E3779B1) >>> 19;
+                while (tableKeys[slot] != -1 && tableKeys[slot] != key) {
+                    slot = (slot + 1) & (TABLE_SIZE - 1);
+                }
+                if (tableKeys[slot] == key) {
+                    prefix = tableCodes[slot];
+                    continue;
+                }
+
+                writeCode(prefix, codeSize, out);
+                if (nextCode < MAX_CODES) {
+                    if (nextCode == 1 << codeSize) codeSize++;
+                    tableKeys[slot] = key;
+                    tableCodes[slot] = (short) nextCode++;
+                } else {
+                    //dictionary full: start again
+                    writeCode(clearCode, codeSize, out);
+                    Arrays.fill(tableKeys, -1);
+                    codeSize = minCodeSize + 1;
+                    nextCode = endCode + 1;
+                }
+                prefix = next;
+            }
+            writeCode(prefix, codeSize, out);
+        }
+        writeCode(endCode, codeSize, out);
+
+        if (bitCount > 0) writeByte(bitBuffer & 0xFF, out);
+        if (subBlockLength > 0) flushSubBlock(out);
+        out.write(0);
+    }
+
+    private void writeCode(int code, int codeSize, ByteArrayOutputStream out) {
+        bitBuffer |= code << bitCount;
+        bitCount += codeSize;
+        while (bitCount >= 8) {
+            writeByte(bitBuffer & 0xFF, out);
+            bitBuffer >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    private void writeByte(int value, ByteArrayOutputStream out) {
+        subBlock[subBlockLength++] = (byte) value;
+        if (subBlockLength == MAX_SUB_BLOCK) flushSubBlock(out);
+    }
+
+    private void flushSubBlock(ByteArrayOutputStream out) {
+        out.write(subBlockLength);
+        out.write(subBlock, 0, subBlockLength);
+        subBlockLength = 0;
+    }
+}
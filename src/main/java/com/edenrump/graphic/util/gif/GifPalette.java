@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util.gif;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a colour table of up to 256 entries, with a lookup from any RGB colour to its nearest entry.
+ * Colours in the palette always map to themselves; other lookups are cached at 5 bits per channel. The cache may be
+ * filled concurrently by several threads, as every thread would write the same value.
+ */
+public class GifPalette {
+
+    private static final int CACHE_BITS = 5;
+    private static final int EXACT_TABLE_SIZE = 512;
+
+    private final int[] colours;
+    private final int[] nearestCache = new int[1 << (CACHE_BITS * 3)];
+    private final int[] exactColours = new int[EXACT_TABLE_SIZE];
+    private final int[] exactIndices = new int[EXACT_TABLE_SIZE];
+
+    /**
+     * Create a new palette
+     *
+     * @param colours the RGB colours of the palette, at most 256
+     */
+    public GifPalette(int[] colours) {
+        if (colours.length < 1 || colours.length > 256) {
+            throw new IllegalArgumentException("A GIF palette must have between 1 and 256 colours");
+        }
+        this.colours = colours.clone();
+        Arrays.fill(nearestCache, -1);
+        Arrays.fill(exactIndices, -1);
+        for (int i = colours.length - 1; i >= 0; i--) {
+            int rgb = colours[i] & 0xFFFFFF;
+            int slot = exactSlot(rgb);
+            exactColours[slot] = rgb;
+            exactIndices[slot] = i;
+        }
+    }
+
+    /**
+     * Method to find the palette entry closest to a colour
+     *
+     * @param r red, from 0 to 255
+     * @param g green, from 0 to 255
+     * @param b blue, from 0 to 255
+     * @return the index of the nearest entry
+     */
+    public int indexOf(int r, int g, int b) {
+        int rgb = r << 16 | g << 8 | b;
+        int exact = exactIndices[exactSlot(rgb)];
+        if (exact >= 0) return exact;
+
+        int key = (r >> 3) << (CACHE_BITS * 2) | (g >> 3) << CACHE_BITS | (b >> 3);
+        int index = nearestCache[key];
+        if (index < 0) {
+            index = nearest(r, g, b);
+            nearestCache[key] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Method to find the palette entry closest to a colour
+     *
+     * @param rgb the colour, with red in bits 16 to 23
+     * @return the index of the nearest entry
+     */
+    public int indexOf(int rgb) {
+        return indexOf(rgb >> 16 & 0xFF, rgb >> 8 & 0xFF, rgb & 0xFF);
+    }
+
+    /**
+     * Method to get a colour of the palette
+     *
+     * @param index the index of the entry
+     * @return the RGB colour
+     */
+    public int getColour(int index) {
+        return colours[index];
+    }
+
+    public int size() {
+        return colours.length;
+    }
+
+    /**
+     * Method to get the number of bits needed to index the GIF colour table, which always has a power of two entries
+     *
+     * @return the table size exponent, from 1 to 8
+     */
+    int getTableBits() {
+        int bits = 1;
+        while (1 << bits < colours.length) bits++;
+        return bits;
+    }
+
+    /**
+     * Method to write the palette as a GIF colour table, padded with black up to a power of two entries
+     *
+     * @return three bytes per entry
+     */
+    byte[] toColourTable() {
+        byte[] table = new byte[3 << getTableBits()];
+        for (int i = 0; i < colours.length; i++) {
+            table[i * 3] = (byte) (colours[i] >> 16);
+            table[i * 3 + 1] = (byte) (colours[i] >> 8);
+            table[i * 3 + 2] = (byte) colours[i];
+        }
+        return table;
+    }
+
+    /**
+     * Finds the slot of a colour in the open-addressed exact match table, or the empty slot where it would go
+     */
+    private int exactSlot(int rgb) {
+        int slot = (rgb * 0x9E3779B1) >>> 23;
+        while (exactIndices[slot] >= 0 && exactColours[slot] != rgb) {
+            slot = (slot + 1) & (EXACT_TABLE_SIZE - 1);
+        }
+        return slot;
+    }
+
+    private int nearest(int r, int g, int b) {
+        //search from the centre of the cache cell so that every colour in the cell maps alike
+        r = (r & ~7) | 4;
+        g = (g & ~7) | 4;
+        b = (b & ~7) | 4;
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < colours.length; i++) {
+            int dr = (colours[i] >> 16 & 0xFF) - r;
+            int dg = (colours[i] >> 8 & 0xFF) - g;
+            int db = (colours[i] & 0xFF) - b;
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
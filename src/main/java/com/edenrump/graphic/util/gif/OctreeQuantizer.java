@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util.gif;
+
+/**
+ * This class represents an octree colour quantizer. Colours are added one at a time and the tree is reduced, deepest
+ * and most recent branches first, whenever it holds more leaves than the palette may have colours. Each leaf then
+ * becomes one palette entry, the average of the colours that fell into it.
+ * <p>
+ * The tree is six levels deep, so colours differing only in their two lowest bits share a leaf.
+ */
+public class OctreeQuantizer {
+
+    private static final int DEPTH = 6;
+
+    private final int maxColours;
+    private final Node root = new Node(false);
+    private final Node[] reducible = new Node[DEPTH];
+    private int leafCount = 0;
+
+    /**
+     * Create a new quantizer
+     *
+     * @param maxColours the maximum number of palette entries, from 2 to 256
+     */
+    public OctreeQuantizer(int maxColours) {
+        if (maxColours < 2 || maxColours > 256) {
+            throw new IllegalArgumentException("Octree quantizer must produce between 2 and 256 colours");
+        }
+        this.maxColours = maxColours;
+    }
+
+    /**
+     * Method to add every pixel of a rectangle of an image
+     *
+     * @param pixels the RGB pixels of the image, row by row
+     * @param stride the width of the image, in pixels
+     * @param x      the left of the rectangle
+     * @param y      the top of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    public void add(int[] pixels, int stride, int x, int y, int width, int height) {
+        for (int row = y; row < y + height; row++) {
+            int end = row * stride + x + width;
+            for (int i = row * stride + x; i < end; i++) {
+                add(pixels[i]);
+            }
+        }
+    }
+
+    /**
+     * Method to add a single colour
+     *
+     * @param rgb the colour, with red in bits 16 to 23
+     */
+    public void add(int rgb) {
+        int r = rgb >> 16 & 0xFF;
+        int g = rgb >> 8 & 0xFF;
+        int b = rgb & 0xFF;
+
+        Node node = root;
+        for (int level = 0; !node.leaf; level++) {
+            int shift = 7 - level;
+            int child = (r >> shift & 1) << 2 | (g >> shift & 1) << 1 | (b >> shift & 1);
+            if (node.children[child] == null) {
+                boolean leaf = level + 1 == DEPTH;
+                Node created = new Node(leaf);
+                if (leaf) {
+                    leafCount++;
+                } else {
+                    created.nextReducible = reducible[level + 1];
+                    reducible[level + 1] = created;
+                }
+                node.children[child] = created;
+            }
+            node = node.children[child];
+        }
+        node.red += r;
+        node.green += g;
+        node.blue += b;
+        node.pixelCount++;
+
+        while (leafCount > maxColours) reduce();
+    }
+
+    /**
+     * Method to create the palette from the colours added so far
+     *
+     * @return a palette with one entry per leaf of the tree
+     */
+    public GifPalette createPalette() {
+        int[] colours = new int[Math.max(1, leafCount)];
+        int count = collect(root, colours, 0);
+        if (count == 0) return new GifPalette(new int[]{0});
+        int[] palette = new int[count];
+        System.arraycopy(colours, 0, palette, 0, count);
+        return new GifPalette(palette);
+    }
+
+    private int collect(Node node, int[] colours, int count) {
+        if (node.leaf) {
+            if (node.pixelCount > 0) {
+                int r = (int) (node.red / node.pixelCount);
+                int g = (int) (node.green / node.pixelCount);
+                int b = (int) (node.blue / node.pixelCount);
+                colours[count++] = r << 16 | g << 8 | b;
+            }
+            return count;
+        }
+        for (Node child : node.children) {
+            if (child != null) count = collect(child, colours, count);
+        }
+        return count;
+    }
+
+    /**
+     * Merges the children of one node at the deepest level that still has branches into that node
+     */
+    private void reduce() {
+        int level = DEPTH - 1;
+        while (level > 0 && reducible[level] == null) level--;
+        Node node = level > 0 ? reducible[level] : root;
+        if (level > 0) reducible[level] = node.nextReducible;
+
+        int merged = 0;
+        for (int i = 0; i < 8; i++) {
+            Node child = node.children[i];
+            if (child == null) continue;
+            node.red += child.red;
+            node.green += child.green;
+            node.blue += child.blue;
+            node.pixelCount += child.pixelCount;
+            node.children[i] = null;
+            merged++;
+        }
+        node.leaf = true;
+        leafCount -= merged - 1;
+    }
+
+    private static class Node {
+        private final Node[] children = new Node[8];
+        private boolean leaf;
+        private long red, green, blue;
+        private int pixelCount;
+        private Node nextReducible;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+    }
+}
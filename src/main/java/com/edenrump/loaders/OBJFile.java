@@ -23,6 +23,7 @@ import com.edenrump.math.arrays.ColumnVector;
 import com.edenrump.math.shape.mesh.Face;
 import com.edenrump.math.shape.textured.WrappedConstruct;
 import com.edenrump.math.shape.textured.WrappedVertex;
+import com.edenrump.profiling.Profiler;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -53,9 +54,14 @@ public class OBJFile {
             throw new IllegalArgumentException("Cannot load OBJ file with null fileName");
         }
 
-        parseTextByLineIdentifier(getReader());
+        Profiler.begin("OBJFile.load");
+        try {
+            parseTextByLineIdentifier(getReader());
 
-        mesh = createMesh();
+            mesh = createMesh();
+        } finally {
+            Profiler.end();
+        }
     }
 
     public WrappedConstruct getMesh() {
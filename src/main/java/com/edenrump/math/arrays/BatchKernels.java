@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.arrays;
+
+/**
+ * This class represents kernels that apply the same matrix and vector operations as {@link SquareMatrix} and
+ * {@link ColumnVector} to whole arrays at once, for when tens of thousands of positions or matrices must be updated per
+ * frame. Vectors are stored as structure-of-arrays: one array per component. Matrices are stored as 16 consecutive
+ * floats in the same layout as {@link SquareMatrix#getValues()}.
+ * <p>
+ * {@link #getInstance()} returns an implementation built on the incubating Java Vector API when the engine was built
+ * with the <code>vector</code> profile and the JVM was started with <code>--add-modules jdk.incubator.vector</code>,
+ * and a scalar implementation otherwise. Both perform the same floating point operations in the same order, so their
+ * results are bit-identical to each other and to the equivalent {@link SquareMatrix} and {@link ColumnVector} calls.
+ */
+public abstract class BatchKernels {
+
+    private static final String VECTOR_IMPLEMENTATION = "com.edenrump.math.arrays.VectorBatchKernels";
+    private static final BatchKernels scalar = new ScalarBatchKernels();
+    private static final BatchKernels instance = load();
+
+    BatchKernels() {
+    }
+
+    /**
+     * Method to get the fastest implementation available in this JVM
+     *
+     * @return the vectorised kernels if available, otherwise the scalar kernels
+     */
+    public static BatchKernels getInstance() {
+        return instance;
+    }
+
+    /**
+     * Method to get the scalar implementation, which is always available
+     *
+     * @return the scalar kernels
+     */
+    public static BatchKernels getScalarInstance() {
+        return scalar;
+    }
+
+    private static BatchKernels load() {
+        try {
+            return (BatchKernels) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            //not built with the vector profile, or jdk.incubator.vector is not in the boot layer
+            return scalar;
+        }
+    }
+
+    /**
+     * @return a short name for the implementation, for logs and benchmark reports
+     */
+    public abstract String getName();
+
+    /**
+     * Method to transform positions by a 4x4 matrix, treating each as (x, y, z, 1). Gives the same x, y and z as
+     * {@link SquareMatrix#multiply(ColumnVector)}; the fourth row of the matrix is not used. The output arrays may be
+     * the input arrays.
+     *
+     * @param matrix the 16 values of the matrix
+     * @param x      the x components
+     * @param y      the y components
+     * @param z      the z components
+     * @param outX   the array to write the transformed x components to
+     * @param outY   the array to write the transformed y components to
+     * @param outZ   the array to write the transformed z components to
+     * @param count  the number of positions to transform
+     */
+    public final void transformPoints(float[] matrix, float[] x, float[] y, float[] z,
+                                      float[] outX, float[] outY, float[] outZ, int count) {
+        checkMatrix(matrix, 1);
+        checkComponents(count, x, y, z, outX, outY, outZ);
+        transformPointsUnchecked(matrix, x, y, z, outX, outY, outZ, count);
+    }
+
+    /**
+     * Method to transform directions, such as normals, by a 4x4 matrix, treating each as (x, y, z, 0) so that
+     * translation is ignored. Directions are not renormalised. The output arrays may be the input arrays.
+     *
+     * @param matrix the 16 values of the matrix
+     * @param x      the x components
+     * @param y      the y components
+     * @param z      the z components
+     * @param outX   the array to write the transformed x components to
+     * @param outY   the array to write the transformed y components to
+     * @param outZ   the array to write the transformed z components to
+     * @param count  the number of directions to transform
+     */
+    public final void transformDirections(float[] matrix, float[] x, float[] y, float[] z,
+                                          float[] outX, float[] outY, float[] outZ, int count) {
+        checkMatrix(matrix, 1);
+        checkComponents(count, x, y, z, outX, outY, outZ);
+        transformDirectionsUnchecked(matrix, x, y, z, outX, outY, outZ, count);
+    }
+
+    /**
+     * Method to multiply pairs of 4x4 matrices, giving the same values as
+     * <code>new SquareMatrix(left).multiply(new SquareMatrix(right))</code> for each pair.
+     *
+     * @param left  the left hand matrices, 16 floats each
+     * @param right the right hand matrices, 16 floats each
+     * @param out   the array to write the products to, 16 floats each. Must not be either input array
+     * @param count the number of pairs to multiply
+     */
+    public final void multiplyMatrices(float[] left, float[] right, float[] out, int count) {
+        checkMatrix(left, count);
+        checkMatrix(right, count);
+        checkMatrix(out, count);
+        if (out == left || out == right)
+            throw new IllegalArgumentException("Matrix products cannot be written over their inputs");
+        multiplyMatricesUnchecked(left, right, out, count);
+    }
+
+    /**
+     * Method to normalise vectors in place, giving the same values as {@link ColumnVector#normalize()}. Vectors of
+     * length zero are left unchanged rather than rejected.
+     *
+     * @param x     the x components
+     * @param y     the y components
+     * @param z     the z components
+     * @param count the number of vectors to normalise
+     */
+    public final void normalize(float[] x, float[] y, float[] z, int count) {
+        checkComponents(count, x, y, z);
+        normalizeUnchecked(x, y, z, count);
+    }
+
+    abstract void transformPointsUnchecked(float[] matrix, float[] x, float[] y, float[] z,
+                                           float[] outX, float[] outY, float[] outZ, int count);
+
+    abstract void transformDirectionsUnchecked(float[] matrix, float[] x, float[] y, float[] z,
+                                               float[] outX, float[] outY, float[] outZ, int count);
+
+    abstract void multiplyMatricesUnchecked(float[] left, float[] right, float[] out, int count);
+
+    abstract void normalizeUnchecked(float[] x, float[] y, float[] z, int count);
+
+    private static void checkMatrix(float[] matrices, int count) {
+        if (count < 0) throw new IllegalArgumentException("Cannot process a negative number of matrices");
+        if (matrices.length < count * 16L)
+            throw new IllegalArgumentException("Expected " + count + " matrices of 16 values but array holds " +
+                    matrices.length + " values");
+    }
+
+    private static void checkComponents(int count, float[]... components) {
+        if (count < 0) throw new IllegalArgumentException("Cannot process a negative number of vectors");
+        for (float[] component : components) {
+            if (component.length < count)
+                throw new IllegalArgumentException("Expected " + count + " components but array holds " +
+                        component.length);
+        }
+    }
+}
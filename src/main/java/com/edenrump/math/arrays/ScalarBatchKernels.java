@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.arrays;
+
+/**
+ * This class represents the batch kernels written as plain loops. It is the fallback when the Vector API is not
+ * available, and the vectorised kernels use its range methods to finish the elements left over after the last whole
+ * vector.
+ * <p>
+ * Every sum starts from zero and adds its terms in the order {@link SquareMatrix} does, and no fused multiply-adds are
+ * used, so that results are bit-identical across implementations.
+ */
+final class ScalarBatchKernels extends BatchKernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    void transformPointsUnchecked(float[] matrix, float[] x, float[] y, float[] z,
+                                  float[] outX, float[] outY, float[] outZ, int count) {
+        transformPoints(matrix, x, y, z, outX, outY, outZ, 0, count);
+    }
+
+    @Override
+    void transformDirectionsUnchecked(float[] matrix, float[] x, float[] y, float[] z,
+                                      float[] outX, float[] outY, float[] outZ, int count) {
+        transformDirections(matrix, x, y, z, outX, outY, outZ, 0, count);
+    }
+
+    @Override
+    void multiplyMatricesUnchecked(float[] left, float[] right, float[] out, int count) {
+        multiplyMatrices(left, right, out, 0, count);
+    }
+
+    @Override
+    void normalizeUnchecked(float[] x, float[] y, float[] z, int count) {
+        normalize(x, y, z, 0, count);
+    }
+
+    static void transformPoints(float[] m, float[] x, float[] y, float[] z,
+                                float[] outX, float[] outY, float[] outZ, int from, int to) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        float m12 = m[12], m13 = m[13], m14 = m[14];
+        for (int i = from; i < to; i++) {
+            float px = x[i], py = y[i], pz = z[i];
+            outX[i] = 0f + m0 * px + m4 * py + m8 * pz + m12;
+            outY[i] = 0f + m1 * px + m5 * py + m9 * pz + m13;
+            outZ[i] = 0f + m2 * px + m6 * py + m10 * pz + m14;
+        }
+    }
+
+    static void transformDirections(float[] m, float[] x, float[] y, float[] z,
+                                    float[] outX, float[] outY, float[] outZ, int from, int to) {
+        float m0 = m[0], m1 = m[1], m2 = m[2];
+        float m4 = m[4], m5 = m[5], m6 = m[6];
+        float m8 = m[8], m9 = m[9], m10 = m[10];
+        for (int i = from; i < to; i++) {
+            float dx = x[i], dy = y[i], dz = z[i];
+            outX[i] = 0f + m0 * dx + m4 * dy + m8 * dz;
+            outY[i] = 0f + m1 * dx + m5 * dy + m9 * dz;
+            outZ[i] = 0f + m2 * dx + m6 * dy + m10 * dz;
+        }
+    }
+
+    static void multiplyMatrices(float[] left, float[] right, float[] out, int from, int to) {
+        for (int n = from; n < to; n++) {
+            int base = n * 16;
+            for (int row = base; row < base + 16; row += 4) {
+                float a0 = left[row], a1 = left[row + 1], a2 = left[row + 2], a3 = left[row + 3];
+                for (int column = 0; column < 4; column++) {
+                    out[row + column] = 0f + a0 * right[base + column] + a1 * right[base + 4 + column] +
+                            a2 * right[base + 8 + column] + a3 * right[base + 12 + column];
+                }
+            }
+        }
+    }
+
+    static void normalize(float[] x, float[] y, float[] z, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float vx = x[i], vy = y[i], vz = z[i];
+            float length = (float) Math.sqrt(0f + vx * vx + vy * vy + vz * vz);
+            if (length != 0) {
+                float inverse = 1f / length;
+                x[i] = vx * inverse;
+                y[i] = vy * inverse;
+                z[i] = vz * inverse;
+            }
+        }
+    }
+}
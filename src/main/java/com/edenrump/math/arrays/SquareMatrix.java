@@ -191,6 +191,372 @@ public class SquareMatrix{
         return new SquareMatrix(result);
     }
 
+    /**
+     * Calculates the determinant of this matrix. Matrices up to 4x4 use the closed form; larger matrices are
+     * factorised.
+     *
+     * @return the determinant
+     */
+    public float determinant() {
+        switch (dimensions) {
+            case 1:
+                return values[0];
+            case 2:
+                return values[0] * values[3] - values[2] * values[1];
+            case 3:
+                return determinant3x3(values);
+            case 4:
+                return determinant4x4(values);
+            default:
+                return (float) new LUDecomposition(values, dimensions).determinant();
+        }
+    }
+
+    /**
+     * Inverts this matrix. Matrices up to 4x4 use the closed form; larger matrices are inverted by LU decomposition
+     * with partial pivoting.
+     *
+     * @return the inverse of this matrix
+     * @throws ArithmeticException if the matrix is singular
+     */
+    public SquareMatrix inverse() {
+        float[] result = new float[values.length];
+        switch (dimensions) {
+            case 1:
+                if (values[0] == 0) throw singular();
+                result[0] = 1f / values[0];
+                break;
+            case 2:
+                float determinant = determinant();
+                if (determinant == 0) throw singular();
+                float inverseDeterminant = 1f / determinant;
+                result[0] = values[3] * inverseDeterminant;
+                result[1] = -values[1] * inverseDeterminant;
+                result[2] = -values[2] * inverseDeterminant;
+                result[3] = values[0] * inverseDeterminant;
+                break;
+            case 3:
+                invert3x3(values, result);
+                break;
+            case 4:
+                invert4x4(values, result);
+                break;
+            default:
+                new LUDecomposition(values, dimensions).invert(result);
+        }
+        return new SquareMatrix(result);
+    }
+
+    /**
+     * Inverts this 4x4 affine matrix, one whose last row is (0, 0, 0, 1), such as any combination of translation,
+     * rotation and scale. Cheaper than {@link #inverse()}.
+     *
+     * @return the inverse of this matrix
+     * @throws ArithmeticException if the matrix is singular
+     */
+    public SquareMatrix inverseAffine() {
+        if (dimensions != 4) throw new IllegalArgumentException("Affine inversion requires a 4x4 matrix");
+        float[] result = new float[16];
+        invertAffine(values, result);
+        return new SquareMatrix(result);
+    }
+
+    /**
+     * Calculates the matrix that transforms normals for this 4x4 model matrix: the inverse-transpose of its upper 3x3.
+     * Unlike the model matrix itself, this keeps normals perpendicular to surfaces under non-uniform scale.
+     *
+     * @return the 3x3 normal matrix
+     * @throws ArithmeticException if the upper 3x3 is singular
+     */
+    public SquareMatrix getNormalMatrix() {
+        if (dimensions != 4) throw new IllegalArgumentException("Normal matrices are calculated from 4x4 matrices");
+        float[] result = new float[9];
+        normalMatrix(values, result);
+        return new SquareMatrix(result);
+    }
+
+    /* ****************************************************************************************************************
+     * Allocation-free operations on the values of matrices
+     * ****************************************************************************************************************/
+
+    private static float determinant3x3(float[] m) {
+        return m[0] * (m[4] * m[8] - m[5] * m[7]) -
+                m[1] * (m[3] * m[8] - m[5] * m[6]) +
+                m[2] * (m[3] * m[7] - m[4] * m[6]);
+    }
+
+    private static float determinant4x4(float[] m) {
+        float s0 = m[0] * m[5] - m[4] * m[1];
+        float s1 = m[0] * m[6] - m[4] * m[2];
+        float s2 = m[0] * m[7] - m[4] * m[3];
+        float s3 = m[1] * m[6] - m[5] * m[2];
+        float s4 = m[1] * m[7] - m[5] * m[3];
+        float s5 = m[2] * m[7] - m[6] * m[3];
+        float c5 = m[10] * m[15] - m[14] * m[11];
+        float c4 = m[9] * m[15] - m[13] * m[11];
+        float c3 = m[9] * m[14] - m[13] * m[10];
+        float c2 = m[8] * m[15] - m[12] * m[11];
+        float c1 = m[8] * m[14] - m[12] * m[10];
+        float c0 = m[8] * m[13] - m[12] * m[9];
+        return s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+    }
+
+    /**
+     * Inverts the 9 values of a 3x3 matrix. The destination may be the source.
+     *
+     * @param m           the values of the matrix to invert
+     * @param destination the array to write the 9 values of the inverse to
+     * @throws ArithmeticException if the matrix is singular
+     */
+    public static void invert3x3(float[] m, float[] destination) {
+        float a00 = m[0], a01 = m[1], a02 = m[2];
+        float a10 = m[3], a11 = m[4], a12 = m[5];
+        float a20 = m[6], a21 = m[7], a22 = m[8];
+
+        float c00 = a11 * a22 - a12 * a21;
+        float c01 = a12 * a20 - a10 * a22;
+        float c02 = a10 * a21 - a11 * a20;
+        float determinant = a00 * c00 + a01 * c01 + a02 * c02;
+        if (determinant == 0) throw singular();
+        float inverse = 1f / determinant;
+
+        destination[0] = c00 * inverse;
+        destination[1] = (a02 * a21 - a01 * a22) * inverse;
+        destination[2] = (a01 * a12 - a02 * a11) * inverse;
+        destination[3] = c01 * inverse;
+        destination[4] = (a00 * a22 - a02 * a20) * inverse;
+        destination[5] = (a02 * a10 - a00 * a12) * inverse;
+        destination[6] = c02 * inverse;
+        destination[7] = (a01 * a20 - a00 * a21) * inverse;
+        destination[8] = (a00 * a11 - a01 * a10) * inverse;
+    }
+
+    /**
+     * Inverts the 16 values of a 4x4 matrix by expanding into 2x2 sub-determinants. The destination may be the source.
+     *
+     * @param m           the values of the matrix to invert
+     * @param destination the array to write the 16 values of the inverse to
+     * @throws ArithmeticException if the matrix is singular
+     */
+    public static void invert4x4(float[] m, float[] destination) {
+        float a00 = m[0], a01 = m[1], a02 = m[2], a03 = m[3];
+        float a10 = m[4], a11 = m[5], a12 = m[6], a13 = m[7];
+        float a20 = m[8], a21 = m[9], a22 = m[10], a23 = m[11];
+        float a30 = m[12], a31 = m[13], a32 = m[14], a33 = m[15];
+
+        float s0 = a00 * a11 - a10 * a01;
+        float s1 = a00 * a12 - a10 * a02;
+        float s2 = a00 * a13 - a10 * a03;
+        float s3 = a01 * a12 - a11 * a02;
+        float s4 = a01 * a13 - a11 * a03;
+        float s5 = a02 * a13 - a12 * a03;
+        float c5 = a22 * a33 - a32 * a23;
+        float c4 = a21 * a33 - a31 * a23;
+        float c3 = a21 * a32 - a31 * a22;
+        float c2 = a20 * a33 - a30 * a23;
+        float c1 = a20 * a32 - a30 * a22;
+        float c0 = a20 * a31 - a30 * a21;
+
+        float determinant = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        if (determinant == 0) throw singular();
+        float inverse = 1f / determinant;
+
+        destination[0] = (a11 * c5 - a12 * c4 + a13 * c3) * inverse;
+        destination[1] = (-a01 * c5 + a02 * c4 - a03 * c3) * inverse;
+        destination[2] = (a31 * s5 - a32 * s4 + a33 * s3) * inverse;
+        destination[3] = (-a21 * s5 + a22 * s4 - a23 * s3) * inverse;
+        destination[4] = (-a10 * c5 + a12 * c2 - a13 * c1) * inverse;
+        destination[5] = (a00 * c5 - a02 * c2 + a03 * c1) * inverse;
+        destination[6] = (-a30 * s5 + a32 * s2 - a33 * s1) * inverse;
+        destination[7] = (a20 * s5 - a22 * s2 + a23 * s1) * inverse;
+        destination[8] = (a10 * c4 - a11 * c2 + a13 * c0) * inverse;
+        destination[9] = (-a00 * c4 + a01 * c2 - a03 * c0) * inverse;
+        destination[10] = (a30 * s4 - a31 * s2 + a33 * s0) * inverse;
+        destination[11] = (-a20 * s4 + a21 * s2 - a23 * s0) * inverse;
+        destination[12] = (-a10 * c3 + a11 * c1 - a12 * c0) * inverse;
+        destination[13] = (a00 * c3 - a01 * c1 + a02 * c0) * inverse;
+        destination[14] = (-a30 * s3 + a31 * s1 - a32 * s0) * inverse;
+        destination[15] = (a20 * s3 - a21 * s1 + a22 * s0) * inverse;
+    }
+
+    /**
+     * Inverts the 16 values of a 4x4 affine matrix, whose last row is (0, 0, 0, 1). The upper 3x3 is inverted in
+     * closed form and the translation is rotated and scaled back by it. The destination may be the source.
+     *
+     * @param m           the values of the matrix to invert
+     * @param destination the array to write the 16 values of the inverse to
+     * @throws ArithmeticException      if the matrix is singular
+     * @throws IllegalArgumentException if the matrix is not affine
+     */
+    public static void invertAffine(float[] m, float[] destination) {
+        if (m[3] != 0 || m[7] != 0 || m[11] != 0 || m[15] != 1)
+            throw new IllegalArgumentException("Matrix is not affine: its last row must be (0, 0, 0, 1)");
+
+        //rXY is row X, column Y of the upper 3x3
+        float r00 = m[0], r10 = m[1], r20 = m[2];
+        float r01 = m[4], r11 = m[5], r21 = m[6];
+        float r02 = m[8], r12 = m[9], r22 = m[10];
+        float tx = m[12], ty = m[13], tz = m[14];
+
+        float c00 = r11 * r22 - r12 * r21;
+        float c01 = r12 * r20 - r10 * r22;
+        float c02 = r10 * r21 - r11 * r20;
+        float determinant = r00 * c00 + r01 * c01 + r02 * c02;
+        if (determinant == 0) throw singular();
+        float inverse = 1f / determinant;
+
+        float i00 = c00 * inverse;
+        float i01 = (r02 * r21 - r01 * r22) * inverse;
+        float i02 = (r01 * r12 - r02 * r11) * inverse;
+        float i10 = c01 * inverse;
+        float i11 = (r00 * r22 - r02 * r20) * inverse;
+        float i12 = (r02 * r10 - r00 * r12) * inverse;
+        float i20 = c02 * inverse;
+        float i21 = (r01 * r20 - r00 * r21) * inverse;
+        float i22 = (r00 * r11 - r01 * r10) * inverse;
+
+        destination[0] = i00;
+        destination[1] = i10;
+        destination[2] = i20;
+        destination[3] = 0;
+        destination[4] = i01;
+        destination[5] = i11;
+        destination[6] = i21;
+        destination[7] = 0;
+        destination[8] = i02;
+        destination[9] = i12;
+        destination[10] = i22;
+        destination[11] = 0;
+        destination[12] = -(i00 * tx + i01 * ty + i02 * tz);
+        destination[13] = -(i10 * tx + i11 * ty + i12 * tz);
+        destination[14] = -(i20 * tx + i21 * ty + i22 * tz);
+        destination[15] = 1;
+    }
+
+    /**
+     * Calculates the normal matrix of a 4x4 model matrix, the inverse-transpose of its upper 3x3. This is the cofactor
+     * matrix of the upper 3x3 divided by its determinant.
+     *
+     * @param m           the 16 values of the model matrix
+     * @param destination the array to write the 9 values of the normal matrix to
+     * @throws ArithmeticException if the upper 3x3 is singular
+     */
+    public static void normalMatrix(float[] m, float[] destination) {
+        //rXY is row X, column Y of the upper 3x3
+        float r00 = m[0], r10 = m[1], r20 = m[2];
+        float r01 = m[4], r11 = m[5], r21 = m[6];
+        float r02 = m[8], r12 = m[9], r22 = m[10];
+
+        float c00 = r11 * r22 - r12 * r21;
+        float c01 = r12 * r20 - r10 * r22;
+        float c02 = r10 * r21 - r11 * r20;
+        float determinant = r00 * c00 + r01 * c01 + r02 * c02;
+        if (determinant == 0) throw singular();
+        float inverse = 1f / determinant;
+
+        destination[0] = c00 * inverse;
+        destination[1] = (r02 * r21 - r01 * r22) * inverse;
+        destination[2] = (r01 * r12 - r02 * r11) * inverse;
+        destination[3] = c01 * inverse;
+        destination[4] = (r00 * r22 - r02 * r20) * inverse;
+        destination[5] = (r02 * r10 - r00 * r12) * inverse;
+        destination[6] = c02 * inverse;
+        destination[7] = (r01 * r20 - r00 * r21) * inverse;
+        destination[8] = (r00 * r11 - r01 * r10) * inverse;
+    }
+
+    private static ArithmeticException singular() {
+        return new ArithmeticException("Cannot invert a singular matrix");
+    }
+
+    /**
+     * This class represents the LU decomposition, with partial pivoting, of a matrix of any size. Calculated in double
+     * precision so that large matrices keep float accuracy.
+     */
+    private static final class LUDecomposition {
+        private final double[][] lu;
+        private final int[] pivots;
+        private final int size;
+        private boolean oddSwaps = false;
+        private boolean singular = false;
+
+        LUDecomposition(float[] values, int size) {
+            this.size = size;
+            lu = new double[size][size];
+            pivots = new int[size];
+            for (int row = 0; row < size; row++) {
+                pivots[row] = row;
+                for (int column = 0; column < size; column++) {
+                    lu[row][column] = values[column * size + row];
+                }
+            }
+
+            for (int k = 0; k < size; k++) {
+                int pivot = k;
+                for (int row = k + 1; row < size; row++) {
+                    if (Math.abs(lu[row][k]) > Math.abs(lu[pivot][k])) pivot = row;
+                }
+                if (lu[pivot][k] == 0) {
+                    singular = true;
+                    continue;
+                }
+                if (pivot != k) {
+                    double[] swap = lu[pivot];
+                    lu[pivot] = lu[k];
+                    lu[k] = swap;
+                    int swapIndex = pivots[pivot];
+                    pivots[pivot] = pivots[k];
+                    pivots[k] = swapIndex;
+                    oddSwaps = !oddSwaps;
+                }
+                for (int row = k + 1; row < size; row++) {
+                    double factor = lu[row][k] / lu[k][k];
+                    lu[row][k] = factor;
+                    for (int column = k + 1; column < size; column++) {
+                        lu[row][column] -= factor * lu[k][column];
+                    }
+                }
+            }
+        }
+
+        double determinant() {
+            if (singular) return 0;
+            double determinant = oddSwaps ? -1 : 1;
+            for (int i = 0; i < size; i++) {
+                determinant *= lu[i][i];
+            }
+            return determinant;
+        }
+
+        /**
+         * Solves for each column of the identity in turn, writing the inverse in the layout of the matrix's values
+         */
+        void invert(float[] destination) {
+            if (singular) throw singular();
+            double[] column = new double[size];
+            for (int c = 0; c < size; c++) {
+                for (int row = 0; row < size; row++) {
+                    column[row] = pivots[row] == c ? 1 : 0;
+                }
+                //forward substitution through the unit lower triangle, then back substitution through the upper
+                for (int row = 0; row < size; row++) {
+                    for (int k = 0; k < row; k++) {
+                        column[row] -= lu[row][k] * column[k];
+                    }
+                }
+                for (int row = size - 1; row >= 0; row--) {
+                    for (int k = row + 1; k < size; k++) {
+                        column[row] -= lu[row][k] * column[k];
+                    }
+                    column[row] /= lu[row][row];
+                }
+                for (int row = 0; row < size; row++) {
+                    destination[c * size + row] = (float) column[row];
+                }
+            }
+        }
+    }
+
     /**
      * Stores the matrix in a given Buffer.
      *
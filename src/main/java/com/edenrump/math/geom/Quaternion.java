@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.geom;
+
+import com.edenrump.math.arrays.SquareMatrix;
+
+import java.util.Locale;
+
+/**
+ * This class represents a rotation as a unit quaternion, (x, y, z) being the vector part and w the scalar part.
+ * <p>
+ * Quaternions are mutable. Every operation writes its result into this quaternion and returns it, so that rotations
+ * can be composed, normalised and interpolated every frame without allocating. Angles are in degrees and rotations are
+ * counter-clockwise about their axis, as in {@link com.edenrump.math.util.Volume#createRotationMatrix}.
+ */
+public class Quaternion {
+
+    /**
+     * Below this angle between two rotations, slerp falls back to nlerp, which is indistinguishable and avoids dividing
+     * by a vanishing sine
+     */
+    private static final float SLERP_THRESHOLD = 0.9995f;
+
+    private float x;
+    private float y;
+    private float z;
+    private float w;
+
+    /**
+     * Creates the identity rotation
+     */
+    public Quaternion() {
+        this(0, 0, 0, 1);
+    }
+
+    public Quaternion(float x, float y, float z, float w) {
+        set(x, y, z, w);
+    }
+
+    public Quaternion(Quaternion other) {
+        set(other);
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getW() {
+        return w;
+    }
+
+    public Quaternion set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quaternion set(Quaternion other) {
+        return set(other.x, other.y, other.z, other.w);
+    }
+
+    public Quaternion setIdentity() {
+        return set(0, 0, 0, 1);
+    }
+
+    /**
+     * Method to set this to a rotation about an axis
+     *
+     * @param angle the angle of rotation in degrees
+     * @param axisX the x component of the axis, which need not be normalised
+     * @param axisY the y component of the axis
+     * @param axisZ the z component of the axis
+     * @return this quaternion
+     */
+    public Quaternion setAxisAngle(float angle, float axisX, float axisY, float axisZ) {
+        float length = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        if (length == 0) throw new IllegalArgumentException("Cannot rotate about an axis of zero length");
+
+        double halfAngle = Math.toRadians(angle) / 2;
+        float scale = (float) Math.sin(halfAngle) / length;
+        return set(axisX * scale, axisY * scale, axisZ * scale, (float) Math.cos(halfAngle));
+    }
+
+    /**
+     * Method to set this to the rotation made by turning about x, then y, then z, which is the order a
+     * {@link Transform} applies Euler angles in
+     *
+     * @param angleX the angle about x, in degrees
+     * @param angleY the angle about y, in degrees
+     * @param angleZ the angle about z, in degrees
+     * @return this quaternion
+     */
+    public Quaternion setEuler(float angleX, float angleY, float angleZ) {
+        double hx = Math.toRadians(angleX) / 2;
+        double hy = Math.toRadians(angleY) / 2;
+        double hz = Math.toRadians(angleZ) / 2;
+        double sx = Math.sin(hx), cx = Math.cos(hx);
+        double sy = Math.sin(hy), cy = Math.cos(hy);
+        double sz = Math.sin(hz), cz = Math.cos(hz);
+
+        //qz * qy * qx, expanded
+        return set((float) (cz * cy * sx - sz * sy * cx),
+                (float) (cz * sy * cx + sz * cy * sx),
+                (float) (sz * cy * cx - cz * sy * sx),
+                (float) (cz * cy * cx + sz * sy * sx));
+    }
+
+    /**
+     * Method to find the Euler angles that {@link #setEuler(float, float, float)} would turn into this rotation. Pitch
+     * about y is kept within -90 to 90 degrees.
+     *
+     * @param destination an array of at least three floats to write the x, y and z angles to, in degrees
+     * @return the destination array
+     */
+    public float[] getEuler(float[] destination) {
+        double sinY = 2 * (w * y - z * x);
+        destination[0] = (float) Math.toDegrees(Math.atan2(2 * (w * x + y * z), 1 - 2 * (x * x + y * y)));
+        destination[1] = (float) Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, sinY))));
+        destination[2] = (float) Math.toDegrees(Math.atan2(2 * (w * z + x * y), 1 - 2 * (y * y + z * z)));
+        return destination;
+    }
+
+    /**
+     * Method to compose this rotation with another, so that the result applies the other rotation first
+     *
+     * @param other the rotation to apply before this one
+     * @return this quaternion, now this * other
+     */
+    public Quaternion multiply(Quaternion other) {
+        return multiply(this, other);
+    }
+
+    /**
+     * Method to compose this rotation with another, so that the result applies the other rotation last
+     *
+     * @param other the rotation to apply after this one
+     * @return this quaternion, now other * this
+     */
+    public Quaternion premultiply(Quaternion other) {
+        return multiply(other, this);
+    }
+
+    /**
+     * Method to set this to the product of two rotations. Either may be this quaternion.
+     *
+     * @param left  the rotation applied last
+     * @param right the rotation applied first
+     * @return this quaternion, now left * right
+     */
+    public Quaternion multiply(Quaternion left, Quaternion right) {
+        float ax = left.x, ay = left.y, az = left.z, aw = left.w;
+        float bx = right.x, by = right.y, bz = right.z, bw = right.w;
+        return set(aw * bx + ax * bw + ay * bz - az * by,
+                aw * by - ax * bz + ay * bw + az * bx,
+                aw * bz + ax * by - ay * bx + az * bw,
+                aw * bw - ax * bx - ay * by - az * bz);
+    }
+
+    /**
+     * Method to reverse this rotation. For a unit quaternion the conjugate is the inverse.
+     *
+     * @return this quaternion
+     */
+    public Quaternion conjugate() {
+        return set(-x, -y, -z, w);
+    }
+
+    public float dot(Quaternion other) {
+        return x * other.x + y * other.y + z * other.z + w * other.w;
+    }
+
+    public float lengthSquared() {
+        return dot(this);
+    }
+
+    public float length() {
+        return (float) Math.sqrt(lengthSquared());
+    }
+
+    /**
+     * Method to scale this to unit length, removing the drift that builds up when many rotations are composed
+     *
+     * @return this quaternion
+     */
+    public Quaternion normalize() {
+        float length = length();
+        if (length == 0) throw new IllegalArgumentException("Cannot normalise a quaternion of zero length");
+        float inverse = 1f / length;
+        return set(x * inverse, y * inverse, z * inverse, w * inverse);
+    }
+
+    /**
+     * Method to set this part way between two rotations by normalised linear interpolation. Cheaper than
+     * {@link #slerp(Quaternion, Quaternion, float)} and close to it for small angles, but not constant speed. Either
+     * rotation may be this quaternion.
+     *
+     * @param from  the rotation at alpha 0
+     * @param to    the rotation at alpha 1
+     * @param alpha how far to go, from 0 to 1
+     * @return this quaternion
+     */
+    public Quaternion nlerp(Quaternion from, Quaternion to, float alpha) {
+        //q and -q are the same rotation; flip to take the shorter way round
+        float sign = from.dot(to) < 0 ? -1 : 1;
+        float fromWeight = 1 - alpha;
+        float toWeight = alpha * sign;
+        return set(from.x * fromWeight + to.x * toWeight,
+                from.y * fromWeight + to.y * toWeight,
+                from.z * fromWeight + to.z * toWeight,
+                from.w * fromWeight + to.w * toWeight).normalize();
+    }
+
+    /**
+     * Method to set this part way between two rotations by spherical linear interpolation, which turns at constant
+     * speed along the shorter arc. Either rotation may be this quaternion.
+     *
+     * @param from  the rotation at alpha 0
+     * @param to    the rotation at alpha 1
+     * @param alpha how far to go, from 0 to 1
+     * @return this quaternion
+     */
+    public Quaternion slerp(Quaternion from, Quaternion to, float alpha) {
+        float cosAngle = from.dot(to);
+        float sign = 1;
+        if (cosAngle < 0) {
+            cosAngle = -cosAngle;
+            sign = -1;
+        }
+        if (cosAngle > SLERP_THRESHOLD) return nlerp(from, to, alpha);
+
+        double angle = Math.acos(cosAngle);
+        double sinAngle = Math.sin(angle);
+        float fromWeight = (float) (Math.sin((1 - alpha) * angle) / sinAngle);
+        float toWeight = (float) (Math.sin(alpha * angle) / sinAngle) * sign;
+        return set(from.x * fromWeight + to.x * toWeight,
+                from.y * fromWeight + to.y * toWeight,
+                from.z * fromWeight + to.z * toWeight,
+                from.w * fromWeight + to.w * toWeight);
+    }
+
+    /**
+     * Method to rotate a vector by this rotation, in place
+     *
+     * @param vector an array whose first three values are the x, y and z components
+     * @return the vector array
+     */
+    public float[] rotate(float[] vector) {
+        float vx = vector[0], vy = vector[1], vz = vector[2];
+        //v' = v + 2w(q x v) + 2(q x (q x v))
+        float tx = 2 * (y * vz - z * vy);
+        float ty = 2 * (z * vx - x * vz);
+        float tz = 2 * (x * vy - y * vx);
+        vector[0] = vx + w * tx + (y * tz - z * ty);
+        vector[1] = vy + w * ty + (z * tx - x * tz);
+        vector[2] = vz + w * tz + (x * ty - y * tx);
+        return vector;
+    }
+
+    /**
+     * Method to write this rotation as a 4x4 matrix, in the layout of {@link SquareMatrix#getValues()}. Assumes this is
+     * a unit quaternion.
+     *
+     * @param destination an array of at least 16 floats
+     * @return the destination array
+     */
+    public float[] toMatrix(float[] destination) {
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+
+        destination[0] = 1 - 2 * (yy + zz);
+        destination[1] = 2 * (xy + wz);
+        destination[2] = 2 * (xz - wy);
+        destination[3] = 0;
+
+        destination[4] = 2 * (xy - wz);
+        destination[5] = 1 - 2 * (xx + zz);
+        destination[6] = 2 * (yz + wx);
+        destination[7] = 0;
+
+        destination[8] = 2 * (xz + wy);
+        destination[9] = 2 * (yz - wx);
+        destination[10] = 1 - 2 * (xx + yy);
+        destination[11] = 0;
+
+        destination[12] = 0;
+        destination[13] = 0;
+        destination[14] = 0;
+        destination[15] = 1;
+        return destination;
+    }
+
+    /**
+     * Method to create a rotation matrix from this quaternion
+     *
+     * @return a new 4x4 matrix
+     */
+    public SquareMatrix toSquareMatrix() {
+        return new SquareMatrix(toMatrix(new float[16]));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.hashCode(x);
+        result = 31 * result + Float.hashCode(y);
+        result = 31 * result + Float.hashCode(z);
+        result = 31 * result + Float.hashCode(w);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Quaternion)) return false;
+        Quaternion other = (Quaternion) obj;
+        return Float.compare(x, other.x) == 0 && Float.compare(y, other.y) == 0 &&
+                Float.compare(z, other.z) == 0 && Float.compare(w, other.w) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Quaternion(%f, %f, %f, %f)", x, y, z, w);
+    }
+}
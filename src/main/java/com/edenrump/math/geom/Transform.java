@@ -26,11 +26,33 @@ import org.lwjgl.BufferUtils;
 
 import java.nio.FloatBuffer;
 
+/**
+ * This class represents the translation, rotation and scale of an object. A point is scaled, rotated about x, then y,
+ * then z, and finally translated.
+ * <p>
+ * Rotation is held either as Euler angles in degrees, the default, or as a {@link Quaternion}. In quaternion mode
+ * rotations compose without drift or gimbal lock, the transformation matrix is built without trigonometry, and
+ * interpolation follows the shorter arc at constant speed.
+ */
 public class Transform {
 
+    /**
+     * This enum represents how a transform stores its rotation
+     */
+    public enum RotationMode {
+        EULER,
+        QUATERNION
+    }
+
     private ColumnVector translation;
     private ColumnVector rotation;
     private ColumnVector scale;
+    /**
+     * The rotation in quaternion mode, or null in Euler mode
+     */
+    private Quaternion orientation = null;
+    private final Quaternion scratch = new Quaternion();
+    private final Quaternion interpolationStart = new Quaternion();
 
     public Transform() {
         translation = new ColumnVector(4);
@@ -38,11 +60,77 @@ public class Transform {
         scale = new ColumnVector(1, 1, 1, 0);
     }
 
+    public RotationMode getRotationMode() {
+        return orientation == null ? RotationMode.EULER : RotationMode.QUATERNION;
+    }
+
+    /**
+     * Method to change how the rotation is stored. The rotation itself is kept, although converting from a quaternion
+     * to Euler angles may choose different angles that give the same rotation.
+     *
+     * @param mode the new rotation mode
+     */
+    public void setRotationMode(RotationMode mode) {
+        if (mode == getRotationMode()) return;
+
+        if (mode == RotationMode.QUATERNION) {
+            float[] angles = rotation.getValues();
+            orientation = new Quaternion().setEuler(angles[0], angles[1], angles[2]);
+        } else {
+            float[] angles = orientation.getEuler(new float[3]);
+            rotation = new ColumnVector(angles[0], angles[1], angles[2], 0);
+            orientation = null;
+        }
+    }
+
+    /**
+     * Method to copy the rotation into a quaternion, whatever the rotation mode
+     *
+     * @param destination the quaternion to write to
+     * @return the destination quaternion
+     */
+    public Quaternion getOrientation(Quaternion destination) {
+        if (orientation != null) return destination.set(orientation);
+
+        float[] angles = rotation.getValues();
+        return destination.setEuler(angles[0], angles[1], angles[2]);
+    }
+
+    /**
+     * Method to replace the rotation, switching to quaternion mode
+     *
+     * @param orientation the new rotation, which is copied
+     */
+    public void setOrientation(Quaternion orientation) {
+        if (this.orientation == null) this.orientation = new Quaternion();
+        this.orientation.set(orientation).normalize();
+    }
+
+    /**
+     * Method to turn by a further rotation about the object's own axes, switching to quaternion mode
+     *
+     * @param rotation the rotation to apply before the current one
+     */
+    public void rotate(Quaternion rotation) {
+        setRotationMode(RotationMode.QUATERNION);
+        orientation.multiply(rotation).normalize();
+    }
+
     public float[] getTranslation() {
         return translation.getValues();
     }
 
+    /**
+     * Method to get the rotation as Euler angles in degrees. In quaternion mode these are derived from the quaternion.
+     *
+     * @return the x, y and z angles followed by 0
+     */
     public float[] getRotation() {
+        if (orientation != null) {
+            float[] angles = orientation.getEuler(new float[4]);
+            angles[3] = 0;
+            return angles;
+        }
         return rotation.getValues();
     }
 
@@ -50,7 +138,19 @@ public class Transform {
         return scale.getValues();
     }
 
+    /**
+     * Method to turn by Euler angles. In Euler mode the angles are added to the current ones; in quaternion mode the
+     * turn is made about the object's own axes.
+     *
+     * @param x the angle about x, in degrees
+     * @param y the angle about y, in degrees
+     * @param z the angle about z, in degrees
+     */
     public void rotate(float x, float y, float z) {
+        if (orientation != null) {
+            orientation.multiply(scratch.setEuler(x, y, z)).normalize();
+            return;
+        }
         rotation = rotation.add(new ColumnVector(x, y, z, 0));
     }
 
@@ -67,7 +167,58 @@ public class Transform {
         translation = translation.add(new ColumnVector(x, y, z, 0));
     }
 
+    /**
+     * Method to make this transform a copy of another
+     *
+     * @param other the transform to copy
+     */
+    public void set(Transform other) {
+        translation = new ColumnVector(other.getTranslation().clone());
+        rotation = new ColumnVector(other.rotation.getValues().clone());
+        scale = new ColumnVector(other.getScale().clone());
+        if (other.orientation == null) {
+            orientation = null;
+        } else {
+            setOrientation(other.orientation);
+        }
+    }
+
+    /**
+     * Method to set this transform part way between two others, for example to draw a simulated object between two
+     * simulation steps. Translation and scale are interpolated linearly. If either transform is in quaternion mode,
+     * this one switches to quaternion mode and the rotation is interpolated by slerp; otherwise the rotation angles
+     * are interpolated linearly.
+     *
+     * @param from  the transform at alpha 0
+     * @param to    the transform at alpha 1
+     * @param alpha how far to go from the first transform to the second, from 0 to 1
+     */
+    public void interpolate(Transform from, Transform to, float alpha) {
+        translation = lerp(from.getTranslation(), to.getTranslation(), alpha);
+        scale = lerp(from.getScale(), to.getScale(), alpha);
+
+        if (from.orientation == null && to.orientation == null) {
+            rotation = lerp(from.rotation.getValues(), to.rotation.getValues(), alpha);
+            orientation = null;
+            return;
+        }
+        Quaternion start = from.getOrientation(interpolationStart);
+        Quaternion end = to.getOrientation(scratch);
+        if (orientation == null) orientation = new Quaternion();
+        orientation.slerp(start, end, alpha);
+    }
+
+    private static ColumnVector lerp(float[] from, float[] to, float alpha) {
+        float[] values = new float[from.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from[i] + (to[i] - from[i]) * alpha;
+        }
+        return new ColumnVector(values);
+    }
+
     public FloatBuffer getTransformationMatrix() {
+        if (orientation != null) return getQuaternionTransformationMatrix();
+
         SquareMatrix transformationMatrix = new SquareMatrix(4);
 
         SquareMatrix txyz = Volume.createTranslationMatrix(translation);
@@ -82,4 +233,54 @@ public class Transform {
         buffer.flip();
         return buffer;
     }
+
+    /**
+     * Method to write the model matrix and its normal matrix into caller-owned arrays without allocating, for example
+     * once per entity per frame. Both are built from the rotation as a quaternion, so in Euler mode the model matrix
+     * may differ from {@link #getTransformationMatrix()} by rounding.
+     * <p>
+     * A scale factor of zero leaves the model matrix without an inverse; its upper 3x3 is then written as the normal
+     * matrix instead, matching the software rasterizer.
+     *
+     * @param model  an array of at least 16 floats to write the model matrix to
+     * @param normal an array of at least 9 floats to write the 3x3 normal matrix to, or null to skip it
+     */
+    public void storeMatrices(float[] model, float[] normal) {
+        storeModelMatrix(getOrientation(scratch), model);
+        if (normal == null) return;
+        try {
+            SquareMatrix.normalMatrix(model, normal);
+        } catch (ArithmeticException singular) {
+            for (int column = 0; column < 3; column++) {
+                System.arraycopy(model, column * 4, normal, column * 3, 3);
+            }
+        }
+    }
+
+    private FloatBuffer getQuaternionTransformationMatrix() {
+        float[] matrix = storeModelMatrix(orientation, new float[16]);
+        FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+        buffer.put(matrix);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Builds translation * rotation * scale directly: the rotation matrix's columns scaled by the scale factors, with
+     * the translation in the last column
+     */
+    private float[] storeModelMatrix(Quaternion rotation, float[] matrix) {
+        rotation.toMatrix(matrix);
+        float[] scaleValues = scale.getValues();
+        float[] translationValues = translation.getValues();
+        for (int column = 0; column < 3; column++) {
+            for (int row = 0; row < 3; row++) {
+                matrix[column * 4 + row] *= scaleValues[column];
+            }
+        }
+        matrix[12] = translationValues[0];
+        matrix[13] = translationValues[1];
+        matrix[14] = translationValues[2];
+        return matrix;
+    }
 }
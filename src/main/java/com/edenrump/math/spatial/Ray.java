@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.math.spatial;
+
+/**
+ * This class represents a ray with an origin, a direction and a valid interval along that direction.
+ * <p>
+ * Rays are mutable so that a single instance can be re-aimed every frame (e.g. for mouse picking) without
+ * allocating. The reciprocal of the direction is cached for slab tests against bounding boxes.
+ */
+public class Ray {
+
+    private float originX, originY, originZ;
+    private float directionX, directionY, directionZ;
+    private float inverseDirectionX, inverseDirectionY, inverseDirectionZ;
+    private float tMin;
+    private float tMax;
+
+    /**
+     * Creates a ray which starts at the origin and points along the negative z axis.
+     */
+    public Ray() {
+        this(0, 0, 0, 0, 0, -1);
+    }
+
+    public Ray(float originX, float originY, float originZ,
+               float directionX, float directionY, float directionZ) {
+        set(originX, originY, originZ, directionX, directionY, directionZ);
+    }
+
+    /**
+     * Method to re-aim this ray. The interval is reset to (0, infinity).
+     * <p>
+     * The direction does not need to be normalised, but hit distances are reported in multiples of its length.
+     */
+    public void set(float originX, float originY, float originZ,
+                    float directionX, float directionY, float directionZ) {
+        if (directionX == 0 && directionY == 0 && directionZ == 0)
+            throw new IllegalArgumentException("Cannot create ray with a zero-length direction");
+
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.directionZ = directionZ;
+        this.inverseDirectionX = 1f / directionX;
+        this.inverseDirectionY = 1f / directionY;
+        this.inverseDirectionZ = 1f / directionZ;
+        this.tMin = 0;
+        this.tMax = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Method to restrict the ray to the interval (tMin, tMax), e.g. to test line of sight between two points.
+     *
+     * @param tMin the nearest distance that counts as a hit
+     * @param tMax the furthest distance that counts as a hit
+     */
+    public void setInterval(float tMin, float tMax) {
+        if (tMin > tMax)
+            throw new IllegalArgumentException("Ray interval minimum " + tMin + " is greater than maximum " + tMax);
+        this.tMin = tMin;
+        this.tMax = tMax;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getOriginZ() {
+        return originZ;
+    }
+
+    public float getDirectionX() {
+        return directionX;
+    }
+
+    public float getDirectionY() {
+        return directionY;
+    }
+
+    public float getDirectionZ() {
+        return directionZ;
+    }
+
+    float getInverseDirectionX() {
+        return inverseDirectionX;
+    }
+
+    float getInverseDirectionY() {
+        return inverseDirectionY;
+    }
+
+    float getInverseDirectionZ() {
+        return inverseDirectionZ;
+    }
+
+    public float getMin() {
+        return tMin;
+    }
+
+    public float getMax() {
+        return tMax;
+    }
+
+    /**
+     * Method to get the point a given distance along the ray
+     *
+     * @param t    the distance along the ray, in multiples of the direction length
+     * @param dest array of at least 3 floats that receives the xyz coordinates
+     */
+    public void getPoint(float t, float[] dest) {
+        dest[0] = originX + directionX * t;
+        dest[1] = originY + directionY * t;
+        dest[2] = originZ + directionZ * t;
+    }
+
+    @Override
+    public String toString() {
+        return "Ray (origin: " + originX + ", " + originY + ", " + originZ +
+                " | direction: " + directionX + ", " + directionY + ", " + directionZ + ")";
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.math.spatial;
+
+/**
+ * This class holds the result of a ray query against a {@link TriangleBVH}.
+ * <p>
+ * It is mutable and intended to be reused between queries.
+ */
+public class RayHit {
+
+    private boolean hit;
+    private float distance = Float.POSITIVE_INFINITY;
+    private int triangle = -1;
+    private float u;
+    private float v;
+
+    /**
+     * Method to reset this result so that it no longer represents a hit
+     */
+    public void clear() {
+        hit = false;
+        distance = Float.POSITIVE_INFINITY;
+        triangle = -1;
+        u = 0;
+        v = 0;
+    }
+
+    void set(float distance, int triangle, float u, float v) {
+        this.hit = true;
+        this.distance = distance;
+        this.triangle = triangle;
+        this.u = u;
+        this.v = v;
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * Method to get the distance along the ray to the hit, in multiples of the ray direction length
+     *
+     * @return distance to the hit, or positive infinity if nothing was hit
+     */
+    public float getDistance() {
+        return distance;
+    }
+
+    /**
+     * Method to get the index of the triangle that was hit, as ordered in the mesh index array
+     * (i.e. the hit triangle is made from indices [3t, 3t + 1, 3t + 2])
+     *
+     * @return index of the triangle that was hit, or -1 if nothing was hit
+     */
+    public int getTriangle() {
+        return triangle;
+    }
+
+    /**
+     * Method to get the barycentric weight of the triangle's second vertex at the hit point
+     *
+     * @return barycentric coordinate u
+     */
+    public float getU() {
+        return u;
+    }
+
+    /**
+     * Method to get the barycentric weight of the triangle's third vertex at the hit point
+     *
+     * @return barycentric coordinate v
+     */
+    public float getV() {
+        return v;
+    }
+
+    @Override
+    public String toString() {
+        if (!hit) return "RayHit (miss)";
+        return "RayHit (triangle: " + triangle + ", distance: " + distance + ", u: " + u + ", v: " + v + ")";
+    }
+}
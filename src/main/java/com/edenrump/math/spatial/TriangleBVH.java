@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.math.spatial;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * This class represents a bounding volume hierarchy over the triangles of an indexed triangle mesh, for casting rays
+ * against geometry on the CPU (mouse picking, line of sight).
+ * <p>
+ * The hierarchy is built top-down with a binned surface area heuristic. Subtrees above a size threshold are built
+ * in parallel on a ForkJoinPool. Once built, the tree is flattened into depth-first arrays where every node stores
+ * an escape index (the next node to visit if its box is missed), so that queries walk the array without a stack.
+ * <p>
+ * The BVH is a snapshot: it does not track later changes to the positions or indices it was built from.
+ */
+public class TriangleBVH {
+
+    private static final int BIN_COUNT = 16;
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int MAX_FORCED_LEAF_SIZE = 16;
+    private static final int PARALLEL_BUILD_THRESHOLD = 4096;
+    private static final float TRAVERSAL_COST = 1f;
+    private static final float INTERSECTION_COST = 1f;
+    private static final float DETERMINANT_EPSILON = 1e-9f;
+
+    /**
+     * Per-triangle vertex 0, edge 1 and edge 2 (9 floats per triangle), stored in leaf order
+     */
+    private final float[] triangles;
+    /**
+     * Index of each leaf-ordered triangle in the original index array
+     */
+    private final int[] triangleIds;
+    /**
+     * Node bounding boxes as minX, minY, minZ, maxX, maxY, maxZ
+     */
+    private final float[] nodeBounds;
+    /**
+     * Node data as escape index, first triangle and triangle count. Internal nodes have a count of 0 and their
+     * first child immediately follows them in the array.
+     */
+    private final int[] nodeData;
+    private final int nodeCount;
+
+    /**
+     * Creates a BVH over the given mesh data, building on the common ForkJoinPool.
+     *
+     * @param vertexPositions the vertex positions of the mesh
+     * @param indices         the triangle indices of the mesh, three per triangle
+     * @param floatsPerVertex the number of floats per vertex in vertexPositions (at least 3; only xyz are used)
+     */
+    public TriangleBVH(float[] vertexPositions, int[] indices, int floatsPerVertex) {
+        this(vertexPositions, indices, floatsPerVertex, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a BVH over the given mesh data, building on the given pool.
+     *
+     * @param vertexPositions the vertex positions of the mesh
+     * @param indices         the triangle indices of the mesh, three per triangle
+     * @param floatsPerVertex the number of floats per vertex in vertexPositions (at least 3; only xyz are used)
+     * @param pool            the pool on which to build subtrees in parallel
+     */
+    public TriangleBVH(float[] vertexPositions, int[] indices, int floatsPerVertex, ForkJoinPool pool) {
+        if (vertexPositions == null || indices == null)
+            throw new IllegalArgumentException("Cannot build BVH from null positions or indices");
+        if (floatsPerVertex < 3)
+            throw new IllegalArgumentException("Cannot build BVH from vertices with fewer than 3 dimensions");
+        if (indices.length % 3 != 0)
+            throw new IllegalArgumentException("Cannot build BVH from " + indices.length +
+                    " indices as they do not form whole triangles");
+
+        int vertexCount = vertexPositions.length / floatsPerVertex;
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount)
+                throw new IllegalArgumentException("Index " + index + " is out of range for " + vertexCount + " vertices");
+        }
+
+        int triangleCount = indices.length / 3;
+        BuildData data = new BuildData(vertexPositions, indices, floatsPerVertex, triangleCount);
+
+        triangles = new float[triangleCount * 9];
+        triangleIds = new int[triangleCount];
+        if (triangleCount == 0) {
+            nodeBounds = new float[0];
+            nodeData = new int[0];
+            nodeCount = 0;
+            return;
+        }
+
+        BuildNode root = pool.invoke(new BuildTask(data, 0, triangleCount));
+        nodeCount = root.subtreeSize;
+        nodeBounds = new float[nodeCount * 6];
+        nodeData = new int[nodeCount * 3];
+        flatten(root, 0);
+
+        for (int i = 0; i < triangleCount; i++) {
+            int id = data.order[i];
+            triangleIds[i] = id;
+            storeTriangle(i, vertexPositions, floatsPerVertex,
+                    indices[id * 3], indices[id * 3 + 1], indices[id * 3 + 2]);
+        }
+    }
+
+    public int getTriangleCount() {
+        return triangleIds.length;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Method to get the bounding box of the whole mesh
+     *
+     * @return minX, minY, minZ, maxX, maxY, maxZ of the mesh, or an empty array if the mesh has no triangles
+     */
+    public float[] getBounds() {
+        float[] bounds = new float[nodeCount == 0 ? 0 : 6];
+        System.arraycopy(nodeBounds, 0, bounds, 0, bounds.length);
+        return bounds;
+    }
+
+    /**
+     * Method to find the nearest triangle hit by a ray within the ray's interval.
+     *
+     * @param ray the ray to cast
+     * @param hit receives the nearest hit; cleared if there is no hit
+     * @return whether any triangle was hit
+     */
+    public boolean intersectClosest(Ray ray, RayHit hit) {
+        hit.clear();
+
+        float ox = ray.getOriginX(), oy = ray.getOriginY(), oz = ray.getOriginZ();
+        float dx = ray.getDirectionX(), dy = ray.getDirectionY(), dz = ray.getDirectionZ();
+        float idx = ray.getInverseDirectionX(), idy = ray.getInverseDirectionY(), idz = ray.getInverseDirectionZ();
+        float tMin = ray.getMin();
+        float closest = ray.getMax();
+        int closestTriangle = -1;
+
+        int node = 0;
+        while (node < nodeCount) {
+            if (!intersectsNode(node, ox, oy, oz, idx, idy, idz, tMin, closest)) {
+                node = nodeData[node * 3];
+                continue;
+            }
+
+            int count = nodeData[node * 3 + 2];
+            if (count > 0) {
+                int first = nodeData[node * 3 + 1];
+                for (int tri = first; tri < first + count; tri++) {
+                    float t = intersectTriangle(tri, ox, oy, oz, dx, dy, dz, tMin, closest);
+                    if (t == t) { //not NaN
+                        closest = t;
+                        closestTriangle = tri;
+                    }
+                }
+            }
+            node++; //first child of an internal node, or the escape index of a leaf
+        }
+
+        if (closestTriangle < 0) return false;
+
+        recordHit(closestTriangle, closest, ox, oy, oz, dx, dy, dz, hit);
+        return true;
+    }
+
+    /**
+     * Method to test whether a ray hits any triangle within the ray's interval. This returns at the first hit found
+     * and is therefore cheaper than {@link #intersectClosest(Ray, RayHit)} for occlusion and line of sight tests.
+     *
+     * @param ray the ray to cast
+     * @return whether any triangle was hit
+     */
+    public boolean intersectAny(Ray ray) {
+        float ox = ray.getOriginX(), oy = ray.getOriginY(), oz = ray.getOriginZ();
+        float dx = ray.getDirectionX(), dy = ray.getDirectionY(), dz = ray.getDirectionZ();
+        float idx = ray.getInverseDirectionX(), idy = ray.getInverseDirectionY(), idz = ray.getInverseDirectionZ();
+        float tMin = ray.getMin();
+        float tMax = ray.getMax();
+
+        int node = 0;
+        while (node < nodeCount) {
+            if (!intersectsNode(node, ox, oy, oz, idx, idy, idz, tMin, tMax)) {
+                node = nodeData[node * 3];
+                continue;
+            }
+
+            int count = nodeData[node * 3 + 2];
+            if (count > 0) {
+                int first = nodeData[node * 3 + 1];
+                for (int tri = first; tri < first + count; tri++) {
+                    float t = intersectTriangle(tri, ox, oy, oz, dx, dy, dz, tMin, tMax);
+                    if (t == t) return true;
+                }
+            }
+            node++;
+        }
+        return false;
+    }
+
+    /**
+     * Slab test of a ray against the bounding box of a node. A ray lying exactly in a slab plane with no motion along
+     * that axis yields 0 * infinity = NaN; such a slab cannot bound the ray and is skipped rather than rejecting it.
+     */
+    private boolean intersectsNode(int node, float ox, float oy, float oz,
+                                   float idx, float idy, float idz, float tMin, float tMax) {
+        int b = node * 6;
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+
+        float tx1 = (nodeBounds[b] - ox) * idx;
+        float tx2 = (nodeBounds[b + 3] - ox) * idx;
+        if (tx1 == tx1 && tx2 == tx2) { //not NaN
+            near = Math.min(tx1, tx2);
+            far = Math.max(tx1, tx2);
+        }
+
+        float ty1 = (nodeBounds[b + 1] - oy) * idy;
+        float ty2 = (nodeBounds[b + 4] - oy) * idy;
+        if (ty1 == ty1 && ty2 == ty2) {
+            near = Math.max(near, Math.min(ty1, ty2));
+            far = Math.min(far, Math.max(ty1, ty2));
+        }
+
+        float tz1 = (nodeBounds[b + 2] - oz) * idz;
+        float tz2 = (nodeBounds[b + 5] - oz) * idz;
+        if (tz1 == tz1 && tz2 == tz2) {
+            near = Math.max(near, Math.min(tz1, tz2));
+            far = Math.min(far, Math.max(tz1, tz2));
+        }
+
+        return Math.max(near, tMin) <= Math.min(far, tMax);
+    }
+
+    /**
+     * Möller–Trumbore ray/triangle intersection. Triangles are double sided.
+     *
+     * @return the distance to the hit if it lies strictly within (tMin, tMax), otherwise NaN
+     */
+    private float intersectTriangle(int tri, float ox, float oy, float oz,
+                                    float dx, float dy, float dz, float tMin, float tMax) {
+        int o = tri * 9;
+        float e1x = triangles[o + 3], e1y = triangles[o + 4], e1z = triangles[o + 5];
+        float e2x = triangles[o + 6], e2y = triangles[o + 7], e2z = triangles[o + 8];
+
+        float px = dy * e2z - dz * e2y;
+        float py = dz * e2x - dx * e2z;
+        float pz = dx * e2y - dy * e2x;
+        float determinant = e1x * px + e1y * py + e1z * pz;
+        if (determinant > -DETERMINANT_EPSILON && determinant < DETERMINANT_EPSILON) return Float.NaN;
+        float inverseDeterminant = 1f / determinant;
+
+        float sx = ox - triangles[o], sy = oy - triangles[o + 1], sz = oz - triangles[o + 2];
+        float u = (sx * px + sy * py + sz * pz) * inverseDeterminant;
+        if (u < 0 || u > 1) return Float.NaN;
+
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inverseDeterminant;
+        if (v < 0 || u + v > 1) return Float.NaN;
+
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inverseDeterminant;
+        return (t > tMin && t < tMax) ? t : Float.NaN;
+    }
+
+    /**
+     * Recomputes the barycentric coordinates for the winning triangle only, so the traversal loop need not keep them
+     */
+    private void recordHit(int tri, float t, float ox, float oy, float oz,
+                           float dx, float dy, float dz, RayHit hit) {
+        int o = tri * 9;
+        float e1x = triangles[o + 3], e1y = triangles[o + 4], e1z = triangles[o + 5];
+        float e2x = triangles[o + 6], e2y = triangles[o + 7], e2z = triangles[o + 8];
+
+        float px = dy * e2z - dz * e2y;
+        float py = dz * e2x - dx * e2z;
+        float pz = dx * e2y - dy * e2x;
+        float inverseDeterminant = 1f / (e1x * px + e1y * py + e1z * pz);
+
+        float sx = ox - triangles[o], sy = oy - triangles[o + 1], sz = oz - triangles[o + 2];
+        float u = (sx * px + sy * py + sz * pz) * inverseDeterminant;
+
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inverseDeterminant;
+
+        hit.set(t, triangleIds[tri], u, v);
+    }
+
+    private void storeTriangle(int tri, float[] positions, int stride, int i0, int i1, int i2) {
+        int o = tri * 9;
+        int p0 = i0 * stride, p1 = i1 * stride, p2 = i2 * stride;
+        for (int axis = 0; axis < 3; axis++) {
+            float v0 = positions[p0 + axis];
+            triangles[o + axis] = v0;
+            triangles[o + 3 + axis] = positions[p1 + axis] - v0;
+            triangles[o + 6 + axis] = positions[p2 + axis] - v0;
+        }
+    }
+
+    /**
+     * Writes a subtree into the node arrays in depth-first order
+     *
+     * @return the index after the last node of the subtree, which is the escape index of the subtree root
+     */
+    private int flatten(BuildNode node, int index) {
+        System.arraycopy(node.bounds, 0, nodeBounds, index * 6, 6);
+        int escape = index + node.subtreeSize;
+        nodeData[index * 3] = escape;
+        if (node.left == null) {
+            nodeData[index * 3 + 1] = node.start;
+            nodeData[index * 3 + 2] = node.count;
+        } else {
+            int next = flatten(node.left, index + 1);
+            flatten(node.right, next);
+        }
+        return escape;
+    }
+
+    /* ****************************************************************************************************************
+     * Build
+     * ****************************************************************************************************************/
+
+    /**
+     * Triangle bounds and centroids shared by all build tasks. Each task only reorders its own range of order.
+     */
+    private static final class BuildData {
+        final float[] triangleBounds;
+        final float[] centroids;
+        final int[] order;
+
+        BuildData(float[] positions, int[] indices, int stride, int triangleCount) {
+            triangleBounds = new float[triangleCount * 6];
+            centroids = new float[triangleCount * 3];
+            order = new int[triangleCount];
+
+            IntStream.range(0, triangleCount).parallel().forEach(tri -> {
+                order[tri] = tri;
+                int p0 = indices[tri * 3] * stride;
+                int p1 = indices[tri * 3 + 1] * stride;
+                int p2 = indices[tri * 3 + 2] * stride;
+                for (int axis = 0; axis < 3; axis++) {
+                    float a = positions[p0 + axis], b = positions[p1 + axis], c = positions[p2 + axis];
+                    float min = Math.min(a, Math.min(b, c));
+                    float max = Math.max(a, Math.max(b, c));
+                    triangleBounds[tri * 6 + axis] = min;
+                    triangleBounds[tri * 6 + 3 + axis] = max;
+                    centroids[tri * 3 + axis] = (min + max) * 0.5f;
+                }
+            });
+        }
+    }
+
+    private static final class BuildNode {
+        final float[] bounds;
+        int start;
+        int count;
+        BuildNode left;
+        BuildNode right;
+        int subtreeSize = 1;
+
+        BuildNode(float[] bounds) {
+            this.bounds = bounds;
+        }
+    }
+
+    private static final class BuildTask extends RecursiveTask<BuildNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final BuildData data;
+        private final int start;
+        private final int end;
+
+        BuildTask(BuildData data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected BuildNode compute() {
+            int count = end - start;
+            BuildNode node = new BuildNode(computeBounds());
+
+            if (count <= MAX_LEAF_SIZE) return makeLeaf(node);
+
+            float[] centroidBounds = computeCentroidBounds();
+            int mid = partitionBySurfaceAreaHeuristic(node.bounds, centroidBounds);
+            if (mid < 0) {
+                if (count <= MAX_FORCED_LEAF_SIZE) return makeLeaf(node);
+                mid = partitionByMedian(centroidBounds);
+            }
+
+            BuildTask leftTask = new BuildTask(data, start, mid);
+            BuildTask rightTask = new BuildTask(data, mid, end);
+            if (count > PARALLEL_BUILD_THRESHOLD) {
+                leftTask.fork();
+                node.right = rightTask.compute();
+                node.left = leftTask.join();
+            } else {
+                node.left = leftTask.compute();
+                node.right = rightTask.compute();
+            }
+            node.subtreeSize = 1 + node.left.subtreeSize + node.right.subtreeSize;
+            return node;
+        }
+
+        private BuildNode makeLeaf(BuildNode node) {
+            node.start = start;
+            node.count = end - start;
+            return node;
+        }
+
+        private float[] computeBounds() {
+            float[] bounds = emptyBounds();
+            for (int i = start; i < end; i++) {
+                int tri = data.order[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], data.triangleBounds[tri * 6 + axis]);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], data.triangleBounds[tri * 6 + 3 + axis]);
+                }
+            }
+            return bounds;
+        }
+
+        private float[] computeCentroidBounds() {
+            float[] bounds = emptyBounds();
+            for (int i = start; i < end; i++) {
+                int tri = data.order[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], data.centroids[tri * 3 + axis]);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], data.centroids[tri * 3 + axis]);
+                }
+            }
+            return bounds;
+        }
+
+        /**
+         * Bins triangle centroids along each axis and partitions the range at the cheapest bin boundary.
+         *
+         * @return the partition point, or -1 if no split is cheaper than making a leaf
+         */
+        private int partitionBySurfaceAreaHeuristic(float[] nodeBounds, float[] centroidBounds) {
+            int count = end - start;
+            float bestCost = count * INTERSECTION_COST;
+            int bestAxis = -1;
+            int bestSplit = -1;
+
+            int[] binCounts = new int[BIN_COUNT];
+            float[] binBounds = new float[BIN_COUNT * 6];
+            float[] rightAreas = new float[BIN_COUNT];
+            float inverseParentArea = 1f / surfaceArea(nodeBounds, 0);
+
+            for (int axis = 0; axis < 3; axis++) {
+                float min = centroidBounds[axis];
+                float extent = centroidBounds[axis + 3] - min;
+                if (extent <= 0) continue;
+                float scale = BIN_COUNT / extent;
+
+                Arrays.fill(binCounts, 0);
+                for (int bin = 0; bin < BIN_COUNT; bin++) resetBounds(binBounds, bin * 6);
+
+                for (int i = start; i < end; i++) {
+                    int tri = data.order[i];
+                    int bin = binIndex(data.centroids[tri * 3 + axis], min, scale);
+                    binCounts[bin]++;
+                    for (int a = 0; a < 3; a++) {
+                        binBounds[bin * 6 + a] = Math.min(binBounds[bin * 6 + a], data.triangleBounds[tri * 6 + a]);
+                        binBounds[bin * 6 + 3 + a] = Math.max(binBounds[bin * 6 + 3 + a], data.triangleBounds[tri * 6 + 3 + a]);
+                    }
+                }
+
+                //sweep from the right, recording the area of everything right of each boundary
+                float[] accumulated = emptyBounds();
+                for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                    growBounds(accumulated, binBounds, bin * 6);
+                    rightAreas[bin] = surfaceArea(accumulated, 0);
+                }
+
+                //sweep from the left, costing the split after each bin
+                accumulated = emptyBounds();
+                int leftCount = 0;
+                for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                    growBounds(accumulated, binBounds, bin * 6);
+                    leftCount += binCounts[bin];
+                    int rightCount = count - leftCount;
+                    if (leftCount == 0 || rightCount == 0) continue;
+
+                    float cost = TRAVERSAL_COST + INTERSECTION_COST * inverseParentArea *
+                            (surfaceArea(accumulated, 0) * leftCount + rightAreas[bin + 1] * rightCount);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = bin;
+                    }
+                }
+            }
+
+            if (bestAxis < 0) return -1;
+
+            float min = centroidBounds[bestAxis];
+            float scale = BIN_COUNT / (centroidBounds[bestAxis + 3] - min);
+            int left = start;
+            int right = end - 1;
+            while (left <= right) {
+                int tri = data.order[left];
+                if (binIndex(data.centroids[tri * 3 + bestAxis], min, scale) <= bestSplit) {
+                    left++;
+                } else {
+                    data.order[left] = data.order[right];
+                    data.order[right] = tri;
+                    right--;
+                }
+            }
+            return left;
+        }
+
+        /**
+         * Fallback split used when every centroid is coincident or the heuristic finds no useful split: sorts the
+         * range along the widest centroid axis and halves it.
+         */
+        private int partitionByMedian(float[] centroidBounds) {
+            int axis = 0;
+            for (int a = 1; a < 3; a++) {
+                if (centroidBounds[a + 3] - centroidBounds[a] > centroidBounds[axis + 3] - centroidBounds[axis]) axis = a;
+            }
+            final int sortAxis = axis;
+            int[] range = IntStream.range(start, end).map(i -> data.order[i]).boxed()
+                    .sorted((a, b) -> Float.compare(data.centroids[a * 3 + sortAxis], data.centroids[b * 3 + sortAxis]))
+                    .mapToInt(Integer::intValue).toArray();
+            System.arraycopy(range, 0, data.order, start, range.length);
+            return start + range.length / 2;
+        }
+
+        private static int binIndex(float centroid, float min, float scale) {
+            return Math.min(BIN_COUNT - 1, (int) ((centroid - min) * scale));
+        }
+    }
+
+    private static float[] emptyBounds() {
+        float[] bounds = new float[6];
+        resetBounds(bounds, 0);
+        return bounds;
+    }
+
+    private static void resetBounds(float[] bounds, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[offset + axis] = Float.POSITIVE_INFINITY;
+            bounds[offset + 3 + axis] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void growBounds(float[] bounds, float[] other, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[axis] = Math.min(bounds[axis], other[offset + axis]);
+            bounds[axis + 3] = Math.max(bounds[axis + 3], other[offset + 3 + axis]);
+        }
+    }
+
+    private static float surfaceArea(float[] bounds, int offset) {
+        float x = bounds[offset + 3] - bounds[offset];
+        float y = bounds[offset + 4] - bounds[offset + 1];
+        float z = bounds[offset + 5] - bounds[offset + 2];
+        if (x < 0 || y < 0 || z < 0) return 0;
+        return 2f * (x * y + y * z + z * x);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * This class represents the running totals behind {@link AllocationStatisticsMXBean}. Frames are recorded by the
+ * thread that marks them, pauses by the JVM's notification thread and zones by any thread, so frame and pause
+ * figures are guarded by this object's lock and zone totals are kept in adders.
+ */
+class AllocationStatistics implements AllocationStatisticsMXBean {
+
+    private static final Function<String, ZoneTotals> NEW_ZONE = name -> new ZoneTotals();
+
+    private long frameCount = 0;
+    private long totalFrameBytes = 0;
+    private long lastFrameBytes = 0;
+    private long maxFrameBytes = 0;
+    private long frameBudgetBytes = 0;
+    private long framesOverBudget = 0;
+
+    private long gcPauseCount = 0;
+    private long gcPauseMillis = 0;
+    private long maxGcPauseMillis = 0;
+    private long framesWithGcPause = 0;
+    private long pausesThisFrame = 0;
+
+    private final Map<String, ZoneTotals> zones = new ConcurrentHashMap<>();
+
+    synchronized void recordFrame(long bytes) {
+        frameCount++;
+        totalFrameBytes += bytes;
+        lastFrameBytes = bytes;
+        maxFrameBytes = Math.max(maxFrameBytes, bytes);
+        if (frameBudgetBytes > 0 && bytes > frameBudgetBytes) framesOverBudget++;
+        if (pausesThisFrame > 0) framesWithGcPause++;
+        pausesThisFrame = 0;
+    }
+
+    synchronized void recordGcPause(long millis) {
+        gcPauseCount++;
+        gcPauseMillis += millis;
+        maxGcPauseMillis = Math.max(maxGcPauseMillis, millis);
+        pausesThisFrame++;
+    }
+
+    void recordZone(String name, long bytes) {
+        ZoneTotals totals = zones.computeIfAbsent(name, NEW_ZONE);
+        totals.bytes.add(bytes);
+        totals.calls.increment();
+    }
+
+    @Override
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    @Override
+    public synchronized double getMeanBytesPerFrame() {
+        return frameCount == 0 ? 0 : (double) totalFrameBytes / frameCount;
+    }
+
+    @Override
+    public synchronized long getMaxFrameBytes() {
+        return maxFrameBytes;
+    }
+
+    @Override
+    public synchronized long getFrameBudgetBytes() {
+        return frameBudgetBytes;
+    }
+
+    @Override
+    public synchronized void setFrameBudgetBytes(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Allocation budget cannot be negative");
+        frameBudgetBytes = bytes;
+    }
+
+    @Override
+    public synchronized long getFramesOverBudget() {
+        return framesOverBudget;
+    }
+
+    @Override
+    public synchronized long getGcPauseCount() {
+        return gcPauseCount;
+    }
+
+    @Override
+    public synchronized long getGcPauseMillis() {
+        return gcPauseMillis;
+    }
+
+    @Override
+    public synchronized long getMaxGcPauseMillis() {
+        return maxGcPauseMillis;
+    }
+
+    @Override
+    public synchronized long getFramesWithGcPause() {
+        return framesWithGcPause;
+    }
+
+    @Override
+    public Map<String, Long> getZoneBytes() {
+        Map<String, Long> bytes = new TreeMap<>();
+        zones.forEach((name, totals) -> bytes.put(name, totals.bytes.sum()));
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Long> getZoneCalls() {
+        Map<String, Long> calls = new TreeMap<>();
+        zones.forEach((name, totals) -> calls.put(name, totals.calls.sum()));
+        return calls;
+    }
+
+    @Override
+    public synchronized void reset() {
+        frameCount = 0;
+        totalFrameBytes = 0;
+        lastFrameBytes = 0;
+        maxFrameBytes = 0;
+        framesOverBudget = 0;
+        gcPauseCount = 0;
+        gcPauseMillis = 0;
+        maxGcPauseMillis = 0;
+        framesWithGcPause = 0;
+        pausesThisFrame = 0;
+        zones.clear();
+    }
+
+    private static final class ZoneTotals {
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+    }
+}
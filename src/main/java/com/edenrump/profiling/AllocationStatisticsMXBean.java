@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import java.util.Map;
+
+/**
+ * This interface describes the allocation and garbage collection figures published over JMX by
+ * {@link AllocationTracker}, under the name {@value AllocationTracker#OBJECT_NAME}. Byte counts are those allocated
+ * on the Java heap by the measured thread.
+ */
+public interface AllocationStatisticsMXBean {
+
+    long getFrameCount();
+
+    long getLastFrameBytes();
+
+    double getMeanBytesPerFrame();
+
+    long getMaxFrameBytes();
+
+    /**
+     * @return the number of bytes a frame may allocate before it counts as over budget, or 0 for no budget
+     */
+    long getFrameBudgetBytes();
+
+    void setFrameBudgetBytes(long bytes);
+
+    long getFramesOverBudget();
+
+    long getGcPauseCount();
+
+    long getGcPauseMillis();
+
+    long getMaxGcPauseMillis();
+
+    /**
+     * @return the number of frames during which at least one garbage collection pause finished
+     */
+    long getFramesWithGcPause();
+
+    /**
+     * @return the bytes allocated inside each profiling zone, including nested zones, keyed by zone name
+     */
+    Map<String, Long> getZoneBytes();
+
+    /**
+     * @return the number of times each profiling zone has been closed, keyed by zone name
+     */
+    Map<String, Long> getZoneCalls();
+
+    /**
+     * Method to forget every frame, pause and zone recorded so far. The budget is kept.
+     */
+    void reset();
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class measures how many bytes the engine allocates per frame and inside each profiling zone, and how long the
+ * garbage collector pauses. It is a diagnostic mode, disabled by default, built on the per-thread allocation counter
+ * of {@link ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * <p>
+ * Frames are delimited by {@link #markFrame()}, which {@link com.edenrump.graphic.time.Time} calls once per frame;
+ * the bytes allocated by the marking thread between two marks are one frame's allocation. Zones opened with
+ * {@link Profiler#begin(String)} are measured on whichever thread opens them, including any nested zones, whether or
+ * not the profiler itself is recording.
+ * <p>
+ * While enabled the figures are published over JMX as an {@link AllocationStatisticsMXBean} named
+ * {@value #OBJECT_NAME}. A frame budget can be set so that CI runs fail through {@link #checkBudget()} when any frame
+ * allocates more than it should.
+ */
+public final class AllocationTracker {
+
+    public static final String OBJECT_NAME = "com.edenrump.profiling:type=AllocationStatistics";
+    /**
+     * Zones nested deeper than this are not measured, although their enclosing zones still are
+     */
+    public static final int MAX_ZONE_DEPTH = 64;
+
+    private static final ThreadMXBean threads = findThreadBean();
+    private static final AllocationStatistics statistics = new AllocationStatistics();
+    private static final ThreadLocal<ZoneStack> zoneStacks = ThreadLocal.withInitial(ZoneStack::new);
+    private static final NotificationListener gcListener = AllocationTracker::handleGcNotification;
+
+    private static volatile boolean enabled = false;
+    private static boolean registered = false;
+    /**
+     * Incremented each time tracking is enabled, so that zones left open while disabled are forgotten
+     */
+    private static volatile int generation = 0;
+
+    /**
+     * The thread that last marked a frame, and its allocation counter at that mark. Only touched by marking threads.
+     */
+    private static long frameThreadId = -1;
+    private static long frameStartBytes = 0;
+
+    private AllocationTracker() {
+    }
+
+    /**
+     * Method to find out whether this JVM can count allocations per thread
+     *
+     * @return true if allocation tracking can be enabled
+     */
+    public static boolean isSupported() {
+        return threads != null && threads.isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * Method to start or stop tracking. Enabling switches on the JVM's allocation counters, listens for garbage
+     * collections and registers the JMX bean, all of which stay in place once done. The first frame is counted from
+     * the next call to {@link #markFrame()}.
+     *
+     * @param enabled true to track allocations
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        if (enabled) {
+            if (!isSupported()) {
+                throw new IllegalStateException("This JVM cannot measure allocations per thread");
+            }
+            threads.setThreadAllocatedMemoryEnabled(true);
+            register();
+            frameThreadId = -1;
+            generation++;
+        }
+        AllocationTracker.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Method to end the current frame and start the next on the calling thread. Does nothing while disabled.
+     */
+    public static void markFrame() {
+        if (!enabled) return;
+
+        long threadId = Thread.currentThread().getId();
+        long bytes = threads.getThreadAllocatedBytes(threadId);
+        if (bytes < 0) return;
+
+        if (threadId == frameThreadId) {
+            statistics.recordFrame(bytes - frameStartBytes);
+        }
+        frameThreadId = threadId;
+        frameStartBytes = bytes;
+    }
+
+    /**
+     * Method to set how many bytes a frame may allocate before it counts as over budget
+     *
+     * @param bytes the budget, or 0 for none
+     */
+    public static void setFrameBudgetBytes(long bytes) {
+        statistics.setFrameBudgetBytes(bytes);
+    }
+
+    /**
+     * Method to get the figures recorded so far. These are the same object published over JMX and keep updating.
+     *
+     * @return the allocation statistics
+     */
+    public static AllocationStatisticsMXBean getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Method to forget every frame, pause and zone recorded so far. The budget is kept.
+     */
+    public static void reset() {
+        statistics.reset();
+    }
+
+    /**
+     * Method to fail when any frame recorded so far has exceeded the frame budget
+     *
+     * @throws IllegalStateException if a budget is set and at least one frame went over it
+     */
+    public static void checkBudget() {
+        long over = statistics.getFramesOverBudget();
+        if (over > 0) {
+            throw new IllegalStateException(String.format(Locale.ROOT,
+                    "%d of %d frames allocated more than the budget of %d bytes (max %d bytes)",
+                    over, statistics.getFrameCount(), statistics.getFrameBudgetBytes(),
+                    statistics.getMaxFrameBytes()));
+        }
+    }
+
+    /**
+     * Method to summarise the recorded figures as plain text, one figure per line
+     *
+     * @return the report
+     */
+    public static String createReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "frames: %d%n", statistics.getFrameCount()));
+        report.append(String.format(Locale.ROOT, "mean bytes/frame: %.0f%n", statistics.getMeanBytesPerFrame()));
+        report.append(String.format(Locale.ROOT, "max bytes/frame: %d%n", statistics.getMaxFrameBytes()));
+        report.append(String.format(Locale.ROOT, "budget bytes/frame: %d%n", statistics.getFrameBudgetBytes()));
+        report.append(String.format(Locale.ROOT, "over budget: %d%n", statistics.getFramesOverBudget()));
+        report.append(String.format(Locale.ROOT, "gc pauses: %d%n", statistics.getGcPauseCount()));
+        report.append(String.format(Locale.ROOT, "gc pause ms: %d%n", statistics.getGcPauseMillis()));
+        report.append(String.format(Locale.ROOT, "max gc pause ms: %d%n", statistics.getMaxGcPauseMillis()));
+        report.append(String.format(Locale.ROOT, "frames with gc pause: %d%n", statistics.getFramesWithGcPause()));
+
+        long frames = Math.max(1, statistics.getFrameCount());
+        Map<String, Long> calls = statistics.getZoneCalls();
+        for (Map.Entry<String, Long> zone : statistics.getZoneBytes().entrySet()) {
+            report.append(String.format(Locale.ROOT, "zone %s: %d bytes, %.0f bytes/frame, %d calls%n",
+                    zone.getKey(), zone.getValue(), (double) zone.getValue() / frames,
+                    calls.getOrDefault(zone.getKey(), 0L)));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Method to write the report to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    public static void exportReport(Path file) throws IOException {
+        Files.write(file, createReport().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* ****************************************************************************************************************
+     * Zones, called by Profiler
+     * ****************************************************************************************************************/
+
+    static void beginZone(String name) {
+        ZoneStack stack = currentZoneStack();
+        if (stack.depth < MAX_ZONE_DEPTH) {
+            stack.names[stack.depth] = name;
+            stack.startBytes[stack.depth] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        stack.depth++;
+    }
+
+    static void endZone() {
+        ZoneStack stack = currentZoneStack();
+        if (stack.depth == 0) return;
+
+        stack.depth--;
+        if (stack.depth < MAX_ZONE_DEPTH) {
+            String name = stack.names[stack.depth];
+            long startBytes = stack.startBytes[stack.depth];
+            stack.names[stack.depth] = null;
+            long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if (startBytes >= 0 && bytes >= 0) statistics.recordZone(name, bytes - startBytes);
+        }
+    }
+
+    private static ZoneStack currentZoneStack() {
+        ZoneStack stack = zoneStacks.get();
+        int current = generation;
+        if (stack.generation != current) {
+            Arrays.fill(stack.names, null);
+            stack.depth = 0;
+            stack.generation = current;
+        }
+        return stack;
+    }
+
+    /* ****************************************************************************************************************
+     * JMX
+     * ****************************************************************************************************************/
+
+    private static ThreadMXBean findThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof ThreadMXBean ? (ThreadMXBean) bean : null;
+    }
+
+    private static void register() {
+        if (registered) return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(statistics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register allocation statistics with JMX", e);
+        }
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            //beans that report whole concurrent cycles rather than pauses have a separate pause bean alongside
+            if (collector instanceof NotificationEmitter && !collector.getName().endsWith("Cycles")) {
+                ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+            }
+        }
+        registered = true;
+    }
+
+    private static void handleGcNotification(Notification notification, Object handback) {
+        if (!enabled) return;
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        statistics.recordGcPause(info.getGcInfo().getDuration());
+    }
+
+    /**
+     * This class represents one thread's open zones and its allocation counter when each was opened
+     */
+    private static final class ZoneStack {
+        private final String[] names = new String[MAX_ZONE_DEPTH];
+        private final long[] startBytes = new long[MAX_ZONE_DEPTH];
+        private int depth = 0;
+        private int generation = 0;
+    }
+}
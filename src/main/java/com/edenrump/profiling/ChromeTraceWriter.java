@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class represents a writer of zone events in the Chrome trace event JSON format, as duration events ("B" and
+ * "E") with a thread name for each thread. Events whose partner was overwritten in the ring buffer are left out, and
+ * zones still open are closed at the last recorded time so that viewers do not stretch them to infinity.
+ */
+class ChromeTraceWriter {
+
+    private final Writer out;
+    private boolean firstEvent = true;
+
+    ChromeTraceWriter(Writer out) {
+        this.out = out;
+    }
+
+    void write(List<ZoneBuffer> buffers) throws IOException {
+        long origin = Long.MAX_VALUE;
+        int maxCapacity = 1;
+        for (ZoneBuffer buffer : buffers) maxCapacity = Math.max(maxCapacity, buffer.capacity());
+        String[] names = new String[maxCapacity];
+        long[] timestamps = new long[maxCapacity];
+        byte[] phases = new byte[maxCapacity];
+
+        //take every snapshot first so that all threads share one time origin
+        Snapshot[] snapshots = new Snapshot[buffers.size()];
+        for (int b = 0; b < snapshots.length; b++) {
+            ZoneBuffer buffer = buffers.get(b);
+            int count = buffer.snapshot(names, timestamps, phases);
+            snapshots[b] = new Snapshot(buffer, names, timestamps, phases, count);
+            if (count > 0) origin = Math.min(origin, timestamps[0]);
+        }
+
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.count == 0) continue;
+            writeThreadName(snapshot.buffer);
+            writeEvents(snapshot, origin);
+        }
+        out.write("]}");
+        out.flush();
+    }
+
+    private void writeEvents(Snapshot snapshot, long origin) throws IOException {
+        long tid = snapshot.buffer.getThreadId();
+        String[] open = new String[snapshot.count];
+        int depth = 0;
+        long last = origin;
+        for (int i = 0; i < snapshot.count; i++) {
+            last = snapshot.timestamps[i];
+            if (snapshot.phases[i] == ZoneBuffer.BEGIN) {
+                open[depth++] = snapshot.names[i];
+                writeEvent(snapshot.names[i], 'B', last - origin, tid);
+            } else if (depth > 0) {
+                writeEvent(open[--depth], 'E', last - origin, tid);
+            }
+        }
+        while (depth > 0) {
+            writeEvent(open[--depth], 'E', last - origin, tid);
+        }
+    }
+
+    private void writeThreadName(ZoneBuffer buffer) throws IOException {
+        separate();
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+        out.write(Long.toString(buffer.getThreadId()));
+        out.write(",\"args\":{\"name\":");
+        writeString(buffer.getThreadName());
+        out.write("}}");
+    }
+
+    private void writeEvent(String name, char phase, long nanos, long tid) throws IOException {
+        separate();
+        out.write("{\"name\":");
+        writeString(name);
+        out.write(",\"ph\":\"");
+        out.write(phase);
+        out.write("\",\"ts\":");
+        //microseconds, keeping nanosecond precision
+        out.write(Long.toString(nanos / 1000));
+        out.write('.');
+        String fraction = Long.toString(nanos % 1000);
+        for (int i = fraction.length(); i < 3; i++) out.write('0');
+        out.write(fraction);
+        out.write(",\"pid\":1,\"tid\":");
+        out.write(Long.toString(tid));
+        out.write('}');
+    }
+
+    private void separate() throws IOException {
+        if (!firstEvent) out.write(',');
+        firstEvent = false;
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static class Snapshot {
+        private final ZoneBuffer buffer;
+        private final String[] names;
+        private final long[] timestamps;
+        private final byte[] phases;
+        private final int count;
+
+        private Snapshot(ZoneBuffer buffer, String[] names, long[] timestamps, byte[] phases, int count) {
+            this.buffer = buffer;
+            this.names = Arrays.copyOf(names, count);
+            this.timestamps = Arrays.copyOf(timestamps, count);
+            this.phases = Arrays.copyOf(phases, count);
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class provides named, nestable profiling zones. A zone is opened with {@link #begin(String)} and closed with
+ * {@link #end()} on the same thread, usually in a try/finally block:
+ * <pre>
+ * Profiler.begin("StaticRenderer.render");
+ * try {
+ *     ...
+ * } finally {
+ *     Profiler.end();
+ * }
+ * </pre>
+ * Each thread records into its own ring buffer, so recording takes no locks and never allocates once the thread's
+ * buffer exists. While the profiler is disabled, which is the default, each call is a pair of field checks. Recorded
+ * zones can be exported in the Chrome trace event format and viewed in chrome://tracing or Perfetto.
+ * <p>
+ * The buffer of a thread that has ended is kept until its events have been exported once or reset, then dropped, so
+ * short-lived threads do not each hold on to a buffer for the life of the program.
+ * <p>
+ * Zones are also measured by the {@link AllocationTracker} while it is enabled, independently of this class.
+ */
+public final class Profiler {
+
+    public static final int DEFAULT_EVENTS_PER_THREAD = 1 << 16;
+
+    private static volatile boolean enabled = false;
+    private static volatile int eventsPerThread = DEFAULT_EVENTS_PER_THREAD;
+    private static final List<ZoneBuffer> buffers = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<ZoneBuffer> threadBuffer = ThreadLocal.withInitial(() -> {
+        removeTerminatedBuffers();
+        ZoneBuffer buffer = new ZoneBuffer(eventsPerThread, Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    });
+    private static final Zone zone = new Zone();
+
+    private Profiler() {
+    }
+
+    /**
+     * Method to start or stop recording zones
+     *
+     * @param enabled true to record
+     */
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Method to set how many events each thread keeps before overwriting the oldest. Applies to threads that have
+     * not yet recorded anything.
+     *
+     * @param events a power of two
+     */
+    public static void setEventsPerThread(int events) {
+        if (events < 2 || Integer.bitCount(events) != 1) {
+            throw new IllegalArgumentException("Events per thread must be a power of two");
+        }
+        eventsPerThread = events;
+    }
+
+    /**
+     * Method to open a zone on the current thread
+     *
+     * @param name the name of the zone. Use a constant string; it is stored by reference
+     */
+    public static void begin(String name) {
+        if (enabled) threadBuffer.get().record(name, ZoneBuffer.BEGIN, System.nanoTime());
+        if (AllocationTracker.isEnabled()) AllocationTracker.beginZone(name);
+    }
+
+    /**
+     * Method to close the innermost open zone on the current thread
+     */
+    public static void end() {
+        if (AllocationTracker.isEnabled()) AllocationTracker.endZone();
+        if (enabled) threadBuffer.get().record(null, ZoneBuffer.END, System.nanoTime());
+    }
+
+    /**
+     * Method to open a zone that is closed by try-with-resources. The returned object is shared, so this is as
+     * cheap as {@link #begin(String)}.
+     *
+     * @param name the name of the zone
+     * @return an object whose close method ends the zone
+     */
+    public static Zone zone(String name) {
+        begin(name);
+        return zone;
+    }
+
+    /**
+     * Method to forget every event recorded so far, on every thread
+     */
+    public static void reset() {
+        for (ZoneBuffer buffer : buffers) {
+            buffer.clear();
+        }
+        removeTerminatedBuffers();
+    }
+
+    /**
+     * Method to write every recorded event as a Chrome trace
+     *
+     * @param out the writer to write the JSON to
+     * @throws IOException if the trace could not be written
+     */
+    public static void writeChromeTrace(Writer out) throws IOException {
+        //decided before writing, so a thread that ends during the export cannot lose events it has not written yet
+        List<ZoneBuffer> terminated = new ArrayList<>();
+        for (ZoneBuffer buffer : buffers) {
+            if (buffer.isOwnerTerminated()) terminated.add(buffer);
+        }
+
+        new ChromeTraceWriter(out).write(buffers);
+
+        for (ZoneBuffer buffer : terminated) {
+            buffer.clear();
+        }
+        removeTerminatedBuffers();
+    }
+
+    /**
+     * Method to write every recorded event as a Chrome trace file
+     *
+     * @param file the file to write
+     * @throws IOException if the trace could not be written
+     */
+    public static void exportChromeTrace(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeChromeTrace(out);
+        }
+    }
+
+    /**
+     * Method to get the number of per-thread buffers currently held
+     *
+     * @return the number of buffers, including those of ended threads whose events have not yet been exported
+     */
+    static int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Drops the buffers of threads that have ended once their events have been exported or reset
+     */
+    private static void removeTerminatedBuffers() {
+        buffers.removeIf(buffer -> buffer.isOwnerTerminated() && buffer.isEmpty());
+    }
+
+    /**
+     * This class represents an open zone, closed by try-with-resources
+     */
+    public static final class Zone implements AutoCloseable {
+        private Zone() {
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+}
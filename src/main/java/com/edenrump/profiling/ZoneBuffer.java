@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * This class represents one thread's record of zone begin and end events. Only the owning thread writes; any thread
+ * may take a snapshot. When the buffer is full the oldest events are overwritten, so recording never blocks or
+ * allocates.
+ */
+class ZoneBuffer {
+
+    static final byte BEGIN = 0;
+    static final byte END = 1;
+
+    private final String[] names;
+    private final long[] timestamps;
+    private final byte[] phases;
+    private final int mask;
+    private final WeakReference<Thread> owner;
+    private final long threadId;
+    private final String threadName;
+    /**
+     * The number of events ever written. Events are published by the write to this field.
+     */
+    private volatile long written = 0;
+    /**
+     * Events before this count have been cleared
+     */
+    private volatile long clearedBefore = 0;
+
+    ZoneBuffer(int capacity, Thread owner) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        names = new String[capacity];
+        timestamps = new long[capacity];
+        phases = new byte[capacity];
+        mask = capacity - 1;
+        this.owner = new WeakReference<>(owner);
+        threadId = owner.getId();
+        threadName = owner.getName();
+    }
+
+    void record(String name, byte phase, long nanos) {
+        long index = written;
+        int slot = (int) index & mask;
+        names[slot] = name;
+        timestamps[slot] = nanos;
+        phases[slot] = phase;
+        written = index + 1;
+    }
+
+    /**
+     * Copies the events still held in the buffer, oldest first. Events overwritten while copying are left out.
+     *
+     * @return the number of events copied into the arrays, which must each hold the buffer's capacity
+     */
+    int snapshot(String[] nameCopy, long[] timestampCopy, byte[] phaseCopy) {
+        long end = written;
+        long start = Math.max(clearedBefore, end - names.length);
+        for (long i = start; i < end; i++) {
+            int slot = (int) i & mask;
+            int copy = (int) (i - start);
+            nameCopy[copy] = names[slot];
+            timestampCopy[copy] = timestamps[slot];
+            phaseCopy[copy] = phases[slot];
+        }
+        //anything the writer has lapped since we started may be torn, including the slot it may be writing now
+        long firstIntact = Math.max(start, written + 1 - names.length);
+        int skipped = (int) (firstIntact - start);
+        int count = (int) (end - firstIntact);
+        if (skipped > 0 && count > 0) {
+            System.arraycopy(nameCopy, skipped, nameCopy, 0, count);
+            System.arraycopy(timestampCopy, skipped, timestampCopy, 0, count);
+            System.arraycopy(phaseCopy, skipped, phaseCopy, 0, count);
+        }
+        return Math.max(0, count);
+    }
+
+    /**
+     * Forgets every event recorded so far. Safe to call from any thread.
+     */
+    void clear() {
+        clearedBefore = written;
+    }
+
+    /**
+     * Method to check whether the owning thread has ended, after which nothing more can be recorded here
+     *
+     * @return true if the thread has terminated or been garbage collected
+     */
+    boolean isOwnerTerminated() {
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+
+    /**
+     * Method to check whether every event recorded so far has been cleared
+     *
+     * @return true if a snapshot would copy nothing
+     */
+    boolean isEmpty() {
+        return clearedBefore == written;
+    }
+
+    int capacity() {
+        return names.length;
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+}
@@ -0,0 +1,31 @@
+#version 430
+
+in vec2 pass_local;
+flat in vec2 pass_halfSize;
+in vec4 pass_colour;
+in vec2 uv_coordinates;
+flat in vec2 pass_style;
+
+uniform sampler2D textureSampler;
+
+out vec4 out_Color;
+
+//distance in pixels from the edge of a rectangle with rounded corners, negative inside
+float roundedRectangleDistance(vec2 point, vec2 halfSize, float radius){
+    vec2 q = abs(point) - halfSize + radius;
+    return length(max(q, 0.0)) + min(max(q.x, q.y), 0.0) - radius;
+}
+
+void main(void){
+    float coverage = clamp(0.5 - roundedRectangleDistance(pass_local, pass_halfSize, pass_style.x), 0.0, 1.0);
+
+    vec4 colour = pass_colour;
+    if (pass_style.y > 0.5) {
+        colour *= texture(textureSampler, uv_coordinates);
+    }
+    colour.a *= coverage;
+    if (colour.a <= 0.0) {
+        discard;
+    }
+    out_Color = colour;
+}
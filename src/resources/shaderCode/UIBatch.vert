@@ -0,0 +1,27 @@
+#version 430
+
+layout(location = 0) in vec2 position;
+layout(location = 1) in vec2 local;
+layout(location = 2) in vec2 halfSize;
+layout(location = 3) in vec4 colour;
+layout(location = 4) in vec2 textureCoordinates;
+layout(location = 5) in vec2 style;
+
+uniform vec2 viewportSize;
+
+out vec2 pass_local;
+flat out vec2 pass_halfSize;
+out vec4 pass_colour;
+out vec2 uv_coordinates;
+flat out vec2 pass_style;
+
+void main(void){
+    //pixels from the top left to normalised device coordinates
+    gl_Position = vec4(position.x / viewportSize.x * 2.0 - 1.0, 1.0 - position.y / viewportSize.y * 2.0, 0.0, 1.0);
+
+    pass_local = local;
+    pass_halfSize = halfSize;
+    pass_colour = colour;
+    uv_coordinates = textureCoordinates;
+    pass_style = style;
+}
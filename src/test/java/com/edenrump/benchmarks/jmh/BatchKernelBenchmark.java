@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.math.arrays.BatchKernels;
+import com.edenrump.math.arrays.ColumnVector;
+import com.edenrump.math.arrays.SquareMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the batch kernels against transforming one {@link ColumnVector} or {@link SquareMatrix} at a time. The
+ * <code>kernels</code> parameter selects the scalar kernels or the fastest available ones; the latter are only
+ * vectorised when the engine was built with the <code>vector</code> profile and the forks are started with
+ * <code>-jvmArgsAppend --add-modules=jdk.incubator.vector</code>, for example
+ * <pre>
+ * mvn -P jmh,vector verify -Djmh.includes=BatchKernel -Djmh.args="-jvmArgsAppend --add-modules=jdk.incubator.vector"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BatchKernelBenchmark {
+
+    @Param({"10000", "100000"})
+    private int count;
+
+    @Param({"scalar", "fastest"})
+    private String kernels;
+
+    private BatchKernels batchKernels;
+    private float[] matrix;
+    private SquareMatrix squareMatrix;
+    private float[] x, y, z;
+    private float[] outX, outY, outZ;
+    private float[] left, right, products;
+    private SquareMatrix[] leftMatrices, rightMatrices;
+
+    @Setup
+    public void setUp() {
+        batchKernels = kernels.equals("scalar") ? BatchKernels.getScalarInstance() : BatchKernels.getInstance();
+
+        Random random = new Random(42);
+        matrix = randomArray(random, 16);
+        squareMatrix = new SquareMatrix(matrix);
+        x = randomArray(random, count);
+        y = randomArray(random, count);
+        z = randomArray(random, count);
+        outX = new float[count];
+        outY = new float[count];
+        outZ = new float[count];
+
+        int matrices = count / 16;
+        left = randomArray(random, matrices * 16);
+        right = randomArray(random, matrices * 16);
+        products = new float[matrices * 16];
+        leftMatrices = new SquareMatrix[matrices];
+        rightMatrices = new SquareMatrix[matrices];
+        for (int i = 0; i < matrices; i++) {
+            leftMatrices[i] = new SquareMatrix(Arrays.copyOfRange(left, i * 16, i * 16 + 16));
+            rightMatrices[i] = new SquareMatrix(Arrays.copyOfRange(right, i * 16, i * 16 + 16));
+        }
+    }
+
+    @Benchmark
+    public void transformPoints() {
+        batchKernels.transformPoints(matrix, x, y, z, outX, outY, outZ, count);
+    }
+
+    @Benchmark
+    public void transformPointsColumnVector(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(squareMatrix.multiply(new ColumnVector(x[i], y[i], z[i], 1)));
+        }
+    }
+
+    @Benchmark
+    public void multiplyMatrices() {
+        batchKernels.multiplyMatrices(left, right, products, leftMatrices.length);
+    }
+
+    @Benchmark
+    public void multiplyMatricesSquareMatrix(Blackhole blackhole) {
+        for (int i = 0; i < leftMatrices.length; i++) {
+            blackhole.consume(leftMatrices[i].multiply(rightMatrices[i]));
+        }
+    }
+
+    @Benchmark
+    public void normalize() {
+        System.arraycopy(x, 0, outX, 0, count);
+        System.arraycopy(y, 0, outY, 0, count);
+        System.arraycopy(z, 0, outZ, 0, count);
+        batchKernels.normalize(outX, outY, outZ, count);
+    }
+
+    @Benchmark
+    public void normalizeColumnVector(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(new ColumnVector(x[i], y[i], z[i]).normalize());
+        }
+    }
+
+    private static float[] randomArray(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (random.nextFloat() * 2 - 1) * 100;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.graphic.mesh.CPUMesh;
+import com.edenrump.graphic.mesh.ConstructConverter;
+import com.edenrump.math.arrays.ColumnVector;
+import com.edenrump.math.shape.mesh.Face;
+import com.edenrump.math.shape.mesh.GeometricConstruct;
+import com.edenrump.math.shape.mesh.Vertex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures conversion of a geometric construct into the flat arrays of a CPU mesh, using a height-field grid of
+ * two triangles per cell so that the face count is 2 * gridSize * gridSize.
+ * <p>
+ * The construct is filled directly rather than through addVertex/addFace so that setup does not dominate the
+ * run time. The default sizes stop at 32k faces because index lookup in the converter is currently linear in
+ * the vertex count; pass <code>-p gridSize=724</code> to measure a 1M-face construct.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstructConverterBenchmark {
+
+    @Param({"32", "128"})
+    private int gridSize;
+
+    private GeometricConstruct construct;
+
+    @Setup
+    public void setUp() {
+        construct = new GridConstruct(gridSize);
+    }
+
+    @Benchmark
+    public CPUMesh convertConstructToMesh() {
+        return ConstructConverter.convertConstructToMesh(construct);
+    }
+
+    /**
+     * This class represents a rolling height-field grid whose positions, normals, vertices and faces are written
+     * straight into the construct's lists.
+     */
+    private static class GridConstruct extends GeometricConstruct {
+
+        GridConstruct(int gridSize) {
+            super(CARTESIAN);
+
+            int verticesPerSide = gridSize + 1;
+            for (int z = 0; z < verticesPerSide; z++) {
+                for (int x = 0; x < verticesPerSide; x++) {
+                    float height = (float) (Math.sin(x * 0.1) * Math.cos(z * 0.1));
+                    vertexPositions.add(new ColumnVector(x, height, z));
+                    vertexNormals.add(new ColumnVector(0, 1, 0));
+                    int index = vertices.size();
+                    vertices.add(new Vertex(index, index));
+                }
+            }
+
+            for (int z = 0; z < gridSize; z++) {
+                for (int x = 0; x < gridSize; x++) {
+                    int topLeft = z * verticesPerSide + x;
+                    int bottomLeft = topLeft + verticesPerSide;
+                    faces.add(new Face(vertices.get(topLeft), vertices.get(bottomLeft), vertices.get(topLeft + 1)));
+                    faces.add(new Face(vertices.get(topLeft + 1), vertices.get(bottomLeft),
+                            vertices.get(bottomLeft + 1)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.graphic.util.FrameDumpCompression;
+import com.edenrump.graphic.util.FrameDumpWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single-threaded {@link FrameDumpWriter} time per frame for 1080p frames of a noisy scene with a moving
+ * square. A capture at 60 frames per second has to stay below 16.7 ms per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FrameDumpBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int DISTINCT_FRAMES = 16;
+    private static final int FRAMES_PER_DUMP = 120;
+
+    @Param({"RAW", "DELTA_LZ"})
+    public FrameDumpCompression compression;
+
+    private ByteBuffer[] frames;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        frames = new ByteBuffer[DISTINCT_FRAMES];
+        for (int i = 0; i < DISTINCT_FRAMES; i++) {
+            frames[i] = createFrame(i);
+        }
+        file = Files.createTempFile("benchmark", ".dump");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_DUMP)
+    public long writeFrames() throws IOException {
+        try (FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, compression,
+                FrameDumpWriter.DEFAULT_KEYFRAME_INTERVAL, FRAMES_PER_DUMP)) {
+            for (int i = 0; i < FRAMES_PER_DUMP; i++) {
+                writer.writeFrame(frames[i % frames.length], i);
+            }
+            return writer.getDataSize();
+        }
+    }
+
+    private static ByteBuffer createFrame(int index) {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+        Random background = new Random(1);
+        int squareX = index * 40;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean square = x >= squareX && x < squareX + 200 && y >= 400 && y < 600;
+                //a smooth gradient with a little noise, like a lit scene
+                int shade = (x + y) / 12 + background.nextInt(4);
+                pixels.putInt(square ? 0xE04020FF : shade << 24 | shade << 16 | 0x80FF);
+            }
+        }
+        return pixels.flip();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.graphic.util.GifSequenceWriter;
+import com.edenrump.graphic.util.gif.GifEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ImageIO based {@link GifSequenceWriter} with {@link GifEncoder} on a synthetic recording: a static
+ * background with a moving, shaded square, similar to a captured render loop. Each benchmark encodes the whole
+ * recording, reports the time per frame and returns the encoded size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class GifEncoderBenchmark {
+
+    private static final int FRAME_COUNT = 60;
+
+    @Param({"640x480"})
+    public String resolution;
+
+    private BufferedImage[] frames;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        frames = new BufferedImage[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            frames[i] = createFrame(width, height, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public int imageIO() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageOutputStream output = new MemoryCacheImageOutputStream(bytes);
+        GifSequenceWriter writer = new GifSequenceWriter(output, BufferedImage.TYPE_INT_RGB, 1000 / 30, true);
+        for (BufferedImage frame : frames) {
+            writer.writeToSequence(frame);
+        }
+        writer.close();
+        output.close();
+        return bytes.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public int gifEncoderLocalPalettes() throws IOException {
+        return encodeWithGifEncoder(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public int gifEncoderGlobalPalette() throws IOException {
+        return encodeWithGifEncoder(true);
+    }
+
+    private int encodeWithGifEncoder(boolean globalPalette) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GifEncoder encoder = new GifEncoder(bytes, frames[0].getWidth(), frames[0].getHeight(), 1000 / 30, true)) {
+            encoder.setGlobalPalette(globalPalette);
+            for (BufferedImage frame : frames) {
+                encoder.addFrame(frame);
+            }
+        }
+        return bytes.size();
+    }
+
+    private static BufferedImage createFrame(int width, int height, int index) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int squareX = (index * 5) % (width - 100);
+        int squareY = height / 2 - 50 + (int) (40 * Math.sin(index * 0.1));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean inSquare = x >= squareX && x < squareX + 100 && y >= squareY && y < squareY + 100;
+                int shade = inSquare ? 120 + (x - squareX + y - squareY) / 2 : 255;
+                pixels[y * width + x] = inSquare ? shade << 16 | shade / 2 << 8 | 40 : 0xFFFF00 - (y / 8 << 8);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.math.arrays.ColumnVector;
+import com.edenrump.math.arrays.SquareMatrix;
+import com.edenrump.math.util.Volume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-call cost of the matrix and vector operations that sit underneath every transform and mesh
+ * calculation: 4x4 matrix products, matrix-vector products, vector arithmetic and rotation matrix construction.
+ * <p>
+ * Inputs are random but seeded so that every fork sees the same values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MathBenchmark {
+
+    private SquareMatrix left;
+    private SquareMatrix right;
+    private ColumnVector homogeneous;
+    private ColumnVector a;
+    private ColumnVector b;
+    private float angle;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        left = new SquareMatrix(randomValues(random, 16));
+        right = new SquareMatrix(randomValues(random, 16));
+        homogeneous = new ColumnVector(randomValues(random, 4));
+        a = new ColumnVector(randomValues(random, 3));
+        b = new ColumnVector(randomValues(random, 3));
+        angle = random.nextFloat() * 360f;
+    }
+
+    @Benchmark
+    public SquareMatrix multiplyMatrices() {
+        return left.multiply(right);
+    }
+
+    @Benchmark
+    public ColumnVector multiplyMatrixVector() {
+        return left.multiply(homogeneous);
+    }
+
+    @Benchmark
+    public SquareMatrix transposeMatrix() {
+        return left.transpose();
+    }
+
+    @Benchmark
+    public ColumnVector addVectors() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public float dotVectors() {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public ColumnVector crossVectors() {
+        return a.cross(b);
+    }
+
+    @Benchmark
+    public ColumnVector normalizeVector() {
+        return a.normalize();
+    }
+
+    @Benchmark
+    public SquareMatrix createRotationMatrix() {
+        return Volume.createRotationMatrix(angle, 0, 1, 0);
+    }
+
+    @Benchmark
+    public SquareMatrix createArbitraryAxisRotationMatrix() {
+        return Volume.createRotationMatrix(angle, a.getValue(0), a.getValue(1), a.getValue(2));
+    }
+
+    private static float[] randomValues(Random random, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextFloat() * 2f - 1f;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.loaders.OBJFile;
+import com.edenrump.math.shape.textured.WrappedConstruct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading of the OBJ models under <code>src/test/resources/models</code>, scaled up by writing a
+ * temporary file containing many translated copies of the model so that the parser sees realistic file sizes.
+ * <p>
+ * Benchmarks must be run from the project directory so that the model paths resolve.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OBJFileBenchmark {
+
+    private static final Path MODELS = Paths.get("src", "test", "resources", "models");
+
+    @Param({"Cube.obj", "Icosahedron.obj"})
+    private String model;
+
+    @Param({"1", "64", "256"})
+    private int copies;
+
+    private Path scaledModel;
+
+    @Setup
+    public void setUp() throws IOException {
+        scaledModel = Files.createTempFile("scaled-" + copies + "-", "-" + model);
+        writeScaledModel(Files.readAllLines(MODELS.resolve(model), StandardCharsets.UTF_8), copies, scaledModel);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(scaledModel);
+    }
+
+    @Benchmark
+    public WrappedConstruct loadModel() {
+        return new OBJFile(scaledModel.toString()).getMesh();
+    }
+
+    /**
+     * Method to write a number of copies of an OBJ model to a single file. Each copy is translated along x and
+     * its face indices are offset past the positions, texture coordinates and normals of the earlier copies.
+     *
+     * @param lines  the lines of the source model
+     * @param copies the number of copies to write
+     * @param target the file to write
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeScaledModel(List<String> lines, int copies, Path target) throws IOException {
+        int positions = 0;
+        int textureCoords = 0;
+        int normals = 0;
+        for (String line : lines) {
+            if (line.startsWith("v ")) positions++;
+            else if (line.startsWith("vt ")) textureCoords++;
+            else if (line.startsWith("vn ")) normals++;
+        }
+
+        try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (int copy = 0; copy < copies; copy++) {
+                for (String line : lines) {
+                    if (line.startsWith("v ")) {
+                        String[] parts = line.trim().split("\\s+");
+                        float x = Float.parseFloat(parts[1]) + copy * 3f;
+                        writer.write("v " + x + " " + parts[2] + " " + parts[3] + "\n");
+                    } else if (line.startsWith("vt ") || line.startsWith("vn ")) {
+                        writer.write(line + "\n");
+                    } else if (line.startsWith("f ")) {
+                        StringBuilder face = new StringBuilder("f");
+                        for (String corner : line.trim().split("\\s+")) {
+                            if (corner.equals("f")) continue;
+                            String[] indices = corner.split("/");
+                            face.append(' ')
+                                    .append(Integer.parseInt(indices[0]) + copy * positions).append('/')
+                                    .append(Integer.parseInt(indices[1]) + copy * textureCoords).append('/')
+                                    .append(Integer.parseInt(indices[2]) + copy * normals);
+                        }
+                        writer.write(face.append('\n').toString());
+                    }
+                }
+            }
+        }
+    }
+}
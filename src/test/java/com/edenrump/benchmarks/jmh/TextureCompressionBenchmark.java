@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.graphic.texture.BlockCompressor;
+import com.edenrump.graphic.texture.TestImages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the speed of {@link BlockCompressor} for each format on a noise PNG from
+ * <code>src/test/resources/textures</code> and on the synthetic images of {@link TestImages}. Needs no GL context or
+ * natives, so it runs headless.
+ * <p>
+ * The quality of each format on the same images is checked by <code>BlockCompressorTest</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TextureCompressionBenchmark {
+
+    private static final String NOISE_PNG = "src/test/resources/textures/256_256_4-bit-noise.png";
+
+    @Param({"BC1", "BC3", "BC7"})
+    public BlockCompressor.Format format;
+
+    @Param({"noisePng", "gradient", "valueNoise", "softSprite"})
+    public String image;
+
+    /**
+     * Width and height of the synthetic images; the PNG keeps its own size
+     */
+    @Param({"1024"})
+    public int size;
+
+    private ByteBuffer pixels;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() throws IOException {
+        width = size;
+        height = size;
+        switch (image) {
+            case "noisePng":
+                BufferedImage png = TestImages.read(new File(NOISE_PNG));
+                width = png.getWidth();
+                height = png.getHeight();
+                pixels = TestImages.toRGBA(png);
+                break;
+            case "gradient":
+                pixels = TestImages.gradient(size, size);
+                break;
+            case "valueNoise":
+                pixels = TestImages.valueNoise(size);
+                break;
+            case "softSprite":
+                pixels = TestImages.softSprite(size);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown image " + image);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return BlockCompressor.encode(format, pixels, width, height);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.math.geom.Transform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to build the model matrices for a scene's worth of entities, which is the work
+ * done by the renderer every frame before any draw call is issued.
+ * <p>
+ * Each invocation computes the transformation matrix of every transform in the batch, so the score is the
+ * time per batch rather than per transform.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TransformBatchBenchmark {
+
+    @Param({"1000", "10000"})
+    private int batchSize;
+
+    private Transform[] transforms;
+    private Transform[] previous;
+    private Transform interpolated;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        transforms = new Transform[batchSize];
+        previous = new Transform[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            transforms[i] = randomTransform(random);
+            previous[i] = randomTransform(random);
+        }
+        interpolated = new Transform();
+    }
+
+    @Benchmark
+    public void computeMatrices(Blackhole blackhole) {
+        for (Transform transform : transforms) {
+            blackhole.consume(transform.getTransformationMatrix());
+        }
+    }
+
+    @Benchmark
+    public void interpolateAndComputeMatrices(Blackhole blackhole) {
+        for (int i = 0; i < transforms.length; i++) {
+            interpolated.interpolate(previous[i], transforms[i], 0.5f);
+            blackhole.consume(interpolated.getTransformationMatrix());
+        }
+    }
+
+    private static Transform randomTransform(Random random) {
+        Transform transform = new Transform();
+        transform.translate(random.nextFloat() * 200f - 100f, random.nextFloat() * 200f - 100f,
+                random.nextFloat() * 200f - 100f);
+        transform.rotate(random.nextFloat() * 360f, random.nextFloat() * 360f, random.nextFloat() * 360f);
+        float scale = 0.5f + random.nextFloat() * 2f;
+        transform.scale(scale, scale, scale);
+        return transform;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.math.spatial.Ray;
+import com.edenrump.math.spatial.RayHit;
+import com.edenrump.math.spatial.TriangleBVH;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the build time of {@link TriangleBVH} and the time per ray of closest-hit and any-hit queries against a
+ * procedurally generated terrain mesh. The ray benchmarks report the time of a single ray; run them with
+ * <code>-t</code> set to the number of cores to measure throughput under contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TriangleBVHBenchmark {
+
+    private static final int RAY_COUNT = 10_000;
+
+    @Param({"128", "512"})
+    public int gridSize;
+
+    private float[] positions;
+    private int[] indices;
+    private TriangleBVH bvh;
+    private float[][] rays;
+    private final Ray ray = new Ray();
+    private final RayHit hit = new RayHit();
+
+    @Setup
+    public void setUp() {
+        positions = createTerrainPositions(gridSize);
+        indices = createTerrainIndices(gridSize);
+        bvh = new TriangleBVH(positions, indices, 3);
+        rays = createRays(gridSize, RAY_COUNT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TriangleBVH build() {
+        return new TriangleBVH(positions, indices, 3);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public int closestHit() {
+        int hits = 0;
+        for (float[] r : rays) {
+            ray.set(r[0], r[1], r[2], r[3], r[4], r[5]);
+            if (bvh.intersectClosest(ray, hit)) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public int anyHit() {
+        int hits = 0;
+        for (float[] r : rays) {
+            ray.set(r[0], r[1], r[2], r[3], r[4], r[5]);
+            if (bvh.intersectAny(ray)) hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * Method to create rays that start above the terrain and point down into it at random angles
+     *
+     * @param gridSize the number of cells along each side of the terrain
+     * @param count    the number of rays
+     * @return the rays as arrays of origin and direction
+     */
+    private static float[][] createRays(int gridSize, int count) {
+        Random random = new Random(1);
+        float[][] rays = new float[count][];
+        for (int i = 0; i < count; i++) {
+            rays[i] = new float[]{
+                    random.nextFloat() * gridSize, 20, random.nextFloat() * gridSize,
+                    random.nextFloat() - 0.5f, -1, random.nextFloat() - 0.5f
+            };
+        }
+        return rays;
+    }
+
+    private static float[] createTerrainPositions(int gridSize) {
+        float[] positions = new float[(gridSize + 1) * (gridSize + 1) * 3];
+        for (int z = 0; z <= gridSize; z++) {
+            for (int x = 0; x <= gridSize; x++) {
+                int i = (z * (gridSize + 1) + x) * 3;
+                positions[i] = x;
+                positions[i + 1] = (float) (4 * Math.sin(x * 0.05) * Math.cos(z * 0.07)
+                        + Math.sin(x * 0.31 + z * 0.17));
+                positions[i + 2] = z;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] createTerrainIndices(int gridSize) {
+        int[] indices = new int[gridSize * gridSize * 6];
+        int i = 0;
+        for (int z = 0; z < gridSize; z++) {
+            for (int x = 0; x < gridSize; x++) {
+                int v0 = z * (gridSize + 1) + x;
+                int v1 = v0 + 1;
+                int v2 = v0 + gridSize + 1;
+                int v3 = v2 + 1;
+                indices[i++] = v0;
+                indices[i++] = v2;
+                indices[i++] = v1;
+                indices[i++] = v1;
+                indices[i++] = v2;
+                indices[i++] = v3;
+            }
+        }
+        return indices;
+    }
+}
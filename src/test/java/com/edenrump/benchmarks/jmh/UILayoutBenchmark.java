@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.benchmarks.jmh;
+
+import com.edenrump.graphic.display.ui.Component;
+import com.edenrump.graphic.display.ui.Container;
+import com.edenrump.graphic.display.ui.LengthConstraint;
+import com.edenrump.graphic.display.ui.PositionConstraint;
+import com.edenrump.graphic.display.ui.SizingBehaviour;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures laying out a user interface of about ten thousand components: ten columns of ten rows of a hundred
+ * components each, mixing pixel, relative, aspect and filling constraints.
+ * <p>
+ * <code>fullLayout</code> changes the viewport on every invocation, so the whole tree is laid out; the other
+ * benchmarks change one constraint and lay out only what it affects, which is what a resized widget costs per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class UILayoutBenchmark {
+
+    private Container root;
+    private Component leaf;
+    private Component row;
+    private boolean toggle;
+
+    @Setup
+    public void setUp() {
+        root = new Container() {
+        };
+        root.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.ROW);
+        for (int c = 0; c < 10; c++) {
+            Component column = component();
+            column.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.COLUMN);
+            column.getSizingBehaviour().setSpacing(2);
+            for (int r = 0; r < 10; r++) {
+                Component row = component();
+                row.setH(LengthConstraint.fill(1 + r % 3));
+                row.getSizingBehaviour().setPadding(1);
+                for (int i = 0; i < 100; i++) {
+                    Component child = component();
+                    child.setX(PositionConstraint.relative((i % 10) / 10f));
+                    child.setY(i % 2 == 0 ? PositionConstraint.centred() : PositionConstraint.pixels(i % 7));
+                    child.setW(LengthConstraint.relative(0.1f));
+                    child.setH(i % 3 == 0 ? LengthConstraint.aspect(1) : LengthConstraint.pixels(8));
+                    row.addComponent(child);
+                }
+                column.addComponent(row);
+            }
+            root.addComponent(column);
+        }
+        root.layout(1920, 1080);
+
+        row = root.getComponents().get(4).getComponents().get(5);
+        leaf = row.getComponents().get(50);
+    }
+
+    @Benchmark
+    public int fullLayout() {
+        toggle = !toggle;
+        return root.layout(toggle ? 1920 : 1919, 1080);
+    }
+
+    @Benchmark
+    public int resizeLeaf() {
+        toggle = !toggle;
+        leaf.setW(LengthConstraint.pixels(toggle ? 20 : 21));
+        return root.layout(1920, 1080);
+    }
+
+    @Benchmark
+    public int resizeRow() {
+        toggle = !toggle;
+        row.setH(LengthConstraint.fill(toggle ? 2 : 3));
+        return root.layout(1920, 1080);
+    }
+
+    private static Component component() {
+        return new Component() {
+        };
+    }
+}
@@ -31,23 +31,20 @@ import com.edenrump.graphic.shaders.ShaderProgram;
 import com.edenrump.graphic.time.Time;
 import com.edenrump.graphic.display.ui.Bounds;
 import com.edenrump.graphic.display.global.Window;
-import com.edenrump.graphic.util.GifSequenceWriter;
-import com.edenrump.graphic.util.Screenshot;
+import com.edenrump.graphic.util.FrameCapture;
+import com.edenrump.graphic.util.gif.GifEncoder;
 import com.edenrump.math.shape.mesh.GeometricConstruct;
 import com.edenrump.math.shape.mesh.ShadingType;
 import com.edenrump.math.shape.solids.Icosahedron;
 import org.lwjgl.BufferUtils;
 
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.OutputStream;
 import java.nio.FloatBuffer;
 
-import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 import static org.lwjgl.opengl.GL11C.*;
 import static org.lwjgl.opengl.GL30C.GL_FRAMEBUFFER_SRGB;
 
@@ -99,15 +96,21 @@ public class CreateGifTest {
             rectEntity.translate(0, 0, -3f);
             rectEntity.rotate(90, 0, 0);
 
-            ImageOutputStream output = null;
-            GifSequenceWriter writer = null;
+            Bounds windowBounds = window.getBounds();
+            int width = Math.round(windowBounds.getWidth());
+            int height = Math.round(windowBounds.getHeight());
+
+            OutputStream output;
             try {
-                File file = new File("src/test/resources/img/example.gif");
-                output = new FileImageOutputStream(file);
-                writer = new GifSequenceWriter(output, TYPE_INT_RGB, 1000 / 30, true);
+                output = new BufferedOutputStream(new FileOutputStream("src/test/resources/img/example.gif"));
             } catch (IOException e) {
                 e.printStackTrace();
+                return;
             }
+            GifEncoder encoder = new GifEncoder(output, width, height, 1000 / 30, true);
+
+            //frames are read back asynchronously and encoded on a background thread
+            FrameCapture capture = new FrameCapture(frame -> encoder.addFrame(frame.toBufferedImage()));
 
             int count = 0;
             while (window.closeNotRequested()) {
@@ -116,30 +119,18 @@ public class CreateGifTest {
                 window.update();
                 window.prepareForRender();
                 flatRenderer.render();
-                window.transferBuffersAfterRender();
 
-                Bounds bounds = window.getBounds();
-                int width = Math.round(bounds.getWidth());
-                int height = Math.round(bounds.getHeight());
-                int bpp = 4; // Assuming a 32-bit display with a byte each for red, green, blue, and alpha.
                 if (count < 360) {
-                    ByteBuffer screenData = Screenshot.getWindowPixelData(width, height, bpp);
-                    BufferedImage frame = Screenshot.convertToBufferedImage(
-                            screenData,
-                            Math.round(bounds.getWidth()),
-                            Math.round(bounds.getHeight()),
-                            bpp);
-                    try {
-                        writer.writeToSequence(frame);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    capture.capture(0, 0, width, height);
                     count++;
                 }
+                window.transferBuffersAfterRender();
             }
 
             try {
-                writer.close();
+                capture.close();
+                System.out.println("Recorded " + capture.getConsumedCount() + " frames, dropped " + capture.getDroppedCount());
+                encoder.close();
                 output.close();
             } catch (IOException e) {
                 e.printStackTrace();
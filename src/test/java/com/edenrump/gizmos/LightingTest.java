@@ -28,6 +28,7 @@ import com.edenrump.graphic.mesh.GPUMesh;
 import com.edenrump.graphic.render.StaticRenderer;
 import com.edenrump.graphic.shaders.Shader;
 import com.edenrump.graphic.shaders.ShaderProgram;
+import com.edenrump.graphic.time.GameLoop;
 import com.edenrump.graphic.time.Time;
 import com.edenrump.graphic.display.global.Window;
 import com.edenrump.math.shape.mesh.GeometricConstruct;
@@ -56,11 +57,12 @@ public class LightingTest {
         return () -> {
             window = new Window(800, 500);
             window.setApplicationName( "Lighting Test");
+            window.setShowFPS(true);
             window.setDefaultBackground(Color.BLUE);
             window.show();
             gameTime = Time.getInstance();
 
-            String VERTEX_FILE_LOCATION = "src/test/resources/shaders/ProjectionTestShader.vert";
+            String VERTEX_FILE_LOCATION = "src/test/resources/shaders/LightingTestShader.vert";
             String FRAGMENT_FILE_LOCATION = "src/test/resources/shaders/ProjectionTestShader.frag";
 
             ShaderProgram shaderProgram = new ShaderProgram();
@@ -94,15 +96,23 @@ public class LightingTest {
             flatRenderer.addMesh(rectEntity);
             rectEntity.translate(0, 0, -5f);
             rectEntity.rotate(90, 0, 0);
-
-            while (window.closeNotRequested()) {
-                rectEntity.rotate(1f, 2f, 0);
-                gameTime.updateTime();
-                window.update();
-                window.prepareForRender();
-                flatRenderer.render();
-                window.transferBuffersAfterRender();
-            }
+            //non-uniform scale, which only lights correctly with the normal matrix
+            rectEntity.scale(1.5f, 0.6f, 1f);
+
+            //rotate at the same speed whatever the frame rate: 60 simulation ticks per second, drawn interpolated
+            GameLoop loop = new GameLoop(60);
+            loop.run(window::closeNotRequested,
+                    step -> {
+                        rectEntity.storePreviousState();
+                        rectEntity.rotate(60f * (float) step, 120f * (float) step, 0);
+                    },
+                    alpha -> {
+                        rectEntity.interpolate(alpha);
+                        window.update();
+                        window.prepareForRender();
+                        flatRenderer.render();
+                        window.transferBuffersAfterRender();
+                    });
 
             flatRenderer.cleanUp();
             window.terminate();
@@ -118,6 +128,7 @@ public class LightingTest {
 
         StaticEntity r1 = new StaticEntity(committed);
         r1.setTransformationUniform(roundedCornersShaderProgram.getUniform("modelMatrix"));
+        r1.setNormalMatrixUniform(roundedCornersShaderProgram.getUniform("normalMatrix"));
         return r1;
     }
 
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncTextureLoaderTest {
+
+    @Test
+    public void placeholderSwappedWhenReadyTest() throws IOException, InterruptedException {
+        CountDownLatch proceed = new CountDownLatch(1);
+        FakeDecoder decoder = new FakeDecoder(8, 4, proceed);
+        FakeUploader uploader = new FakeUploader();
+        File file = tempFile();
+        AsyncTextureLoader loader = new AsyncTextureLoader(1, 0, 0xFF00FFFF, 1 << 20, decoder, uploader);
+        try {
+            Texture texture = loader.load(file.getPath());
+            Assert.assertEquals(texture.getId(), 1);
+            Assert.assertEquals(uploader.placeholderColour, 0xFF00FFFF);
+            Assert.assertEquals(loader.getPendingCount(), 1);
+
+            Assert.assertEquals(loader.processUploads(), 0);
+            Assert.assertEquals(texture.getId(), 1);
+
+            proceed.countDown();
+            loader.finish();
+            Assert.assertEquals(texture.getId(), 2);
+            Assert.assertEquals(texture.getWidth(), 8);
+            Assert.assertEquals(texture.getHeight(), 4);
+            Assert.assertEquals(uploader.deleted, List.of(1));
+            Assert.assertEquals(loader.getPendingCount(), 0);
+            Assert.assertEquals(loader.getUploadedCount(), 1L);
+            Assert.assertEquals(decoder.freed.get(), 1);
+        } finally {
+            loader.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void uploadsOneSliceWithinZeroBudgetTest() throws IOException {
+        FakeDecoder decoder = new FakeDecoder(16, 10, new CountDownLatch(0));
+        FakeUploader uploader = new FakeUploader();
+        File file = tempFile();
+        //each slice holds three rows of sixteen RGBA pixels
+        AsyncTextureLoader loader = new AsyncTextureLoader(1, 0, 0, 3 * 16 * 4, decoder, uploader);
+        try {
+            Texture texture = loader.load(file.getPath());
+            waitForDecode(decoder);
+
+            int[] expectedRows = {0, 3, 6, 9};
+            for (int i = 0; i < expectedRows.length; i++) {
+                int completed = loader.processUploads(0);
+                Assert.assertEquals(uploader.rowStarts.size(), i + 1);
+                Assert.assertEquals((int) uploader.rowStarts.get(i), expectedRows[i]);
+                Assert.assertEquals(completed, i == expectedRows.length - 1 ? 1 : 0);
+                Assert.assertEquals(texture.getId(), i == expectedRows.length - 1 ? 2 : 1);
+            }
+            Assert.assertEquals(uploader.rowCounts, List.of(3, 3, 3, 1));
+        } finally {
+            loader.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void failureKeepsPlaceholderTest() throws IOException {
+        FakeDecoder decoder = new FakeDecoder(0, 0, new CountDownLatch(0));
+        File file = tempFile();
+        AsyncTextureLoader loader = new AsyncTextureLoader(2, 1, 0, 1024, decoder, new FakeUploader());
+        try {
+            Texture texture = loader.load(file.getPath());
+            loader.finish();
+            Assert.assertEquals(texture.getId(), 1);
+            Assert.assertTrue(loader.getFailures().containsKey(file.getPath()));
+            Assert.assertEquals(loader.getPendingCount(), 0);
+            Assert.assertEquals(loader.getUploadedCount(), 0L);
+        } finally {
+            loader.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void closeReleasesDecodedImagesTest() throws IOException {
+        FakeDecoder decoder = new FakeDecoder(4, 4, new CountDownLatch(0));
+        File file = tempFile();
+        AsyncTextureLoader loader = new AsyncTextureLoader(1, 0, 0, 1024, decoder, new FakeUploader());
+        try {
+            loader.load(file.getPath());
+            loader.load(file.getPath());
+            while (decoder.decoded.get() < 2) Thread.onSpinWait();
+        } finally {
+            loader.close();
+            file.delete();
+        }
+        Assert.assertEquals(decoder.freed.get(), 2);
+        Assert.assertEquals(loader.getPendingCount(), 0);
+        try {
+            loader.load(file.getPath());
+            Assert.fail("Closed loader accepted a texture");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void missingFileTest() {
+        AsyncTextureLoader loader = new AsyncTextureLoader(1, 0, 0, 1024,
+                new FakeDecoder(1, 1, new CountDownLatch(0)), new FakeUploader());
+        try {
+            loader.load("does/not/exist.png");
+            Assert.fail("Missing file accepted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(loader.getPendingCount(), 0);
+        } finally {
+            loader.close();
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("texture", ".png");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void waitForDecode(FakeDecoder decoder) {
+        while (decoder.decoded.get() == 0) Thread.onSpinWait();
+    }
+
+    /**
+     * Decodes every file to an image of the same size, failing when that size is empty
+     */
+    private static class FakeDecoder implements AsyncTextureLoader.Decoder {
+        private final int width;
+        private final int height;
+        private final CountDownLatch proceed;
+        private final AtomicInteger decoded = new AtomicInteger();
+        private final AtomicInteger freed = new AtomicInteger();
+
+        FakeDecoder(int width, int height, CountDownLatch proceed) {
+            this.width = width;
+            this.height = height;
+            this.proceed = proceed;
+        }
+
+        @Override
+        public AsyncTextureLoader.DecodedImage decode(String path) throws IOException {
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (width == 0) throw new IOException("Cannot decode " + path);
+            AsyncTextureLoader.DecodedImage image = new AsyncTextureLoader.DecodedImage(width, height,
+                    ByteBuffer.allocate(width * height * 4));
+            decoded.incrementAndGet();
+            return image;
+        }
+
+        @Override
+        public void free(AsyncTextureLoader.DecodedImage image) {
+            freed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Hands out texture handles in order and records every upload
+     */
+    private static class FakeUploader implements AsyncTextureLoader.Uploader {
+        private int nextId = 1;
+        private int placeholderColour;
+        private final List<Integer> rowStarts = new ArrayList<>();
+        private final List<Integer> rowCounts = new ArrayList<>();
+        private final List<Integer> deleted = new ArrayList<>();
+
+        @Override
+        public Texture createPlaceholder(int rgba) {
+            placeholderColour = rgba;
+            return new Texture(nextId++);
+        }
+
+        @Override
+        public int allocate(int width, int height) {
+            return nextId++;
+        }
+
+        @Override
+        public void uploadRows(int id, int width, int y, int rows, ByteBuffer pixels) {
+            rowStarts.add(y);
+            rowCounts.add(rows);
+        }
+
+        @Override
+        public void swap(Texture texture, int id, int width, int height) {
+            deleted.add(texture.getId());
+            texture.replace(id, width, height);
+        }
+
+        @Override
+        public void discard(int id) {
+            deleted.add(id);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+/**
+ * This class creates textures around made-up handles, for tests of code that only passes textures around and so
+ * needs no GL context.
+ */
+public final class TestTextures {
+
+    private TestTextures() {
+    }
+
+    /**
+     * Method to create a texture that is never bound or uploaded to
+     *
+     * @param id the handle the texture reports
+     * @return a texture with no GL object behind it
+     */
+    public static Texture handle(int id) {
+        return new Texture(id);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL42.GL_COMPRESSED_RGBA_BPTC_UNORM;
+
+public class TextureManagerTest {
+
+    @Test
+    public void deduplicatesByPathAndParametersTest() {
+        FakeBackend backend = new FakeBackend(16);
+        TextureManager manager = new TextureManager(Long.MAX_VALUE, backend);
+
+        Texture first = manager.acquire("textures/brick.png");
+        Texture second = manager.acquire("textures/../textures/brick.png");
+        Texture repeated = manager.acquire("textures/brick.png", GL_REPEAT, GL_LINEAR);
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, repeated);
+        Assert.assertEquals(backend.loaded, 2);
+        Assert.assertEquals(manager.getReferenceCount(first), 2);
+        Assert.assertEquals(manager.getHitCount(), 1L);
+        Assert.assertEquals(manager.getMissCount(), 2L);
+        Assert.assertEquals(manager.getCachedCount(), 2);
+    }
+
+    @Test
+    public void estimatesMemoryTest() {
+        FakeBackend backend = new FakeBackend(16);
+        TextureManager manager = new TextureManager(Long.MAX_VALUE, backend);
+        manager.acquire("a.png");
+        manager.acquire("b.png");
+        Assert.assertEquals(manager.getUsedBytes(), 2L * 16 * 16 * 4);
+
+        Texture texture = new Texture(1);
+        texture.setWidth(8);
+        texture.setHeight(2);
+        Assert.assertEquals(TextureManager.estimateBytes(texture), 64L);
+        Assert.assertEquals(TextureManager.bitsPerPixel(GL_RGBA32F), 128);
+        Assert.assertEquals(TextureManager.bitsPerPixel(GL_RGB8), 24);
+        Assert.assertEquals(TextureManager.bitsPerPixel(GL_COMPRESSED_RGBA_S3TC_DXT1_EXT), 4);
+
+        //compressed levels below 4x4 still take a whole block: 8x2 is two blocks, then 4x1, 2x1 and 1x1 one each
+        Assert.assertEquals(TextureManager.estimateBytes(GL_COMPRESSED_RGBA_S3TC_DXT1_EXT, 8, 2, 4), 5L * 8);
+        Assert.assertEquals(TextureManager.estimateBytes(GL_COMPRESSED_RGBA_BPTC_UNORM, 5, 3, 1), 2L * 16);
+        Assert.assertEquals(TextureManager.estimateBytes(GL_RGBA8, 8, 2, 4), (16L + 4 + 2 + 1) * 4);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnreferencedTest() {
+        FakeBackend backend = new FakeBackend(16);
+        long textureBytes = 16 * 16 * 4;
+        TextureManager manager = new TextureManager(2 * textureBytes, backend);
+
+        Texture a = manager.acquire("a.png");
+        Texture b = manager.acquire("b.png");
+        manager.release(a);
+        manager.release(b);
+        //touch a so that b becomes the least recently used
+        manager.release(manager.acquire("a.png"));
+        Assert.assertTrue(backend.deleted.isEmpty());
+
+        Texture c = manager.acquire("c.png");
+        Assert.assertEquals(backend.deleted, List.of(b));
+        Assert.assertEquals(manager.getCachedCount(), 2);
+        Assert.assertEquals(manager.getEvictionCount(), 1L);
+        Assert.assertSame(manager.acquire("a.png"), a);
+        Assert.assertEquals(manager.getReferenceCount(c), 1);
+    }
+
+    @Test
+    public void referencedTexturesNotEvictedTest() {
+        FakeBackend backend = new FakeBackend(16);
+        TextureManager manager = new TextureManager(0, backend);
+
+        Texture a = manager.acquire("a.png");
+        Texture b = manager.acquire("b.png");
+        Assert.assertTrue(backend.deleted.isEmpty());
+        Assert.assertEquals(manager.getCachedCount(), 2);
+
+        manager.release(b);
+        Assert.assertEquals(backend.deleted, List.of(b));
+        Assert.assertEquals(manager.getReferenceCount(b), 0);
+
+        manager.release(a);
+        Assert.assertEquals(backend.deleted, List.of(b, a));
+        Assert.assertEquals(manager.getUsedBytes(), 0L);
+    }
+
+    @Test
+    public void trimAfterBudgetChangeTest() {
+        FakeBackend backend = new FakeBackend(16);
+        TextureManager manager = new TextureManager(Long.MAX_VALUE, backend);
+        for (String path : new String[]{"a.png", "b.png", "c.png"}) manager.release(manager.acquire(path));
+        Assert.assertEquals(manager.getCachedCount(), 3);
+
+        manager.setBudgetBytes(16 * 16 * 4);
+        Assert.assertEquals(manager.trim(), 2);
+        Assert.assertEquals(manager.getCachedCount(), 1);
+
+        manager.deleteAll();
+        Assert.assertEquals(backend.deleted.size(), 3);
+        Assert.assertEquals(manager.getCachedCount(), 0);
+    }
+
+    @Test
+    public void rejectsMipmapFiltersTest() {
+        FakeBackend backend = new FakeBackend(16);
+        TextureManager manager = new TextureManager(Long.MAX_VALUE, backend);
+        try {
+            manager.acquire("a.png", GL_REPEAT, GL_LINEAR_MIPMAP_LINEAR);
+            Assert.fail("Acquired a texture with a mipmap filter but no mip levels");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        Assert.assertEquals(backend.loaded, 0);
+        Assert.assertEquals(manager.getCachedCount(), 0);
+    }
+
+    @Test
+    public void releaseErrorsTest() {
+        TextureManager manager = new TextureManager(Long.MAX_VALUE, new FakeBackend(1));
+        try {
+            manager.release(new Texture(99));
+            Assert.fail("Released a texture that was never acquired");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        Texture texture = manager.acquire("a.png");
+        manager.release(texture);
+        try {
+            manager.release(texture);
+            Assert.fail("Released a texture twice");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Loads every file as a square RGBA texture and records deletions
+     */
+    private static class FakeBackend implements TextureManager.Backend {
+        private final int size;
+        private int loaded = 0;
+        private final List<Texture> deleted = new ArrayList<>();
+
+        FakeBackend(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Texture load(String path, int wrap, int filter) {
+            Texture texture = new Texture(++loaded);
+            texture.setWidth(size);
+            texture.setHeight(size);
+            return texture;
+        }
+
+        @Override
+        public void delete(Texture texture) {
+            deleted.add(texture);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.gpu.objects;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class UniformTest {
+
+    @Test
+    public void rebindFollowsTypedViewsTest() {
+        Uniform uniform = new Uniform(3, 7, "modelMatrix");
+        UniformMatrixFloat matrix = uniform.asUniformMatrix();
+        UniformFloat scalar = uniform.asUniformFloat();
+
+        uniform.rebind(5, 2);
+        Assert.assertEquals(matrix.getShaderProgramID(), 5);
+        Assert.assertEquals(matrix.getLocation(), 2);
+        Assert.assertEquals(scalar.getLocation(), 2);
+
+        //rebinding a view rebinds the uniform it came from
+        scalar.rebind(9, -1);
+        Assert.assertEquals(uniform.getShaderProgramID(), 9);
+        Assert.assertEquals(uniform.getLocation(), -1);
+        Assert.assertEquals(matrix.getName(), "modelMatrix");
+
+        //separately constructed uniforms stay independent
+        Uniform other = new Uniform(3, 7, "modelMatrix");
+        other.rebind(4, 4);
+        Assert.assertEquals(uniform.getShaderProgramID(), 9);
+    }
+}
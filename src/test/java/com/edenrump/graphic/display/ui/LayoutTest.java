@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.display.ui;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LayoutTest {
+
+    @Test
+    public void freePositionTest() {
+        Container root = container();
+        Component pixel = component();
+        pixel.setX(PositionConstraint.pixels(10));
+        pixel.setY(PositionConstraint.pixels(20));
+        pixel.setW(LengthConstraint.pixels(30));
+        pixel.setH(LengthConstraint.pixels(40));
+        Component relative = component();
+        relative.setX(PositionConstraint.relative(0.5f));
+        relative.setY(PositionConstraint.relative(0.25f));
+        relative.setW(LengthConstraint.relative(0.25f));
+        relative.setH(LengthConstraint.aspect(2));
+        Component centred = component();
+        centred.setX(PositionConstraint.centred());
+        centred.setY(PositionConstraint.centred(5));
+        centred.setW(LengthConstraint.aspect(0.5f));
+        centred.setH(LengthConstraint.pixels(100));
+        Component filling = component();
+        filling.setX(PositionConstraint.pixels(350));
+        filling.setY(PositionConstraint.relative(0.5f));
+        root.addComponent(pixel);
+        root.addComponent(relative);
+        root.addComponent(centred);
+        root.addComponent(filling);
+        root.getSizingBehaviour().setPadding(0);
+
+        root.layout(400, 200);
+        Assert.assertEquals(root.getBounds(), new Bounds(0, 0, 400, 200));
+        Assert.assertEquals(pixel.getBounds(), new Bounds(10, 20, 30, 40));
+        Assert.assertEquals(relative.getBounds(), new Bounds(200, 50, 100, 50));
+        Assert.assertEquals(centred.getBounds(), new Bounds(175, 55, 50, 100));
+        Assert.assertEquals(filling.getBounds(), new Bounds(350, 100, 50, 100));
+    }
+
+    @Test
+    public void stackedFillTest() {
+        Container root = container();
+        root.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.ROW);
+        root.getSizingBehaviour().setPadding(10);
+        root.getSizingBehaviour().setSpacing(5);
+        Component fixed = component();
+        fixed.setW(LengthConstraint.pixels(50));
+        Component one = component();
+        Component two = component();
+        two.setW(LengthConstraint.fill(2));
+        two.setH(LengthConstraint.relative(0.5f));
+        two.setY(PositionConstraint.centred());
+        Component square = component();
+        square.setW(LengthConstraint.aspect(1));
+        square.setH(LengthConstraint.pixels(20));
+        root.addComponent(fixed);
+        root.addComponent(one);
+        root.addComponent(two);
+        root.addComponent(square);
+
+        //content box 380 x 80, leaving 380 - 50 - 20 - 3 * 5 = 295 to share 1:2
+        root.layout(400, 100);
+        Assert.assertEquals(fixed.getBounds(), new Bounds(10, 10, 50, 80));
+        Assert.assertEquals(one.getBounds().getMinX(), 65f, 1e-4);
+        Assert.assertEquals(one.getBounds().getWidth(), 295f / 3, 1e-4);
+        Assert.assertEquals(two.getBounds().getMinX(), 70 + 295f / 3, 1e-4);
+        Assert.assertEquals(two.getBounds().getWidth(), 295f * 2 / 3, 1e-4);
+        Assert.assertEquals(two.getBounds().getMinY(), 30f, 1e-4);
+        Assert.assertEquals(two.getBounds().getHeight(), 40f, 1e-4);
+        Assert.assertEquals(square.getBounds().getMinX(), 370f, 1e-4);
+        Assert.assertEquals(square.getBounds().getWidth(), 20f, 1e-4);
+
+        //a column stacks downwards
+        root.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.COLUMN);
+        root.clearComponents();
+        Component top = component();
+        top.setH(LengthConstraint.pixels(30));
+        Component rest = component();
+        rest.setW(LengthConstraint.relative(0.5f));
+        root.addComponent(top);
+        root.addComponent(rest);
+        root.layout(400, 100);
+        Assert.assertEquals(top.getBounds(), new Bounds(10, 10, 380, 30));
+        Assert.assertEquals(rest.getBounds(), new Bounds(10, 45, 190, 45));
+    }
+
+    @Test
+    public void incrementalLayoutTest() {
+        Container root = container();
+        Component[] branches = new Component[10];
+        for (int i = 0; i < branches.length; i++) {
+            branches[i] = component();
+            branches[i].getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.ROW);
+            for (int j = 0; j < 10; j++) branches[i].addComponent(component());
+            root.addComponent(branches[i]);
+        }
+        Assert.assertEquals(root.layout(800, 600), 111);
+        Assert.assertFalse(root.isLayoutPending());
+        Assert.assertEquals(root.layout(800, 600), 0);
+
+        //resizing one leaf arranges its parent and every leaf in the row, as they share what is left of it
+        Component leaf = branches[3].getComponents().get(4);
+        leaf.setW(LengthConstraint.pixels(40));
+        Assert.assertTrue(root.isLayoutPending());
+        Assert.assertFalse(branches[2].isLayoutPending());
+        Assert.assertEquals(root.layout(800, 600), 11);
+        Assert.assertEquals(leaf.getBounds().getWidth(), 40f);
+
+        //setting an equal constraint changes nothing
+        leaf.setW(LengthConstraint.pixels(40));
+        Assert.assertEquals(root.layout(800, 600), 0);
+
+        //resizing a branch arranges the root and the branch's subtree, which resizes every leaf in it
+        branches[5].setH(LengthConstraint.pixels(100));
+        Assert.assertEquals(root.layout(800, 600), 12);
+        Assert.assertEquals(branches[5].getComponents().get(9).getBounds().getHeight(), 100f);
+
+        //a new viewport lays out everything
+        Assert.assertEquals(root.layout(1024, 768), 111);
+        Assert.assertEquals(branches[0].getBounds().getWidth(), 1024f);
+
+        //an added subtree is laid out with its new parent, whose other components all narrow
+        Component added = component();
+        added.addComponent(component());
+        branches[7].addComponent(added);
+        Assert.assertEquals(root.layout(1024, 768), 13);
+    }
+
+    @Test
+    public void transformFollowsLayoutTest() {
+        Container root = container();
+        Component component = component();
+        component.setX(PositionConstraint.pixels(100));
+        component.setY(PositionConstraint.pixels(50));
+        component.setW(LengthConstraint.pixels(200));
+        component.setH(LengthConstraint.pixels(100));
+        root.addComponent(component);
+        root.layout(400, 200);
+
+        float[] scale = component.getTransform().getScale();
+        float[] translation = component.getTransform().getTranslation();
+        Assert.assertEquals(scale[0], 0.5f, 1e-6);
+        Assert.assertEquals(scale[1], 0.5f, 1e-6);
+        Assert.assertEquals(translation[0], 0f, 1e-6);
+        Assert.assertEquals(translation[1], 0f, 1e-6);
+
+        component.setX(PositionConstraint.pixels(0));
+        component.setY(PositionConstraint.pixels(0));
+        root.layout(400, 200);
+        translation = component.getTransform().getTranslation();
+        Assert.assertEquals(translation[0], -0.5f, 1e-6);
+        Assert.assertEquals(translation[1], 0.5f, 1e-6);
+    }
+
+    @Test
+    public void invalidLayoutTest() {
+        Container root = container();
+        Component component = component();
+        component.setW(LengthConstraint.aspect(1));
+        component.setH(LengthConstraint.aspect(1));
+        root.addComponent(component);
+        try {
+            root.layout(100, 100);
+            Assert.fail("Laid out a region with two aspect constraints");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            component.layout(100, 100);
+            Assert.fail("Laid out a tree from below its root");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            container().addComponent(component);
+            Assert.fail("Added a component to two containers");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            component.addComponent(component);
+            Assert.fail("Added a component to itself");
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            LengthConstraint.pixels(-1);
+            Assert.fail("Created a negative length");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    static Container container() {
+        return new Container() {
+        };
+    }
+
+    static Component component() {
+        return new Component() {
+        };
+    }
+}
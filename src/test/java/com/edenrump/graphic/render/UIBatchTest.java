@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.render;
+
+import com.edenrump.gpu.objects.TestTextures;
+import com.edenrump.gpu.objects.Texture;
+import com.edenrump.graphic.display.ui.Component;
+import com.edenrump.graphic.display.ui.Container;
+import com.edenrump.graphic.display.ui.Layer;
+import com.edenrump.graphic.display.ui.LengthConstraint;
+import com.edenrump.graphic.display.ui.PositionConstraint;
+import com.edenrump.graphic.display.ui.SizingBehaviour;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.FloatBuffer;
+
+public class UIBatchTest {
+
+    @Test
+    public void writesQuadsInDrawOrderTest() {
+        Layer layer = new Layer(null);
+        Container root = container();
+        Component panel = component(10, 20, 100, 40);
+        panel.setColour(0.25f, 0.5f, 0.75f, 1);
+        panel.setCornerRadius(50);
+        Component button = component(5, 5, 20, 10);
+        panel.addComponent(button);
+        root.addComponent(panel);
+        Component overlay = component(0, 0, 50, 50);
+        Container top = container();
+        top.addComponent(overlay);
+        layer.addContainer(root);
+        layer.addContainer(top);
+        layer.layout(400, 300);
+
+        UIBatch batch = new UIBatch();
+        batch.begin(400, 300);
+        batch.add(layer);
+        Assert.assertEquals(batch.getQuadCount(), 3);
+        Assert.assertEquals(batch.getDrawCount(), 1);
+        Assert.assertNull(batch.getDrawTexture(0));
+        Assert.assertEquals(batch.getDrawQuadCount(0), 3);
+
+        FloatBuffer vertices = batch.getVertices();
+        Assert.assertEquals(vertices.remaining(), 3 * UIBatch.VERTICES_PER_QUAD * UIBatch.FLOATS_PER_VERTEX);
+        float[] topLeft = new float[UIBatch.FLOATS_PER_VERTEX];
+        vertices.get(topLeft);
+        //the radius is limited to half the shorter side, and untextured quads still carry full texture coordinates
+        Assert.assertEquals(topLeft, new float[]{10, 20, -50, -20, 50, 20, 0.25f, 0.5f, 0.75f, 1, 0, 1, 20, 0});
+        float[] bottomRight = new float[UIBatch.FLOATS_PER_VERTEX];
+        vertices.position(2 * UIBatch.FLOATS_PER_VERTEX);
+        vertices.get(bottomRight);
+        Assert.assertEquals(bottomRight[0], 110f);
+        Assert.assertEquals(bottomRight[1], 60f);
+        Assert.assertEquals(bottomRight[10], 1f);
+        Assert.assertEquals(bottomRight[11], 0f);
+
+        //the button follows the panel it is in, and the second tree comes last
+        Assert.assertEquals(vertices.get(UIBatch.VERTICES_PER_QUAD * UIBatch.FLOATS_PER_VERTEX), 15f);
+        Assert.assertEquals(vertices.get(2 * UIBatch.VERTICES_PER_QUAD * UIBatch.FLOATS_PER_VERTEX), 0f);
+    }
+
+    @Test
+    public void skipsInvisibleComponentsTest() {
+        Layer layer = new Layer(null);
+        Container root = container();
+        Component hidden = component(0, 0, 50, 50);
+        hidden.addComponent(component(0, 0, 10, 10));
+        hidden.setVisible(false);
+        Component transparent = component(0, 0, 50, 50);
+        transparent.setColour(1, 1, 1, 0);
+        Component empty = component(0, 0, 0, 50);
+        Component outside = component(500, 0, 50, 50);
+        Component partlyOutside = component(380, 280, 50, 50);
+        root.addComponent(hidden);
+        root.addComponent(transparent);
+        root.addComponent(empty);
+        root.addComponent(outside);
+        root.addComponent(partlyOutside);
+        layer.addContainer(root);
+        layer.layout(400, 300);
+
+        UIBatch batch = new UIBatch();
+        batch.begin(400, 300);
+        batch.add(layer);
+        Assert.assertEquals(batch.getQuadCount(), 1);
+        Assert.assertEquals(batch.getVertices().get(0), 380f);
+
+        //a new frame starts empty
+        batch.begin(400, 300);
+        Assert.assertEquals(batch.getQuadCount(), 0);
+        Assert.assertEquals(batch.getDrawCount(), 0);
+        Assert.assertEquals(batch.getVertices().remaining(), 0);
+    }
+
+    @Test
+    public void groupsDrawsByTextureTest() {
+        Texture first = TestTextures.handle(1);
+        Texture second = TestTextures.handle(2);
+        Layer layer = new Layer(null);
+        Container root = container();
+        Texture[] textures = new Texture[]{null, first, second, first, null, first, second};
+        for (int i = 0; i < textures.length; i++) {
+            Component component = component(i * 10, 0, 10, 10);
+            if (textures[i] != null) component.setTexture(textures[i]);
+            root.addComponent(component);
+        }
+        layer.addContainer(root);
+        layer.layout(400, 300);
+
+        UIBatch batch = new UIBatch();
+        batch.begin(400, 300);
+        batch.add(layer);
+        Assert.assertEquals(batch.getQuadCount(), 7);
+
+        //untextured quads join the open draw, and a draw only breaks where the texture changes
+        Assert.assertEquals(batch.getDrawCount(), 4);
+        Texture[] drawTextures = new Texture[]{first, second, first, second};
+        int[] firstQuads = new int[]{0, 2, 3, 6};
+        int[] quadCounts = new int[]{2, 1, 3, 1};
+        for (int draw = 0; draw < 4; draw++) {
+            Assert.assertSame(batch.getDrawTexture(draw), drawTextures[draw]);
+            Assert.assertEquals(batch.getDrawFirstQuad(draw), firstQuads[draw]);
+            Assert.assertEquals(batch.getDrawQuadCount(draw), quadCounts[draw]);
+        }
+
+        //the untextured quad inside a textured draw is flagged so the shader ignores the texture
+        FloatBuffer vertices = batch.getVertices();
+        int quadFloats = UIBatch.VERTICES_PER_QUAD * UIBatch.FLOATS_PER_VERTEX;
+        Assert.assertEquals(vertices.get(4 * quadFloats + UIBatch.FLOATS_PER_VERTEX - 1), 0f);
+        Assert.assertEquals(vertices.get(5 * quadFloats + UIBatch.FLOATS_PER_VERTEX - 1), 1f);
+    }
+
+    @Test
+    public void thousandsOfComponentsInOneDrawTest() {
+        Layer layer = new Layer(null);
+        Container root = container();
+        root.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.COLUMN);
+        for (int r = 0; r < 40; r++) {
+            Component row = component();
+            row.getSizingBehaviour().setArrangement(SizingBehaviour.Arrangement.ROW);
+            for (int c = 0; c < 50; c++) row.addComponent(component());
+            root.addComponent(row);
+        }
+        layer.addContainer(root);
+        Assert.assertEquals(layer.layout(1000, 800), 2041);
+
+        UIBatch batch = new UIBatch();
+        batch.begin(1000, 800);
+        batch.add(layer);
+        Assert.assertEquals(batch.getQuadCount(), 2040);
+        Assert.assertEquals(batch.getDrawCount(), 1);
+        Assert.assertEquals(batch.getVertices().remaining(),
+                2040 * UIBatch.VERTICES_PER_QUAD * UIBatch.FLOATS_PER_VERTEX);
+
+        try {
+            layer.addContainer(root.getComponent(0));
+            Assert.fail("Added a component with a parent to a layer");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private static Container container() {
+        return new Container() {
+        };
+    }
+
+    private static Component component() {
+        return new Component() {
+        };
+    }
+
+    private static Component component(float x, float y, float width, float height) {
+        Component component = component();
+        component.setX(PositionConstraint.pixels(x));
+        component.setY(PositionConstraint.pixels(y));
+        component.setW(LengthConstraint.pixels(width));
+        component.setH(LengthConstraint.pixels(height));
+        return component;
+    }
+}
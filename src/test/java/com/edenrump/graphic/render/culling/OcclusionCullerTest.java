@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.culling;
+
+import com.edenrump.graphic.mesh.CPUMesh;
+import com.edenrump.math.geom.PerspectiveProjection;
+import com.edenrump.math.geom.Transform;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class OcclusionCullerTest {
+
+    //camera at the origin looking down -z, 90 degrees vertical field of view, matching the 2:1 buffer
+    static final float[] viewProjection = PerspectiveProjection.defineByFieldOfView(90, 2, 0.1f, 100)
+            .getProjectionMatrix().getValues();
+
+    /**
+     * A 10x10 wall facing the camera at z = -5
+     */
+    static Occluder wall() {
+        CPUMesh mesh = new CPUMesh(3);
+        mesh.setVertexPositions(new float[]{-5, -5, 0, 5, -5, 0, 5, 5, 0, -5, 5, 0});
+        mesh.setIndices(new int[]{0, 1, 2, 0, 2, 3});
+        Transform transform = new Transform();
+        transform.translate(0, 0, -5);
+        return new Occluder(mesh, transform);
+    }
+
+    /**
+     * A closed 2x2x2 box with 8 shared corners, centred on the view axis at z = -6
+     */
+    static Occluder closedBox() {
+        CPUMesh mesh = new CPUMesh(3);
+        mesh.setVertexPositions(new float[]{
+                -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, 1, 1,
+                -1, -1, -1, 1, -1, -1, 1, 1, -1, -1, 1, -1});
+        mesh.setIndices(new int[]{
+                0, 1, 2, 0, 2, 3,   //front
+                5, 4, 7, 5, 7, 6,   //back
+                1, 5, 6, 1, 6, 2,   //right
+                4, 0, 3, 4, 3, 7,   //left
+                3, 2, 6, 3, 6, 7,   //top
+                4, 5, 1, 4, 1, 0}); //bottom
+        Transform transform = new Transform();
+        transform.translate(0, 0, -6);
+        return new Occluder(mesh, transform);
+    }
+
+    static float[] box(float x, float y, float z, float halfSize) {
+        return new float[]{x - halfSize, y - halfSize, z - halfSize, x + halfSize, y + halfSize, z + halfSize};
+    }
+
+    static float[] concat(float[]... boxes) {
+        float[] result = new float[boxes.length * 6];
+        for (int i = 0; i < boxes.length; i++) System.arraycopy(boxes[i], 0, result, i * 6, 6);
+        return result;
+    }
+
+    @Test
+    public void depthBufferSizeTest() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new OcclusionDepthBuffer(250, 128));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new OcclusionDepthBuffer(256, 126));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new OcclusionCuller(256, 120, null));
+
+        OcclusionDepthBuffer buffer = new OcclusionDepthBuffer(16, 8);
+        Assert.assertEquals(buffer.getDepth(15, 7), 1f);
+        Assert.assertTrue(buffer.isVisible(0, 0, 15, 7, 0.99f));
+    }
+
+    @Test
+    public void conservativeRasterTest() {
+        OcclusionDepthBuffer buffer = new OcclusionDepthBuffer(16, 8);
+        //a triangle that covers the left half of the buffer up to a diagonal
+        buffer.rasterizeTriangle(0, 0, 0.5f, 8, 0, 0.5f, 0, 8, 0.5f, 0, 0, 8);
+        buffer.updateBlocks(0, 8);
+
+        Assert.assertEquals(buffer.getDepth(0, 0), 0.5f, 1e-6f);
+        Assert.assertEquals(buffer.getDepth(6, 0), 0.5f, 1e-6f);
+        //pixel (7, 0) is cut by the diagonal so must not be written
+        Assert.assertEquals(buffer.getDepth(7, 0), 1f);
+        Assert.assertEquals(buffer.getDepth(0, 7), 1f);
+
+        Assert.assertFalse(buffer.isVisible(0, 0, 3, 3, 0.6f));
+        Assert.assertTrue(buffer.isVisible(0, 0, 3, 3, 0.4f));
+        Assert.assertTrue(buffer.isVisible(0, 0, 7, 0, 0.6f));
+    }
+
+    @Test
+    public void occlusionTest() {
+        OcclusionCuller culler = new OcclusionCuller();
+        BitSet visible = culler.cull(viewProjection, Collections.singletonList(wall()), concat(
+                box(0, 0, -10, 1),      //0: directly behind the wall
+                box(0, 0, -3, 0.5f),    //1: in front of the wall
+                box(15, 0, -10, 1),     //2: behind, but beside the wall
+                box(9.5f, 0, -10, 1),   //3: behind, poking out past the edge of the wall
+                box(0, 0, 0, 1),        //4: around the camera
+                box(0, 0, 10, 1)        //5: behind the camera
+        ));
+
+        Assert.assertFalse(visible.get(0));
+        Assert.assertTrue(visible.get(1));
+        Assert.assertTrue(visible.get(2));
+        Assert.assertTrue(visible.get(3));
+        Assert.assertTrue(visible.get(4));
+        Assert.assertTrue(visible.get(5));
+    }
+
+    @Test
+    public void failedPassDoesNotBlockLaterPassesTest() {
+        OcclusionCuller culler = new OcclusionCuller();
+        Occluder broken = wall();
+        //the mesh is read by the pass, so an index past the last vertex fails it
+        broken.getMesh().setIndices(new int[]{0, 1, 7});
+        float[] bounds = box(0, 0, -10, 1);
+
+        CompletableFuture<BitSet> failed = culler.cullAsync(viewProjection, Collections.singletonList(broken), bounds);
+        CompletableFuture<BitSet> next = culler.cullAsync(viewProjection, Collections.singletonList(wall()), bounds);
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertFalse(next.join().get(0));
+    }
+
+    @Test
+    public void closedOccluderSilhouetteTest() {
+        //the front face projects to x 115.2 - 140.8 and y 51.2 - 76.8. Its edges are shared with the side faces,
+        //which fold back behind it, so pixels cut by those edges must not be written
+        OcclusionCuller culler = new OcclusionCuller();
+        culler.cull(viewProjection, Collections.singletonList(closedBox()), new float[0]);
+        OcclusionDepthBuffer buffer = culler.getDepthBuffer();
+
+        Assert.assertTrue(buffer.getDepth(128, 64) < 1f);
+        Assert.assertTrue(buffer.getDepth(139, 64) < 1f);
+        Assert.assertTrue(buffer.getDepth(116, 64) < 1f);
+        Assert.assertTrue(buffer.getDepth(128, 75) < 1f);
+        Assert.assertEquals(buffer.getDepth(140, 64), 1f);
+        Assert.assertEquals(buffer.getDepth(115, 64), 1f);
+        Assert.assertEquals(buffer.getDepth(128, 76), 1f);
+        Assert.assertEquals(buffer.getDepth(128, 51), 1f);
+    }
+
+    @Test
+    public void offScreenTest() {
+        OcclusionCuller culler = new OcclusionCuller();
+        BitSet visible = culler.cull(viewProjection, Collections.emptyList(), concat(
+                box(0, 0, -10, 1),
+                box(100, 0, -10, 1)
+        ));
+        Assert.assertTrue(visible.get(0));
+        Assert.assertFalse(visible.get(1));
+    }
+
+    @Test
+    public void asyncPassesTest() {
+        OcclusionCuller culler = new OcclusionCuller();
+        List<Occluder> occluders = Collections.singletonList(wall());
+        float[] bounds = box(0, 0, -10, 1);
+
+        CompletableFuture<BitSet> first = culler.cullAsync(viewProjection, occluders, bounds);
+        CompletableFuture<BitSet> second = culler.cullAsync(viewProjection, Collections.emptyList(), bounds);
+        Assert.assertFalse(first.join().get(0));
+        Assert.assertTrue(second.join().get(0));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> culler.cullAsync(new float[9], occluders, bounds));
+        Assert.assertThrows(IllegalArgumentException.class, () -> culler.cullAsync(viewProjection, occluders, new float[5]));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.graphic.render.software;
+
+import com.edenrump.graphic.mesh.CPUMesh;
+import com.edenrump.graphic.mesh.ConstructConverter;
+import com.edenrump.graphic.util.Screenshot;
+import com.edenrump.math.arrays.SquareMatrix;
+import com.edenrump.math.geom.PerspectiveProjection;
+import com.edenrump.math.geom.Transform;
+import com.edenrump.math.shape.mesh.ShadingType;
+import com.edenrump.math.shape.solids.Icosahedron;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+public class SoftwareRasterizerTest {
+
+    static final String REFERENCE_IMAGE = "src/test/resources/reference/software_lighting_icosahedron.png";
+    static final int WIDTH = 160;
+    static final int HEIGHT = 90;
+
+    /**
+     * Renders the scene from the LightingTest gizmo: a flat-shaded icosahedron in front of the camera
+     */
+    static SoftwareRasterizer renderLightingScene(ForkJoinPool pool) {
+        Icosahedron solid = new Icosahedron(0.7f);
+        solid.setShadingType(ShadingType.FLAT);
+        CPUMesh mesh = ConstructConverter.convertConstructToMesh(solid.getMesh());
+
+        Transform transform = new Transform();
+        transform.translate(0, 0, -3f);
+        transform.rotate(90, 30, 0);
+
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(WIDTH, HEIGHT, pool);
+        rasterizer.setProjectionMatrix(
+                PerspectiveProjection.defineByFieldOfView(70, (float) WIDTH / HEIGHT, 0.1f, 1000).getProjectionMatrix());
+        rasterizer.setLightPosition(0, 1, 0);
+        rasterizer.setClearColour(Color.BLUE);
+        rasterizer.clear();
+        rasterizer.draw(mesh, transform, new Color(128, 128, 0));
+        rasterizer.render();
+        return rasterizer;
+    }
+
+    static CPUMesh quad(float z, boolean counterClockwise) {
+        CPUMesh mesh = new CPUMesh(3);
+        mesh.setVertexPositions(new float[]{-1, -1, z, 1, -1, z, 1, 1, z, -1, 1, z});
+        mesh.setVertexNormals(new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1});
+        mesh.setIndices(counterClockwise ? new int[]{0, 1, 2, 0, 2, 3} : new int[]{0, 2, 1, 0, 3, 2});
+        return mesh;
+    }
+
+    @Test
+    public void constructorTest() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new SoftwareRasterizer(0, 10));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new SoftwareRasterizer(10, -1));
+
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(33, 65);
+        Assert.assertEquals(rasterizer.getPixelData().remaining(), 33 * 65 * SoftwareRasterizer.BYTES_PER_PIXEL);
+        Assert.assertEquals(rasterizer.getDepth(32, 64), 1f);
+    }
+
+    @Test
+    public void clearTest() {
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(4, 4);
+        rasterizer.setClearColour(new Color(10, 20, 30));
+        rasterizer.clear();
+        ByteBuffer pixels = rasterizer.getPixelData();
+        Assert.assertEquals(pixels.get(0) & 0xFF, 10);
+        Assert.assertEquals(pixels.get(1) & 0xFF, 20);
+        Assert.assertEquals(pixels.get(2) & 0xFF, 30);
+        Assert.assertEquals(pixels.get(3) & 0xFF, 255);
+    }
+
+    @Test
+    public void depthTest() {
+        //identity projection: the quad at z = 0.5 is further away (depth 0.75) than the quad at z = -0.5
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(8, 8);
+        rasterizer.setLightPosition(0, 0, 10);
+        rasterizer.draw(quad(-0.5f, true), new Transform(), Color.RED);
+        rasterizer.draw(quad(0.5f, true), new Transform(), Color.GREEN);
+        rasterizer.render();
+
+        ByteBuffer pixels = rasterizer.getPixelData();
+        Assert.assertEquals(rasterizer.getDepth(4, 4), 0.25f, 1e-6f);
+        Assert.assertTrue((pixels.get(0) & 0xFF) > 0);
+        Assert.assertEquals(pixels.get(1) & 0xFF, 0);
+    }
+
+    @Test
+    public void cullingTest() {
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(8, 8);
+        rasterizer.draw(quad(0, false), new Transform(), Color.RED);
+        rasterizer.render();
+        Assert.assertEquals(rasterizer.getDepth(4, 4), 1f);
+
+        rasterizer.setCullBackFaces(false);
+        rasterizer.draw(quad(0, false), new Transform(), Color.RED);
+        rasterizer.render();
+        Assert.assertEquals(rasterizer.getDepth(4, 4), 0.5f, 1e-6f);
+    }
+
+    @Test
+    public void fullCoverageTest() {
+        //two triangles sharing a diagonal must cover every pixel of the target exactly
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(37, 29);
+        rasterizer.draw(quad(0, true), new Transform(), Color.RED);
+        rasterizer.render();
+        for (int y = 0; y < 29; y++) {
+            for (int x = 0; x < 37; x++) {
+                Assert.assertEquals(rasterizer.getDepth(x, y), 0.5f, 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void nearPlaneClippingTest() {
+        //a quad that crosses the camera must be clipped rather than wrapping around behind it
+        CPUMesh floor = new CPUMesh(3);
+        floor.setVertexPositions(new float[]{-1, -0.5f, 5, 1, -0.5f, 5, 1, -0.5f, -20, -1, -0.5f, -20});
+        floor.setVertexNormals(new float[]{0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0});
+        floor.setIndices(new int[]{0, 1, 2, 0, 2, 3});
+
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(64, 64);
+        rasterizer.setProjectionMatrix(PerspectiveProjection.defineByFieldOfView(90, 1, 0.1f, 100).getProjectionMatrix());
+        rasterizer.draw(floor, new Transform(), Color.WHITE);
+        rasterizer.render();
+
+        Assert.assertTrue(rasterizer.getDepth(32, 0) < 1f);
+        Assert.assertEquals(rasterizer.getDepth(32, 63), 1f);
+    }
+
+    @Test
+    public void nonUniformScaleNormalTest() {
+        //the plane z = x with 4 floats per vertex position and 3 per normal; scaling x by 2 turns it into z = x / 2,
+        //whose normal is (-1, 0, 2) normalised. Transforming the normal by the model matrix would give (-2, 0, 1)
+        CPUMesh slope = new CPUMesh(4);
+        slope.setVertexPositions(new float[]{-0.4f, -1, -0.4f, 1, 0.4f, -1, 0.4f, 1, 0.4f, 1, 0.4f, 1, -0.4f, 1, -0.4f, 1});
+        slope.setVertexNormals(new float[]{-1, 0, 1, -1, 0, 1, -1, 0, 1, -1, 0, 1});
+        slope.setIndices(new int[]{0, 1, 2, 0, 2, 3});
+        float[] scale = SquareMatrix.getIdentityMatrix(4).getValues();
+        scale[0] = 2;
+
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(8, 8);
+        rasterizer.setCullBackFaces(false);
+        rasterizer.setLightPosition(-100, 0, 200);
+        rasterizer.draw(slope, scale, Color.RED);
+        rasterizer.render();
+
+        ByteBuffer pixels = rasterizer.getPixelData();
+        Assert.assertTrue((pixels.get((4 * 8 + 4) * SoftwareRasterizer.BYTES_PER_PIXEL) & 0xFF) > 250);
+    }
+
+    @Test
+    public void deterministicAcrossThreadCountsTest() {
+        ForkJoinPool singlePool = new ForkJoinPool(1);
+        ForkJoinPool manyPool = new ForkJoinPool(4);
+        try {
+            ByteBuffer single = renderLightingScene(singlePool).getPixelData();
+            ByteBuffer many = renderLightingScene(manyPool).getPixelData();
+            Assert.assertEquals(single, many);
+        } finally {
+            singlePool.shutdown();
+            manyPool.shutdown();
+        }
+    }
+
+    @Test
+    public void referenceImageTest() throws IOException {
+        BufferedImage rendered = Screenshot.convertToBufferedImage(
+                renderLightingScene(ForkJoinPool.commonPool()).getPixelData(), WIDTH, HEIGHT,
+                SoftwareRasterizer.BYTES_PER_PIXEL);
+        BufferedImage reference = ImageIO.read(new File(REFERENCE_IMAGE));
+
+        Assert.assertEquals(rendered.getWidth(), reference.getWidth());
+        Assert.assertEquals(rendered.getHeight(), reference.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assert.assertEquals(rendered.getRGB(x, y), reference.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ProgramBinaryCacheTest {
+
+    @Test
+    public void linksOnceAcrossRunsTest() throws IOException {
+        Path directory = Files.createTempDirectory("programs");
+        try {
+            ShaderPreprocessor.Result[] sources = sources(directory, Collections.emptyList());
+            FakeDriver driver = new FakeDriver("vendor A");
+
+            ProgramBinaryCache first = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            first.load(sources[0], sources[1]);
+            Assert.assertEquals(first.getMissCount(), 1);
+            Assert.assertEquals(binaries(directory).size(), 1);
+
+            ProgramBinaryCache second = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            ShaderProgram program = second.load(sources[0], sources[1]);
+            Assert.assertEquals(second.getHitCount(), 1);
+            Assert.assertEquals(second.getMissCount(), 0);
+            Assert.assertEquals(driver.links.get(), 1);
+            Assert.assertTrue(program.getID() > 0);
+
+            //a different driver never sees the binary
+            ProgramBinaryCache other = new ProgramBinaryCache(directory.resolve("cache"), new FakeDriver("vendor B"));
+            other.load(sources[0], sources[1]);
+            Assert.assertEquals(other.getMissCount(), 1);
+            Assert.assertEquals(binaries(directory).size(), 2);
+
+            //nor does a different variant
+            ShaderPreprocessor.Result[] lit = sources(directory, Collections.singletonList("LIT"));
+            second.load(lit[0], lit[1]);
+            Assert.assertEquals(second.getMissCount(), 1);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void rejectedBinaryFallsBackToSourceTest() throws IOException {
+        Path directory = Files.createTempDirectory("programs");
+        try {
+            ShaderPreprocessor.Result[] sources = sources(directory, Collections.emptyList());
+            FakeDriver driver = new FakeDriver("vendor A");
+            new ProgramBinaryCache(directory.resolve("cache"), driver).load(sources[0], sources[1]);
+
+            driver.rejectBinaries = true;
+            ProgramBinaryCache cache = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            Assert.assertTrue(cache.load(sources[0], sources[1]).getID() > 0);
+            Assert.assertEquals(cache.getRejectedCount(), 1);
+            Assert.assertEquals(cache.getMissCount(), 1);
+            Assert.assertEquals(driver.links.get(), 2);
+            Assert.assertEquals(binaries(directory).size(), 1);
+
+            //a truncated file is treated as missing
+            Path file = binaries(directory).get(0);
+            Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 10));
+            Assert.assertNull(ProgramBinaryCache.read(file));
+            driver.rejectBinaries = false;
+            ProgramBinaryCache again = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            again.load(sources[0], sources[1]);
+            Assert.assertEquals(again.getMissCount(), 1);
+            Assert.assertNotNull(ProgramBinaryCache.read(file));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void unwritableDirectoryIsCountedTest() throws IOException {
+        Path directory = Files.createTempDirectory("programs");
+        try {
+            ShaderPreprocessor.Result[] sources = sources(directory, Collections.emptyList());
+            //a regular file where the cache directory should be
+            Path blocked = Files.createFile(directory.resolve("cache"));
+            FakeDriver driver = new FakeDriver("vendor A");
+
+            ProgramBinaryCache cache = new ProgramBinaryCache(blocked, driver);
+            Assert.assertTrue(cache.load(sources[0], sources[1]).getID() > 0);
+            Assert.assertEquals(cache.getWriteFailureCount(), 1);
+            Assert.assertFalse(ProgramBinaryCache.write(blocked.resolve("program.bin"),
+                    new ProgramBinaryCache.Binary(1, new byte[]{1, 2, 3})));
+
+            cache.load(sources[0], sources[1]);
+            Assert.assertEquals(cache.getMissCount(), 2);
+            Assert.assertEquals(cache.getWriteFailureCount(), 2);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void unsupportedDriverLinksFromSourceTest() throws IOException {
+        Path directory = Files.createTempDirectory("programs");
+        try {
+            ShaderPreprocessor.Result[] sources = sources(directory, Collections.emptyList());
+            FakeDriver driver = new FakeDriver("vendor A");
+            driver.supported = false;
+            ProgramBinaryCache cache = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            cache.load(sources[0], sources[1]);
+            cache.load(sources[0], sources[1]);
+            Assert.assertEquals(cache.getMissCount(), 2);
+            Assert.assertFalse(Files.exists(directory.resolve("cache")));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void precompileOnSharedContextsTest() throws IOException {
+        Path directory = Files.createTempDirectory("programs");
+        FakeDriver driver = new FakeDriver("vendor A");
+        SharedContextCompiler compiler = new SharedContextCompiler(2, new SharedContextCompiler.ContextFactory() {
+            @Override
+            public ProgramBinaryCache.Driver makeCurrent(int index) {
+                return driver;
+            }
+
+            @Override
+            public void release(int index) {
+            }
+        });
+        try {
+            ProgramBinaryCache cache = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            ShaderPreprocessor.Result[][] variants = {
+                    sources(directory, Collections.emptyList()),
+                    sources(directory, Collections.singletonList("LIT")),
+                    sources(directory, Arrays.asList("LIT", "TEXTURED"))};
+            for (ShaderPreprocessor.Result[] variant : variants) cache.precompile(compiler, variant[0], variant[1]);
+            for (ShaderPreprocessor.Result[] variant : variants) cache.load(variant[0], variant[1]);
+
+            Assert.assertEquals(compiler.getContextCount(), 2);
+            Assert.assertEquals(cache.getHitCount(), 3);
+            Assert.assertEquals(cache.getMissCount(), 0);
+            Assert.assertEquals(driver.links.get(), 3);
+            Assert.assertEquals(binaries(directory).size(), 3);
+        } finally {
+            compiler.close();
+            delete(directory);
+        }
+        try {
+            compiler.compile("", "");
+            Assert.fail("Compiled after closing");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void lostSharedContextsFallBackToMainContextTest()
+            throws IOException, InterruptedException, TimeoutException {
+        Path directory = Files.createTempDirectory("programs");
+        FakeDriver driver = new FakeDriver("vendor A");
+        CountDownLatch queued = new CountDownLatch(1);
+        AtomicInteger released = new AtomicInteger();
+        SharedContextCompiler compiler = new SharedContextCompiler(2, new SharedContextCompiler.ContextFactory() {
+            @Override
+            public ProgramBinaryCache.Driver makeCurrent(int index) {
+                try {
+                    queued.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("context lost");
+            }
+
+            @Override
+            public void release(int index) {
+                released.incrementAndGet();
+            }
+        });
+        try {
+            ProgramBinaryCache cache = new ProgramBinaryCache(directory.resolve("cache"), driver);
+            ShaderPreprocessor.Result[] variant = sources(directory, Collections.emptyList());
+            cache.precompile(compiler, variant[0], variant[1]);
+            CompletableFuture<ProgramBinaryCache.Binary> direct = compiler.compile("", "");
+            queued.countDown();
+
+            try {
+                direct.get(10, TimeUnit.SECONDS);
+                Assert.fail("Linked without a current context");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertEquals(compiler.getContextCount(), 0);
+            Assert.assertTrue(compiler.compile("", "").isCompletedExceptionally());
+
+            cache.load(variant[0], variant[1]);
+            Assert.assertEquals(cache.getMissCount(), 1);
+            Assert.assertEquals(driver.links.get(), 1);
+        } finally {
+            compiler.close();
+            delete(directory);
+        }
+        Assert.assertEquals(released.get(), 2);
+    }
+
+    private static ShaderPreprocessor.Result[] sources(Path directory, List<String> flags) throws IOException {
+        Path vertex = directory.resolve("test.vert");
+        Path fragment = directory.resolve("test.frag");
+        if (!Files.exists(vertex)) {
+            Files.write(vertex, Arrays.asList("#version 430", "void main(){ gl_Position = vec4(0); }"));
+            Files.write(fragment, Arrays.asList("#version 430", "out vec4 colour;", "void main(){ colour = vec4(1); }"));
+        }
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+        Map<String, String> defines = new TreeMap<>();
+        for (String flag : flags) defines.put(flag, "");
+        return new ShaderPreprocessor.Result[]{
+                preprocessor.process(vertex.toString(), defines), preprocessor.process(fragment.toString(), defines)};
+    }
+
+    private static List<Path> binaries(Path directory) throws IOException {
+        Path cache = directory.resolve("cache");
+        if (!Files.exists(cache)) return Collections.emptyList();
+        try (Stream<Path> files = Files.list(cache)) {
+            return files.filter(path -> path.toString().endsWith(".bin")).collect(Collectors.toList());
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static final class FakeDriver implements ProgramBinaryCache.Driver {
+        final String description;
+        final AtomicInteger links = new AtomicInteger();
+        final AtomicInteger nextProgram = new AtomicInteger(1);
+        volatile boolean supported = true;
+        volatile boolean rejectBinaries;
+
+        FakeDriver(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String describe() {
+            return description;
+        }
+
+        @Override
+        public boolean supportsBinaries() {
+            return supported;
+        }
+
+        @Override
+        public int link(String vertexSource, String fragmentSource) {
+            links.incrementAndGet();
+            return nextProgram.getAndIncrement();
+        }
+
+        @Override
+        public ProgramBinaryCache.Binary getBinary(int program) {
+            return new ProgramBinaryCache.Binary(7, (description + program).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int load(ProgramBinaryCache.Binary binary) {
+            return rejectBinaries ? 0 : nextProgram.getAndIncrement();
+        }
+
+        @Override
+        public void delete(int program) {
+        }
+
+        @Override
+        public int getUniformLocation(int program, CharSequence name) {
+            return program;
+        }
+
+        @Override
+        public void bindUniformBlock(int program, String blockName, int binding) {
+        }
+    }
+}
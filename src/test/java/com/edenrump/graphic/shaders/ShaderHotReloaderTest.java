@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+public class ShaderHotReloaderTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void reloadsChangedProgramTest() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("shaders");
+        Path common = Files.createDirectories(directory.resolve("common"));
+        Path include = write(common.resolve("colour.glsl"), "vec4 colour(){ return vec4(1); }");
+        Path vertex = write(directory.resolve("test.vert"), "#version 430", "void main(){ gl_Position = vec4(0); }");
+        Path fragment = write(directory.resolve("test.frag"), "#version 430", "#include <colour.glsl>",
+                "out vec4 c;", "void main(){ c = colour(); }");
+        Path unrelated = write(directory.resolve("other.frag"), "#version 430");
+        RecordingDriver driver = new RecordingDriver();
+        ShaderProgram program = new ShaderProgram(1);
+
+        try (ShaderHotReloader reloader = new ShaderHotReloader(new ShaderPreprocessor(common.toString()), null,
+                driver, 20)) {
+            reloader.watch(program, vertex.toString(), fragment.toString());
+            List<RuntimeException> reported = new ArrayList<>();
+            reloader.setFailureListener((failed, error) -> {
+                Assert.assertSame(failed, program);
+                reported.add(error);
+            });
+
+            //an included file in another directory triggers a reload too
+            write(include, "vec4 colour(){ return vec4(0.5); }");
+            await(reloader, () -> program.getID() != 1);
+            Assert.assertEquals(program.getID(), 2);
+            Assert.assertTrue(driver.lastFragment.contains("vec4(0.5)"));
+            Assert.assertEquals(driver.deleted.get(), 1);
+
+            //a broken edit keeps the running program
+            driver.failLinks = true;
+            write(vertex, "#version 430", "void main(){ broken }");
+            await(reloader, () -> !reloader.getFailures().isEmpty());
+            Assert.assertEquals(program.getID(), 2);
+            Assert.assertEquals(reloader.getFailures().size(), 1);
+            Assert.assertTrue(reloader.getFailures().get(program).getMessage().contains("syntax error"));
+            Assert.assertEquals(reported.size(), 1);
+            Assert.assertSame(reported.get(0), reloader.getFailures().get(program));
+
+            //fixing it swaps in a new program and clears the failure
+            driver.failLinks = false;
+            write(vertex, "#version 430", "void main(){ gl_Position = vec4(1); }");
+            await(reloader, () -> program.getID() != 2);
+            Assert.assertEquals(program.getID(), 3);
+            Assert.assertTrue(reloader.getFailures().isEmpty());
+            Assert.assertEquals(reloader.getReloadCount(), 2);
+
+            //files the program was not built from are ignored
+            write(unrelated, "#version 430", "void main(){}");
+            Thread.sleep(300);
+            Assert.assertEquals(reloader.update(), 0);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void await(ShaderHotReloader reloader, BooleanSupplier done) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            reloader.update();
+            if (done.getAsBoolean()) return;
+            Thread.sleep(10);
+        }
+        Assert.fail("No reload within " + TIMEOUT_MILLIS + "ms");
+    }
+
+    private static Path write(Path file, String... lines) throws IOException {
+        return Files.write(file, Arrays.asList(lines));
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static final class RecordingDriver implements ProgramBinaryCache.Driver {
+        final AtomicInteger nextProgram = new AtomicInteger(2);
+        final AtomicInteger deleted = new AtomicInteger();
+        volatile boolean failLinks;
+        volatile String lastFragment;
+
+        @Override
+        public String describe() {
+            return "recording";
+        }
+
+        @Override
+        public boolean supportsBinaries() {
+            return false;
+        }
+
+        @Override
+        public int link(String vertexSource, String fragmentSource) {
+            if (failLinks) throw new RuntimeException("0(2) : error C0000: syntax error");
+            lastFragment = fragmentSource;
+            return nextProgram.getAndIncrement();
+        }
+
+        @Override
+        public ProgramBinaryCache.Binary getBinary(int program) {
+            return null;
+        }
+
+        @Override
+        public int load(ProgramBinaryCache.Binary binary) {
+            return 0;
+        }
+
+        @Override
+        public void delete(int program) {
+            deleted.incrementAndGet();
+        }
+
+        @Override
+        public int getUniformLocation(int program, CharSequence name) {
+            return 0;
+        }
+
+        @Override
+        public void bindUniformBlock(int program, String blockName, int binding) {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.shaders;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+public class ShaderPreprocessorTest {
+
+    @Test
+    public void definesFollowVersionTest() throws IOException {
+        Path directory = Files.createTempDirectory("shaders");
+        try {
+            Path shader = write(directory.resolve("lit.frag"), "// lighting", "#version 430", "void main(){}");
+            Map<String, String> defines = new TreeMap<>();
+            defines.put("TEXTURED", "");
+            defines.put("MAX_LIGHTS", "4");
+
+            List<String> lines = lines(new ShaderPreprocessor().process(shader.toString(), defines).getSource());
+            Assert.assertEquals(lines.subList(0, 4),
+                    Arrays.asList("#version 430", "#define MAX_LIGHTS 4", "#define TEXTURED", "#line 1 0"));
+            //the original lines keep their numbers, the version line left blank
+            Assert.assertEquals(lines.subList(4, 7), Arrays.asList("// lighting", "", "void main(){}"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void resolvesIncludesTest() throws IOException {
+        Path directory = Files.createTempDirectory("shaders");
+        try {
+            Path common = Files.createDirectories(directory.resolve("common"));
+            write(common.resolve("light.glsl"), "#version 430", "vec3 light(){ return vec3(1); }");
+            write(directory.resolve("util.glsl"), "float twice(float x){ return 2 * x; }");
+            Path shader = write(directory.resolve("main.frag"),
+                    "#version 430", "#include \"util.glsl\"", "  #include <light.glsl>", "void main(){}");
+
+            ShaderPreprocessor.Result result = new ShaderPreprocessor(common.toString()).process(shader.toString());
+            List<String> lines = lines(result.getSource());
+            Assert.assertEquals(lines, Arrays.asList(
+                    "#version 430", "#line 1 0", "",
+                    "#line 1 1", "float twice(float x){ return 2 * x; }", "#line 3 0",
+                    "#line 1 2", "", "vec3 light(){ return vec3(1); }", "#line 4 0",
+                    "void main(){}"));
+            Assert.assertEquals(result.getFiles().size(), 3);
+            Assert.assertEquals(result.getFiles().get(2).getFileName().toString(), "light.glsl");
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void includeErrorsTest() throws IOException {
+        Path directory = Files.createTempDirectory("shaders");
+        try {
+            write(directory.resolve("a.glsl"), "#include \"b.glsl\"");
+            write(directory.resolve("b.glsl"), "#include \"a.glsl\"");
+            Path cyclic = write(directory.resolve("cyclic.frag"), "#version 430", "#include \"a.glsl\"");
+            Path missing = write(directory.resolve("missing.frag"), "#version 430", "#include \"none.glsl\"");
+            ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+            try {
+                preprocessor.process(cyclic.toString());
+                Assert.fail("Resolved an include cycle");
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().contains("cycle"));
+            }
+            try {
+                preprocessor.process(missing.toString());
+                Assert.fail("Resolved a missing include");
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().contains("none.glsl"));
+            }
+            try {
+                preprocessor.process(missing.toString(), Collections.singletonMap("NOT A NAME", ""));
+                Assert.fail("Accepted an invalid define");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        Path directory = Files.createTempDirectory("shaders");
+        try {
+            Path include = write(directory.resolve("colour.glsl"), "vec4 colour(){ return vec4(1); }");
+            Path shader = write(directory.resolve("main.frag"), "#version 430", "#include \"colour.glsl\"");
+            ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+
+            ShaderPreprocessor.Result plain = preprocessor.process(shader.toString());
+            Assert.assertSame(preprocessor.process(shader.toString()), plain);
+            ShaderPreprocessor.Result lit = preprocessor.process(shader.toString(), Collections.singletonMap("LIT", ""));
+            Assert.assertNotEquals(lit.getHash(), plain.getHash());
+            Assert.assertEquals(plain.getHash().length(), 64);
+            Assert.assertEquals(preprocessor.getCacheSize(), 2);
+
+            //changing an included file invalidates every variant built from it
+            write(include, "vec4 colour(){ return vec4(0.5); }");
+            Files.setLastModifiedTime(include, FileTime.fromMillis(Files.getLastModifiedTime(include).toMillis() + 2000));
+            ShaderPreprocessor.Result changed = preprocessor.process(shader.toString());
+            Assert.assertNotSame(changed, plain);
+            Assert.assertNotEquals(changed.getHash(), plain.getHash());
+            Assert.assertTrue(changed.getSource().contains("0.5"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void cacheKeyTest() throws IOException {
+        Path directory = Files.createTempDirectory("shaders");
+        try {
+            Path shader = write(directory.resolve("main.frag"), "#version 430", "void main(){}");
+            ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+
+            //both define sets print as {A=1, B=2}, so must not share a cache entry
+            Map<String, String> one = Collections.singletonMap("A", "1, B=2");
+            Map<String, String> two = new TreeMap<>();
+            two.put("A", "1");
+            two.put("B", "2");
+            ShaderPreprocessor.Result first = preprocessor.process(shader.toString(), one);
+            ShaderPreprocessor.Result second = preprocessor.process(shader.toString(), two);
+            Assert.assertNotSame(second, first);
+            Assert.assertTrue(second.getSource().contains("#define B 2"));
+            Assert.assertEquals(preprocessor.getCacheSize(), 2);
+
+            //equal define sets share an entry whatever their map type or order
+            Map<String, String> reordered = new LinkedHashMap<>();
+            reordered.put("B", "2");
+            reordered.put("A", "1");
+            Assert.assertSame(preprocessor.process(shader.toString(), reordered), second);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static Path write(Path file, String... lines) throws IOException {
+        return Files.write(file, Arrays.asList(lines));
+    }
+
+    private static List<String> lines(String source) {
+        return Arrays.asList(source.split("\n", -1)).subList(0, source.split("\n", -1).length - 1);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+public class BlockCompressorTest {
+
+    static final String NOISE_PNG = "src/test/resources/textures/256_256_4-bit-noise.png";
+
+    @Test
+    public void compressedSizeTest() {
+        Assert.assertEquals(BlockCompressor.compressedSize(BlockCompressor.Format.BC1, 256, 256), 256 * 256 / 2);
+        Assert.assertEquals(BlockCompressor.compressedSize(BlockCompressor.Format.BC3, 256, 256), 256 * 256);
+        Assert.assertEquals(BlockCompressor.compressedSize(BlockCompressor.Format.BC7, 5, 3), 2 * 16);
+        Assert.assertEquals(
+                BlockCompressor.encode(BlockCompressor.Format.BC1, TestImages.gradient(5, 3), 5, 3).length, 16);
+    }
+
+    @Test
+    public void solidColourIsExactTest() {
+        ByteBuffer image = ByteBuffer.allocate(8 * 8 * 4);
+        for (int i = 0; i < 64; i++) image.put((byte) 255).put((byte) 0).put((byte) 255).put((byte) 255);
+        image.flip();
+        for (BlockCompressor.Format format : BlockCompressor.Format.values()) {
+            byte[] decoded = BlockCompressor.decode(format, BlockCompressor.encode(format, image, 8, 8), 8, 8);
+            //BC7 mode 6 shares the lowest bit of every channel of an endpoint, so 255 and 0 together cost one step
+            int tolerance = format == BlockCompressor.Format.BC7 ? 1 : 0;
+            for (int i = 0; i < decoded.length; i++) {
+                Assert.assertTrue(Math.abs((decoded[i] & 0xFF) - (image.get(i) & 0xFF)) <= tolerance,
+                        format + " changed byte " + i + " of a colour it can represent");
+            }
+        }
+    }
+
+    @Test
+    public void gradientQualityTest() {
+        ByteBuffer image = TestImages.gradient(64, 64);
+        //a gradient in two directions is not a line in colour space, so even smooth blocks lose a little
+        double bc1 = psnr(image, BlockCompressor.Format.BC1, 64, 64);
+        double bc7 = psnr(image, BlockCompressor.Format.BC7, 64, 64);
+        Assert.assertTrue(bc1 > 36, "BC1 PSNR " + bc1);
+        Assert.assertTrue(psnr(image, BlockCompressor.Format.BC3, 64, 64) > 36);
+        Assert.assertTrue(bc7 > bc1, "BC7 PSNR " + bc7 + " not above BC1 " + bc1);
+    }
+
+    @Test
+    public void imageQualityTest() throws IOException {
+        //PSNR floors a little below what each format reaches on these images, for colour and for alpha
+        ByteBuffer noise = TestImages.toRGBA(TestImages.read(new File(NOISE_PNG)));
+        assertQuality(noise, 256, BlockCompressor.Format.BC1, 42, 0);
+        assertQuality(noise, 256, BlockCompressor.Format.BC7, 50, 50);
+
+        ByteBuffer valueNoise = TestImages.valueNoise(128);
+        assertQuality(valueNoise, 128, BlockCompressor.Format.BC1, 33, 0);
+        assertQuality(valueNoise, 128, BlockCompressor.Format.BC3, 33, 50);
+        assertQuality(valueNoise, 128, BlockCompressor.Format.BC7, 35, 50);
+
+        //BC1 keeps one bit of alpha, so only its opaque colour is measured
+        ByteBuffer sprite = TestImages.softSprite(128);
+        assertQuality(sprite, 128, BlockCompressor.Format.BC1, 39, 0);
+        assertQuality(sprite, 128, BlockCompressor.Format.BC3, 39, 40);
+        assertQuality(sprite, 128, BlockCompressor.Format.BC7, 50, 46);
+    }
+
+    @Test
+    public void alphaTest() {
+        ByteBuffer image = ByteBuffer.allocate(4 * 4 * 4);
+        for (int i = 0; i < 16; i++) image.put((byte) 40).put((byte) 80).put((byte) 120).put((byte) (i * 17));
+        image.flip();
+
+        byte[] bc3 = BlockCompressor.decode(BlockCompressor.Format.BC3,
+                BlockCompressor.encode(BlockCompressor.Format.BC3, image, 4, 4), 4, 4);
+        byte[] bc7 = BlockCompressor.decode(BlockCompressor.Format.BC7,
+                BlockCompressor.encode(BlockCompressor.Format.BC7, image, 4, 4), 4, 4);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue(Math.abs((bc3[i * 4 + 3] & 0xFF) - i * 17) <= 19, "BC3 alpha of texel " + i);
+            Assert.assertTrue(Math.abs((bc7[i * 4 + 3] & 0xFF) - i * 17) <= 10, "BC7 alpha of texel " + i);
+        }
+
+        //BC1 keeps only whether a texel is transparent
+        byte[] bc1 = BlockCompressor.decode(BlockCompressor.Format.BC1,
+                BlockCompressor.encode(BlockCompressor.Format.BC1, image, 4, 4), 4, 4);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals(bc1[i * 4 + 3] & 0xFF, i * 17 < 128 ? 0 : 255);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSingleThreadTest() {
+        ByteBuffer image = MipChainTest.image(96, 80, 5);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (BlockCompressor.Format format : BlockCompressor.Format.values()) {
+                Assert.assertEquals(BlockCompressor.encode(format, image, 96, 80, parallel),
+                        BlockCompressor.encode(format, image, 96, 80, single));
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void fileRoundTripTest() throws IOException {
+        MipChain chain = MipChain.generate(TestImages.gradient(20, 12), 20, 12, MipChain.Filter.BOX, true);
+        CompressedTexture texture = CompressedTexture.compress(BlockCompressor.Format.BC7, chain,
+                ForkJoinPool.commonPool());
+        Assert.assertEquals(texture.getLevelCount(), 5);
+        Assert.assertEquals(texture.getSizeBytes(), 16L * (5 * 3 + 3 * 2 + 2 + 1 + 1));
+
+        Path file = Files.createTempFile("texture", ".nect");
+        try {
+            CompressedTextureFile.write(texture, file);
+            CompressedTexture read = CompressedTextureFile.read(file);
+            Assert.assertEquals(read.getFormat(), BlockCompressor.Format.BC7);
+            Assert.assertEquals(read.getLevelCount(), texture.getLevelCount());
+            for (int level = 0; level < texture.getLevelCount(); level++) {
+                Assert.assertEquals(read.getWidth(level), texture.getWidth(level));
+                Assert.assertEquals(read.getLevel(level), texture.getLevel(level));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    static double psnr(ByteBuffer image, BlockCompressor.Format format, int width, int height) {
+        byte[] decoded = BlockCompressor.decode(format, BlockCompressor.encode(format, image, width, height),
+                width, height);
+        double sum = 0;
+        for (int i = 0; i < decoded.length; i++) {
+            if (format == BlockCompressor.Format.BC1 && i % 4 == 3) continue;
+            double difference = (decoded[i] & 0xFF) - (image.get(image.position() + i) & 0xFF);
+            sum += difference * difference;
+        }
+        double mse = sum / decoded.length;
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static void assertQuality(ByteBuffer image, int size, BlockCompressor.Format format,
+                                      double minColourPSNR, double minAlphaPSNR) {
+        byte[] decoded = BlockCompressor.decode(format, BlockCompressor.encode(format, image, size, size), size, size);
+        boolean bc1 = format == BlockCompressor.Format.BC1;
+        double colour = psnr(image, decoded, 0, 3, bc1);
+        Assert.assertTrue(colour > minColourPSNR, format + " colour PSNR " + colour);
+        if (!bc1) {
+            double alpha = psnr(image, decoded, 3, 1, false);
+            Assert.assertTrue(alpha > minAlphaPSNR, format + " alpha PSNR " + alpha);
+        }
+    }
+
+    private static double psnr(ByteBuffer original, byte[] decoded, int firstChannel, int channels,
+                               boolean opaqueOnly) {
+        double sum = 0;
+        long count = 0;
+        for (int i = 0; i < decoded.length; i += 4) {
+            //BC1 stores transparent texels as black, so their colour is not part of its quality
+            if (opaqueOnly && (original.get(i + 3) & 0xFF) < 128) continue;
+            for (int c = firstChannel; c < firstChannel + channels; c++) {
+                double difference = (decoded[i + c] & 0xFF) - (original.get(i + c) & 0xFF);
+                sum += difference * difference;
+                count++;
+            }
+        }
+        return sum == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / (sum / count));
+    }
+}
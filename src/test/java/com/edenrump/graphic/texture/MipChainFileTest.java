@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class MipChainFileTest {
+
+    @Test
+    public void roundTripTest() throws IOException {
+        MipChain chain = MipChain.generate(MipChainTest.image(33, 12, 3), 33, 12, MipChain.Filter.KAISER, true);
+        Path file = Files.createTempFile("chain", ".nemc");
+        try {
+            MipChainFile.write(chain, file);
+            Assert.assertEquals(Files.size(file), (long) MipChainFile.HEADER_SIZE + 4 * (33 * 12 + 16 * 6 + 8 * 3 + 4 + 2 + 1));
+
+            MipChain read = MipChainFile.read(file);
+            Assert.assertEquals(read.getLevelCount(), chain.getLevelCount());
+            Assert.assertEquals(read.getFilter(), MipChain.Filter.KAISER);
+            Assert.assertTrue(read.isSRGB());
+            for (int level = 0; level < chain.getLevelCount(); level++) {
+                Assert.assertEquals(read.getWidth(level), chain.getWidth(level));
+                Assert.assertEquals(read.getHeight(level), chain.getHeight(level));
+                Assert.assertEquals(read.getLevel(level), chain.getLevel(level));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFileTest() throws IOException {
+        MipChain chain = MipChain.generate(MipChainTest.image(8, 8, 1), 8, 8, MipChain.Filter.BOX, false);
+        Path file = Files.createTempFile("chain", ".nemc");
+        try {
+            MipChainFile.write(chain, file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+            try {
+                MipChainFile.read(file);
+                Assert.fail("Read a truncated mip chain");
+            } catch (IOException e) {
+                //expected
+            }
+
+            Files.write(file, new byte[MipChainFile.HEADER_SIZE]);
+            try {
+                MipChainFile.read(file);
+                Assert.fail("Read a file that is not a mip chain");
+            } catch (IOException e) {
+                //expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class MipChainTest {
+
+    @Test
+    public void levelSizesTest() {
+        Assert.assertEquals(MipChain.levelCount(1, 1), 1);
+        Assert.assertEquals(MipChain.levelCount(256, 256), 9);
+        Assert.assertEquals(MipChain.levelCount(5, 3), 3);
+
+        MipChain chain = MipChain.generate(image(5, 3, 0), 5, 3, MipChain.Filter.BOX, false);
+        Assert.assertEquals(chain.getLevelCount(), 3);
+        int[][] sizes = {{5, 3}, {2, 1}, {1, 1}};
+        for (int level = 0; level < sizes.length; level++) {
+            Assert.assertEquals(chain.getWidth(level), sizes[level][0]);
+            Assert.assertEquals(chain.getHeight(level), sizes[level][1]);
+            Assert.assertEquals(chain.getLevel(level).remaining(), sizes[level][0] * sizes[level][1] * 4);
+        }
+    }
+
+    @Test
+    public void constantImageStaysConstantTest() {
+        for (MipChain.Filter filter : MipChain.Filter.values()) {
+            for (boolean srgb : new boolean[]{false, true}) {
+                ByteBuffer pixels = ByteBuffer.allocate(37 * 19 * 4);
+                for (int i = 0; i < 37 * 19; i++) pixels.put((byte) 200).put((byte) 90).put((byte) 17).put((byte) 255);
+                pixels.flip();
+                MipChain chain = MipChain.generate(pixels, 37, 19, filter, srgb);
+                for (int level = 1; level < chain.getLevelCount(); level++) {
+                    ByteBuffer texels = chain.getLevel(level);
+                    for (int i = 0; i < texels.remaining(); i += 4) {
+                        Assert.assertEquals(texels.get(i) & 0xFF, 200);
+                        Assert.assertEquals(texels.get(i + 1) & 0xFF, 90);
+                        Assert.assertEquals(texels.get(i + 2) & 0xFF, 17);
+                        Assert.assertEquals(texels.get(i + 3) & 0xFF, 255);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gammaCorrectAverageTest() {
+        //a 2x2 checker of black and white
+        ByteBuffer pixels = ByteBuffer.allocate(16);
+        int[] values = {0, 255, 255, 0};
+        for (int value : values) pixels.put((byte) value).put((byte) value).put((byte) value).put((byte) 255);
+        pixels.flip();
+
+        MipChain linear = MipChain.generate(pixels, 2, 2, MipChain.Filter.BOX, false);
+        MipChain srgb = MipChain.generate(pixels, 2, 2, MipChain.Filter.BOX, true);
+        Assert.assertEquals(linear.getLevel(1).get(0) & 0xFF, 128);
+        //half of the light of white is 188 in sRGB, not 128
+        Assert.assertEquals(srgb.getLevel(1).get(0) & 0xFF, 188);
+        Assert.assertEquals(srgb.getLevel(1).get(3) & 0xFF, 255);
+    }
+
+    @Test
+    public void oddSizeAveragesByAreaTest() {
+        //a row of three texels, 0, 90 and 180, shrinks to one texel holding their mean
+        ByteBuffer pixels = ByteBuffer.allocate(12);
+        for (int value : new int[]{0, 90, 180}) pixels.put((byte) value).put((byte) 0).put((byte) 0).put((byte) 255);
+        pixels.flip();
+        MipChain chain = MipChain.generate(pixels, 3, 1, MipChain.Filter.BOX, false);
+        Assert.assertEquals(chain.getLevelCount(), 2);
+        Assert.assertEquals(chain.getLevel(1).get(0) & 0xFF, 90);
+    }
+
+    @Test
+    public void kaiserFilterStaysInRangeTest() {
+        //a hard edge makes a windowed sinc ring; the result must still be clamped to valid texels
+        int size = 64;
+        ByteBuffer pixels = ByteBuffer.allocate(size * size * 4);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                byte value = (byte) (x < size / 2 ? 0 : 255);
+                pixels.put(value).put(value).put(value).put((byte) 255);
+            }
+        }
+        pixels.flip();
+        MipChain chain = MipChain.generate(pixels, size, size, MipChain.Filter.KAISER, false);
+        ByteBuffer level = chain.getLevel(1);
+        int half = size / 2;
+        Assert.assertEquals(level.get(0) & 0xFF, 0);
+        Assert.assertEquals(level.get((half - 1) * 4) & 0xFF, 255);
+        int previous = 0;
+        for (int x = 0; x < half; x++) {
+            int value = level.get(x * 4) & 0xFF;
+            Assert.assertTrue(value >= previous - 8, "Value at " + x + " rings too far: " + value);
+            previous = Math.max(previous, value);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSingleThreadTest() {
+        ByteBuffer pixels = image(300, 200, 7);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (MipChain.Filter filter : MipChain.Filter.values()) {
+                MipChain expected = MipChain.generate(pixels, 300, 200, filter, true, single);
+                MipChain actual = MipChain.generate(pixels, 300, 200, filter, true, parallel);
+                for (int level = 0; level < expected.getLevelCount(); level++) {
+                    Assert.assertEquals(actual.getLevel(level), expected.getLevel(level));
+                }
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectsShortDataTest() {
+        try {
+            MipChain.generate(ByteBuffer.allocate(15), 2, 2, MipChain.Filter.BOX, false);
+            Assert.fail("Generated a chain from too little data");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    static ByteBuffer image(int width, int height, long seed) {
+        byte[] texels = new byte[width * height * 4];
+        new Random(seed).nextBytes(texels);
+        return ByteBuffer.wrap(texels);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * This class generates RGBA test images, bottom row first, for the texture compression tests and benchmarks: a smooth
+ * two-way gradient, smooth value noise and a sprite with a soft alpha edge.
+ */
+public final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * Method to read an image file
+     *
+     * @param file the image to read
+     * @return the decoded image
+     * @throws IOException if the file could not be read or decoded
+     */
+    public static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) throw new IOException("Cannot decode " + file);
+        return image;
+    }
+
+    /**
+     * Method to convert an image to RGBA
+     *
+     * @param image the image to convert
+     * @return the pixels, bottom row first
+     */
+    public static ByteBuffer toRGBA(BufferedImage image) {
+        ByteBuffer rgba = ByteBuffer.allocate(image.getWidth() * image.getHeight() * 4);
+        for (int y = image.getHeight() - 1; y >= 0; y--) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                rgba.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >>> 24));
+            }
+        }
+        return rgba.flip();
+    }
+
+    public static ByteBuffer gradient(int width, int height) {
+        ByteBuffer image = ByteBuffer.allocate(width * height * 4);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.put((byte) (x * 255 / Math.max(1, width - 1))).put((byte) (y * 255 / Math.max(1, height - 1)))
+                        .put((byte) ((x + y) * 127 / Math.max(1, width + height - 2))).put((byte) 255);
+            }
+        }
+        return image.flip();
+    }
+
+    /**
+     * Bilinear interpolation of a coarse random lattice, one per colour channel, with opaque alpha
+     */
+    public static ByteBuffer valueNoise(int size) {
+        int cell = 16, lattice = size / cell + 2;
+        float[][] values = new float[3][lattice * lattice];
+        Random random = new Random(1);
+        for (float[] channel : values) for (int i = 0; i < channel.length; i++) channel[i] = random.nextFloat() * 255;
+
+        ByteBuffer rgba = ByteBuffer.allocate(size * size * 4);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int cx = x / cell, cy = y / cell;
+                float fx = (x % cell) / (float) cell, fy = (y % cell) / (float) cell;
+                for (float[] channel : values) {
+                    int topLeft = cy * lattice + cx, bottomLeft = topLeft + lattice;
+                    float top = channel[topLeft] * (1 - fx) + channel[topLeft + 1] * fx;
+                    float bottom = channel[bottomLeft] * (1 - fx) + channel[bottomLeft + 1] * fx;
+                    rgba.put((byte) (top * (1 - fy) + bottom * fy));
+                }
+                rgba.put((byte) 255);
+            }
+        }
+        return rgba.flip();
+    }
+
+    /**
+     * A disc whose alpha falls from opaque to transparent over a twentieth of the image, on a transparent background
+     */
+    public static ByteBuffer softSprite(int size) {
+        ByteBuffer rgba = ByteBuffer.allocate(size * size * 4);
+        float centre = size / 2f, radius = size * 0.4f;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float distance = (float) Math.hypot(x - centre, y - centre);
+                float alpha = Math.max(0, Math.min(1, (radius - distance) / (size * 0.05f)));
+                rgba.put((byte) (200 - distance * 100 / size)).put((byte) (60 + x * 120 / size)).put((byte) 30)
+                        .put((byte) (alpha * 255));
+            }
+        }
+        return rgba.flip();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.texture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TextureAtlasTest {
+
+    @Test
+    public void regionsDoNotOverlapTest() {
+        TextureAtlas atlas = new TextureAtlas(256, 256, 2);
+        Random random = new Random(11);
+        List<TextureAtlas.Region> regions = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            int w = 4 + random.nextInt(28), h = 4 + random.nextInt(28);
+            regions.add(atlas.add("image" + i, solid(w, h, i), w, h));
+        }
+
+        for (TextureAtlas.Region a : regions) {
+            Assert.assertTrue(a.getX() >= 2 && a.getY() >= 2);
+            Assert.assertTrue(a.getX() + a.getWidth() + 2 <= 256 && a.getY() + a.getHeight() + 2 <= 256);
+            for (TextureAtlas.Region b : regions) {
+                if (a == b || a.getPage() != b.getPage()) continue;
+                boolean apart = a.getX() + a.getWidth() + 2 <= b.getX() - 2 || b.getX() + b.getWidth() + 2 <= a.getX() - 2
+                        || a.getY() + a.getHeight() + 2 <= b.getY() - 2 || b.getY() + b.getHeight() + 2 <= a.getY() - 2;
+                Assert.assertTrue(apart, a.getName() + " overlaps " + b.getName());
+            }
+        }
+        Assert.assertSame(atlas.get("image42"), regions.get(42));
+        Assert.assertEquals(atlas.getRegionCount(), 150);
+    }
+
+    @Test
+    public void pixelsAndGutterTest() {
+        TextureAtlas atlas = new TextureAtlas(16, 16, 1);
+        //a 2x2 image of four different texels
+        ByteBuffer image = ByteBuffer.allocate(16);
+        for (int i = 0; i < 4; i++) image.put((byte) (10 * (i + 1))).put((byte) 0).put((byte) 0).put((byte) 255);
+        image.flip();
+        TextureAtlas.Region region = atlas.add("quad", image, 2, 2);
+
+        ByteBuffer page = atlas.getPagePixels(0);
+        int x = region.getX(), y = region.getY();
+        Assert.assertEquals(red(page, x, y), 10);
+        Assert.assertEquals(red(page, x + 1, y), 20);
+        Assert.assertEquals(red(page, x, y + 1), 30);
+        Assert.assertEquals(red(page, x + 1, y + 1), 40);
+        //the gutter repeats the nearest edge texel, corners included
+        Assert.assertEquals(red(page, x - 1, y), 10);
+        Assert.assertEquals(red(page, x + 2, y + 1), 40);
+        Assert.assertEquals(red(page, x, y - 1), 10);
+        Assert.assertEquals(red(page, x - 1, y + 2), 30);
+    }
+
+    @Test
+    public void remapTest() {
+        TextureAtlas atlas = new TextureAtlas(64, 32, 0);
+        atlas.add("first", solid(16, 16, 1), 16, 16);
+        TextureAtlas.Region region = atlas.add("second", solid(32, 8, 2), 32, 8);
+
+        float[] remapped = region.remap(new float[]{0, 0, 1, 1, 0.5f, 0.5f});
+        Assert.assertEquals(remapped[0], region.getX() / 64f, 1e-6f);
+        Assert.assertEquals(remapped[1], region.getY() / 32f, 1e-6f);
+        Assert.assertEquals(remapped[2], (region.getX() + 32) / 64f, 1e-6f);
+        Assert.assertEquals(remapped[3], (region.getY() + 8) / 32f, 1e-6f);
+        Assert.assertEquals(remapped[4], (remapped[0] + remapped[2]) / 2, 1e-6f);
+
+        float[] table = atlas.getUVTable();
+        Assert.assertEquals(table.length, 8);
+        Assert.assertEquals(table[4], region.getU0(), 0f);
+        Assert.assertEquals(table[7], region.getV1(), 0f);
+    }
+
+    @Test
+    public void repacksBeforeOpeningPageTest() {
+        //a small image first leaves a gap beside it that the wide image above hides from the skyline
+        TextureAtlas atlas = new TextureAtlas(32, 32, 0);
+        atlas.add("small", solid(8, 8, 1), 8, 8);
+        TextureAtlas.Region wide = atlas.add("wide", solid(32, 24, 2), 32, 24);
+        int before = wide.getVersion();
+
+        TextureAtlas.Region strip = atlas.add("strip", solid(24, 8, 3), 24, 8);
+        Assert.assertEquals(atlas.getPageCount(), 1);
+        Assert.assertEquals(atlas.getRepackCount(), 1L);
+        Assert.assertEquals(strip.getPage(), 0);
+        Assert.assertEquals(wide.getY(), 0);
+        Assert.assertNotEquals(wide.getVersion(), before);
+        Assert.assertEquals(atlas.getOccupancy(0), 1f, 0f);
+
+        //the page is full, so the next image opens a second one
+        TextureAtlas.Region next = atlas.add("next", solid(4, 4, 5), 4, 4);
+        Assert.assertEquals(next.getPage(), 1);
+        Assert.assertEquals(atlas.getPageCount(), 2);
+    }
+
+    @Test
+    public void rejectsInvalidImagesTest() {
+        TextureAtlas atlas = new TextureAtlas(16, 16, 2);
+        atlas.add("a", solid(4, 4, 1), 4, 4);
+        try {
+            atlas.add("a", solid(4, 4, 1), 4, 4);
+            Assert.fail("Added two images with the same name");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            atlas.add("big", solid(13, 4, 1), 13, 4);
+            Assert.fail("Added an image larger than a page once padded");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void skylinePackerFillsPageTest() {
+        SkylinePacker packer = new SkylinePacker(64, 64);
+        for (int i = 0; i < 64; i++) Assert.assertNotNull(packer.insert(8, 8), "Square " + i + " did not fit");
+        Assert.assertNull(packer.insert(1, 1));
+        Assert.assertEquals(packer.getOccupancy(), 1f, 0f);
+        packer.reset();
+        Assert.assertEquals(packer.insert(64, 64), new int[]{0, 0});
+    }
+
+    private static ByteBuffer solid(int width, int height, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+        for (int i = 0; i < width * height; i++) buffer.put((byte) value).put((byte) value).put((byte) value).put((byte) 255);
+        return buffer.flip();
+    }
+
+    private static int red(ByteBuffer page, int x, int y) {
+        return page.get((y * 16 + x) * 4) & 0xFF;
+    }
+}
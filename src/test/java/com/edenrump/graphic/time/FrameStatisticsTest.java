@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class FrameStatisticsTest {
+
+    @Test
+    public void histogramPercentileTest() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 100_000); //0.1 ms to 100 ms
+        }
+        Assert.assertEquals(histogram.getCount(), 1000L);
+        Assert.assertEquals(histogram.getValueAtPercentile(50), 50_000_000, 50_000_000 * 0.01);
+        Assert.assertEquals(histogram.getValueAtPercentile(99), 99_000_000, 99_000_000 * 0.01);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 100_000_000L);
+        Assert.assertEquals(histogram.getValueAtPercentile(0), 100_000L);
+        Assert.assertEquals(histogram.getMeanNanos(), 50_050_000, 1e-6);
+    }
+
+    @Test
+    public void histogramPrecisionTest() {
+        Random random = new Random(2);
+        for (int i = 0; i < 10_000; i++) {
+            long value = (long) Math.exp(random.nextDouble() * 40);
+            FrameTimeHistogram histogram = new FrameTimeHistogram();
+            histogram.record(value);
+            histogram.record(value + 1);
+            long reported = histogram.getValueAtPercentile(50);
+            Assert.assertEquals(reported, value, Math.max(1, value * 0.01), "value " + value);
+        }
+    }
+
+    @Test
+    public void emptyTest() {
+        FrameStatistics statistics = new FrameStatistics();
+        Assert.assertEquals(statistics.getFrameCount(), 0L);
+        Assert.assertEquals(statistics.getPercentileMillis(99), 0.0, 0);
+        Assert.assertEquals(statistics.getMeanFrameRate(), 0.0, 0);
+        Assert.assertEquals(statistics.getMinMillis(), 0.0, 0);
+    }
+
+    @Test
+    public void jankTest() {
+        FrameStatistics statistics = new FrameStatistics();
+        for (int i = 0; i < 10; i++) statistics.record(16_000_000);
+        //a single long frame after steady frames is jank
+        statistics.record(40_000_000);
+        Assert.assertEquals(statistics.getJankCount(), 1L);
+        Assert.assertEquals(statistics.getOverBudgetCount(), 1L);
+
+        //a steadily slow frame rate misses the budget but is not jank
+        FrameStatistics slow = new FrameStatistics();
+        for (int i = 0; i < 10; i++) slow.record(30_000_000);
+        Assert.assertEquals(slow.getJankCount(), 0L);
+        Assert.assertEquals(slow.getOverBudgetCount(), 10L);
+
+        slow.setTargetFrameRate(30);
+        slow.reset();
+        slow.record(30_000_000);
+        Assert.assertEquals(slow.getOverBudgetCount(), 0L);
+    }
+
+    @Test
+    public void recentFrameTimesTest() {
+        FrameStatistics statistics = new FrameStatistics(8);
+        for (long i = 1; i <= 11; i++) statistics.record(i);
+        long[] recent = new long[16];
+        Assert.assertEquals(statistics.getRecentFrameTimes(recent), 8);
+        Assert.assertEquals(recent[0], 4L);
+        Assert.assertEquals(recent[7], 11L);
+
+        long[] lastThree = new long[3];
+        Assert.assertEquals(statistics.getRecentFrameTimes(lastThree), 3);
+        Assert.assertEquals(lastThree[0], 9L);
+        Assert.assertEquals(lastThree[2], 11L);
+    }
+
+    @Test
+    public void copyAndReportTest() {
+        FrameStatistics statistics = new FrameStatistics();
+        for (int i = 0; i < 100; i++) statistics.record(10_000_000);
+        FrameStatistics copy = new FrameStatistics();
+        copy.copyFrom(statistics);
+        statistics.reset();
+
+        Assert.assertEquals(copy.getFrameCount(), 100L);
+        Assert.assertEquals(copy.getMeanFrameRate(), 100, 1e-6);
+        String report = copy.createReport();
+        Assert.assertTrue(report.contains("frames: 100"), report);
+        Assert.assertTrue(report.contains("p99.9 ms: 10.0"), report);
+        Assert.assertTrue(report.contains("jank: 0"), report);
+    }
+
+    @Test
+    public void timeDeltaTest() {
+        Time time = Time.getInstance();
+        time.reset();
+        time.updateTime(5_000_000_000L);
+        Assert.assertEquals(time.getDeltaTime(), 0.0, 0);
+
+        long now = 5_000_000_000L;
+        for (int i = 0; i < 70; i++) {
+            now += 16_666_667;
+            time.updateTime(now);
+        }
+        Assert.assertEquals(time.getDeltaTime(), 1 / 60.0, 1e-6);
+        Assert.assertEquals(time.getFrameRate(), 60, 1e-3);
+        Assert.assertEquals(time.getSessionStatistics().getFrameCount(), 70L);
+        //the first second has completed, so the recent statistics cover it
+        Assert.assertEquals(time.getRecentStatistics().getFrameCount(), 60L);
+        time.reset();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GameLoopTest {
+
+    private static final long TICK = 10_000_000L;
+
+    @Test
+    public void fixedStepTest() {
+        GameLoop loop = new GameLoop(100);
+        int[] ticks = {0};
+        double[] simulated = {0};
+        GameLoop.Simulation simulation = step -> {
+            ticks[0]++;
+            simulated[0] += step;
+        };
+
+        Assert.assertEquals(loop.advance(TICK / 2, simulation), 0);
+        Assert.assertEquals(loop.getAlpha(), 0.5f, 1e-6f);
+        Assert.assertEquals(loop.advance(TICK, simulation), 1);
+        Assert.assertEquals(loop.getAlpha(), 0.5f, 1e-6f);
+        Assert.assertEquals(loop.advance(TICK * 5 / 2, simulation), 3);
+        Assert.assertEquals(loop.getAlpha(), 0, 1e-6f);
+
+        //the same simulated time whatever the frame rate
+        for (int i = 0; i < 1000; i++) loop.advance(TICK / 7, simulation);
+        Assert.assertEquals(loop.getTickCount(), (long) ticks[0]);
+        Assert.assertEquals(simulated[0], (TICK * 4 + 1000 * (TICK / 7)) / 1e9, 0.0100001);
+    }
+
+    @Test
+    public void spiralOfDeathTest() {
+        GameLoop loop = new GameLoop(100);
+        loop.setMaxTicksPerFrame(3);
+        int[] ticks = {0};
+        Assert.assertEquals(loop.advance(TICK * 10 + TICK / 4, step -> ticks[0]++), 3);
+        Assert.assertEquals(loop.getAlpha(), 0.25f, 1e-6f);
+        Assert.assertEquals(loop.getDroppedSeconds(), 0.07, 1e-9);
+
+        //a long pause is capped before it reaches the accumulator
+        GameLoop capped = new GameLoop(100);
+        capped.setMaxTicksPerFrame(1000);
+        capped.setMaxFrameTime(0.1);
+        Assert.assertEquals(capped.advance(5_000_000_000L, step -> { }), 10);
+        Assert.assertEquals(capped.getDroppedSeconds(), 4.9, 1e-9);
+    }
+
+    @Test
+    public void invalidSettingsTest() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new GameLoop(0));
+        GameLoop loop = new GameLoop(60);
+        Assert.assertThrows(IllegalArgumentException.class, () -> loop.setMaxTicksPerFrame(0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> loop.setTargetFrameRate(-1));
+    }
+
+    @Test
+    public void runTest() {
+        GameLoop loop = new GameLoop(1000);
+        loop.setTargetFrameRate(200);
+        int[] frames = {0};
+        float[] lastAlpha = {-1};
+        long start = System.nanoTime();
+        loop.run(() -> frames[0] < 20, step -> { }, alpha -> {
+            frames[0]++;
+            lastAlpha[0] = alpha;
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assert.assertEquals(frames[0], 20);
+        Assert.assertTrue(lastAlpha[0] >= 0 && lastAlpha[0] < 1);
+        //twenty frames paced at 5 ms, with generous slack for a loaded machine
+        Assert.assertTrue(seconds >= 0.09 && seconds < 1, "took " + seconds);
+        Assert.assertTrue(loop.getTickCount() > 50);
+        Time.getInstance().reset();
+    }
+
+    @Test
+    public void pacerTest() {
+        FramePacer pacer = new FramePacer();
+        for (int i = 0; i < 5; i++) {
+            long deadline = System.nanoTime() + 3_000_000;
+            long woke = pacer.waitUntil(deadline);
+            Assert.assertTrue(woke >= deadline);
+        }
+        Assert.assertTrue(pacer.getSpinNanos() > 0);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class FrameDumpTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void rawRoundTripTest() throws IOException {
+        assertRoundTrip(FrameDumpCompression.RAW);
+    }
+
+    @Test
+    public void deltaRoundTripTest() throws IOException {
+        assertRoundTrip(FrameDumpCompression.DELTA_LZ);
+    }
+
+    @Test
+    public void deltaCompressesTest() throws IOException {
+        Path file = Files.createTempFile("frames", ".dump");
+        try (FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, FrameDumpCompression.DELTA_LZ)) {
+            for (int i = 0; i < 20; i++) {
+                writer.writeFrame(frame(i), i);
+            }
+            Assert.assertTrue(writer.getDataSize() < 20L * WIDTH * HEIGHT * 4 / 4);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void unclosedDumpIsReadableTest() throws IOException {
+        Path file = Files.createTempFile("frames", ".dump");
+        FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, FrameDumpCompression.DELTA_LZ, 4, 2);
+        for (int i = 0; i < 9; i++) {
+            writer.writeFrame(frame(i), 100 + i);
+        }
+        try (FrameDumpReader reader = new FrameDumpReader(file)) {
+            Assert.assertEquals(reader.getFrameCount(), 9);
+            Assert.assertEquals(reader.getFrameNumber(8), 108L);
+            assertFrame(reader.readFrame(7), frame(7));
+        } finally {
+            writer.close();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void exportTest() throws IOException {
+        Path file = Files.createTempFile("frames", ".dump");
+        Path png = Files.createTempFile("frame", ".png");
+        try {
+            try (FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, FrameDumpCompression.DELTA_LZ)) {
+                for (int i = 0; i < 3; i++) {
+                    writer.writeFrame(frame(i), i);
+                }
+            }
+            try (FrameDumpReader reader = new FrameDumpReader(file)) {
+                reader.exportPNG(1, png);
+                BufferedImage image = ImageIO.read(png.toFile());
+                Assert.assertEquals(image.getRGB(3, 0), reader.readImage(1).getRGB(3, 0));
+
+                ByteArrayOutputStream gif = new ByteArrayOutputStream();
+                reader.exportGIF(0, 2, gif, 50);
+                Assert.assertTrue(gif.size() > 0);
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(png);
+        }
+    }
+
+    @Test
+    public void wrongFrameSizeTest() throws IOException {
+        Path file = Files.createTempFile("frames", ".dump");
+        try (FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, FrameDumpCompression.RAW)) {
+            Assert.assertThrows(IllegalArgumentException.class, () -> writer.writeFrame(ByteBuffer.allocate(16), 0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void codecRoundTripTest() {
+        Random random = new Random(5);
+        LzBlockCodec codec = new LzBlockCodec();
+        for (int length : new int[]{0, 1, 11, 12, 13, 100, 70_000, 300_000}) {
+            byte[] data = new byte[length];
+            //runs of repeated and random bytes, with matches both nearer and further than the 64KB window
+            for (int i = 0; i < length; ) {
+                int run = 1 + random.nextInt(600);
+                boolean repeat = random.nextBoolean();
+                byte value = (byte) random.nextInt();
+                for (int j = 0; j < run && i < length; j++, i++) {
+                    data[i] = repeat ? value : (byte) random.nextInt();
+                }
+            }
+            byte[] compressed = new byte[LzBlockCodec.maxCompressedLength(length)];
+            int compressedLength = codec.compress(data, length, compressed);
+            byte[] decompressed = new byte[length];
+            LzBlockCodec.decompress(compressed, 0, compressedLength, decompressed, length);
+            Assert.assertEquals(decompressed, data);
+        }
+    }
+
+    private static void assertRoundTrip(FrameDumpCompression compression) throws IOException {
+        Path file = Files.createTempFile("frames", ".dump");
+        try {
+            //preallocate space for only two frames so that the file has to grow
+            try (FrameDumpWriter writer = new FrameDumpWriter(file, WIDTH, HEIGHT, compression, 5, 2)) {
+                for (int i = 0; i < 23; i++) {
+                    writer.writeFrame(frame(i), i * 2L);
+                }
+                Assert.assertEquals(writer.getFrameCount(), 23);
+            }
+            try (FrameDumpReader reader = new FrameDumpReader(file)) {
+                Assert.assertEquals(reader.getFrameCount(), 23);
+                Assert.assertEquals(reader.getWidth(), WIDTH);
+                Assert.assertEquals(reader.getHeight(), HEIGHT);
+                Assert.assertEquals(reader.getCompression(), compression);
+                //in order, backwards and jumping about
+                for (int i = 0; i < 23; i++) assertFrame(reader.readFrame(i), frame(i));
+                for (int i = 22; i >= 0; i--) assertFrame(reader.readFrame(i), frame(i));
+                for (int i : new int[]{13, 3, 19, 19, 4, 22, 0}) assertFrame(reader.readFrame(i), frame(i));
+                Assert.assertEquals(reader.getFrameNumber(7), 14L);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertFrame(ByteBuffer actual, ByteBuffer expected) {
+        byte[] actualBytes = new byte[expected.limit()];
+        byte[] expectedBytes = new byte[expected.limit()];
+        actual.get(actualBytes);
+        expected.get(expectedBytes);
+        Assert.assertEquals(actualBytes, expectedBytes);
+    }
+
+    /**
+     * A noisy background with a square moving across it
+     */
+    private static ByteBuffer frame(int index) {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+        Random background = new Random(1);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean square = x >= index && x < index + 8 && y >= 10 && y < 18;
+                pixels.putInt(square ? 0xFF0000FF : background.nextInt() | 0xFF);
+            }
+        }
+        return pixels.flip();
+    }
+}
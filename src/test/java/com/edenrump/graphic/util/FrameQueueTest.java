@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class FrameQueueTest {
+
+    @Test
+    public void consumesInOrderTest() throws IOException {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        List<Long> consumed = Collections.synchronizedList(new ArrayList<>());
+        FrameQueue queue = new FrameQueue(frame -> consumed.add(frame.getFrameNumber()), 64);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(queue.submit(frame(pool, i)));
+        }
+        queue.close();
+
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 20; i++) expected.add(i);
+        Assert.assertEquals(consumed, expected);
+        Assert.assertEquals(queue.getConsumedCount(), 20L);
+        Assert.assertEquals(queue.getDroppedCount(), 0L);
+    }
+
+    @Test
+    public void dropsWhenFullTest() throws IOException, InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(8);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        FrameQueue queue = new FrameQueue(frame -> {
+            started.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, 2);
+
+        Assert.assertTrue(queue.submit(frame(pool, 0)));
+        started.await();
+        //the sink is now blocked on frame 0, so only two more fit
+        Assert.assertTrue(queue.submit(frame(pool, 1)));
+        Assert.assertTrue(queue.submit(frame(pool, 2)));
+        Assert.assertFalse(queue.submit(frame(pool, 3)));
+        Assert.assertEquals(queue.getDroppedCount(), 1L);
+        Assert.assertEquals(pool.getPooledCount(), 1);
+
+        proceed.countDown();
+        queue.close();
+        Assert.assertEquals(queue.getConsumedCount(), 3L);
+        Assert.assertEquals(pool.getPooledCount(), 4);
+    }
+
+    @Test
+    public void sinkFailureTest() {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        FrameQueue queue = new FrameQueue(frame -> {
+            throw new IOException("disk full");
+        }, 4);
+        queue.submit(frame(pool, 0));
+        Assert.assertThrows(IOException.class, queue::close);
+        Assert.assertThrows(IllegalStateException.class, () -> queue.submit(frame(pool, 1)));
+    }
+
+    @Test
+    public void sinkRuntimeFailureTest() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        FrameQueue queue = new FrameQueue(frame -> {
+            started.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            throw new IllegalStateException("encoder broke");
+        }, 4);
+
+        queue.submit(frame(pool, 0));
+        started.await();
+        queue.submit(frame(pool, 1));
+        queue.submit(frame(pool, 2));
+        proceed.countDown();
+
+        try {
+            queue.close();
+            Assert.fail("Closed without reporting the sink's failure");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "encoder broke");
+        } catch (IOException e) {
+            Assert.fail("Sink failure reported as an IOException");
+        }
+        Assert.assertEquals(queue.getConsumedCount(), 0L);
+        Assert.assertEquals(queue.getDroppedCount(), 3L);
+        //every frame was handed back, including those queued behind the failure
+        Assert.assertEquals(pool.getPooledCount(), 3);
+    }
+
+    @Test
+    public void poolReusesBuffersTest() {
+        DirectBufferPool pool = new DirectBufferPool(2);
+        ByteBuffer first = pool.acquire(64);
+        Assert.assertTrue(first.isDirect());
+        Assert.assertEquals(first.limit(), 64);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(32);
+        Assert.assertSame(second, first);
+        Assert.assertEquals(second.limit(), 32);
+        pool.release(second);
+
+        //too small for the request, so it is discarded
+        ByteBuffer third = pool.acquire(128);
+        Assert.assertNotSame(third, first);
+        Assert.assertEquals(pool.getPooledCount(), 0);
+    }
+
+    private static CapturedFrame frame(DirectBufferPool pool, long number) {
+        return new CapturedFrame(number, 2, 2, 4, pool.acquire(16), pool);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class ScreenshotTest {
+
+    @Test
+    public void convertRGBATest() {
+        assertConversion(7, 5, 4);
+    }
+
+    @Test
+    public void convertRGBTest() {
+        assertConversion(7, 5, 3);
+    }
+
+    @Test
+    public void convertLargeFrameTest() {
+        //large enough to be split across threads
+        assertConversion(1031, 769, 4);
+        assertConversion(1031, 769, 3);
+    }
+
+    @Test
+    public void ignoresBufferPositionTest() {
+        ByteBuffer data = randomPixels(4, 3, 4);
+        data.position(data.limit());
+        BufferedImage image = Screenshot.convertToBufferedImage(data, 4, 3, 4);
+        Assert.assertEquals(image.getRGB(0, 2), expectedRGB(data, 4, 3, 4, 0, 2));
+        Assert.assertEquals(data.position(), data.limit());
+    }
+
+    @Test
+    public void tooFewBytesPerPixelTest() {
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> Screenshot.convertToBufferedImage(ByteBuffer.allocate(8), 2, 2, 2));
+    }
+
+    private static void assertConversion(int width, int height, int bytesPerPixel) {
+        ByteBuffer data = randomPixels(width, height, bytesPerPixel);
+        BufferedImage image = Screenshot.convertToBufferedImage(data, width, height, bytesPerPixel);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (image.getRGB(x, y) != expectedRGB(data, width, height, bytesPerPixel, x, y)) {
+                    Assert.fail("Pixel (" + x + ", " + y + ") differs");
+                }
+            }
+        }
+    }
+
+    private static int expectedRGB(ByteBuffer data, int width, int height, int bytesPerPixel, int x, int y) {
+        int i = (x + width * (height - 1 - y)) * bytesPerPixel;
+        return 0xFF << 24 | (data.get(i) & 0xFF) << 16 | (data.get(i + 1) & 0xFF) << 8 | (data.get(i + 2) & 0xFF);
+    }
+
+    private static ByteBuffer randomPixels(int width, int height, int bytesPerPixel) {
+        byte[] bytes = new byte[width * height * bytesPerPixel];
+        new Random(width * 31 + height).nextBytes(bytes);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+}
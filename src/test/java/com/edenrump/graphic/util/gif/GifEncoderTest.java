@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.graphic.util.gif;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class GifEncoderTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void losslessForFewColoursTest() throws IOException {
+        int[] frame = stripes(0);
+        ImageReader reader = encodeAndRead(false, frame);
+        Assert.assertEquals(reader.getNumImages(true), 1);
+        assertPixels(reader.read(0), frame, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void globalPaletteTest() throws IOException {
+        int[] first = stripes(0);
+        int[] second = stripes(3);
+        ImageReader reader = encodeAndRead(true, first, second);
+        Assert.assertEquals(reader.getNumImages(true), 2);
+        assertPixels(reader.read(0), first, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void onlyChangedRectangleEncodedTest() throws IOException {
+        int[] first = stripes(0);
+        int[] second = first.clone();
+        for (int y = 10; y < 20; y++) {
+            for (int x = 5; x < 12; x++) {
+                second[y * WIDTH + x] = 0xFFFFFF;
+            }
+        }
+        int[] third = second.clone();
+
+        ImageReader reader = encodeAndRead(false, first, second, third);
+        Assert.assertEquals(reader.getNumImages(true), 3);
+        BufferedImage changed = reader.read(1);
+        Assert.assertEquals(changed.getWidth(), 7);
+        Assert.assertEquals(changed.getHeight(), 10);
+        assertPixels(changed, second, 5, 10, 7, 10);
+
+        BufferedImage unchanged = reader.read(2);
+        Assert.assertEquals(unchanged.getWidth(), 1);
+        Assert.assertEquals(unchanged.getHeight(), 1);
+    }
+
+    @Test
+    public void dictionaryResetTest() throws IOException {
+        //random indices quickly fill the 4096 entry LZW dictionary, which must then be cleared and rebuilt
+        int size = 256;
+        int[] frame = new int[size * size];
+        Random random = new Random(7);
+        for (int i = 0; i < frame.length; i++) {
+            int colour = random.nextInt(200);
+            frame[i] = (colour % 64) * 4 << 16 | (colour / 64) * 64 << 8;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GifEncoder encoder = new GifEncoder(bytes, size, size, 40, false)) {
+            encoder.addFrame(frame.clone());
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < frame.length; i++) {
+            if ((image.getRGB(i % size, i / size) & 0xFFFFFF) != frame[i]) Assert.fail("Pixel " + i + " differs");
+        }
+    }
+
+    @Test
+    public void manyColoursTest() throws IOException {
+        //a smooth gradient with more colours than a palette holds should still be close after quantization
+        int[] frame = new int[WIDTH * HEIGHT];
+        Random random = new Random(3);
+        for (int i = 0; i < frame.length; i++) {
+            int x = i % WIDTH, y = i / WIDTH;
+            frame[i] = (x * 4) << 16 | (y * 5) << 8 | random.nextInt(256);
+        }
+        for (boolean dither : new boolean[]{false, true}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GifEncoder encoder = new GifEncoder(bytes, WIDTH, HEIGHT, 40, false)) {
+                encoder.setDithering(dither);
+                encoder.addFrame(frame);
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+            long error = 0;
+            for (int i = 0; i < frame.length; i++) {
+                int actual = image.getRGB(i % WIDTH, i / WIDTH);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    error += Math.abs((actual >> shift & 0xFF) - (frame[i] >> shift & 0xFF));
+                }
+            }
+            Assert.assertTrue(error / (frame.length * 3.0) < 24, "mean error " + error / (frame.length * 3.0));
+        }
+    }
+
+    @Test
+    public void settingsLockedAfterFirstFrameTest() throws IOException {
+        GifEncoder encoder = new GifEncoder(new ByteArrayOutputStream(), WIDTH, HEIGHT, 40, false);
+        encoder.addFrame(stripes(0));
+        Assert.assertThrows(IllegalStateException.class, () -> encoder.setGlobalPalette(true));
+        Assert.assertThrows(IllegalArgumentException.class, () -> encoder.addFrame(new int[4]));
+        encoder.close();
+    }
+
+    private static ImageReader encodeAndRead(boolean globalPalette, int[]... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GifEncoder encoder = new GifEncoder(bytes, WIDTH, HEIGHT, 40, true)) {
+            encoder.setGlobalPalette(globalPalette);
+            for (int[] frame : frames) {
+                encoder.addFrame(frame.clone());
+            }
+        }
+        ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        reader.setInput(input);
+        return reader;
+    }
+
+    private static void assertPixels(BufferedImage image, int[] expected, int x, int y, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                int actual = image.getRGB(col, row) & 0xFFFFFF;
+                if (actual != (expected[(y + row) * WIDTH + x + col] & 0xFFFFFF)) {
+                    Assert.fail("Pixel (" + col + ", " + row + ") differs");
+                }
+            }
+        }
+    }
+
+    /**
+     * A frame of 40 distinct colours in diagonal stripes
+     */
+    private static int[] stripes(int offset) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int stripe = (x + y + offset) % 40;
+                pixels[y * WIDTH + x] = (stripe * 6) << 16 | (255 - stripe * 5) << 8 | (stripe * 37 & 0xFF);
+            }
+        }
+        return pixels;
+    }
+}
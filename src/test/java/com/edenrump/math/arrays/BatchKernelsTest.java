@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.arrays;
+
+import com.edenrump.math.util.Volume;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BatchKernelsTest {
+
+    private static final int COUNT = 67; //not a multiple of any vector width, so the scalar tail is exercised
+
+    @Test
+    public void transformPointsMatchesSquareMatrixTest() {
+        Random random = new Random(1);
+        float[] matrix = randomArray(random, 16);
+        float[][] points = {randomArray(random, COUNT), randomArray(random, COUNT), randomArray(random, COUNT)};
+        float[][] out = new float[3][COUNT];
+        BatchKernels.getScalarInstance().transformPoints(matrix, points[0], points[1], points[2],
+                out[0], out[1], out[2], COUNT);
+
+        SquareMatrix squareMatrix = new SquareMatrix(matrix);
+        for (int i = 0; i < COUNT; i++) {
+            ColumnVector expected = squareMatrix.multiply(new ColumnVector(points[0][i], points[1][i], points[2][i], 1));
+            for (int c = 0; c < 3; c++) {
+                assertSameBits(out[c][i], expected.getValue(c));
+            }
+        }
+    }
+
+    @Test
+    public void transformDirectionsIgnoresTranslationTest() {
+        float[] translation = Volume.createTranslationMatrix(5, 6, 7).getValues();
+        float[] x = {1, 0}, y = {0, 1}, z = {0, 0};
+        BatchKernels.getInstance().transformDirections(translation, x, y, z, x, y, z, 2);
+        Assert.assertEquals(x, new float[]{1, 0});
+        Assert.assertEquals(y, new float[]{0, 1});
+        Assert.assertEquals(z, new float[]{0, 0});
+    }
+
+    @Test
+    public void multiplyMatricesMatchesSquareMatrixTest() {
+        Random random = new Random(2);
+        float[] left = randomArray(random, 16 * COUNT);
+        float[] right = randomArray(random, 16 * COUNT);
+        float[] out = new float[16 * COUNT];
+        BatchKernels.getScalarInstance().multiplyMatrices(left, right, out, COUNT);
+
+        for (int n = 0; n < COUNT; n++) {
+            SquareMatrix a = new SquareMatrix(Arrays.copyOfRange(left, n * 16, n * 16 + 16));
+            SquareMatrix b = new SquareMatrix(Arrays.copyOfRange(right, n * 16, n * 16 + 16));
+            float[] expected = a.multiply(b).getValues();
+            for (int i = 0; i < 16; i++) {
+                assertSameBits(out[n * 16 + i], expected[i]);
+            }
+        }
+    }
+
+    @Test
+    public void normalizeMatchesColumnVectorTest() {
+        Random random = new Random(3);
+        float[] x = randomArray(random, COUNT), y = randomArray(random, COUNT), z = randomArray(random, COUNT);
+        x[5] = y[5] = z[5] = 0;
+        float[] originalX = x.clone(), originalY = y.clone(), originalZ = z.clone();
+        BatchKernels.getScalarInstance().normalize(x, y, z, COUNT);
+
+        for (int i = 0; i < COUNT; i++) {
+            if (i == 5) {
+                Assert.assertEquals(new float[]{x[i], y[i], z[i]}, new float[]{0, 0, 0});
+                continue;
+            }
+            ColumnVector expected = new ColumnVector(originalX[i], originalY[i], originalZ[i]).normalize();
+            assertSameBits(x[i], expected.getValue(0));
+            assertSameBits(y[i], expected.getValue(1));
+            assertSameBits(z[i], expected.getValue(2));
+        }
+    }
+
+    @Test
+    public void instanceMatchesScalarTest() {
+        BatchKernels scalar = BatchKernels.getScalarInstance();
+        BatchKernels fastest = BatchKernels.getInstance();
+        Random random = new Random(4);
+        for (int count = 0; count <= COUNT; count++) {
+            float[] matrix = randomArray(random, 16);
+            float[] x = randomArray(random, count), y = randomArray(random, count), z = randomArray(random, count);
+
+            float[][] expected = new float[3][count];
+            float[][] actual = new float[3][count];
+            scalar.transformPoints(matrix, x, y, z, expected[0], expected[1], expected[2], count);
+            fastest.transformPoints(matrix, x, y, z, actual[0], actual[1], actual[2], count);
+            assertSameBits(actual, expected);
+
+            scalar.transformDirections(matrix, x, y, z, expected[0], expected[1], expected[2], count);
+            fastest.transformDirections(matrix, x, y, z, actual[0], actual[1], actual[2], count);
+            assertSameBits(actual, expected);
+
+            scalar.normalize(expected[0], expected[1], expected[2], count);
+            fastest.normalize(actual[0], actual[1], actual[2], count);
+            assertSameBits(actual, expected);
+
+            float[] left = randomArray(random, 16 * count), right = randomArray(random, 16 * count);
+            float[] expectedProducts = new float[16 * count], actualProducts = new float[16 * count];
+            scalar.multiplyMatrices(left, right, expectedProducts, count);
+            fastest.multiplyMatrices(left, right, actualProducts, count);
+            assertSameBits(new float[][]{actualProducts}, new float[][]{expectedProducts});
+        }
+    }
+
+    @Test
+    public void argumentTest() {
+        BatchKernels kernels = BatchKernels.getInstance();
+        float[] small = new float[4];
+        float[] matrix = new float[16];
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> kernels.transformPoints(matrix, small, small, small, small, small, small, 5));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> kernels.transformPoints(small, small, small, small, small, small, small, 1));
+        Assert.assertThrows(IllegalArgumentException.class, () -> kernels.normalize(small, small, small, -1));
+        Assert.assertThrows(IllegalArgumentException.class, () -> kernels.multiplyMatrices(matrix, matrix, matrix, 1));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> kernels.multiplyMatrices(matrix, matrix, new float[16], 2));
+    }
+
+    private static void assertSameBits(float actual, float expected) {
+        Assert.assertEquals(Float.floatToRawIntBits(actual), Float.floatToRawIntBits(expected),
+                actual + " != " + expected);
+    }
+
+    private static void assertSameBits(float[][] actual, float[][] expected) {
+        for (int c = 0; c < actual.length; c++) {
+            for (int i = 0; i < actual[c].length; i++) {
+                assertSameBits(actual[c][i], expected[c][i]);
+            }
+        }
+    }
+
+    private static float[] randomArray(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (random.nextFloat() * 2 - 1) * 100;
+        }
+        return values;
+    }
+}
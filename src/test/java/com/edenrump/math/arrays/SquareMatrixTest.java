@@ -19,11 +19,13 @@
 
 package com.edenrump.math.arrays;
 
+import com.edenrump.math.util.Volume;
 import org.lwjgl.system.MemoryStack;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.nio.FloatBuffer;
+import java.util.Random;
 
 public class SquareMatrixTest {
     final SquareMatrix squareMatrix_n2_1 = new SquareMatrix(new float[]{1, 2, 3, 4});
@@ -124,5 +126,99 @@ public class SquareMatrixTest {
         Assert.assertThrows(IllegalArgumentException.class, () -> squareMatrix_n2_2.storeMatrixInBuffer(tooFewDimensions));
     }
 
+    @Test
+    public void determinantTest() {
+        Assert.assertEquals(squareMatrix_n2_1.determinant(), -2f);
+        Assert.assertEquals(squareMatrix_n3_1.determinant(), 0f);
+        Assert.assertEquals(new SquareMatrix(new float[]{
+                2, 0, 0, 0,
+                0, 3, 0, 0,
+                0, 0, 4, 0,
+                5, 6, 7, 1}).determinant(), 24f);
+
+        //det(AB) = det(A)det(B) for every size, including those factorised rather than expanded
+        Random random = new Random(5);
+        for (int size = 1; size <= 6; size++) {
+            SquareMatrix a = randomMatrix(random, size);
+            SquareMatrix b = randomMatrix(random, size);
+            float expected = a.determinant() * b.determinant();
+            Assert.assertEquals(a.multiply(b).determinant(), expected, Math.abs(expected) * 1e-4f + 1e-4f);
+        }
+        Assert.assertEquals(SquareMatrix.getIdentityMatrix(5).determinant(), 1f);
+    }
+
+    @Test
+    public void inverseTest() {
+        Random random = new Random(6);
+        for (int size = 1; size <= 6; size++) {
+            SquareMatrix matrix = randomMatrix(random, size);
+            SquareMatrix inverse = matrix.inverse();
+            Assert.assertEquals(matrix.multiply(inverse).getValues(), SquareMatrix.getIdentityMatrix(size).getValues(),
+                    1e-4f);
+            Assert.assertEquals(inverse.multiply(matrix).getValues(), SquareMatrix.getIdentityMatrix(size).getValues(),
+                    1e-4f);
+        }
+
+        Assert.assertThrows(ArithmeticException.class, () -> squareMatrix_n3_1.inverse());
+        Assert.assertThrows(ArithmeticException.class, () -> new SquareMatrix(new float[16]).inverse());
+        Assert.assertThrows(ArithmeticException.class, () -> new SquareMatrix(new float[25]).inverse());
+
+        float[] values = randomMatrix(random, 4).getValues();
+        float[] expected = new SquareMatrix(values.clone()).inverse().getValues();
+        SquareMatrix.invert4x4(values, values);
+        Assert.assertEquals(values, expected);
+    }
 
+    @Test
+    public void inverseAffineTest() {
+        SquareMatrix affine = Volume.createTranslationMatrix(3, -4, 5)
+                .multiply(Volume.createRotationMatrix(40, 1, 2, 3))
+                .multiply(Volume.createScaleMatrix(2, 0.5f, 3));
+        Assert.assertEquals(affine.inverseAffine().getValues(), affine.inverse().getValues(), 1e-5f);
+        Assert.assertEquals(affine.multiply(affine.inverseAffine()).getValues(),
+                SquareMatrix.getIdentityMatrix(4).getValues(), 1e-5f);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> squareMatrix_n3_1.inverseAffine());
+        float[] projective = SquareMatrix.getIdentityMatrix(4).getValues();
+        projective[11] = -1;
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> SquareMatrix.invertAffine(projective, new float[16]));
+        Assert.assertThrows(ArithmeticException.class,
+                () -> Volume.createScaleMatrix(1, 0, 1).inverseAffine());
+    }
+
+    @Test
+    public void normalMatrixTest() {
+        SquareMatrix model = Volume.createTranslationMatrix(1, 2, 3)
+                .multiply(Volume.createRotationMatrix(30, 0, 1, 0))
+                .multiply(Volume.createScaleMatrix(4, 1, 1));
+        float[] inverseTranspose = model.inverse().transpose().getValues();
+        float[] expected = {
+                inverseTranspose[0], inverseTranspose[1], inverseTranspose[2],
+                inverseTranspose[4], inverseTranspose[5], inverseTranspose[6],
+                inverseTranspose[8], inverseTranspose[9], inverseTranspose[10]};
+        SquareMatrix normalMatrix = model.getNormalMatrix();
+        Assert.assertEquals(normalMatrix.getValues(), expected, 1e-5f);
+
+        //a normal stays perpendicular to a tangent of the same surface after non-uniform scale
+        ColumnVector tangent = model.multiply(new ColumnVector(1, 1, 0, 0));
+        ColumnVector normal = normalMatrix.multiply(new ColumnVector(1, -1, 0));
+        float dot = tangent.getValue(0) * normal.getValue(0) + tangent.getValue(1) * normal.getValue(1) +
+                tangent.getValue(2) * normal.getValue(2);
+        Assert.assertEquals(dot, 0f, 1e-5f);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> squareMatrix_n3_1.getNormalMatrix());
+    }
+
+    private static SquareMatrix randomMatrix(Random random, int size) {
+        float[] values = new float[size * size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat() * 2 - 1;
+        }
+        //diagonally dominant, so that the matrix is comfortably invertible
+        for (int i = 0; i < size; i++) {
+            values[i * size + i] += size;
+        }
+        return new SquareMatrix(values);
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.geom;
+
+import com.edenrump.math.arrays.ColumnVector;
+import com.edenrump.math.arrays.SquareMatrix;
+import com.edenrump.math.util.Volume;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class QuaternionTest {
+
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void axisAngleMatchesVolumeTest() {
+        float[] expected = Volume.createRotationMatrix(70, 1, 2, 3).getValues();
+        float[] actual = new Quaternion().setAxisAngle(70, 1, 2, 3).toMatrix(new float[16]);
+        Assert.assertEquals(actual, expected, DELTA);
+        Assert.assertThrows(IllegalArgumentException.class, () -> new Quaternion().setAxisAngle(10, 0, 0, 0));
+    }
+
+    @Test
+    public void eulerMatchesAxisRotationsTest() {
+        Quaternion x = new Quaternion().setAxisAngle(30, 1, 0, 0);
+        Quaternion y = new Quaternion().setAxisAngle(-50, 0, 1, 0);
+        Quaternion z = new Quaternion().setAxisAngle(120, 0, 0, 1);
+        Quaternion expected = new Quaternion(z).multiply(y).multiply(x);
+        Quaternion actual = new Quaternion().setEuler(30, -50, 120);
+        assertSameRotation(actual, expected);
+
+        float[] angles = actual.getEuler(new float[3]);
+        Assert.assertEquals(angles, new float[]{30, -50, 120}, 1e-3f);
+    }
+
+    @Test
+    public void multiplyComposesRotationsTest() {
+        Quaternion first = new Quaternion().setAxisAngle(90, 0, 0, 1);
+        Quaternion second = new Quaternion().setAxisAngle(90, 1, 0, 0);
+
+        //turn about z first, then about x: x axis goes to y, then to z
+        float[] vector = new Quaternion(second).multiply(first).rotate(new float[]{1, 0, 0});
+        Assert.assertEquals(vector, new float[]{0, 0, 1}, DELTA);
+        Assert.assertEquals(new Quaternion(first).premultiply(second), new Quaternion(second).multiply(first));
+
+        SquareMatrix matrix = new Quaternion(second).multiply(first).toSquareMatrix();
+        ColumnVector rotated = matrix.multiply(new ColumnVector(1, 0, 0, 0));
+        Assert.assertEquals(rotated.getValues(), new float[]{0, 0, 1, 0}, DELTA);
+    }
+
+    @Test
+    public void conjugateInvertsTest() {
+        Quaternion rotation = new Quaternion().setEuler(10, 20, 30);
+        Quaternion identity = new Quaternion(rotation).multiply(new Quaternion(rotation).conjugate());
+        assertSameRotation(identity, new Quaternion());
+    }
+
+    @Test
+    public void normalizeRemovesDriftTest() {
+        Quaternion step = new Quaternion().setEuler(0.1f, 0.2f, 0.3f);
+        Quaternion accumulated = new Quaternion();
+        for (int i = 0; i < 100_000; i++) {
+            accumulated.multiply(step);
+        }
+        Assert.assertNotEquals(accumulated.length(), 1f, 1e-4f);
+        Assert.assertEquals(accumulated.normalize().length(), 1f, 1e-6f);
+        Assert.assertThrows(IllegalArgumentException.class, () -> new Quaternion(0, 0, 0, 0).normalize());
+    }
+
+    @Test
+    public void slerpTest() {
+        Quaternion from = new Quaternion();
+        Quaternion to = new Quaternion().setAxisAngle(120, 0, 1, 0);
+
+        assertSameRotation(new Quaternion().slerp(from, to, 0), from);
+        assertSameRotation(new Quaternion().slerp(from, to, 1), to);
+        assertSameRotation(new Quaternion().slerp(from, to, 0.25f), new Quaternion().setAxisAngle(30, 0, 1, 0));
+
+        //-q is the same rotation as q, and slerp should still take the short way
+        Quaternion negated = new Quaternion(-to.getX(), -to.getY(), -to.getZ(), -to.getW());
+        assertSameRotation(new Quaternion().slerp(from, negated, 0.5f), new Quaternion().setAxisAngle(60, 0, 1, 0));
+
+        //nearly identical rotations fall back to nlerp
+        Quaternion close = new Quaternion().setAxisAngle(0.5f, 0, 1, 0);
+        assertSameRotation(new Quaternion().slerp(from, close, 0.5f), new Quaternion().setAxisAngle(0.25f, 0, 1, 0));
+    }
+
+    @Test
+    public void nlerpTest() {
+        Quaternion from = new Quaternion().setAxisAngle(-40, 1, 0, 0);
+        Quaternion to = new Quaternion().setAxisAngle(40, 1, 0, 0);
+        Quaternion halfway = new Quaternion().nlerp(from, to, 0.5f);
+        assertSameRotation(halfway, new Quaternion());
+        Assert.assertEquals(halfway.length(), 1f, DELTA);
+    }
+
+    private static void assertSameRotation(Quaternion actual, Quaternion expected) {
+        float sign = actual.dot(expected) < 0 ? -1 : 1;
+        Assert.assertEquals(actual.getX() * sign, expected.getX(), DELTA, actual + " vs " + expected);
+        Assert.assertEquals(actual.getY() * sign, expected.getY(), DELTA, actual + " vs " + expected);
+        Assert.assertEquals(actual.getZ() * sign, expected.getZ(), DELTA, actual + " vs " + expected);
+        Assert.assertEquals(actual.getW() * sign, expected.getW(), DELTA, actual + " vs " + expected);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.math.geom;
+
+import com.edenrump.math.arrays.SquareMatrix;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.FloatBuffer;
+
+public class TransformTest {
+
+    @Test
+    public void setCopiesTest() {
+        Transform original = new Transform();
+        original.translate(1, 2, 3);
+        Transform copy = new Transform();
+        copy.set(original);
+        original.translate(1, 1, 1);
+        Assert.assertEquals(copy.getTranslation(), new float[]{1, 2, 3, 0});
+    }
+
+    @Test
+    public void interpolateTest() {
+        Transform from = new Transform();
+        Transform to = new Transform();
+        to.translate(2, 4, -6);
+        to.rotate(90, 0, 30);
+        to.scale(3, 1, 1);
+
+        Transform between = new Transform();
+        between.interpolate(from, to, 0.5f);
+        Assert.assertEquals(between.getTranslation(), new float[]{1, 2, -3, 0}, 1e-6f);
+        Assert.assertEquals(between.getRotation(), new float[]{45, 0, 15, 0}, 1e-6f);
+        Assert.assertEquals(between.getScale()[0], 2, 1e-6f);
+
+        between.interpolate(from, to, 1);
+        Assert.assertEquals(between.getTranslation(), to.getTranslation(), 1e-6f);
+    }
+
+    @Test
+    public void quaternionMatrixMatchesEulerTest() {
+        Transform euler = new Transform();
+        euler.translate(1, -2, 3);
+        euler.rotate(30, -45, 100);
+        euler.scale(2, 3, 0.5f);
+
+        Transform quaternion = new Transform();
+        quaternion.set(euler);
+        quaternion.setRotationMode(Transform.RotationMode.QUATERNION);
+        Assert.assertEquals(quaternion.getRotationMode(), Transform.RotationMode.QUATERNION);
+        Assert.assertEquals(matrix(quaternion), matrix(euler), 1e-5f);
+        Assert.assertEquals(quaternion.getRotation(), euler.getRotation(), 1e-3f);
+
+        quaternion.setRotationMode(Transform.RotationMode.EULER);
+        Assert.assertEquals(matrix(quaternion), matrix(euler), 1e-5f);
+    }
+
+    @Test
+    public void quaternionRotateTest() {
+        Transform transform = new Transform();
+        transform.setRotationMode(Transform.RotationMode.QUATERNION);
+        for (int i = 0; i < 360; i++) {
+            transform.rotate(1, 0, 0);
+        }
+        Assert.assertEquals(matrix(transform), matrix(new Transform()), 1e-4f);
+
+        transform.rotate(new Quaternion().setAxisAngle(90, 0, 0, 1));
+        Transform expected = new Transform();
+        expected.rotate(0, 0, 90);
+        Assert.assertEquals(matrix(transform), matrix(expected), 1e-4f);
+    }
+
+    @Test
+    public void quaternionInterpolateTest() {
+        Transform from = new Transform();
+        Transform to = new Transform();
+        to.setOrientation(new Quaternion().setAxisAngle(170, 0, 1, 0));
+        to.translate(2, 0, 0);
+
+        Transform between = new Transform();
+        between.interpolate(from, to, 0.5f);
+        Assert.assertEquals(between.getRotationMode(), Transform.RotationMode.QUATERNION);
+        Assert.assertEquals(between.getTranslation(), new float[]{1, 0, 0, 0}, 1e-6f);
+        Quaternion expected = new Quaternion().setAxisAngle(85, 0, 1, 0);
+        Quaternion actual = between.getOrientation(new Quaternion());
+        Assert.assertEquals(Math.abs(actual.dot(expected)), 1f, 1e-5f);
+
+        Transform copy = new Transform();
+        copy.set(between);
+        Assert.assertEquals(copy.getRotationMode(), Transform.RotationMode.QUATERNION);
+        Assert.assertEquals(matrix(copy), matrix(between));
+    }
+
+    @Test
+    public void storeMatricesTest() {
+        Transform transform = new Transform();
+        transform.translate(3, 2, 1);
+        transform.rotate(20, 40, 60);
+        transform.scale(1, 5, 2);
+
+        float[] model = new float[16];
+        float[] normal = new float[9];
+        transform.storeMatrices(model, normal);
+        Assert.assertEquals(model, matrix(transform), 1e-5f);
+        Assert.assertEquals(normal, new SquareMatrix(matrix(transform)).getNormalMatrix().getValues(), 1e-5f);
+
+        transform.storeMatrices(model, null);
+    }
+
+    @Test
+    public void storeMatricesZeroScaleTest() {
+        Transform transform = new Transform();
+        transform.translate(3, 2, 1);
+        transform.rotate(20, 40, 60);
+        transform.scale(0, 1, 2);
+
+        float[] model = new float[16];
+        float[] normal = new float[9];
+        transform.storeMatrices(model, normal);
+        Assert.assertEquals(model, matrix(transform), 1e-5f);
+        float[] upper = new float[9];
+        for (int column = 0; column < 3; column++) {
+            System.arraycopy(model, column * 4, upper, column * 3, 3);
+        }
+        Assert.assertEquals(normal, upper);
+    }
+
+    private static float[] matrix(Transform transform) {
+        FloatBuffer buffer = transform.getTransformationMatrix();
+        float[] values = new float[16];
+        buffer.get(values);
+        return values;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.edenrump.math.spatial;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class TriangleBVHTest {
+
+    //two triangles forming a unit square in the z=0 plane
+    static final float[] squarePositions = new float[]{
+            0, 0, 0,
+            1, 0, 0,
+            1, 1, 0,
+            0, 1, 0
+    };
+    static final int[] squareIndices = new int[]{0, 1, 2, 0, 2, 3};
+
+    @Test
+    public void constructorTest() {
+        TriangleBVH bvh = new TriangleBVH(squarePositions, squareIndices, 3);
+        Assert.assertEquals(bvh.getTriangleCount(), 2);
+        Assert.assertTrue(bvh.getNodeCount() >= 1);
+        Assert.assertEquals(bvh.getBounds(), new float[]{0, 0, 0, 1, 1, 0});
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new TriangleBVH(squarePositions, new int[]{0, 1}, 3));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new TriangleBVH(squarePositions, new int[]{0, 1, 4}, 3));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new TriangleBVH(squarePositions, squareIndices, 2));
+    }
+
+    @Test
+    public void emptyMeshTest() {
+        TriangleBVH bvh = new TriangleBVH(new float[0], new int[0], 3);
+        RayHit hit = new RayHit();
+        Assert.assertFalse(bvh.intersectClosest(new Ray(0, 0, 1, 0, 0, -1), hit));
+        Assert.assertFalse(hit.isHit());
+        Assert.assertFalse(bvh.intersectAny(new Ray(0, 0, 1, 0, 0, -1)));
+    }
+
+    @Test
+    public void closestHitTest() {
+        TriangleBVH bvh = new TriangleBVH(squarePositions, squareIndices, 3);
+        RayHit hit = new RayHit();
+
+        Assert.assertTrue(bvh.intersectClosest(new Ray(0.75f, 0.25f, 2, 0, 0, -1), hit));
+        Assert.assertEquals(hit.getTriangle(), 0);
+        Assert.assertEquals(hit.getDistance(), 2f, 1e-6f);
+
+        Assert.assertTrue(bvh.intersectClosest(new Ray(0.25f, 0.75f, -3, 0, 0, 1), hit));
+        Assert.assertEquals(hit.getTriangle(), 1);
+        Assert.assertEquals(hit.getDistance(), 3f, 1e-6f);
+
+        Assert.assertFalse(bvh.intersectClosest(new Ray(2, 2, 2, 0, 0, -1), hit));
+        Assert.assertFalse(hit.isHit());
+        Assert.assertEquals(hit.getTriangle(), -1);
+    }
+
+    @Test
+    public void barycentricTest() {
+        TriangleBVH bvh = new TriangleBVH(squarePositions, squareIndices, 3);
+        RayHit hit = new RayHit();
+
+        //triangle 0 is (0,0) (1,0) (1,1); point (0.75, 0.25) = 0.25 * v0 + 0.5 * v1 + 0.25 * v2
+        bvh.intersectClosest(new Ray(0.75f, 0.25f, 1, 0, 0, -1), hit);
+        Assert.assertEquals(hit.getU(), 0.5f, 1e-6f);
+        Assert.assertEquals(hit.getV(), 0.25f, 1e-6f);
+    }
+
+    @Test
+    public void anyHitIntervalTest() {
+        TriangleBVH bvh = new TriangleBVH(squarePositions, squareIndices, 3);
+        Ray ray = new Ray(0.5f, 0.25f, 2, 0, 0, -1);
+        Assert.assertTrue(bvh.intersectAny(ray));
+
+        ray.setInterval(0, 1.5f);
+        Assert.assertFalse(bvh.intersectAny(ray));
+
+        ray.setInterval(2.5f, 10);
+        Assert.assertFalse(bvh.intersectAny(ray));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> ray.setInterval(2, 1));
+    }
+
+    @Test
+    public void rayInSlabPlaneTest() {
+        TriangleBVH bvh = new TriangleBVH(squarePositions, squareIndices, 3);
+        RayHit hit = new RayHit();
+
+        //origin on the x=0 face of the bounds with no x motion: the x slab gives 0 * infinity and must not reject
+        Ray ray = new Ray(0, 0.5f, 2, 0, 0, -1);
+        Assert.assertTrue(bvh.intersectClosest(ray, hit));
+        Assert.assertEquals(hit.getTriangle(), 1);
+        Assert.assertEquals(hit.getDistance(), 2f, 1e-6f);
+        Assert.assertTrue(bvh.intersectAny(ray));
+
+        //the same on the far y=1 face
+        Assert.assertTrue(bvh.intersectAny(new Ray(0.5f, 1, -2, 0, 0, 1)));
+    }
+
+    @Test
+    public void matchesBruteForceTest() {
+        Random random = new Random(26);
+        int triangleCount = 5000;
+        float[] positions = new float[triangleCount * 9];
+        int[] indices = new int[triangleCount * 3];
+        for (int tri = 0; tri < triangleCount; tri++) {
+            float cx = random.nextFloat() * 100, cy = random.nextFloat() * 100, cz = random.nextFloat() * 100;
+            for (int v = 0; v < 3; v++) {
+                positions[tri * 9 + v * 3] = cx + random.nextFloat() * 4 - 2;
+                positions[tri * 9 + v * 3 + 1] = cy + random.nextFloat() * 4 - 2;
+                positions[tri * 9 + v * 3 + 2] = cz + random.nextFloat() * 4 - 2;
+                indices[tri * 3 + v] = tri * 3 + v;
+            }
+        }
+
+        TriangleBVH bvh = new TriangleBVH(positions, indices, 3);
+        RayHit hit = new RayHit();
+        Ray ray = new Ray();
+        for (int i = 0; i < 500; i++) {
+            ray.set(random.nextFloat() * 100, random.nextFloat() * 100, -10,
+                    random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, 1);
+
+            float expected = bruteForce(positions, indices, ray);
+            boolean found = bvh.intersectClosest(ray, hit);
+            Assert.assertEquals(found, expected < Float.POSITIVE_INFINITY);
+            Assert.assertEquals(bvh.intersectAny(ray), found);
+            if (found) Assert.assertEquals(hit.getDistance(), expected, 1e-4f);
+        }
+    }
+
+    /**
+     * Reference intersection of every triangle in turn, in double precision
+     */
+    private static float bruteForce(float[] p, int[] indices, Ray ray) {
+        double closest = Double.POSITIVE_INFINITY;
+        double ox = ray.getOriginX(), oy = ray.getOriginY(), oz = ray.getOriginZ();
+        double dx = ray.getDirectionX(), dy = ray.getDirectionY(), dz = ray.getDirectionZ();
+        for (int tri = 0; tri < indices.length / 3; tri++) {
+            int a = indices[tri * 3] * 3, b = indices[tri * 3 + 1] * 3, c = indices[tri * 3 + 2] * 3;
+            double e1x = p[b] - p[a], e1y = p[b + 1] - p[a + 1], e1z = p[b + 2] - p[a + 2];
+            double e2x = p[c] - p[a], e2y = p[c + 1] - p[a + 1], e2z = p[c + 2] - p[a + 2];
+            double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+            double det = e1x * px + e1y * py + e1z * pz;
+            if (Math.abs(det) < 1e-12) continue;
+            double sx = ox - p[a], sy = oy - p[a + 1], sz = oz - p[a + 2];
+            double u = (sx * px + sy * py + sz * pz) / det;
+            if (u < 0 || u > 1) continue;
+            double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+            double v = (dx * qx + dy * qy + dz * qz) / det;
+            if (v < 0 || u + v > 1) continue;
+            double t = (e2x * qx + e2y * qy + e2z * qz) / det;
+            if (t > 0) closest = Math.min(closest, t);
+        }
+        return (float) closest;
+    }
+}
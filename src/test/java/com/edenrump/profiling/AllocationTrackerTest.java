@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class AllocationTrackerTest {
+
+    private static final int ALLOCATION = 1 << 20;
+
+    /**
+     * Keeps allocations reachable so they cannot be optimised away
+     */
+    private static volatile Object sink;
+
+    @Test
+    public void frameBytesTest() {
+        start();
+        try {
+            AllocationTracker.markFrame();
+            sink = new byte[ALLOCATION];
+            AllocationTracker.markFrame();
+            AllocationTracker.markFrame();
+
+            AllocationStatisticsMXBean statistics = AllocationTracker.getStatistics();
+            Assert.assertEquals(statistics.getFrameCount(), 2L);
+            Assert.assertTrue(statistics.getMaxFrameBytes() >= ALLOCATION, "" + statistics.getMaxFrameBytes());
+            Assert.assertTrue(statistics.getLastFrameBytes() < ALLOCATION, "" + statistics.getLastFrameBytes());
+            Assert.assertTrue(statistics.getMeanBytesPerFrame() >= ALLOCATION / 2.0);
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void disabledRecordsNothingTest() {
+        start();
+        try {
+            AllocationTracker.setEnabled(false);
+            AllocationTracker.markFrame();
+            Profiler.begin("disabled");
+            sink = new byte[ALLOCATION];
+            Profiler.end();
+            AllocationTracker.markFrame();
+
+            Assert.assertEquals(AllocationTracker.getStatistics().getFrameCount(), 0L);
+            Assert.assertTrue(AllocationTracker.getStatistics().getZoneBytes().isEmpty());
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void budgetTest() {
+        start();
+        try {
+            AllocationTracker.setFrameBudgetBytes(ALLOCATION / 2);
+            AllocationTracker.markFrame();
+            AllocationTracker.markFrame();
+            AllocationTracker.checkBudget();
+
+            sink = new byte[ALLOCATION];
+            AllocationTracker.markFrame();
+            Assert.assertEquals(AllocationTracker.getStatistics().getFramesOverBudget(), 1L);
+            Assert.assertThrows(IllegalStateException.class, AllocationTracker::checkBudget);
+            Assert.assertThrows(IllegalArgumentException.class, () -> AllocationTracker.setFrameBudgetBytes(-1));
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void zoneBytesTest() {
+        start();
+        try {
+            Profiler.begin("outer");
+            sink = new byte[ALLOCATION];
+            Profiler.begin("inner");
+            sink = new byte[ALLOCATION];
+            Profiler.end();
+            Profiler.end();
+            Profiler.begin("inner");
+            Profiler.end();
+
+            AllocationStatisticsMXBean statistics = AllocationTracker.getStatistics();
+            Assert.assertTrue(statistics.getZoneBytes().get("outer") >= 2L * ALLOCATION);
+            Assert.assertTrue(statistics.getZoneBytes().get("inner") >= ALLOCATION);
+            Assert.assertTrue(statistics.getZoneBytes().get("inner") < 2L * ALLOCATION);
+            Assert.assertEquals(statistics.getZoneCalls().get("inner").longValue(), 2L);
+            Assert.assertTrue(AllocationTracker.createReport().contains("zone outer: "), AllocationTracker.createReport());
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void zonesLeftOpenWhileDisabledAreForgottenTest() {
+        start();
+        try {
+            Profiler.begin("left open");
+            AllocationTracker.setEnabled(false);
+            Profiler.end();
+            AllocationTracker.setEnabled(true);
+
+            Profiler.end();
+            Profiler.begin("closed");
+            Profiler.end();
+            Assert.assertEquals(AllocationTracker.getStatistics().getZoneCalls().keySet().toString(), "[closed]");
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void jmxTest() throws Exception {
+        start();
+        try {
+            AllocationTracker.markFrame();
+            sink = new byte[ALLOCATION];
+            AllocationTracker.markFrame();
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(AllocationTracker.OBJECT_NAME);
+            Assert.assertEquals(server.getAttribute(name, "FrameCount"), 1L);
+            Assert.assertTrue((Long) server.getAttribute(name, "MaxFrameBytes") >= ALLOCATION);
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            Assert.assertEquals(AllocationTracker.getStatistics().getFrameCount(), 0L);
+        } finally {
+            stop();
+        }
+    }
+
+    @Test
+    public void gcPausesTest() throws InterruptedException {
+        start();
+        try {
+            AllocationTracker.markFrame();
+            System.gc();
+            //notifications are delivered asynchronously
+            long deadline = System.currentTimeMillis() + 5000;
+            while (AllocationTracker.getStatistics().getGcPauseCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            AllocationTracker.markFrame();
+
+            Assert.assertTrue(AllocationTracker.getStatistics().getGcPauseCount() > 0);
+            Assert.assertEquals(AllocationTracker.getStatistics().getFramesWithGcPause(), 1L);
+        } finally {
+            stop();
+        }
+    }
+
+    private static void start() {
+        AllocationTracker.setEnabled(true);
+        AllocationTracker.setFrameBudgetBytes(0);
+        AllocationTracker.reset();
+    }
+
+    private static void stop() {
+        AllocationTracker.setEnabled(false);
+        AllocationTracker.setFrameBudgetBytes(0);
+        AllocationTracker.reset();
+    }
+}
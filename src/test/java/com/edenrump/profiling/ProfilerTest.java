@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Ed Eden-Rump
+ *
+ * This file is part of Nested Engine.
+ *
+ * Nested Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Nested Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Nested Engine.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.edenrump.profiling;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+public class ProfilerTest {
+
+    @Test
+    public void disabledRecordsNothingTest() throws IOException {
+        Profiler.setEnabled(false);
+        Profiler.reset();
+        Profiler.begin("disabled");
+        Profiler.end();
+        Assert.assertFalse(trace().contains("disabled"));
+    }
+
+    @Test
+    public void nestedZonesTest() throws IOException {
+        Profiler.reset();
+        Profiler.setEnabled(true);
+        try {
+            Profiler.begin("outer");
+            try (Profiler.Zone ignored = Profiler.zone("inner \"quoted\"")) {
+                Thread.onSpinWait();
+            }
+            Profiler.end();
+        } finally {
+            Profiler.setEnabled(false);
+        }
+
+        String trace = trace();
+        Assert.assertTrue(trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["), trace);
+        int outerBegin = trace.indexOf("{\"name\":\"outer\",\"ph\":\"B\"");
+        int innerBegin = trace.indexOf("{\"name\":\"inner \\\"quoted\\\"\",\"ph\":\"B\"");
+        int innerEnd = trace.indexOf("{\"name\":\"inner \\\"quoted\\\"\",\"ph\":\"E\"");
+        int outerEnd = trace.indexOf("{\"name\":\"outer\",\"ph\":\"E\"");
+        Assert.assertTrue(outerBegin >= 0 && outerBegin < innerBegin && innerBegin < innerEnd && innerEnd < outerEnd,
+                trace);
+        Assert.assertTrue(trace.contains("\"ph\":\"M\""), trace);
+    }
+
+    @Test
+    public void threadsRecordSeparatelyTest() throws IOException, InterruptedException {
+        Profiler.reset();
+        Profiler.setEnabled(true);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            Profiler.begin("worker zone");
+            Profiler.end();
+            done.countDown();
+        }, "profiler-test-worker");
+        try {
+            worker.start();
+            done.await();
+            Profiler.begin("main zone");
+            Profiler.end();
+        } finally {
+            Profiler.setEnabled(false);
+        }
+
+        String trace = trace();
+        Assert.assertTrue(trace.contains("\"tid\":" + worker.getId() + "}"), trace);
+        Assert.assertTrue(trace.contains("profiler-test-worker"), trace);
+        Assert.assertTrue(trace.contains("main zone"), trace);
+    }
+
+    @Test
+    public void terminatedThreadBufferDroppedTest() throws IOException, InterruptedException {
+        Profiler.reset();
+        int before = Profiler.getBufferCount();
+        Profiler.setEnabled(true);
+        Thread worker = new Thread(() -> {
+            Profiler.begin("short-lived zone");
+            Profiler.end();
+        }, "profiler-test-short-lived");
+        try {
+            worker.start();
+            worker.join();
+        } finally {
+            Profiler.setEnabled(false);
+        }
+        Assert.assertEquals(Profiler.getBufferCount(), before + 1);
+
+        //the ended thread's events are exported once, then its buffer is released
+        Assert.assertTrue(trace().contains("short-lived zone"));
+        Assert.assertEquals(Profiler.getBufferCount(), before);
+        Assert.assertFalse(trace().contains("short-lived zone"));
+    }
+
+    @Test
+    public void ringOverwriteTest() {
+        ZoneBuffer buffer = new ZoneBuffer(8, Thread.currentThread());
+        for (int i = 0; i < 20; i++) {
+            buffer.record("zone" + i, ZoneBuffer.BEGIN, i);
+        }
+        String[] names = new String[8];
+        long[] times = new long[8];
+        byte[] phases = new byte[8];
+        int count = buffer.snapshot(names, times, phases);
+        //the slot the writer would fill next is never trusted
+        Assert.assertEquals(count, 7);
+        Assert.assertEquals(times[0], 13L);
+        Assert.assertEquals(names[6], "zone19");
+
+        buffer.clear();
+        Assert.assertEquals(buffer.snapshot(names, times, phases), 0);
+        buffer.record("after", ZoneBuffer.END, 30);
+        Assert.assertEquals(buffer.snapshot(names, times, phases), 1);
+        Assert.assertEquals(names[0], "after");
+    }
+
+    @Test
+    public void unmatchedEventsTest() throws IOException {
+        Profiler.reset();
+        Profiler.setEnabled(true);
+        try {
+            //an end without a begin is dropped, and a begin without an end is closed
+            Profiler.end();
+            Profiler.begin("open");
+        } finally {
+            Profiler.setEnabled(false);
+        }
+        String trace = trace();
+        Assert.assertTrue(trace.contains("{\"name\":\"open\",\"ph\":\"E\""), trace);
+        Assert.assertEquals(trace.split("\"ph\":\"E\"", -1).length - 1, 1, trace);
+        Profiler.reset();
+    }
+
+    private static String trace() throws IOException {
+        StringWriter out = new StringWriter();
+        Profiler.writeChromeTrace(out);
+        return out.toString();
+    }
+}